@@ -34,6 +34,10 @@ public class CustomApplication extends Application {
                 CrashBottomSheet.sendCrashEmail(CustomApplication.this, stackTrace, deviceInfo); // Using default email action for now.
             }
         });
+        // Show bottom sheet in lightweight crash process
+        CrashBottomSheet.setCrashProcessEnabled(true);
+        if (CrashBottomSheet.isCrashProcess()) return; // Skip heavy initialization in crash process
+        // Heavy initialization of your app e.g. dependency injection, SDKs, etc.
     }
 
     @Override
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.BreadcrumbRing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures recording breadcrumbs from 8 threads into one shared ring against a ring guarded by a lock.
+ * Snapshot taken by crash handler is measured on the side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class BreadcrumbRingBenchmark {
+    private static final String MESSAGE = "onBindViewHolder";
+
+    private BreadcrumbRing mRing;
+    private LockedRing mLockedRing;
+    private BreadcrumbRing.Snapshot mSnapshot;
+
+    @Setup
+    public void setUp() {
+        mRing = new BreadcrumbRing(BreadcrumbRing.DEFAULT_CAPACITY);
+        mLockedRing = new LockedRing(BreadcrumbRing.DEFAULT_CAPACITY);
+        mSnapshot = new BreadcrumbRing.Snapshot(BreadcrumbRing.DEFAULT_CAPACITY);
+        for (int i = 0; i < BreadcrumbRing.DEFAULT_CAPACITY; i++) {
+            mRing.record(System.currentTimeMillis(), BreadcrumbRing.CATEGORY_DEFAULT, MESSAGE, i, 0);
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        mRing.record(System.currentTimeMillis(), BreadcrumbRing.CATEGORY_USER, MESSAGE, 0, 0);
+    }
+
+    @Benchmark
+    public void recordWithArgs() {
+        mRing.record(System.currentTimeMillis(), BreadcrumbRing.CATEGORY_NETWORK, MESSAGE, 200, 1024);
+    }
+
+    @Benchmark
+    public void recordLocked() {
+        mLockedRing.record(System.currentTimeMillis(), BreadcrumbRing.CATEGORY_USER, MESSAGE, 0, 0);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int snapshot() {
+        return mRing.snapshot(mSnapshot);
+    }
+
+    /**
+     * Ring of same layout whose writers take a lock, as a baseline.
+     */
+    private static final class LockedRing {
+        private final long[] mTimestamps;
+        private final int[] mCategories;
+        private final String[] mMessages;
+        private final long[] mFirstArgs;
+        private final long[] mSecondArgs;
+        private long mNext;
+
+        LockedRing(int capacity) {
+            mTimestamps = new long[capacity];
+            mCategories = new int[capacity];
+            mMessages = new String[capacity];
+            mFirstArgs = new long[capacity];
+            mSecondArgs = new long[capacity];
+        }
+
+        synchronized void record(long timestamp, int category, String message, long firstArg, long secondArg) {
+            int slot = (int) (mNext++ % mTimestamps.length);
+            mTimestamps[slot] = timestamp;
+            mCategories[slot] = category;
+            mMessages[slot] = message;
+            mFirstArgs[slot] = firstArg;
+            mSecondArgs[slot] = secondArg;
+        }
+    }
+}
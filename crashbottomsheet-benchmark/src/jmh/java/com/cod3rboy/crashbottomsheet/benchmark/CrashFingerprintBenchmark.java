@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.CrashFingerprint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures crash fingerprint computation done by crash handler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CrashFingerprintBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int depth;
+
+    @Param({"0", "4"})
+    public int causes;
+
+    private Throwable mThrowable;
+    private CrashFingerprint mFingerprint;
+
+    @Setup
+    public void setUp() {
+        mThrowable = Throwables.create(depth, causes);
+        mFingerprint = new CrashFingerprint(CrashFingerprint.DEFAULT_TOP_FRAMES, false, false);
+    }
+
+    @Benchmark
+    public long compute() {
+        return mFingerprint.compute(mThrowable);
+    }
+}
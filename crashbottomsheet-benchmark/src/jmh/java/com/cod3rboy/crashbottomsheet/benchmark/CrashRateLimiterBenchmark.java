@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.CrashRateLimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures CrashLoop detection done by crash handler. Limiter works on a heap buffer here instead of
+ * a memory mapped file so only the policy logic is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CrashRateLimiterBenchmark {
+    private CrashRateLimiter mLimiter;
+    private long mNow;
+
+    @Setup
+    public void setUp() {
+        mLimiter = new CrashRateLimiter(ByteBuffer.allocate(CrashRateLimiter.BUFFER_SIZE));
+        mNow = 1_600_000_000_000L;
+    }
+
+    @Benchmark
+    public boolean slidingWindow() {
+        mNow += 1000;
+        return mLimiter.tryAcquireSlidingWindow(mNow, 3, 10_000);
+    }
+
+    @Benchmark
+    public boolean exponentialBackoff() {
+        mNow += 1000;
+        return mLimiter.tryAcquireExponentialBackoff(mNow, 3000, 60_000);
+    }
+}
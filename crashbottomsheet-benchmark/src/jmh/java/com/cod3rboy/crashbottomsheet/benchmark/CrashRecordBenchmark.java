@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.CrashRecord;
+import com.cod3rboy.crashbottomsheet.core.CrashRecordReader;
+import com.cod3rboy.crashbottomsheet.core.CrashRecordRenderer;
+import com.cod3rboy.crashbottomsheet.core.CrashRecordWriter;
+import com.cod3rboy.crashbottomsheet.core.StackTraceSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of binary crash records against text stack traces written by
+ * {@link StackTraceSerializer}. Sizes of both formats are printed by {@link CrashRecordSizeReport}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CrashRecordBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"10", "100", "1000", "10000"})
+    public int depth;
+
+    @Param({"0", "4"})
+    public int causes;
+
+    @Param({"recursive", "distinct"})
+    public String shape;
+
+    private Throwable mThrowable;
+    private CrashRecordWriter mWriter;
+    private StackTraceSerializer mSerializer;
+    private byte[] mRecord;
+    private byte[] mText;
+    private CrashRecord mDecoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        mThrowable = "recursive".equals(shape) ? Throwables.create(depth, causes)
+                : Throwables.createDistinct(depth, causes);
+        mWriter = new CrashRecordWriter(StackTraceSerializer.DEFAULT_MAX_BYTES);
+        mSerializer = new StackTraceSerializer(StackTraceSerializer.DEFAULT_MAX_BYTES);
+        mRecord = toArray(mWriter.getByteBuffer(), mWriter.write(0, mThrowable));
+        mText = toArray(mSerializer.getByteBuffer(), mSerializer.serialize(mThrowable));
+        mDecoded = CrashRecordReader.read(mRecord, 0, mRecord.length);
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        return mWriter.write(0, mThrowable);
+    }
+
+    @Benchmark
+    public int encodeText() {
+        return mSerializer.serialize(mThrowable);
+    }
+
+    @Benchmark
+    public CrashRecord decodeBinary() throws IOException {
+        return CrashRecordReader.read(mRecord, 0, mRecord.length);
+    }
+
+    @Benchmark
+    public String renderBinary() {
+        return CrashRecordRenderer.renderStackTrace(mDecoded);
+    }
+
+    @Benchmark
+    public String decodeText() {
+        return new String(mText, UTF_8);
+    }
+
+    static byte[] toArray(ByteBuffer buffer, int length) {
+        if (length < 0) throw new IllegalStateException("Record does not fit in buffer");
+        byte[] bytes = new byte[length];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.CrashRecordWriter;
+import com.cod3rboy.crashbottomsheet.core.StackTraceSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Prints sizes of binary crash records and text stack traces, raw and gzipped, for the throwables used by
+ * {@link CrashRecordBenchmark}. Run with ./gradlew :crashbottomsheet-benchmark:crashRecordSizes
+ */
+public final class CrashRecordSizeReport {
+    private CrashRecordSizeReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        CrashRecordWriter writer = new CrashRecordWriter(StackTraceSerializer.DEFAULT_MAX_BYTES);
+        StackTraceSerializer serializer = new StackTraceSerializer(StackTraceSerializer.DEFAULT_MAX_BYTES);
+        System.out.printf("%-10s %6s %6s %10s %10s %10s %10s%n",
+                "shape", "depth", "causes", "text", "binary", "text.gz", "binary.gz");
+        for (String shape : new String[]{"recursive", "distinct"}) {
+            for (int depth : new int[]{10, 100, 1000, 10000}) {
+                for (int causes : new int[]{0, 4}) {
+                    Throwable throwable = "recursive".equals(shape) ? Throwables.create(depth, causes)
+                            : Throwables.createDistinct(depth, causes);
+                    byte[] text = CrashRecordBenchmark.toArray(serializer.getByteBuffer(),
+                            serializer.serialize(throwable));
+                    int length = writer.write(0, throwable);
+                    byte[] record = length < 0 ? null : CrashRecordBenchmark.toArray(writer.getByteBuffer(), length);
+                    System.out.printf("%-10s %6d %6d %10d %10s %10d %10s%n", shape, depth, causes,
+                            text.length, record == null ? "overflow" : Integer.toString(record.length),
+                            gzip(text), record == null ? "-" : Integer.toString(gzip(record)));
+                }
+            }
+        }
+    }
+
+    private static int gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.FrameTimeHistogram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cost of recording a frame into frame time histogram, which main thread pays on every frame, and
+ * snapshot taken by crash handler. Frames are recorded 60 per second with frame times spread like a janky app
+ * so slices roll over as they would on device. Rollover on every frame is measured as the worst case.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameTimeHistogramBenchmark {
+    private static final long VSYNC_NANOS = 16666667L;
+    private static final int FRAME_TIME_COUNT = 1024;
+
+    private FrameTimeHistogram mHistogram;
+    private FrameTimeHistogram.Snapshot mSnapshot;
+    private final long[] mFrameTimes = new long[FRAME_TIME_COUNT];
+    private long mNowNanos;
+    private int mFrame;
+
+    @Setup
+    public void setUp() {
+        mHistogram = new FrameTimeHistogram(FrameTimeHistogram.DEFAULT_WINDOW_SECONDS);
+        mSnapshot = new FrameTimeHistogram.Snapshot();
+        Random random = new Random(42);
+        for (int i = 0; i < FRAME_TIME_COUNT; i++) {
+            // Mostly one vsync, some frames miss a few and a rare one is frozen
+            int missed = random.nextInt(100) < 90 ? 0 : random.nextInt(100) < 95 ? 1 + random.nextInt(4) : 50;
+            mFrameTimes[i] = VSYNC_NANOS * (1 + missed) + random.nextInt(1000000);
+        }
+        for (int i = 0; i < FrameTimeHistogram.DEFAULT_WINDOW_SECONDS * 60; i++) recordFrame();
+    }
+
+    @Benchmark
+    public void recordFrame() {
+        long frameTime = mFrameTimes[mFrame++ & (FRAME_TIME_COUNT - 1)];
+        mNowNanos += VSYNC_NANOS;
+        mHistogram.record(mNowNanos, frameTime);
+    }
+
+    @Benchmark
+    public void recordFrameRollover() {
+        long frameTime = mFrameTimes[mFrame++ & (FRAME_TIME_COUNT - 1)];
+        mNowNanos += 1000000000L;
+        mHistogram.record(mNowNanos, frameTime);
+    }
+
+    @Benchmark
+    public long snapshot() {
+        mHistogram.snapshot(mNowNanos, mSnapshot);
+        return mSnapshot.getP99Micros();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.MappingIndex;
+import com.cod3rboy.crashbottomsheet.core.MappingIndexBuilder;
+import com.cod3rboy.crashbottomsheet.core.StackTraceRetracer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures lookups in a memory mapped mapping index of 12 methods per class, i.e. 120k methods for
+ * 10000 classes, and retrace of whole stack traces. Retrace which parses mapping file on every crash is
+ * measured as a baseline. Heap size of index against parsed mapping is printed by
+ * ./gradlew :crashbottomsheet-benchmark:mappingIndexSizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MappingIndexBenchmark {
+    static final int METHODS = 12;
+
+    @Param({"10000"})
+    public int classes;
+
+    private File mIndexFile;
+    private MappingIndex mIndex;
+    private StackTraceRetracer mRetracer;
+    private String mMapping;
+    private String mTrace;
+    private String mFrame;
+    private String[] mClassNames;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        mMapping = Mappings.create(classes, METHODS);
+        mIndexFile = File.createTempFile("mapping", ".cbmi");
+        try (OutputStream out = new FileOutputStream(mIndexFile)) {
+            new MappingIndexBuilder().parse(new StringReader(mMapping)).write(out);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mIndexFile, "r")) {
+            mIndex = new MappingIndex(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()));
+        }
+        mRetracer = new StackTraceRetracer(mIndex);
+        mTrace = Mappings.createTrace(classes, METHODS, 40, 42);
+        mFrame = "\tat " + Mappings.obfuscatedClass(classes / 2) + ".d(SourceFile:35)";
+        mClassNames = new String[1024];
+        for (int i = 0; i < mClassNames.length; i++) {
+            mClassNames[i] = Mappings.obfuscatedClass((int) ((i * 2654435761L) % classes));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (!mIndexFile.delete()) mIndexFile.deleteOnExit();
+    }
+
+    @Benchmark
+    public String findClass() {
+        return mIndex.findClassName(mClassNames[mNext++ & (mClassNames.length - 1)]);
+    }
+
+    @Benchmark
+    public String retraceFrame() {
+        return mRetracer.retrace(mFrame);
+    }
+
+    @Benchmark
+    public String retraceTrace() {
+        return mRetracer.retrace(mTrace);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String retraceTraceParsingMapping() throws IOException {
+        // What retrace costs when mapping file is shipped as it is
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MappingIndexBuilder().parse(new StringReader(mMapping)).write(out);
+        return new StackTraceRetracer(new MappingIndex(ByteBuffer.wrap(out.toByteArray())))
+                .retrace(mTrace);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.MappingIndexBuilder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Prints size of mapping index against mapping file and against heap taken by mapping parsed into maps,
+ * which is what retrace without index keeps in memory. Run with
+ * ./gradlew :crashbottomsheet-benchmark:mappingIndexSizes
+ */
+public final class MappingIndexSizeReport {
+    private MappingIndexSizeReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%8s %8s %12s %12s %12s %10s%n",
+                "classes", "methods", "mapping", "index", "parsed heap", "build ms");
+        for (int classes : new int[]{1000, 10000, 50000}) {
+            String mapping = Mappings.create(classes, MappingIndexBenchmark.METHODS);
+            long start = System.nanoTime();
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            new MappingIndexBuilder().parse(new StringReader(mapping)).write(index);
+            long buildMs = (System.nanoTime() - start) / 1000000;
+            long before = usedHeap();
+            HashMap<String, List<String[]>> parsed = parse(mapping);
+            long heap = usedHeap() - before;
+            System.out.printf("%8d %8d %12d %12d %12d %10d%n", classes, classes * MappingIndexBenchmark.METHODS,
+                    mapping.length(), index.size(), heap, buildMs);
+            if (parsed.isEmpty()) throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Parses mapping into a map of obfuscated class name to its class and member lines.
+     */
+    private static HashMap<String, List<String[]>> parse(String mapping) throws IOException {
+        HashMap<String, List<String[]>> classes = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new StringReader(mapping));
+        List<String[]> current = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.charAt(0) == '#') continue;
+            String[] parts = line.trim().split(" -> ");
+            if (parts.length != 2) continue;
+            if (line.charAt(0) != ' ') {
+                current = new ArrayList<>();
+                current.add(parts);
+                classes.put(parts[1].substring(0, parts[1].length() - 1), current);
+            } else if (current != null) {
+                current.add(parts);
+            }
+        }
+        return classes;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import java.util.Random;
+
+/**
+ * Builds synthetic R8 mapping files and obfuscated stack traces which refer to them.
+ */
+final class Mappings {
+    // Lines taken by each method in obfuscated line numbering
+    private static final int METHOD_LINES = 10;
+
+    private Mappings() {
+    }
+
+    /**
+     * Creates mapping file text in R8 format. Every fourth method has a method of another class inlined
+     * into it like real minified code.
+     *
+     * @param classes number of classes
+     * @param methods number of methods of each class
+     * @return mapping file text
+     */
+    static String create(int classes, int methods) {
+        StringBuilder out = new StringBuilder(classes * methods * 80);
+        out.append("# compiler: R8\n# compiler_version: 2.1.62\n");
+        for (int c = 0; c < classes; c++) {
+            out.append(originalClass(c)).append(" -> ").append(obfuscatedClass(c)).append(":\n");
+            out.append("# {\"id\":\"sourceFile\",\"fileName\":\"Screen").append(c).append(".java\"}\n");
+            out.append("    android.view.View view -> a\n");
+            for (int m = 0; m < methods; m++) {
+                int start = m * METHOD_LINES + 1;
+                int end = start + METHOD_LINES - 1;
+                int original = 100 + m * 20;
+                String obfuscated = obfuscatedName(m);
+                if (m % 4 == 3) {
+                    out.append("    ").append(start).append(':').append(start).append(":void ")
+                            .append(originalClass((c + 1) % classes)).append(".inlined").append(m)
+                            .append("():").append(original + 5).append(':').append(original + 5)
+                            .append(" -> ").append(obfuscated).append('\n');
+                    out.append("    ").append(start).append(':').append(start).append(":void method").append(m)
+                            .append("(int,java.lang.String):").append(original).append(" -> ")
+                            .append(obfuscated).append('\n');
+                    start++;
+                }
+                out.append("    ").append(start).append(':').append(end).append(":void method").append(m)
+                        .append("(int,java.lang.String):").append(original + start - m * METHOD_LINES - 1)
+                        .append(':').append(original + end - m * METHOD_LINES - 1).append(" -> ")
+                        .append(obfuscated).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Creates obfuscated stack trace whose frames are spread over mapped classes.
+     *
+     * @param classes number of classes in mapping
+     * @param methods number of methods of each class in mapping
+     * @param frames  number of frames
+     * @param seed    seed of random frames
+     * @return stack trace text
+     */
+    static String createTrace(int classes, int methods, int frames, long seed) {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder(frames * 40);
+        out.append(obfuscatedClass(random.nextInt(classes))).append(": Synthetic crash\n");
+        for (int i = 0; i < frames; i++) {
+            int m = random.nextInt(methods);
+            out.append("\tat ").append(obfuscatedClass(random.nextInt(classes))).append('.')
+                    .append(obfuscatedName(m)).append("(SourceFile:")
+                    .append(m * METHOD_LINES + 1 + random.nextInt(METHOD_LINES)).append(")\n");
+        }
+        out.append("\tat android.os.Looper.loop(Looper.java:223)\n");
+        return out.toString();
+    }
+
+    /**
+     * Returns original name of class.
+     */
+    static String originalClass(int c) {
+        return "com.example.app.feature" + (c % 64) + ".Screen" + c;
+    }
+
+    /**
+     * Returns obfuscated name of class i.e. short names in a few short packages as R8 assigns them.
+     */
+    static String obfuscatedClass(int c) {
+        return obfuscatedName(c % 26) + "." + obfuscatedName(c / 26);
+    }
+
+    /**
+     * Returns R8 style short name i.e. a, b, ..., z, aa, ab, ...
+     */
+    static String obfuscatedName(int n) {
+        StringBuilder name = new StringBuilder(4);
+        do {
+            name.insert(0, (char) ('a' + n % 26));
+            n = n / 26 - 1;
+        } while (n >= 0);
+        return name.toString();
+    }
+}
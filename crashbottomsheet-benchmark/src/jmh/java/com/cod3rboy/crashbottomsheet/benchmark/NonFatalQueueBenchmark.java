@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.NonFatalCoalescer;
+import com.cod3rboy.crashbottomsheet.core.NonFatalQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures latency of recording a non-fatal exception i.e. offering it to {@link NonFatalQueue} from 7 threads
+ * while one worker drains it, against {@link ArrayBlockingQueue} as a baseline. Offering to a full queue
+ * measures the drop path and coalescing measures worker cost of one full batch.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NonFatalQueueBenchmark {
+    // Created once so that offer is measured without cost of filling in stack trace
+    private static final Throwable THROWABLE = new IllegalStateException("Non-fatal");
+
+    /**
+     * Queues shared by producers and worker of a group.
+     */
+    @State(Scope.Group)
+    public static class Queues {
+        NonFatalQueue mQueue;
+        ArrayBlockingQueue<Throwable> mBlockingQueue;
+        Throwable[] mThrowables;
+        long[] mTimestamps;
+        ArrayList<Throwable> mDrained;
+
+        @Setup
+        public void setUp() {
+            mQueue = new NonFatalQueue(NonFatalQueue.DEFAULT_CAPACITY);
+            mBlockingQueue = new ArrayBlockingQueue<>(NonFatalQueue.DEFAULT_CAPACITY);
+            mThrowables = new Throwable[NonFatalQueue.DEFAULT_CAPACITY];
+            mTimestamps = new long[NonFatalQueue.DEFAULT_CAPACITY];
+            mDrained = new ArrayList<>(NonFatalQueue.DEFAULT_CAPACITY);
+        }
+    }
+
+    @Benchmark
+    @Group("lockFree")
+    @GroupThreads(7)
+    public boolean offer(Queues queues) {
+        return queues.mQueue.offer(THROWABLE, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @Group("lockFree")
+    @GroupThreads(1)
+    public int drain(Queues queues) {
+        int count = queues.mQueue.drain(queues.mThrowables, queues.mTimestamps);
+        for (int i = 0; i < count; i++) queues.mThrowables[i] = null;
+        return count;
+    }
+
+    @Benchmark
+    @Group("blocking")
+    @GroupThreads(7)
+    public boolean offerBlocking(Queues queues) {
+        return queues.mBlockingQueue.offer(THROWABLE);
+    }
+
+    @Benchmark
+    @Group("blocking")
+    @GroupThreads(1)
+    public int drainBlocking(Queues queues) {
+        int count = queues.mBlockingQueue.drainTo(queues.mDrained);
+        queues.mDrained.clear();
+        return count;
+    }
+
+    /**
+     * Queue which is always full so every offer is dropped.
+     */
+    @State(Scope.Benchmark)
+    public static class FullQueue {
+        NonFatalQueue mQueue;
+
+        @Setup
+        public void setUp() {
+            mQueue = new NonFatalQueue(NonFatalQueue.DEFAULT_CAPACITY);
+            while (mQueue.offer(THROWABLE, 0)) ;
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean offerFull(FullQueue state) {
+        return state.mQueue.offer(THROWABLE, System.currentTimeMillis());
+    }
+
+    /**
+     * Full batch of throwables thrown from 8 places.
+     */
+    @State(Scope.Thread)
+    public static class Batch {
+        final Throwable[] mThrowables = new Throwable[NonFatalQueue.DEFAULT_CAPACITY];
+        final long[] mTimestamps = new long[NonFatalQueue.DEFAULT_CAPACITY];
+        final NonFatalCoalescer mCoalescer = new NonFatalCoalescer(NonFatalQueue.DEFAULT_CAPACITY);
+
+        @Setup
+        public void setUp() {
+            Throwable[] sites = new Throwable[8];
+            for (int i = 0; i < sites.length; i++) {
+                sites[i] = Throwables.create(20, 1);
+                StackTraceElement[] frames = sites[i].getStackTrace();
+                frames[0] = new StackTraceElement("com.example.app.feature.Site" + i, "load", "Site" + i + ".java", 10);
+                sites[i].setStackTrace(frames);
+            }
+            for (int i = 0; i < mThrowables.length; i++) {
+                mThrowables[i] = sites[i % sites.length];
+                mTimestamps[i] = i;
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int coalesce(Batch batch) {
+        return batch.mCoalescer.coalesce(batch.mThrowables, batch.mTimestamps, batch.mThrowables.length);
+    }
+}
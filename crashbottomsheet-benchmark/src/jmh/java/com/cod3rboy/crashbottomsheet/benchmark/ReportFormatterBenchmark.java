@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.CrashFingerprint;
+import com.cod3rboy.crashbottomsheet.core.ReportFormatter;
+import com.cod3rboy.crashbottomsheet.core.StackTraceSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures formatting of device information and of a whole crash report as it is built for email and
+ * report batches. DeviceInfo itself reads android.os.Build and PackageManager so its formatting is
+ * measured here with the same values a device would supply.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReportFormatterBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int depth;
+
+    @Param({"0", "4"})
+    public int causes;
+
+    private String mStackTrace;
+    private String mFingerprint;
+
+    @Setup
+    public void setUp() {
+        Throwable throwable = Throwables.create(depth, causes);
+        StackTraceSerializer serializer = new StackTraceSerializer(StackTraceSerializer.DEFAULT_MAX_BYTES);
+        int length = serializer.serialize(throwable);
+        mStackTrace = new String(serializer.getByteBuffer().array(), 0, length, Charset.forName("UTF-8"));
+        mFingerprint = CrashFingerprint.toHexString(
+                new CrashFingerprint(CrashFingerprint.DEFAULT_TOP_FRAMES, false, false).compute(throwable));
+    }
+
+    @Benchmark
+    public String deviceInfo() {
+        StringBuilder info = appendDeviceInfo(new StringBuilder(512));
+        return info.toString();
+    }
+
+    @Benchmark
+    public String report() {
+        StringBuilder report = new StringBuilder(mStackTrace.length() + 1024)
+                .append("---DEVICE INFO---\n");
+        appendDeviceInfo(report).append('\n');
+        ReportFormatter.appendFingerprint(report, mFingerprint, 3).append("\n---STACKTRACE---\n");
+        return report.append(mStackTrace).toString();
+    }
+
+    private static StringBuilder appendDeviceInfo(StringBuilder info) {
+        ReportFormatter.appendDeviceInfo(info, "Example", "com.example.app", "1.4.2",
+                ReportFormatter.getAndroidCodeName(29), "10", "Google", "Pixel 4", "google", "flame").append('\n');
+        return ReportFormatter.appendCrashState(info, 12_345_678L, 67_108_864L, 268_435_456L,
+                8_589_934_592L, 57, ReportFormatter.ORIENTATION_PORTRAIT);
+    }
+}
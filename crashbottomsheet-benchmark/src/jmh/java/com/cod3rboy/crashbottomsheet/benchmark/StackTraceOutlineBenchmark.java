@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.StackTraceOutline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures work of stack trace panel of bottom sheet as stack trace grows. Building the outline runs on a
+ * background thread when panel opens, while binding the rows of first screen and binding one row per scrolled
+ * frame run on main thread and should stay flat no matter how many lines the stack trace has. Expanding a
+ * collapsed cause is measured as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StackTraceOutlineBenchmark {
+    // Rows which fit on first screen of the panel
+    private static final int SCREEN_ROWS = 20;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int depth;
+
+    @Param({"0", "4"})
+    public int causes;
+
+    private String mText;
+    private StackTraceOutline mOutline;
+    private int mScrollRow;
+
+    @Setup
+    public void setUp() {
+        StringWriter text = new StringWriter();
+        Throwables.createDistinct(depth, causes).printStackTrace(new PrintWriter(text));
+        mText = text.toString();
+        mOutline = StackTraceOutline.parse(mText);
+        for (int section = 0; section < mOutline.getSectionCount(); section++) mOutline.setExpanded(section, true);
+    }
+
+    @Benchmark
+    public StackTraceOutline buildOutline() {
+        return StackTraceOutline.parse(mText);
+    }
+
+    @Benchmark
+    public void bindFirstScreen(Blackhole blackhole) {
+        int rows = Math.min(SCREEN_ROWS, mOutline.getRowCount());
+        for (int row = 0; row < rows; row++) bindRow(blackhole, row);
+    }
+
+    @Benchmark
+    public void bindScrolledRow(Blackhole blackhole) {
+        // Scrolling through all rows binds one new row per frame
+        if (++mScrollRow >= mOutline.getRowCount()) mScrollRow = 0;
+        bindRow(blackhole, mScrollRow);
+    }
+
+    @Benchmark
+    public int toggleLastSection() {
+        int section = mOutline.getSectionCount() - 1;
+        mOutline.setExpanded(section, false);
+        return mOutline.setExpanded(section, true);
+    }
+
+    private void bindRow(Blackhole blackhole, int row) {
+        int line = mOutline.getRowLine(row);
+        blackhole.consume(mOutline.isHeaderRow(row));
+        blackhole.consume(mOutline.getLine(line));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.benchmark;
+
+import com.cod3rboy.crashbottomsheet.core.StackTraceSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures stack trace serialization done by crash handler, with and without truncation, against
+ * {@link Throwable#printStackTrace()} which crash handler used before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StackTraceSerializerBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int depth;
+
+    @Param({"0", "4"})
+    public int causes;
+
+    private Throwable mThrowable;
+    private StackTraceSerializer mSerializer;
+    private StackTraceSerializer mTruncatingSerializer;
+
+    @Setup
+    public void setUp() {
+        mThrowable = Throwables.create(depth, causes);
+        mSerializer = new StackTraceSerializer(StackTraceSerializer.DEFAULT_MAX_BYTES);
+        mTruncatingSerializer = new StackTraceSerializer(StackTraceSerializer.MIN_MAX_BYTES);
+    }
+
+    @Benchmark
+    public int serialize() {
+        return mSerializer.serialize(mThrowable);
+    }
+
+    @Benchmark
+    public int serializeTruncated() {
+        return mTruncatingSerializer.serialize(mThrowable);
+    }
+
+    @Benchmark
+    public int serializeMinimal() {
+        return mSerializer.serializeMinimal(mThrowable);
+    }
+
+    @Benchmark
+    public String printStackTrace() {
+        StringWriter writer = new StringWriter();
+        mThrowable.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
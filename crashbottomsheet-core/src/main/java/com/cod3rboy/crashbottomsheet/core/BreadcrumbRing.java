@@ -0,0 +1,284 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed capacity ring buffer of breadcrumbs i.e. short notes of what the app was doing before a crash.
+ * All slots are allocated up front and any number of threads can record breadcrumbs at the same time.
+ * Recording takes a sequence number with a single atomic increment and claims its slot by swapping the
+ * sequence number held by the slot, so it never waits for other threads and does not allocate. When the ring
+ * is full the oldest breadcrumbs are overwritten. A slot is written by one thread at a time, so a breadcrumb
+ * which laps a slot still being written, or which is older than the one in its slot, is dropped instead of
+ * mixing its fields with another breadcrumb. Each slot carries the sequence number of the breadcrumb it holds
+ * so that a snapshot skips slots which are being overwritten while it is taken.
+ */
+public final class BreadcrumbRing {
+    /**
+     * Default number of breadcrumbs kept.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+    /**
+     * Breadcrumb category of anything else.
+     */
+    public static final int CATEGORY_DEFAULT = 0;
+    /**
+     * Breadcrumb category of screen and fragment navigation.
+     */
+    public static final int CATEGORY_NAVIGATION = 1;
+    /**
+     * Breadcrumb category of user interaction.
+     */
+    public static final int CATEGORY_USER = 2;
+    /**
+     * Breadcrumb category of network requests.
+     */
+    public static final int CATEGORY_NETWORK = 3;
+    /**
+     * Breadcrumb category of app and component lifecycle.
+     */
+    public static final int CATEGORY_LIFECYCLE = 4;
+
+    private static final String[] CATEGORY_NAMES = {"default", "navigation", "user", "network", "lifecycle"};
+    // Sequence number held by a slot which has never been written
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int mMask;
+    // Sequence number of next breadcrumb
+    private final AtomicLong mNext = new AtomicLong();
+    // Sequence number of breadcrumb held by each slot, -1 - sequence number while it is being written or EMPTY
+    private final AtomicLongArray mSequences;
+    private final AtomicLongArray mTimestamps;
+    private final AtomicIntegerArray mCategories;
+    private final AtomicReferenceArray<String> mMessages;
+    private final AtomicLongArray mFirstArgs;
+    private final AtomicLongArray mSecondArgs;
+
+    /**
+     * Constructor
+     *
+     * @param capacity number of breadcrumbs kept, rounded up to a power of two
+     */
+    public BreadcrumbRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 1) - 1) << 1;
+        if (size <= 0) size = 1;
+        mMask = size - 1;
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) mSequences.set(i, EMPTY);
+        mTimestamps = new AtomicLongArray(size);
+        mCategories = new AtomicIntegerArray(size);
+        mMessages = new AtomicReferenceArray<>(size);
+        mFirstArgs = new AtomicLongArray(size);
+        mSecondArgs = new AtomicLongArray(size);
+    }
+
+    /**
+     * Returns number of breadcrumbs kept.
+     *
+     * @return capacity
+     */
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Records a breadcrumb. Message is kept by reference so constant or already existing strings should be
+     * passed to keep recording free of allocations.
+     *
+     * @param timestamp  timestamp in milliseconds
+     * @param category   category code, one of CATEGORY_* constants or an app defined code
+     * @param message    short message or null
+     * @param firstArg   first numeric argument
+     * @param secondArg  second numeric argument
+     */
+    public void record(long timestamp, int category, String message, long firstArg, long secondArg) {
+        long sequence = mNext.getAndIncrement();
+        int slot = (int) sequence & mMask;
+        // Claim slot so that no other writer changes its fields until it is published
+        long current;
+        do {
+            current = mSequences.get(slot);
+            if (current != EMPTY && (current < 0 || current > sequence)) return; // Being written or newer
+        } while (!mSequences.compareAndSet(slot, current, -1 - sequence));
+        // Ordered stores publish fields after slot is marked as being written
+        mTimestamps.lazySet(slot, timestamp);
+        mCategories.lazySet(slot, category);
+        mMessages.lazySet(slot, message);
+        mFirstArgs.lazySet(slot, firstArg);
+        mSecondArgs.lazySet(slot, secondArg);
+        mSequences.lazySet(slot, sequence);
+    }
+
+    /**
+     * Copies newest breadcrumbs which fit into given snapshot, oldest first. Breadcrumbs which are being
+     * written meanwhile are skipped.
+     *
+     * @param snapshot snapshot to copy into
+     * @return number of breadcrumbs copied
+     */
+    public int snapshot(Snapshot snapshot) {
+        snapshot.mCount = 0;
+        long end = mNext.get();
+        long start = Math.max(end - Math.min(getCapacity(), snapshot.getCapacity()), 0);
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) sequence & mMask;
+            if (mSequences.get(slot) != sequence) continue;
+            int i = snapshot.mCount;
+            snapshot.mTimestamps[i] = mTimestamps.get(slot);
+            snapshot.mCategories[i] = mCategories.get(slot);
+            snapshot.mMessages[i] = mMessages.get(slot);
+            snapshot.mFirstArgs[i] = mFirstArgs.get(slot);
+            snapshot.mSecondArgs[i] = mSecondArgs.get(slot);
+            // Keep it only if slot was not overwritten while it was copied
+            if (mSequences.get(slot) == sequence) snapshot.mCount++;
+        }
+        return snapshot.mCount;
+    }
+
+    /**
+     * Returns name of breadcrumb category.
+     *
+     * @param category category code
+     * @return category name
+     */
+    @NonNull
+    public static String getCategoryName(int category) {
+        return category >= 0 && category < CATEGORY_NAMES.length ? CATEGORY_NAMES[category]
+                : "category " + category;
+    }
+
+    /**
+     * Breadcrumbs copied out of a {@link BreadcrumbRing}. Arrays are allocated up front so that a snapshot
+     * can be taken by crash handler.
+     */
+    public static final class Snapshot {
+        final long[] mTimestamps;
+        final int[] mCategories;
+        final String[] mMessages;
+        final long[] mFirstArgs;
+        final long[] mSecondArgs;
+        int mCount;
+
+        /**
+         * Constructor
+         *
+         * @param capacity max number of breadcrumbs held
+         */
+        public Snapshot(int capacity) {
+            mTimestamps = new long[capacity];
+            mCategories = new int[capacity];
+            mMessages = new String[capacity];
+            mFirstArgs = new long[capacity];
+            mSecondArgs = new long[capacity];
+        }
+
+        /**
+         * @return max number of breadcrumbs held
+         */
+        public int getCapacity() {
+            return mTimestamps.length;
+        }
+
+        /**
+         * @return number of breadcrumbs held
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @param index index of breadcrumb, oldest first
+         * @return timestamp in milliseconds
+         */
+        public long getTimestamp(int index) {
+            return mTimestamps[index];
+        }
+
+        /**
+         * @param index index of breadcrumb, oldest first
+         * @return category code
+         */
+        public int getCategory(int index) {
+            return mCategories[index];
+        }
+
+        /**
+         * @param index index of breadcrumb, oldest first
+         * @return message or null
+         */
+        public String getMessage(int index) {
+            return mMessages[index];
+        }
+
+        /**
+         * @param index index of breadcrumb, oldest first
+         * @return first numeric argument
+         */
+        public long getFirstArg(int index) {
+            return mFirstArgs[index];
+        }
+
+        /**
+         * @param index index of breadcrumb, oldest first
+         * @return second numeric argument
+         */
+        public long getSecondArg(int index) {
+            return mSecondArgs[index];
+        }
+
+        /**
+         * Appends breadcrumbs one per line, oldest first.
+         * Format :-
+         * [time relative to crash] ms [category][: message][ (first arg, second arg)]
+         * Message is left out if null and arguments are left out if both are 0.
+         *
+         * @param out            builder to append to
+         * @param crashTimestamp crash timestamp in milliseconds
+         * @return given builder
+         */
+        @NonNull
+        public StringBuilder appendTo(StringBuilder out, long crashTimestamp) {
+            for (int i = 0; i < mCount; i++) {
+                out.append(mTimestamps[i] - crashTimestamp).append(" ms ").append(getCategoryName(mCategories[i]));
+                if (mMessages[i] != null) out.append(": ").append(mMessages[i]);
+                if (mFirstArgs[i] != 0 || mSecondArgs[i] != 0) {
+                    out.append(" (").append(mFirstArgs[i]).append(", ").append(mSecondArgs[i]).append(')');
+                }
+                out.append('\n');
+            }
+            return out;
+        }
+
+        /**
+         * Adds a breadcrumb. It is used to fill snapshot decoded from a crash record.
+         */
+        void add(long timestamp, int category, String message, long firstArg, long secondArg) {
+            mTimestamps[mCount] = timestamp;
+            mCategories[mCount] = category;
+            mMessages[mCount] = message;
+            mFirstArgs[mCount] = firstArg;
+            mSecondArgs[mCount] = secondArg;
+            mCount++;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Gate which lets only the first of crashes occurring at the same time on multiple threads be handled.
+ * Crashes which lose the race are kept in a bounded side buffer so that the handled crash can report them
+ * as concurrent crashes. Buffer slots are claimed with a single atomic increment and crashes beyond its
+ * capacity are only counted, so entering the gate never blocks or allocates.
+ * <p>
+ * Gate is reopened once the first crash is handled without process being killed, so a process which
+ * outlives a crash can handle the next one.
+ */
+public final class ConcurrentCrashGate {
+    /**
+     * Default max number of concurrent crashes kept along with the handled crash.
+     */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    // Whether a crash has entered the gate
+    private final AtomicBoolean mEntered = new AtomicBoolean();
+    // Released when handling of the first crash is over without process being killed, replaced on reopen
+    private volatile CountDownLatch mReleased = new CountDownLatch(1);
+    // Number of slots claimed including the ones beyond capacity
+    private final AtomicInteger mClaimed = new AtomicInteger();
+    // Slots of concurrent crashes. Thread name is published before the throwable so that a non null throwable
+    // means the slot is complete.
+    private final AtomicReferenceArray<String> mThreadNames;
+    private final AtomicReferenceArray<Throwable> mThrowables;
+
+    /**
+     * Constructor
+     *
+     * @param capacity max number of concurrent crashes kept
+     */
+    public ConcurrentCrashGate(int capacity) {
+        mThreadNames = new AtomicReferenceArray<>(Math.max(capacity, 1));
+        mThrowables = new AtomicReferenceArray<>(Math.max(capacity, 1));
+    }
+
+    /**
+     * Enters the gate for a crash. First caller wins and is expected to handle its crash. Crashes of other
+     * callers are kept as concurrent crashes while there is room for them.
+     *
+     * @param thread    thread which crashed
+     * @param throwable crash throwable
+     * @return true if crash is the first one and should be handled otherwise false
+     */
+    public boolean enter(Thread thread, Throwable throwable) {
+        if (mEntered.compareAndSet(false, true)) return true;
+        int slot = mClaimed.getAndIncrement();
+        if (slot < mThrowables.length()) {
+            mThreadNames.set(slot, thread.getName());
+            mThrowables.set(slot, throwable);
+        }
+        return false;
+    }
+
+    /**
+     * Runs handler of the crash which entered the gate. Crash is passed to fallback handler unless handler
+     * reports it as handled, including when handler throws anything, so that process still dies the way it
+     * would without handler. Gate is released afterwards in any case.
+     *
+     * @param thread    thread which crashed
+     * @param throwable crash throwable
+     * @param handler   handler of the crash
+     * @param fallback  handler to pass crash to or null
+     * @return throwable thrown by handler or null
+     */
+    public Throwable handle(Thread thread, Throwable throwable, CrashHandler handler,
+                            Thread.UncaughtExceptionHandler fallback) {
+        boolean handled = false;
+        Throwable failure = null;
+        try {
+            handled = handler.handle(thread, throwable);
+        } catch (Throwable t) {
+            failure = t;
+        }
+        try {
+            if (!handled && fallback != null) fallback.uncaughtException(thread, throwable);
+        } finally {
+            release();
+        }
+        return failure;
+    }
+
+    /**
+     * Copies concurrent crashes kept so far. Slots which are claimed but not yet filled are skipped.
+     *
+     * @param threadNames array to copy thread names into
+     * @param throwables  array to copy throwables into
+     * @return number of concurrent crashes copied
+     */
+    public int getConcurrentCrashes(String[] threadNames, Throwable[] throwables) {
+        int count = 0;
+        int claimed = Math.min(mClaimed.get(), mThrowables.length());
+        for (int i = 0; i < claimed && count < throwables.length; i++) {
+            Throwable throwable = mThrowables.get(i);
+            if (throwable == null) continue;
+            threadNames[count] = mThreadNames.get(i);
+            throwables[count++] = throwable;
+        }
+        return count;
+    }
+
+    /**
+     * Returns number of concurrent crashes which did not fit in the side buffer.
+     *
+     * @return number of dropped crashes
+     */
+    public int getDroppedCount() {
+        return Math.max(mClaimed.get() - mThrowables.length(), 0);
+    }
+
+    /**
+     * Tells concurrent crashes waiting in {@link ConcurrentCrashGate#awaitRelease(long)} that handling of
+     * the first crash is over and process is still alive, and reopens the gate for the next crash.
+     */
+    public void release() {
+        CountDownLatch released = mReleased;
+        mReleased = new CountDownLatch(1);
+        for (int i = 0; i < mThrowables.length(); i++) {
+            mThrowables.set(i, null);
+            mThreadNames.set(i, null);
+        }
+        mClaimed.set(0);
+        mEntered.set(false);
+        released.countDown();
+    }
+
+    /**
+     * Waits until first crash is handled. Concurrent crashes wait here so that they do not kill the process
+     * while first crash is being handled.
+     *
+     * @param timeoutMs max time to wait in milliseconds
+     * @return true if released otherwise false if timed out or interrupted
+     */
+    public boolean awaitRelease(long timeoutMs) {
+        CountDownLatch released = mReleased;
+        // Gate reopened after this crash entered it so its latch is already released
+        if (!mEntered.get()) return true;
+        try {
+            return released.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Handler of the crash which entered the gate.
+     */
+    public interface CrashHandler {
+        /**
+         * Handles crash.
+         *
+         * @param thread    thread which crashed
+         * @param throwable crash throwable
+         * @return true if crash is handled or false to pass it to fallback handler
+         * @throws Throwable if handling fails in which case crash is passed to fallback handler
+         */
+        boolean handle(Thread thread, Throwable throwable) throws Throwable;
+    }
+}
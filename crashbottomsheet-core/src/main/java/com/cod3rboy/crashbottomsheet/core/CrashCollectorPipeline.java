@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs app provided collectors of extra crash context e.g. memory stats, app state or feature flags at crash
+ * time. Collectors run concurrently on a small pool of threads which are started up front, and crash handler
+ * waits for them only until one global deadline so extra context never delays exit of the crashed process
+ * by more than a fixed bound. Output of collectors which finish in time is kept while collectors which time
+ * out or fail are listed by name.
+ * <p>
+ * Collectors can be added from any thread. Collecting is meant to be done once by the crash handler.
+ */
+public final class CrashCollectorPipeline {
+    /**
+     * Default time crash handler waits for all collectors.
+     */
+    public static final long DEFAULT_DEADLINE_MS = 500;
+    /**
+     * Default number of threads collectors run on.
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    /**
+     * Collects extra context of a crash.
+     */
+    public interface Collector {
+        /**
+         * Invoked on a collector thread while crashed thread waits. It should only read state which is
+         * already at hand, as it is abandoned once the deadline passes.
+         *
+         * @param thread thread which crashed
+         * @param crash  crash throwable
+         * @param out    builder to append collected text to
+         * @throws Exception if context cannot be collected
+         */
+        void collect(Thread thread, Throwable crash, StringBuilder out) throws Exception;
+    }
+
+    // Task states
+    private static final int IDLE = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+    private static final int DONE = 3;
+    private static final int FAILED = 4;
+
+    private final ThreadPoolExecutor mExecutor;
+    // Registered collectors, replaced as a whole when one is added
+    private volatile Task[] mTasks = new Task[0];
+
+    /**
+     * Constructor. Collector threads are started right away.
+     *
+     * @param threads number of threads collectors run on
+     */
+    public CrashCollectorPipeline(int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        threads = Math.max(threads, 1);
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), runnable -> {
+            Thread thread = new Thread(runnable, "CrashBottomSheet-Collector-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        mExecutor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Adds a collector.
+     *
+     * @param name      name under which output of collector is listed
+     * @param collector collector
+     */
+    public synchronized void add(String name, Collector collector) {
+        Task[] tasks = new Task[mTasks.length + 1];
+        System.arraycopy(mTasks, 0, tasks, 0, mTasks.length);
+        tasks[mTasks.length] = new Task(name, collector);
+        mTasks = tasks;
+    }
+
+    /**
+     * Returns number of collectors added.
+     *
+     * @return collector count
+     */
+    public int getCollectorCount() {
+        return mTasks.length;
+    }
+
+    /**
+     * Runs all collectors concurrently and appends output of the ones which finish before the deadline,
+     * each under its name. Collectors which time out or fail are listed after them. Collectors still running
+     * from an earlier call are not run again and count as timed out.
+     *
+     * @param thread     thread which crashed
+     * @param crash      crash throwable
+     * @param deadlineMs time to wait for all collectors
+     * @param out        builder to append collected text to
+     * @return number of collectors which did not finish in time
+     */
+    public int collect(Thread thread, Throwable crash, long deadlineMs, StringBuilder out) {
+        Task[] tasks = mTasks;
+        if (tasks.length == 0) return 0;
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(deadlineMs, 0));
+        CountDownLatch finished = new CountDownLatch(tasks.length);
+        for (Task task : tasks) {
+            if (!task.mState.compareAndSet(IDLE, QUEUED) && !task.mState.compareAndSet(DONE, QUEUED)
+                    && !task.mState.compareAndSet(FAILED, QUEUED)) {
+                finished.countDown(); // Stuck since an earlier crash
+                continue;
+            }
+            task.prepare(thread, crash, finished);
+            try {
+                mExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.mState.set(IDLE);
+                finished.countDown();
+            }
+        }
+        try {
+            finished.await(Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int timedOut = 0;
+        for (Task task : tasks) {
+            if (task.mState.get() == DONE) {
+                out.append('[').append(task.mName).append("]\n").append(task.mOutput);
+                if (task.mOutput.length() > 0 && task.mOutput.charAt(task.mOutput.length() - 1) != '\n') {
+                    out.append('\n');
+                }
+            }
+        }
+        for (Task task : tasks) {
+            int state = task.mState.get();
+            if (state == DONE) continue;
+            out.append('[').append(task.mName).append("] ");
+            if (state == FAILED) {
+                out.append("failed: ").append(task.mError).append('\n');
+            } else {
+                out.append("timed out after ").append(deadlineMs).append(" ms\n");
+                timedOut++;
+            }
+        }
+        return timedOut;
+    }
+
+    /**
+     * Stops collector threads. Collectors still running are interrupted.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Runs one collector into its own output so that an abandoned collector never writes into crash report.
+     */
+    private static final class Task implements Runnable {
+        final String mName;
+        final Collector mCollector;
+        final AtomicInteger mState = new AtomicInteger(IDLE);
+        final StringBuilder mOutput = new StringBuilder();
+        Thread mThread;
+        Throwable mCrash;
+        CountDownLatch mFinished;
+        // Set before state becomes FAILED
+        String mError;
+
+        Task(String name, Collector collector) {
+            mName = name;
+            mCollector = collector;
+        }
+
+        /**
+         * Sets crash of next run. Fields are published to collector thread by handing task to executor.
+         */
+        void prepare(Thread thread, Throwable crash, CountDownLatch finished) {
+            mThread = thread;
+            mCrash = crash;
+            mFinished = finished;
+            mOutput.setLength(0);
+            mError = null;
+        }
+
+        @Override
+        public void run() {
+            CountDownLatch finished = mFinished;
+            mState.set(RUNNING);
+            try {
+                mCollector.collect(mThread, mCrash, mOutput);
+                mState.set(DONE);
+            } catch (Throwable e) {
+                mError = e.toString();
+                mState.set(FAILED);
+            } finally {
+                mThread = null;
+                mCrash = null;
+                finished.countDown();
+            }
+        }
+    }
+}
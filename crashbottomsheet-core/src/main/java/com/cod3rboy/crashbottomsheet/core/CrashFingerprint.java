@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Computes stable fingerprint of a crash so that repeated occurrences of same crash can be recognized.
+ * Fingerprint is a 64 bit FNV-1a hash of the exception class chain and normalized top frames of the
+ * root cause. Hash is computed character by character so it does not allocate.
+ */
+public final class CrashFingerprint {
+    /**
+     * Default number of top frames of root cause included in fingerprint.
+     */
+    public static final int DEFAULT_TOP_FRAMES = 8;
+
+    // Max number of throwables walked in cause chain
+    private static final int MAX_CAUSES = 16;
+    // FNV-1a 64 bit parameters
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Number of top frames of root cause included in fingerprint
+    private final int mTopFrames;
+    // Whether line numbers are included in fingerprint
+    private final boolean mIncludeLineNumbers;
+    // Whether lambda and synthetic names are included as they are
+    private final boolean mIncludeSyntheticNames;
+
+    /**
+     * Constructor
+     *
+     * @param topFrames             number of top frames of root cause to include
+     * @param includeLineNumbers    whether to include line numbers
+     * @param includeSyntheticNames whether to include generated numbers in lambda and synthetic
+     *                              names e.g. lambda$onCreate$0, access$000, Foo$1
+     */
+    public CrashFingerprint(int topFrames, boolean includeLineNumbers, boolean includeSyntheticNames) {
+        mTopFrames = Math.max(topFrames, 1);
+        mIncludeLineNumbers = includeLineNumbers;
+        mIncludeSyntheticNames = includeSyntheticNames;
+    }
+
+    /**
+     * Computes fingerprint of given throwable.
+     *
+     * @param throwable crash throwable
+     * @return fingerprint
+     */
+    public long compute(Throwable throwable) {
+        return compute(throwable, null);
+    }
+
+    /**
+     * Computes fingerprint of given throwable reading frames through a cache shared with other writers.
+     *
+     * @param throwable crash throwable
+     * @param traces    frames of crash throwables or null to read them directly
+     * @return fingerprint
+     */
+    public long compute(Throwable throwable, StackTraceCache traces) {
+        long hash = FNV_OFFSET_BASIS;
+        Throwable rootCause = throwable;
+        for (int depth = 0; throwable != null && depth < MAX_CAUSES; throwable = throwable.getCause(), depth++) {
+            hash = hash(hash, throwable.getClass().getName(), false);
+            hash = hash(hash, '>');
+            rootCause = throwable;
+        }
+        return hashFrames(hash, traces == null ? rootCause.getStackTrace() : traces.get(rootCause));
+    }
+
+    /**
+     * Computes fingerprint of a stack which is not thrown e.g. stack of a hung thread. It equals fingerprint
+     * of a throwable of given name without causes which has the same stack trace.
+     *
+     * @param name  name identifying kind of problem in place of throwable class name
+     * @param trace stack trace
+     * @return fingerprint
+     */
+    public long compute(String name, StackTraceElement[] trace) {
+        return hashFrames(hash(hash(FNV_OFFSET_BASIS, name, false), '>'), trace);
+    }
+
+    /**
+     * Hashes top frames of stack trace.
+     */
+    private long hashFrames(long hash, StackTraceElement[] trace) {
+        int frames = Math.min(trace.length, mTopFrames);
+        for (int i = 0; i < frames; i++) {
+            StackTraceElement frame = trace[i];
+            hash = hash(hash, frame.getClassName(), !mIncludeSyntheticNames);
+            hash = hash(hash, '.');
+            hash = hash(hash, frame.getMethodName(), !mIncludeSyntheticNames);
+            if (mIncludeLineNumbers) {
+                int line = frame.getLineNumber();
+                hash = hash(hash, ':');
+                for (int b = 0; b < 32; b += 8) hash = hash(hash, (char) ((line >>> b) & 0xFF));
+            }
+            hash = hash(hash, '\n');
+        }
+        return hash;
+    }
+
+    /**
+     * Returns fingerprint as a fixed length hexadecimal string.
+     *
+     * @param fingerprint fingerprint
+     * @return 16 character hexadecimal string
+     */
+    @NonNull
+    public static String toHexString(long fingerprint) {
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX_DIGITS[(int) (fingerprint & 0xF)];
+            fingerprint >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Hashes a name optionally normalizing generated parts of it. Digits following '$' are skipped
+     * and hidden class suffix after '/' is dropped when normalizing.
+     */
+    private static long hash(long hash, String name, boolean normalize) {
+        if (name == null) return hash;
+        boolean afterDollar = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (normalize) {
+                if (c == '/') break; // Hidden class suffix e.g. $$Lambda$Foo$1/0x1234
+                if (afterDollar && c >= '0' && c <= '9') continue;
+                afterDollar = c == '$';
+            }
+            hash = hash(hash, c);
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, char c) {
+        hash ^= c & 0xFF;
+        hash *= FNV_PRIME;
+        hash ^= c >>> 8;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+}
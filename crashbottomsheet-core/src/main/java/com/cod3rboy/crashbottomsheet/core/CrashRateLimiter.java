@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Crash rate limiter which remembers timestamps of recent crashes for which bottom sheet is shown
+ * and applies a sliding window or exponential backoff policy to prevent CrashLoop.
+ * Timestamps are kept in a fixed size ring inside a tiny buffer, usually a memory mapped file so they
+ * survive process death, and are read and written in constant time at crash time.
+ */
+public final class CrashRateLimiter {
+    /**
+     * Max number of crashes remembered to apply policy.
+     */
+    public static final int MAX_REMEMBERED_CRASHES = 16;
+
+    // Magic number at start of file i.e. "CBR1"
+    private static final int MAGIC = 0x43425231;
+    // Offsets of fields in file
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_HEAD = 4; // Index of ring slot to write next timestamp into
+    private static final int OFFSET_SIZE = 8; // Number of timestamps in ring
+    private static final int OFFSET_STREAK = 12; // Number of crashes in current backoff streak
+    private static final int OFFSET_RING = 16;
+    private static final int RING_SIZE = MAX_REMEMBERED_CRASHES;
+    /**
+     * Size of buffer holding crash timestamps.
+     */
+    public static final int BUFFER_SIZE = OFFSET_RING + RING_SIZE * 8;
+    // Max shift of initial interval in exponential backoff
+    private static final int MAX_BACKOFF_SHIFT = 30;
+
+    // Buffer holding crash timestamps
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Constructor
+     *
+     * @param buffer buffer of {@link CrashRateLimiter#BUFFER_SIZE} bytes holding crash timestamps
+     */
+    public CrashRateLimiter(ByteBuffer buffer) {
+        mBuffer = buffer;
+        if (mBuffer.getInt(OFFSET_MAGIC) != MAGIC || !isValid()) {
+            // New or corrupted content
+            for (int i = 0; i < BUFFER_SIZE; i += 4) mBuffer.putInt(i, 0);
+            mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+        }
+    }
+
+    /**
+     * Applies sliding window policy to a crash and remembers it if it is allowed.
+     *
+     * @param now        current timestamp in milliseconds
+     * @param maxCrashes max number of crashes in window from 1 to {@link CrashRateLimiter#MAX_REMEMBERED_CRASHES}
+     * @param windowMs   length of window in milliseconds
+     * @return true if bottom sheet can be shown for the crash otherwise false
+     */
+    public boolean tryAcquireSlidingWindow(long now, int maxCrashes, long windowMs) {
+        return tryAcquire(now, false, maxCrashes, windowMs, windowMs);
+    }
+
+    /**
+     * Applies exponential backoff policy to a crash and remembers it if it is allowed.
+     *
+     * @param now               current timestamp in milliseconds
+     * @param initialIntervalMs initial gap in milliseconds
+     * @param maxIntervalMs     max gap in milliseconds
+     * @return true if bottom sheet can be shown for the crash otherwise false
+     */
+    public boolean tryAcquireExponentialBackoff(long now, long initialIntervalMs, long maxIntervalMs) {
+        return tryAcquire(now, true, 1, initialIntervalMs, maxIntervalMs);
+    }
+
+    /**
+     * Applies policy to a crash and remembers it if it is allowed.
+     */
+    private boolean tryAcquire(long now, boolean backoff, int maxCrashes, long intervalMs, long maxIntervalMs) {
+        int head = mBuffer.getInt(OFFSET_HEAD);
+        int size = mBuffer.getInt(OFFSET_SIZE);
+        int streak = mBuffer.getInt(OFFSET_STREAK);
+        if (backoff) {
+            if (size > 0) {
+                long elapsed = now - getTimestamp(head, 1);
+                if (elapsed >= 0 && elapsed > maxIntervalMs) {
+                    streak = 0; // Quiet for long enough so start over
+                } else {
+                    int shift = Math.min(Math.max(streak - 1, 0), MAX_BACKOFF_SHIFT);
+                    long requiredGap = Math.min(intervalMs << shift, maxIntervalMs);
+                    if (elapsed >= 0 && elapsed < requiredGap) return false;
+                }
+            }
+            streak++;
+        } else if (size >= maxCrashes) {
+            // Oldest crash among the last allowed ones must be out of window
+            long elapsed = now - getTimestamp(head, maxCrashes);
+            if (elapsed >= 0 && elapsed < intervalMs) return false;
+        }
+        mBuffer.putLong(OFFSET_RING + head * 8, now);
+        mBuffer.putInt(OFFSET_HEAD, (head + 1) % RING_SIZE);
+        mBuffer.putInt(OFFSET_SIZE, Math.min(size + 1, RING_SIZE));
+        mBuffer.putInt(OFFSET_STREAK, streak);
+        return true;
+    }
+
+    /**
+     * Returns timestamp of n-th most recent crash.
+     *
+     * @param head index of ring slot to write next timestamp into
+     * @param n    1 for most recent crash, 2 for the one before it and so on
+     * @return crash timestamp
+     */
+    private long getTimestamp(int head, int n) {
+        int index = (head - n + RING_SIZE) % RING_SIZE;
+        return mBuffer.getLong(OFFSET_RING + index * 8);
+    }
+
+    /**
+     * Checks whether ring indices read from file are within bounds.
+     *
+     * @return true if file content is valid otherwise false
+     */
+    private boolean isValid() {
+        int head = mBuffer.getInt(OFFSET_HEAD);
+        int size = mBuffer.getInt(OFFSET_SIZE);
+        return head >= 0 && head < RING_SIZE && size >= 0 && size <= RING_SIZE
+                && mBuffer.getInt(OFFSET_STREAK) >= 0;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Crash record decoded by {@link CrashRecordReader}.
+ */
+public final class CrashRecord {
+    /**
+     * Number of device strings in a record.
+     */
+    public static final int DEVICE_STRING_COUNT = 9;
+
+    private final long mTimestamp;
+    private final String[] mDeviceStrings;
+    private final long[] mDeviceValues;
+    private final ThrowableRecord mThrowable;
+    private final String[] mConcurrentThreadNames;
+    private final ThrowableRecord[] mConcurrentCrashes;
+    private final BreadcrumbRing.Snapshot mBreadcrumbs;
+    private final String mThreadDump;
+    private final String mCollectedData;
+    private final FrameTimeHistogram.Snapshot mFrameTiming;
+
+    CrashRecord(long timestamp, String[] deviceStrings, long[] deviceValues, ThrowableRecord throwable,
+                String[] concurrentThreadNames, ThrowableRecord[] concurrentCrashes,
+                BreadcrumbRing.Snapshot breadcrumbs, String threadDump, String collectedData,
+                FrameTimeHistogram.Snapshot frameTiming) {
+        mTimestamp = timestamp;
+        mDeviceStrings = deviceStrings;
+        mDeviceValues = deviceValues;
+        mThrowable = throwable;
+        mConcurrentThreadNames = concurrentThreadNames == null ? new String[0] : concurrentThreadNames;
+        mConcurrentCrashes = concurrentCrashes == null ? new ThrowableRecord[0] : concurrentCrashes;
+        mBreadcrumbs = breadcrumbs;
+        mThreadDump = threadDump;
+        mCollectedData = collectedData;
+        mFrameTiming = frameTiming;
+    }
+
+    /**
+     * @return crash timestamp in milliseconds
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * @return whether record holds device information
+     */
+    public boolean hasDeviceInfo() {
+        return mDeviceStrings != null;
+    }
+
+    /**
+     * Returns device strings in the order given to
+     * {@link CrashRecordWriter#writeDeviceInfo(String[], long, long, long, long, int, int)}.
+     *
+     * @return device strings or null if record does not hold device information
+     */
+    @Nullable
+    public String[] getDeviceStrings() {
+        return mDeviceStrings == null ? null : mDeviceStrings.clone();
+    }
+
+    /**
+     * Returns free memory, total memory, max memory, available storage, battery level and orientation.
+     *
+     * @return device values or null if record does not hold device information
+     */
+    @Nullable
+    public long[] getDeviceValues() {
+        return mDeviceValues == null ? null : mDeviceValues.clone();
+    }
+
+    /**
+     * @return crash throwable
+     */
+    @NonNull
+    public ThrowableRecord getThrowable() {
+        return mThrowable;
+    }
+
+    /**
+     * @return number of crashes which occurred on other threads at the same time
+     */
+    public int getConcurrentCrashCount() {
+        return mConcurrentCrashes.length;
+    }
+
+    /**
+     * @param index index of concurrent crash
+     * @return name of thread of concurrent crash
+     */
+    public String getConcurrentThreadName(int index) {
+        return mConcurrentThreadNames[index];
+    }
+
+    /**
+     * @param index index of concurrent crash
+     * @return throwable of concurrent crash
+     */
+    @NonNull
+    public ThrowableRecord getConcurrentCrash(int index) {
+        return mConcurrentCrashes[index];
+    }
+
+    /**
+     * @return breadcrumbs recorded before the crash or null if record does not hold them
+     */
+    @Nullable
+    public BreadcrumbRing.Snapshot getBreadcrumbs() {
+        return mBreadcrumbs;
+    }
+
+    /**
+     * @return dump of all threads taken at crash time or null if record does not hold it
+     */
+    @Nullable
+    public String getThreadDump() {
+        return mThreadDump;
+    }
+
+    /**
+     * @return output of crash collectors or null if record does not hold it
+     */
+    @Nullable
+    public String getCollectedData() {
+        return mCollectedData;
+    }
+
+    /**
+     * @return frame time statistics of the seconds before the crash or null if record does not hold them
+     */
+    @Nullable
+    public FrameTimeHistogram.Snapshot getFrameTiming() {
+        return mFrameTiming;
+    }
+
+    /**
+     * Throwable decoded from a crash record.
+     */
+    public static final class ThrowableRecord {
+        private static final ThrowableRecord[] NO_THROWABLES = new ThrowableRecord[0];
+
+        private final String mClassName;
+        private final String mMessage;
+        private final boolean mCircular;
+        private final StackTraceElement[] mFrames;
+        // Repeated cycles as triples of index of first frame after cycle, period and number of more times,
+        // and omitted frames as triples of index of first frame after them, 0 and number of omitted frames
+        private final int[] mRepeats;
+        private final int mFramesInCommon;
+        private final ThrowableRecord[] mSuppressed;
+        private final int mCausesOmitted;
+        private final ThrowableRecord mCause;
+
+        ThrowableRecord(String className, String message) {
+            this(className, message, true, new StackTraceElement[0], new int[0], 0, NO_THROWABLES, 0, null);
+        }
+
+        ThrowableRecord(String className, String message, boolean circular, StackTraceElement[] frames,
+                        int[] repeats, int framesInCommon, ThrowableRecord[] suppressed, int causesOmitted,
+                        ThrowableRecord cause) {
+            mClassName = className;
+            mMessage = message;
+            mCircular = circular;
+            mFrames = frames;
+            mRepeats = repeats;
+            mFramesInCommon = framesInCommon;
+            mSuppressed = suppressed;
+            mCausesOmitted = causesOmitted;
+            mCause = cause;
+        }
+
+        /**
+         * @return class name of throwable
+         */
+        public String getClassName() {
+            return mClassName;
+        }
+
+        /**
+         * @return localized message of throwable or null
+         */
+        @Nullable
+        public String getMessage() {
+            return mMessage;
+        }
+
+        /**
+         * @return whether this is a reference to a throwable which appears earlier in the record
+         */
+        public boolean isCircular() {
+            return mCircular;
+        }
+
+        /**
+         * Returns written frames. Frames of collapsed cycles are written once and frames in common with
+         * enclosing throwable are not written. Frames in the middle of a long stack trace may be omitted.
+         *
+         * @return written frames
+         */
+        public StackTraceElement[] getFrames() {
+            return mFrames.clone();
+        }
+
+        /**
+         * @return number of frames in common with enclosing throwable
+         */
+        public int getFramesInCommon() {
+            return mFramesInCommon;
+        }
+
+        /**
+         * @return suppressed throwables
+         */
+        public ThrowableRecord[] getSuppressed() {
+            return mSuppressed.clone();
+        }
+
+        /**
+         * @return number of causes left out between this throwable and its cause to keep the record small
+         */
+        public int getCausesOmitted() {
+            return mCausesOmitted;
+        }
+
+        /**
+         * @return cause or null
+         */
+        @Nullable
+        public ThrowableRecord getCause() {
+            return mCause;
+        }
+
+        int[] getRepeats() {
+            return mRepeats;
+        }
+
+        StackTraceElement[] getFramesInternal() {
+            return mFrames;
+        }
+
+        ThrowableRecord[] getSuppressedInternal() {
+            return mSuppressed;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+/**
+ * Constants of binary crash record format written by {@link CrashRecordWriter} and read by
+ * {@link CrashRecordReader}.
+ * <pre>
+ * record     := magic:"CBT" version:u8 flags:u8 timestamp:varint [device] throwable [concurrent] [breadcrumbs] [threads]
+ *               [collected] [frames]
+ * device     := 9 x string(app name, package name, APK version, Android code name, Android version,
+ *               manufacturer, model, brand, product)
+ *               4 x zigzag(free memory, total memory, max memory, available storage)
+ *               2 x zigzag(battery level, orientation)
+ * concurrent := count:varint (thread:string throwable)*
+ * breadcrumbs := count:varint (time:zigzag(relative to timestamp) category:varint message:string first:zigzag
+ *                second:zigzag)*
+ * threads    := length:varint utf8 (thread dump text which is not interned)
+ * collected  := length:varint utf8 (output of crash collectors which is not interned)
+ * frames     := 7 x varint(window seconds, frame count, frozen frame count, p50, p90, p99 and max frame time
+ *               in microseconds)
+ * throwable  := KIND_CIRCULAR class:string message:string
+ *             | KIND_THROWABLE class:string message:string framesInCommon:varint opCount:varint op*
+ *               suppressedCount:varint throwable* cause
+ * cause      := CAUSE_NONE | CAUSE_PRESENT throwable | CAUSE_OMITTED omittedCauses:varint throwable(root cause)
+ * op         := OP_FRAME class:string method:string file:string line:zigzag
+ *             | OP_REPEAT period:varint moreTimes:varint
+ *             | OP_OMIT omittedFrames:varint
+ * string     := 0 (null) | 1 length:varint utf8 (new string appended to string table) | 2 + table index
+ * </pre>
+ * Strings are interned in a string table built while the record is streamed, so every class, method and
+ * file name is written only once. Integers are unsigned LEB128 varints and signed values are zigzag encoded.
+ * Counts which are known only after the items are written are varints padded with continuation bytes.
+ */
+final class CrashRecordFormat {
+    static final byte MAGIC_0 = 'C';
+    static final byte MAGIC_1 = 'B';
+    static final byte MAGIC_2 = 'T';
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 5; // magic, version and flags
+
+    // Record flags
+    static final int FLAG_DEVICE_INFO = 1;
+    static final int FLAG_CONCURRENT_CRASHES = 1 << 1;
+    static final int FLAG_THREAD_DUMP = 1 << 2;
+    static final int FLAG_BREADCRUMBS = 1 << 3;
+    static final int FLAG_COLLECTED_DATA = 1 << 4;
+    static final int FLAG_FRAME_TIMING = 1 << 5;
+
+    // Throwable kinds
+    static final int KIND_THROWABLE = 0;
+    static final int KIND_CIRCULAR = 1;
+
+    // Frame ops
+    static final int OP_FRAME = 0;
+    static final int OP_REPEAT = 1;
+    static final int OP_OMIT = 2;
+
+    // Cause kinds
+    static final int CAUSE_NONE = 0;
+    static final int CAUSE_PRESENT = 1;
+    static final int CAUSE_OMITTED = 2;
+
+    // String references
+    static final int STRING_NULL = 0;
+    static final int STRING_NEW = 1;
+    static final int STRING_TABLE_BASE = 2;
+
+    // Max number of throwables in each crash of a record
+    static final int MAX_THROWABLES = 64;
+
+    private CrashRecordFormat() {
+    }
+}
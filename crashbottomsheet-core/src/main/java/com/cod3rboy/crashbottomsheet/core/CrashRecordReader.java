@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * Reader of binary crash records written by {@link CrashRecordWriter}.
+ */
+public final class CrashRecordReader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] mBuffer;
+    private final int mEnd;
+    private int mPosition;
+    private final ArrayList<String> mStrings = new ArrayList<>();
+    private int mThrowableCount;
+
+    private CrashRecordReader(byte[] buffer, int offset, int length) {
+        mBuffer = buffer;
+        mPosition = offset;
+        mEnd = offset + length;
+    }
+
+    /**
+     * Returns whether given bytes start with binary crash record magic.
+     *
+     * @param buffer bytes
+     * @param offset offset of record
+     * @param length number of bytes available
+     * @return whether bytes look like a binary crash record
+     */
+    public static boolean isCrashRecord(byte[] buffer, int offset, int length) {
+        return length >= CrashRecordFormat.HEADER_SIZE
+                && buffer[offset] == CrashRecordFormat.MAGIC_0
+                && buffer[offset + 1] == CrashRecordFormat.MAGIC_1
+                && buffer[offset + 2] == CrashRecordFormat.MAGIC_2;
+    }
+
+    /**
+     * Decodes a crash record.
+     *
+     * @param buffer bytes
+     * @param offset offset of record
+     * @param length length of record
+     * @return decoded record
+     * @throws IOException if record is malformed or has unsupported version
+     */
+    public static CrashRecord read(byte[] buffer, int offset, int length) throws IOException {
+        if (!isCrashRecord(buffer, offset, length)) throw new IOException("Not a crash record");
+        if (buffer[offset + 3] != CrashRecordFormat.VERSION) {
+            throw new IOException("Unsupported crash record version " + buffer[offset + 3]);
+        }
+        return new CrashRecordReader(buffer, offset + 3 + 1, length - 3 - 1).readRecord();
+    }
+
+    private CrashRecord readRecord() throws IOException {
+        int flags = readByte();
+        long timestamp = readVarLong();
+        String[] deviceStrings = null;
+        long[] deviceValues = null;
+        if ((flags & CrashRecordFormat.FLAG_DEVICE_INFO) != 0) {
+            deviceStrings = new String[CrashRecord.DEVICE_STRING_COUNT];
+            for (int i = 0; i < deviceStrings.length; i++) deviceStrings[i] = readString();
+            deviceValues = new long[6];
+            for (int i = 0; i < deviceValues.length; i++) deviceValues[i] = readZigZag();
+        }
+        CrashRecord.ThrowableRecord throwable = readThrowable();
+        String[] concurrentThreadNames = null;
+        CrashRecord.ThrowableRecord[] concurrentCrashes = null;
+        if ((flags & CrashRecordFormat.FLAG_CONCURRENT_CRASHES) != 0) {
+            int count = readCount();
+            concurrentThreadNames = new String[count];
+            concurrentCrashes = new CrashRecord.ThrowableRecord[count];
+            for (int i = 0; i < count; i++) {
+                mThrowableCount = 0;
+                concurrentThreadNames[i] = readString();
+                concurrentCrashes[i] = readThrowable();
+            }
+        }
+        BreadcrumbRing.Snapshot breadcrumbs = null;
+        if ((flags & CrashRecordFormat.FLAG_BREADCRUMBS) != 0) {
+            breadcrumbs = new BreadcrumbRing.Snapshot(readCount());
+            for (int i = 0; i < breadcrumbs.getCapacity(); i++) {
+                long time = timestamp + readZigZag();
+                int category = readVarInt();
+                String message = readString();
+                breadcrumbs.add(time, category, message, readZigZag(), readZigZag());
+            }
+        }
+        String threadDump = null;
+        if ((flags & CrashRecordFormat.FLAG_THREAD_DUMP) != 0) {
+            int length = readCount();
+            threadDump = new String(mBuffer, mPosition, length, UTF_8);
+            mPosition += length;
+        }
+        String collectedData = null;
+        if ((flags & CrashRecordFormat.FLAG_COLLECTED_DATA) != 0) {
+            int length = readCount();
+            collectedData = new String(mBuffer, mPosition, length, UTF_8);
+            mPosition += length;
+        }
+        FrameTimeHistogram.Snapshot frameTiming = null;
+        if ((flags & CrashRecordFormat.FLAG_FRAME_TIMING) != 0) {
+            frameTiming = new FrameTimeHistogram.Snapshot(readVarInt(), readVarLong(), readVarInt(),
+                    readVarLong(), readVarLong(), readVarLong(), readVarLong());
+        }
+        if (mPosition != mEnd) throw new IOException("Trailing bytes in crash record");
+        return new CrashRecord(timestamp, deviceStrings, deviceValues, throwable,
+                concurrentThreadNames, concurrentCrashes, breadcrumbs, threadDump, collectedData, frameTiming);
+    }
+
+    private CrashRecord.ThrowableRecord readThrowable() throws IOException {
+        if (++mThrowableCount > CrashRecordFormat.MAX_THROWABLES) throw new IOException("Too many throwables");
+        int kind = readVarInt();
+        String className = readString();
+        String message = readString();
+        if (kind == CrashRecordFormat.KIND_CIRCULAR) return new CrashRecord.ThrowableRecord(className, message);
+        if (kind != CrashRecordFormat.KIND_THROWABLE) throw new IOException("Unknown throwable kind " + kind);
+        int framesInCommon = readVarInt();
+        int ops = readCount();
+        ArrayList<StackTraceElement> frames = new ArrayList<>(ops);
+        int repeatCount = 0;
+        int[] repeats = new int[0];
+        for (int i = 0; i < ops; i++) {
+            int op = readVarInt();
+            if (op == CrashRecordFormat.OP_FRAME) {
+                String declaringClass = readString();
+                String methodName = readString();
+                String fileName = readString();
+                int lineNumber = (int) readZigZag();
+                if (declaringClass == null || methodName == null) throw new IOException("Malformed frame");
+                frames.add(new StackTraceElement(declaringClass, methodName, fileName, lineNumber));
+            } else if (op == CrashRecordFormat.OP_REPEAT) {
+                int period = readVarInt();
+                int moreTimes = readVarInt();
+                if (period <= 0 || period > frames.size()) throw new IOException("Malformed repeat");
+                if (repeatCount + 3 > repeats.length) {
+                    int[] grown = new int[repeats.length + 6];
+                    System.arraycopy(repeats, 0, grown, 0, repeatCount);
+                    repeats = grown;
+                }
+                repeats[repeatCount++] = frames.size();
+                repeats[repeatCount++] = period;
+                repeats[repeatCount++] = moreTimes;
+            } else if (op == CrashRecordFormat.OP_OMIT) {
+                int omitted = readVarInt();
+                if (omitted <= 0) throw new IOException("Malformed omitted frames");
+                if (repeatCount + 3 > repeats.length) {
+                    int[] grown = new int[repeats.length + 6];
+                    System.arraycopy(repeats, 0, grown, 0, repeatCount);
+                    repeats = grown;
+                }
+                repeats[repeatCount++] = frames.size();
+                repeats[repeatCount++] = 0;
+                repeats[repeatCount++] = omitted;
+            } else {
+                throw new IOException("Unknown op " + op);
+            }
+        }
+        if (repeatCount != repeats.length) {
+            int[] trimmed = new int[repeatCount];
+            System.arraycopy(repeats, 0, trimmed, 0, repeatCount);
+            repeats = trimmed;
+        }
+        CrashRecord.ThrowableRecord[] suppressed = new CrashRecord.ThrowableRecord[readCount()];
+        for (int i = 0; i < suppressed.length; i++) suppressed[i] = readThrowable();
+        int causeKind = readByte();
+        int causesOmitted = 0;
+        if (causeKind == CrashRecordFormat.CAUSE_OMITTED) {
+            causesOmitted = readVarInt();
+        } else if (causeKind != CrashRecordFormat.CAUSE_NONE && causeKind != CrashRecordFormat.CAUSE_PRESENT) {
+            throw new IOException("Unknown cause kind " + causeKind);
+        }
+        CrashRecord.ThrowableRecord cause = causeKind != CrashRecordFormat.CAUSE_NONE ? readThrowable() : null;
+        return new CrashRecord.ThrowableRecord(className, message, false,
+                frames.toArray(new StackTraceElement[0]), repeats, framesInCommon, suppressed, causesOmitted, cause);
+    }
+
+    private String readString() throws IOException {
+        int code = readVarInt();
+        if (code == CrashRecordFormat.STRING_NULL) return null;
+        if (code == CrashRecordFormat.STRING_NEW) {
+            int length = readCount();
+            String s = new String(mBuffer, mPosition, length, UTF_8);
+            mPosition += length;
+            mStrings.add(s);
+            return s;
+        }
+        int index = code - CrashRecordFormat.STRING_TABLE_BASE;
+        if (index >= mStrings.size()) throw new IOException("Unknown string " + index);
+        return mStrings.get(index);
+    }
+
+    /**
+     * Reads a count of items which must fit in remaining bytes, guarding against allocations for corrupt input.
+     */
+    private int readCount() throws IOException {
+        int count = readVarInt();
+        if (count < 0 || count > mEnd - mPosition) throw new IOException("Malformed count " + count);
+        return count;
+    }
+
+    private long readZigZag() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readVarInt() throws IOException {
+        long value = readVarLong();
+        if ((value & 0xFFFFFFFF00000000L) != 0) throw new IOException("Malformed varint");
+        return (int) value;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private int readByte() throws IOException {
+        if (mPosition >= mEnd) throw new IOException("Truncated crash record");
+        return mBuffer[mPosition++] & 0xFF;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Renders crash records decoded by {@link CrashRecordReader} back into text. Stack trace is rendered in the
+ * same format as written by {@link StackTraceSerializer} so reports look the same whichever format the
+ * crash was recorded in.
+ */
+public final class CrashRecordRenderer {
+    private static final String CAUSE_CAPTION = "Caused by: ";
+    private static final String SUPPRESSED_CAPTION = "Suppressed: ";
+    private static final String CONCURRENT_CRASH_CAPTION = "Concurrent crash in thread \"";
+    private static final String BREADCRUMBS_CAPTION = "\nBreadcrumbs:\n";
+    private static final String THREAD_DUMP_CAPTION = "\nAll threads:\n";
+    private static final String COLLECTED_DATA_CAPTION = "\nCollected data:\n";
+    private static final String FRAME_TIMING_CAPTION = "\nFrame timing:\n";
+
+    private CrashRecordRenderer() {
+    }
+
+    /**
+     * Renders stack trace of a crash record followed by concurrent crashes, breadcrumbs, thread dump,
+     * collected data and frame timing if any.
+     *
+     * @param record crash record
+     * @return stack trace text
+     */
+    @NonNull
+    public static String renderStackTrace(CrashRecord record) {
+        return appendStackTrace(new StringBuilder(), record).toString();
+    }
+
+    /**
+     * Appends stack trace of a crash record followed by concurrent crashes, breadcrumbs, thread dump,
+     * collected data and frame timing if any.
+     *
+     * @param out    builder to append to
+     * @param record crash record
+     * @return given builder
+     */
+    @NonNull
+    public static StringBuilder appendStackTrace(StringBuilder out, CrashRecord record) {
+        appendThrowable(out, record.getThrowable(), "", 0);
+        for (int i = 0; i < record.getConcurrentCrashCount(); i++) {
+            out.append(CONCURRENT_CRASH_CAPTION).append(record.getConcurrentThreadName(i)).append("\": ");
+            appendThrowable(out, record.getConcurrentCrash(i), "", 0);
+        }
+        if (record.getBreadcrumbs() != null) {
+            record.getBreadcrumbs().appendTo(out.append(BREADCRUMBS_CAPTION), record.getTimestamp());
+        }
+        if (record.getThreadDump() != null) out.append(THREAD_DUMP_CAPTION).append(record.getThreadDump());
+        if (record.getCollectedData() != null) {
+            out.append(COLLECTED_DATA_CAPTION).append(record.getCollectedData());
+        }
+        if (record.getFrameTiming() != null) record.getFrameTiming().appendTo(out.append(FRAME_TIMING_CAPTION));
+        return out;
+    }
+
+    /**
+     * Appends device information of a crash record as formatted by
+     * {@link ReportFormatter#appendDeviceInfo} and {@link ReportFormatter#appendCrashState}.
+     * Nothing is appended if record does not hold device information.
+     *
+     * @param out    builder to append to
+     * @param record crash record
+     * @return given builder
+     */
+    @NonNull
+    public static StringBuilder appendDeviceInfo(StringBuilder out, CrashRecord record) {
+        String[] s = record.getDeviceStrings();
+        long[] v = record.getDeviceValues();
+        if (s == null || v == null) return out;
+        ReportFormatter.appendDeviceInfo(out, s[0], s[1], s[2], s[3], s[4], s[5], s[6], s[7], s[8]);
+        int start = out.length();
+        out.append('\n');
+        ReportFormatter.appendCrashState(out, v[0], v[1], v[2], v[3], (int) v[4], (int) v[5]);
+        if (out.length() == start + 1) out.setLength(start);
+        return out;
+    }
+
+    private static void appendThrowable(StringBuilder out, CrashRecord.ThrowableRecord throwable,
+                                        String caption, int indent) {
+        appendIndent(out, indent).append(caption);
+        if (throwable.isCircular()) {
+            appendHeader(out.append("[CIRCULAR REFERENCE:"), throwable).append("]\n");
+            return;
+        }
+        appendHeader(out, throwable).append('\n');
+        StackTraceElement[] frames = throwable.getFramesInternal();
+        int[] repeats = throwable.getRepeats();
+        int r = 0;
+        for (int i = 0; i <= frames.length; i++) {
+            // Repeat markers follow the frames of their cycle and omitted frames marker precedes bottom frames
+            while (r < repeats.length && repeats[r] == i) {
+                int period = repeats[r + 1];
+                if (period == 0) {
+                    appendIndent(out, indent).append("\t... ").append(repeats[r + 2]).append(" frames omitted\n");
+                } else {
+                    appendIndent(out, indent).append("\t... ").append(period)
+                            .append(period == 1 ? " frame above repeated " : " frames above repeated ")
+                            .append(repeats[r + 2]).append(" more times\n");
+                }
+                r += 3;
+            }
+            if (i < frames.length) StackFrames.appendFrame(appendIndent(out, indent).append("\tat "), frames[i]).append('\n');
+        }
+        if (throwable.getFramesInCommon() != 0) {
+            appendIndent(out, indent).append("\t... ").append(throwable.getFramesInCommon()).append(" more\n");
+        }
+        for (CrashRecord.ThrowableRecord suppressed : throwable.getSuppressedInternal()) {
+            appendThrowable(out, suppressed, SUPPRESSED_CAPTION, indent + 1);
+        }
+        if (throwable.getCausesOmitted() != 0) {
+            appendIndent(out, indent).append("\t... ").append(throwable.getCausesOmitted()).append(" causes omitted\n");
+        }
+        if (throwable.getCause() != null) appendThrowable(out, throwable.getCause(), CAUSE_CAPTION, indent);
+    }
+
+    private static StringBuilder appendHeader(StringBuilder out, CrashRecord.ThrowableRecord throwable) {
+        out.append(throwable.getClassName());
+        if (throwable.getMessage() != null) out.append(": ").append(throwable.getMessage());
+        return out;
+    }
+
+    private static StringBuilder appendIndent(StringBuilder out, int indent) {
+        for (int i = 0; i < indent; i++) out.append('\t');
+        return out;
+    }
+}
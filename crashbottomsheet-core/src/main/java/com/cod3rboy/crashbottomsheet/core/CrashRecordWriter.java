@@ -0,0 +1,773 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming writer of compact binary crash records described in {@link CrashRecordFormat}. Record is written
+ * into a fixed size buffer allocated up front together with the string table, so writing a record does not
+ * allocate other than the frames array handed out by {@link Throwable#getStackTrace()} and can be done from
+ * crash handler.
+ * <p>
+ * Records are compacted while they are written so that they fit in buffer and string table, the same way
+ * {@link StackTraceSerializer} compacts text. Repeated cycles of frames are written once. Each throwable gets
+ * a share of buffer and string table and keeps its top and bottom frames when its frames do not fit in its
+ * share, root cause keeps its top frames and causes above it are omitted when cause chain is too long.
+ * Concurrent crashes, breadcrumbs, thread dump and collected data are each capped to a part of the space left
+ * after crash throwable, so they are cut or left out rather than making the record overflow.
+ * Usage: {@link CrashRecordWriter#begin(long)}, optionally {@link CrashRecordWriter#writeDeviceInfo}, then
+ * {@link CrashRecordWriter#writeThrowable(Throwable)}, optionally {@link CrashRecordWriter#writeConcurrentCrashes},
+ * {@link CrashRecordWriter#writeBreadcrumbs}, {@link CrashRecordWriter#writeThreadDump(CharSequence)} and
+ * {@link CrashRecordWriter#writeCollectedData(CharSequence)} and {@link CrashRecordWriter#writeFrameTiming},
+ * then {@link CrashRecordWriter#finish()}.
+ * Instances are not thread safe.
+ */
+public final class CrashRecordWriter {
+    // Number of slots in string table hash index which is kept at most 3/4 full
+    private static final int TABLE_SLOTS = 4096;
+    private static final int MAX_STRINGS = TABLE_SLOTS * 3 / 4;
+    // Number of bottom frames of a throwable kept when its frames do not fit in its share
+    private static final int TAIL_FRAMES = 8;
+    // Max number of bytes and strings reserved for each throwable which is yet to be written
+    private static final int MAX_RESERVED_BYTES_PER_THROWABLE = 2048;
+    private static final int MAX_RESERVED_STRINGS_PER_THROWABLE = 32;
+    // Number of bytes of a varint written before its value is known, which is then patched in place
+    private static final int PADDED_VARINT_BYTES = 5;
+    // Max number of bytes of omitted frames op
+    private static final int OMIT_OP_BYTES = 1 + PADDED_VARINT_BYTES;
+    // Max number of bytes of frame timing, which is kept free until it is written last
+    private static final int FRAME_TIMING_BYTES = 64;
+    // Number of strings crash throwable leaves in string table for concurrent crashes and breadcrumbs
+    private static final int SECTION_STRINGS = MAX_STRINGS / 4;
+    // Min number of bytes of throwable message kept when it does not fit in share of throwable
+    private static final int MIN_MESSAGE_BYTES = 64;
+    // Marker appended to a message or text section which is cut to fit
+    private static final String TRUNCATION_MARKER = " <TRUNCATED!>";
+
+    // Buffer holding record
+    private final byte[] mBuffer;
+    // Buffer view over mBuffer used to write record into channels
+    private final ByteBuffer mByteBuffer;
+    // Interned strings and their indices in string table, indexed by hash
+    private final String[] mTableKeys = new String[TABLE_SLOTS];
+    private final int[] mTableIndices = new int[TABLE_SLOTS];
+    // Hash slot of each string in order of string table or -1 if string is not interned
+    private final int[] mTableSlots = new int[MAX_STRINGS];
+    private int mStringCount;
+    // Throwables already written, used to detect circular references
+    private final Throwable[] mSeen = new Throwable[CrashRecordFormat.MAX_THROWABLES];
+    private int mSeenCount;
+    // Number of throwables and circular references written for current crash
+    private int mWrittenCount;
+    // Number of throwables to be written for current crash
+    private int mThrowableCount;
+    // Last cause of current crash or null if it has none
+    private Throwable mRootCause;
+    // End of buffer and string table share of current crash and their sizes
+    private int mEnd;
+    private int mStringsEnd;
+    private int mShareBytes;
+    private int mShareStrings;
+    // Timestamp of current record
+    private long mTimestamp;
+    // Number of bytes written in mBuffer
+    private int mLength;
+    // Whether record does not fit in buffer or string table
+    private boolean mOverflow;
+    // Frames of crash throwables or null
+    private final StackTraceCache mTraces;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes max number of bytes in a record
+     */
+    public CrashRecordWriter(int maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * Constructor of writer which reads frames through a cache shared with other writers of a crash.
+     *
+     * @param maxBytes max number of bytes in a record
+     * @param traces   frames of crash throwables or null to read them directly
+     */
+    public CrashRecordWriter(int maxBytes, StackTraceCache traces) {
+        mBuffer = new byte[Math.max(maxBytes, StackTraceSerializer.MIN_MAX_BYTES)];
+        mByteBuffer = ByteBuffer.wrap(mBuffer);
+        mTraces = traces;
+    }
+
+    /**
+     * Writes a crash record holding given throwable.
+     *
+     * @param timestamp crash timestamp in milliseconds
+     * @param throwable crash throwable
+     * @return number of bytes written or -1 if record does not fit
+     */
+    public int write(long timestamp, Throwable throwable) {
+        begin(timestamp);
+        writeThrowable(throwable);
+        return finish();
+    }
+
+    /**
+     * Starts a new record discarding any previously written content.
+     *
+     * @param timestamp crash timestamp in milliseconds
+     */
+    public void begin(long timestamp) {
+        for (int i = 0; i < TABLE_SLOTS; i++) mTableKeys[i] = null; // Do not retain strings of previous record
+        mStringCount = 0;
+        mSeenCount = 0;
+        mLength = 0;
+        mOverflow = false;
+        mTimestamp = timestamp;
+        writeByte(CrashRecordFormat.MAGIC_0);
+        writeByte(CrashRecordFormat.MAGIC_1);
+        writeByte(CrashRecordFormat.MAGIC_2);
+        writeByte(CrashRecordFormat.VERSION);
+        writeByte(0); // Flags
+        writeVarLong(timestamp);
+    }
+
+    /**
+     * Writes device information. It must be called after {@link CrashRecordWriter#begin(long)} and before
+     * {@link CrashRecordWriter#writeThrowable(Throwable)}.
+     *
+     * @param strings          app name, package name, APK version, Android code name, Android version,
+     *                         manufacturer, model, brand and product
+     * @param freeMemory       free heap memory in bytes or {@link ReportFormatter#UNKNOWN}
+     * @param totalMemory      total heap memory in bytes
+     * @param maxMemory        max heap memory in bytes
+     * @param availableStorage available storage in bytes or {@link ReportFormatter#UNKNOWN}
+     * @param batteryLevel     battery level in percentage or {@link ReportFormatter#UNKNOWN}
+     * @param orientation      screen orientation
+     */
+    public void writeDeviceInfo(String[] strings, long freeMemory, long totalMemory, long maxMemory,
+                                long availableStorage, int batteryLevel, int orientation) {
+        if (strings.length != CrashRecord.DEVICE_STRING_COUNT) {
+            throw new IllegalArgumentException("Expected " + CrashRecord.DEVICE_STRING_COUNT + " device strings");
+        }
+        setFlag(CrashRecordFormat.FLAG_DEVICE_INFO);
+        for (String s : strings) writeString(s);
+        writeZigZag(freeMemory);
+        writeZigZag(totalMemory);
+        writeZigZag(maxMemory);
+        writeZigZag(availableStorage);
+        writeZigZag(batteryLevel);
+        writeZigZag(orientation);
+    }
+
+    /**
+     * Writes crash throwable along with its suppressed exceptions and causes. It can take all of the buffer
+     * left other than the space kept for frame timing, and 3/4 of string table.
+     *
+     * @param throwable crash throwable
+     */
+    public void writeThrowable(Throwable throwable) {
+        if (mOverflow) return;
+        writeCrash(throwable, mBuffer.length - FRAME_TIMING_BYTES, MAX_STRINGS - SECTION_STRINGS);
+    }
+
+    /**
+     * Writes crashes which occurred on other threads at the same time as the crash written by
+     * {@link CrashRecordWriter#writeThrowable(Throwable)}. It must be called after it. Concurrent crashes
+     * take at most half of the space left, shared equally, and crashes which do not fit in their share are
+     * left out.
+     *
+     * @param threadNames names of threads which crashed
+     * @param throwables  crash throwables
+     * @param count       number of concurrent crashes
+     */
+    public void writeConcurrentCrashes(String[] threadNames, Throwable[] throwables, int count) {
+        if (count == 0 || mOverflow) return;
+        int sectionLength = mLength;
+        int sectionStrings = mStringCount;
+        int end = mLength + getSpaceLeft() / 2;
+        int stringsEnd = mStringCount + (MAX_STRINGS - mStringCount) / 2;
+        int countPosition = reserveVarInt();
+        int written = 0;
+        for (int i = 0; i < count; i++) {
+            int length = mLength;
+            int strings = mStringCount;
+            int crashEnd = mLength + (end - mLength) / (count - i);
+            int crashStringsEnd = mStringCount + (stringsEnd - mStringCount) / (count - i);
+            writeString(threadNames[i]);
+            if (!writeCrash(throwables[i], crashEnd, crashStringsEnd)) {
+                rollback(length, strings);
+                break;
+            }
+            written++;
+        }
+        if (written == 0) {
+            rollback(sectionLength, sectionStrings);
+            return;
+        }
+        setFlag(CrashRecordFormat.FLAG_CONCURRENT_CRASHES);
+        patchVarInt(countPosition, written);
+    }
+
+    /**
+     * Writes breadcrumbs recorded before the crash. It must be called after concurrent crashes and before
+     * thread dump. Breadcrumbs take at most half of the space left and oldest ones are left out if all of
+     * them do not fit.
+     *
+     * @param breadcrumbs breadcrumbs, oldest first
+     */
+    public void writeBreadcrumbs(BreadcrumbRing.Snapshot breadcrumbs) {
+        int count = breadcrumbs.getCount();
+        if (count == 0 || mOverflow) return;
+        int maxBytes = getSpaceLeft() / 2 - PADDED_VARINT_BYTES;
+        int maxStrings = (MAX_STRINGS - mStringCount) / 2;
+        // Find oldest breadcrumb from which newer ones surely fit, each has at most one new string
+        int first = count;
+        int bytes = 0;
+        while (first > 0 && count - first < maxStrings) {
+            int breadcrumbBytes = 3 * 10 + 5 + getMaxStringBytes(breadcrumbs.getMessage(first - 1));
+            if (bytes + breadcrumbBytes > maxBytes) break;
+            bytes += breadcrumbBytes;
+            first--;
+        }
+        if (first == count) return;
+        setFlag(CrashRecordFormat.FLAG_BREADCRUMBS);
+        writeVarInt(count - first);
+        for (int i = first; i < count; i++) {
+            writeZigZag(breadcrumbs.getTimestamp(i) - mTimestamp);
+            writeVarInt(breadcrumbs.getCategory(i));
+            writeString(breadcrumbs.getMessage(i));
+            writeZigZag(breadcrumbs.getFirstArg(i));
+            writeZigZag(breadcrumbs.getSecondArg(i));
+        }
+    }
+
+    /**
+     * Writes dump of all threads taken at crash time. It must be called after breadcrumbs. Thread dump takes
+     * at most half of the space left and is cut if it does not fit.
+     *
+     * @param threadDump thread dump text
+     */
+    public void writeThreadDump(CharSequence threadDump) {
+        writeText(CrashRecordFormat.FLAG_THREAD_DUMP, threadDump, getSpaceLeft() / 2);
+    }
+
+    /**
+     * Writes output of crash collectors. It must be called after thread dump. Collected data takes at most
+     * the space left and is cut if it does not fit.
+     *
+     * @param collectedData collected text
+     */
+    public void writeCollectedData(CharSequence collectedData) {
+        writeText(CrashRecordFormat.FLAG_COLLECTED_DATA, collectedData, getSpaceLeft());
+    }
+
+    /**
+     * Writes frame time statistics of the seconds before the crash. It must be called last before
+     * {@link CrashRecordWriter#finish()}.
+     *
+     * @param frameTiming frame time snapshot
+     */
+    public void writeFrameTiming(FrameTimeHistogram.Snapshot frameTiming) {
+        if (mOverflow) return;
+        int length = mLength;
+        writeVarInt(frameTiming.getWindowSeconds());
+        writeVarLong(frameTiming.getFrames());
+        writeVarInt(frameTiming.getFrozenFrames());
+        writeVarLong(frameTiming.getP50Micros());
+        writeVarLong(frameTiming.getP90Micros());
+        writeVarLong(frameTiming.getP99Micros());
+        writeVarLong(frameTiming.getMaxMicros());
+        if (mOverflow) {
+            rollback(length, mStringCount);
+            return;
+        }
+        setFlag(CrashRecordFormat.FLAG_FRAME_TIMING);
+    }
+
+    /**
+     * Finishes the record.
+     *
+     * @return number of bytes written or -1 if record does not fit
+     */
+    public int finish() {
+        for (int i = 0; i < mSeenCount; i++) mSeen[i] = null; // Do not retain throwables
+        mSeenCount = 0;
+        mByteBuffer.clear();
+        if (mOverflow) {
+            mByteBuffer.limit(0);
+            return -1;
+        }
+        mByteBuffer.limit(mLength);
+        return mLength;
+    }
+
+    /**
+     * Returns number of bytes in last finished record.
+     *
+     * @return length in bytes or -1 if record does not fit
+     */
+    public int getLength() {
+        return mOverflow ? -1 : mLength;
+    }
+
+    /**
+     * Returns buffer view over written record positioned at start of content.
+     *
+     * @return record buffer
+     */
+    public ByteBuffer getByteBuffer() {
+        return mByteBuffer;
+    }
+
+    private void setFlag(int flag) {
+        if (mLength >= CrashRecordFormat.HEADER_SIZE) mBuffer[CrashRecordFormat.HEADER_SIZE - 1] |= flag;
+    }
+
+    /**
+     * Returns number of bytes left in buffer excluding the space kept for frame timing.
+     */
+    private int getSpaceLeft() {
+        return Math.max(mBuffer.length - FRAME_TIMING_BYTES - mLength, 0);
+    }
+
+    /**
+     * Writes a crash throwable within given share of buffer and string table. Each crash is written on its
+     * own so causes of a concurrent crash are not mistaken for circular references.
+     *
+     * @param throwable  crash throwable
+     * @param end        end of buffer share of crash
+     * @param stringsEnd end of string table share of crash
+     * @return whether crash fits in its share
+     */
+    private boolean writeCrash(Throwable throwable, int end, int stringsEnd) {
+        mEnd = end;
+        mStringsEnd = stringsEnd;
+        mShareBytes = end - mLength;
+        mShareStrings = stringsEnd - mStringCount;
+        clearSeen();
+        mThrowableCount = countThrowables(throwable);
+        clearSeen();
+        mWrittenCount = 0;
+        mRootCause = StackFrames.getRootCause(throwable);
+        writeThrowable(throwable, null, true);
+        mRootCause = null;
+        return !mOverflow && mLength <= mEnd && mStringCount <= mStringsEnd;
+    }
+
+    /**
+     * Counts throwables which are written for given throwable i.e. itself, its suppressed exceptions
+     * and causes. Counted throwables are left in seen throwables.
+     */
+    private int countThrowables(Throwable throwable) {
+        if (isSeen(throwable) || mSeenCount == CrashRecordFormat.MAX_THROWABLES) return 0;
+        mSeen[mSeenCount++] = throwable;
+        int count = 1;
+        for (Throwable suppressed : throwable.getSuppressed()) count += countThrowables(suppressed);
+        Throwable cause = throwable.getCause();
+        if (cause != null) count += countThrowables(cause);
+        return count;
+    }
+
+    /**
+     * Writes a throwable along with its suppressed exceptions and causes within share of current crash.
+     *
+     * @param throwable      Throwable to write
+     * @param enclosingTrace stack trace of enclosing throwable or null
+     * @param inCauseChain   whether throwable is crash throwable or one of its causes
+     * @return false if nothing was written because no more throwables can be written
+     */
+    private boolean writeThrowable(Throwable throwable, StackTraceElement[] enclosingTrace, boolean inCauseChain) {
+        if (mOverflow) return false;
+        boolean rootPending = mRootCause != null && throwable != mRootCause && !isSeen(mRootCause);
+        // Last slot is kept for root cause
+        if (mWrittenCount == CrashRecordFormat.MAX_THROWABLES
+                || (rootPending && mWrittenCount == CrashRecordFormat.MAX_THROWABLES - 1)) {
+            return false;
+        }
+        mWrittenCount++;
+        if (isSeen(throwable)) {
+            writeVarInt(CrashRecordFormat.KIND_CIRCULAR);
+            writeString(throwable.getClass().getName());
+            writeString(throwable.getLocalizedMessage(), MIN_MESSAGE_BYTES);
+            return true;
+        }
+        mSeen[mSeenCount++] = throwable;
+        Throwable[] suppressed = throwable.getSuppressed();
+        // Leave some of the share for throwables which are yet to be written
+        int remaining = Math.max(mEnd - mLength, 0);
+        int stringsRemaining = Math.max(mStringsEnd - mStringCount, 0);
+        int throwablesLeft = Math.max(mThrowableCount - mSeenCount, 0);
+        // Only suppressed exceptions of root cause are left after it when causes above it were skipped
+        if (throwable == mRootCause) throwablesLeft = Math.min(throwablesLeft, suppressed.length);
+        int reserved = 0;
+        int reservedStrings = 0;
+        if (throwablesLeft > 0) {
+            reserved = throwablesLeft * Math.min(MAX_RESERVED_BYTES_PER_THROWABLE, remaining / (2 * throwablesLeft));
+            reservedStrings = throwablesLeft
+                    * Math.min(MAX_RESERVED_STRINGS_PER_THROWABLE, stringsRemaining / (2 * throwablesLeft));
+        }
+        // Root cause gets a larger share so that its top frames always fit
+        if (rootPending) {
+            reserved += Math.min(MAX_RESERVED_BYTES_PER_THROWABLE, remaining / 4);
+            reservedStrings += Math.min(MAX_RESERVED_STRINGS_PER_THROWABLE, stringsRemaining / 4);
+        }
+        int end = mEnd - reserved;
+        int stringsEnd = mStringsEnd - reservedStrings;
+
+        StackTraceElement[] trace = mTraces == null ? throwable.getStackTrace() : mTraces.get(throwable);
+        int framesInCommon = StackFrames.countFramesInCommon(trace, enclosingTrace);
+        writeVarInt(CrashRecordFormat.KIND_THROWABLE);
+        writeString(throwable.getClass().getName());
+        writeString(throwable.getLocalizedMessage(), Math.max((end - mLength) / 4, MIN_MESSAGE_BYTES));
+        writeVarInt(framesInCommon);
+        writeFrames(trace, trace.length - 1 - framesInCommon, end, stringsEnd, throwable != mRootCause);
+        if (suppressed.length == 0) {
+            writeVarInt(0);
+        } else {
+            int countPosition = reserveVarInt();
+            int written = 0;
+            for (Throwable s : suppressed) {
+                if (writeThrowable(s, trace, false)) written++;
+            }
+            patchVarInt(countPosition, written);
+        }
+        Throwable cause = throwable.getCause();
+        if (cause == null) {
+            writeByte(CrashRecordFormat.CAUSE_NONE);
+            return true;
+        }
+        boolean noRoom = mWrittenCount >= CrashRecordFormat.MAX_THROWABLES - 1
+                || mEnd - mLength < Math.min(MAX_RESERVED_BYTES_PER_THROWABLE, mShareBytes / 4)
+                || mStringsEnd - mStringCount < Math.min(MAX_RESERVED_STRINGS_PER_THROWABLE, mShareStrings / 4);
+        if (inCauseChain && noRoom && mRootCause != null && cause != mRootCause && !isSeen(mRootCause)) {
+            // Cause chain is too long so skip to root cause
+            writeByte(CrashRecordFormat.CAUSE_OMITTED);
+            writeVarInt(StackFrames.countCauses(cause, mRootCause));
+            writeThrowable(mRootCause, trace, true);
+            return true;
+        }
+        int causePosition = mLength;
+        writeByte(CrashRecordFormat.CAUSE_PRESENT);
+        if (!writeThrowable(cause, trace, inCauseChain)) {
+            mLength = causePosition;
+            writeByte(CrashRecordFormat.CAUSE_NONE);
+        }
+        return true;
+    }
+
+    /**
+     * Writes frame ops of a throwable collapsing repeated cycles. If frames do not fit before given end of
+     * buffer and string table then top frames which fit are written followed by number of omitted frames and
+     * bottom frames. Bottom frames take at most half of the share so that top frames, which tell where
+     * throwable was thrown, are not pushed out by them.
+     *
+     * @param trace      stack trace of throwable
+     * @param last       index of last frame to write
+     * @param end        end of buffer share of throwable
+     * @param stringsEnd end of string table share of throwable
+     * @param keepTail   whether bottom frames are kept or only top frames which fit are written
+     */
+    private void writeFrames(StackTraceElement[] trace, int last, int end, int stringsEnd, boolean keepTail) {
+        int opsPosition = reserveVarInt();
+        int tailStart = keepTail ? Math.max(last - TAIL_FRAMES + 1, 0) : last + 1;
+        int tailBytes = 0;
+        for (int i = tailStart; i <= last; i++) tailBytes += getMaxFrameBytes(trace[i]);
+        // Each frame has at most 3 new strings
+        while (tailStart <= last && (2 * tailBytes > end - mLength - OMIT_OP_BYTES
+                || 2 * 3 * (last + 1 - tailStart) > stringsEnd - mStringCount)) {
+            tailBytes -= getMaxFrameBytes(trace[tailStart++]);
+        }
+        int tailStrings = 3 * (last + 1 - tailStart);
+        int ops = 0;
+        int i = 0;
+        while (i <= last && !mOverflow) {
+            int period = StackFrames.findCycle(trace, i, last);
+            int lines = Math.max(period, 1);
+            int repeats = period == 0 ? 1 : StackFrames.countRepeats(trace, i, last, period);
+            int length = mLength;
+            int strings = mStringCount;
+            for (int j = 0; j < lines; j++) writeFrame(trace[i + j]);
+            if (period > 0) {
+                // Write number of repetitions instead of repeated frames
+                writeVarInt(CrashRecordFormat.OP_REPEAT);
+                writeVarInt(period);
+                writeVarInt(repeats - 1);
+            }
+            if (i < tailStart && (mOverflow || mLength + OMIT_OP_BYTES + tailBytes > end
+                    || mStringCount + tailStrings > stringsEnd)) {
+                // Skip to bottom frames
+                rollback(length, strings);
+                writeVarInt(CrashRecordFormat.OP_OMIT);
+                writeVarInt(tailStart - i);
+                ops++;
+                i = tailStart;
+                continue;
+            }
+            ops += period == 0 ? 1 : period + 1;
+            i += period == 0 ? 1 : period * repeats;
+        }
+        patchVarInt(opsPosition, ops);
+    }
+
+    private void writeFrame(StackTraceElement frame) {
+        writeVarInt(CrashRecordFormat.OP_FRAME);
+        writeString(frame.getClassName());
+        writeString(frame.getMethodName());
+        writeString(frame.getFileName());
+        writeZigZag(frame.getLineNumber());
+    }
+
+    /**
+     * Returns max number of bytes written by {@link CrashRecordWriter#writeFrame(StackTraceElement)} i.e. when
+     * none of its strings are interned yet.
+     */
+    private static int getMaxFrameBytes(StackTraceElement frame) {
+        return 1 + getMaxStringBytes(frame.getClassName()) + getMaxStringBytes(frame.getMethodName())
+                + getMaxStringBytes(frame.getFileName()) + 5;
+    }
+
+    /**
+     * Returns max number of bytes written by {@link CrashRecordWriter#writeString(String)}.
+     */
+    private static int getMaxStringBytes(String s) {
+        return s == null ? 1 : 1 + 5 + StackFrames.getUtf8Length(s);
+    }
+
+    /**
+     * Writes a text section cut to given number of bytes.
+     *
+     * @param flag     record flag of section
+     * @param text     section text
+     * @param maxBytes max number of bytes of section including its length
+     */
+    private void writeText(int flag, CharSequence text, int maxBytes) {
+        if (mOverflow) return;
+        int chars = text.length();
+        int length = getEncodedLength(text, chars);
+        boolean truncated = PADDED_VARINT_BYTES + length > maxBytes;
+        if (truncated) {
+            // Keep start of text which fits together with truncation marker
+            int available = maxBytes - PADDED_VARINT_BYTES - TRUNCATION_MARKER.length();
+            if (available <= 0) return;
+            chars = countFittingChars(text, available);
+            length = getEncodedLength(text, chars) + TRUNCATION_MARKER.length();
+        }
+        setFlag(flag);
+        writeVarInt(length);
+        writeUtf8(text, chars);
+        if (truncated) writeUtf8(TRUNCATION_MARKER, TRUNCATION_MARKER.length());
+    }
+
+    /**
+     * Writes a reference to interned string writing the string itself when it is seen first time.
+     *
+     * @param s string or null
+     */
+    private void writeString(String s) {
+        writeString(s, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Writes a reference to interned string writing the string itself when it is seen first time. A string
+     * longer than given number of bytes is cut and is not interned.
+     *
+     * @param s        string or null
+     * @param maxBytes max number of bytes of string
+     */
+    private void writeString(String s, int maxBytes) {
+        if (s == null) {
+            writeVarInt(CrashRecordFormat.STRING_NULL);
+            return;
+        }
+        int slot = s.hashCode() & (TABLE_SLOTS - 1);
+        while (mTableKeys[slot] != null) {
+            if (mTableKeys[slot].equals(s)) {
+                writeVarInt(CrashRecordFormat.STRING_TABLE_BASE + mTableIndices[slot]);
+                return;
+            }
+            slot = (slot + 1) & (TABLE_SLOTS - 1);
+        }
+        if (mStringCount == MAX_STRINGS) {
+            mOverflow = true;
+            return;
+        }
+        int chars = s.length();
+        int length = getEncodedLength(s, chars);
+        boolean truncated = length > maxBytes;
+        if (truncated) {
+            chars = countFittingChars(s, Math.max(maxBytes - TRUNCATION_MARKER.length(), 0));
+            length = getEncodedLength(s, chars) + TRUNCATION_MARKER.length();
+            mTableSlots[mStringCount++] = -1; // Reader still appends it to string table
+        } else {
+            mTableKeys[slot] = s;
+            mTableIndices[slot] = mStringCount;
+            mTableSlots[mStringCount++] = slot;
+        }
+        writeVarInt(CrashRecordFormat.STRING_NEW);
+        writeVarInt(length);
+        writeUtf8(s, chars);
+        if (truncated) writeUtf8(TRUNCATION_MARKER, TRUNCATION_MARKER.length());
+    }
+
+    /**
+     * Discards everything written after given length and string count so that a part which does not fit
+     * can be left out.
+     *
+     * @param length      number of bytes to keep
+     * @param stringCount number of strings to keep in string table
+     */
+    private void rollback(int length, int stringCount) {
+        // Removing strings in reverse order of insertion restores probe sequences of strings kept
+        while (mStringCount > stringCount) {
+            int slot = mTableSlots[--mStringCount];
+            if (slot >= 0) mTableKeys[slot] = null;
+        }
+        mLength = length;
+        mOverflow = false;
+    }
+
+    private void clearSeen() {
+        for (int i = 0; i < mSeenCount; i++) mSeen[i] = null;
+        mSeenCount = 0;
+    }
+
+    private boolean isSeen(Throwable throwable) {
+        for (int i = 0; i < mSeenCount; i++) {
+            if (mSeen[i] == throwable) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns number of bytes written by {@link CrashRecordWriter#writeUtf8(CharSequence, int)} for given
+     * number of leading chars.
+     */
+    private static int getEncodedLength(CharSequence s, int chars) {
+        int length = 0;
+        for (int i = 0; i < chars; i++) {
+            if (isSurrogatePair(s, i, chars)) {
+                length += 4;
+                i++;
+            } else {
+                length += getEncodedLength(s.charAt(i));
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns number of leading chars whose UTF-8 encoding fits in given number of bytes without splitting
+     * a surrogate pair.
+     */
+    private static int countFittingChars(CharSequence s, int maxBytes) {
+        int length = 0;
+        int i = 0;
+        while (i < s.length()) {
+            boolean pair = isSurrogatePair(s, i, s.length());
+            int bytes = pair ? 4 : getEncodedLength(s.charAt(i));
+            if (length + bytes > maxBytes) break;
+            length += bytes;
+            i += pair ? 2 : 1;
+        }
+        return i;
+    }
+
+    private static int getEncodedLength(char c) {
+        if (c < 0x80 || Character.isSurrogate(c)) return 1; // Unpaired surrogate is written as '?'
+        return c < 0x800 ? 2 : 3;
+    }
+
+    private static boolean isSurrogatePair(CharSequence s, int i, int chars) {
+        return Character.isHighSurrogate(s.charAt(i)) && i + 1 < chars && Character.isLowSurrogate(s.charAt(i + 1));
+    }
+
+    /**
+     * Writes given number of leading chars of a string encoded as UTF-8 with unpaired surrogates written as '?'.
+     */
+    private void writeUtf8(CharSequence s, int chars) {
+        for (int i = 0; i < chars && !mOverflow; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (isSurrogatePair(s, i, chars)) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                writeByte('?');
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Writes a placeholder of {@link CrashRecordWriter#PADDED_VARINT_BYTES} bytes for a varint whose value
+     * is not known yet.
+     *
+     * @return position of placeholder
+     */
+    private int reserveVarInt() {
+        int position = mLength;
+        for (int i = 0; i < PADDED_VARINT_BYTES; i++) writeByte(0);
+        return position;
+    }
+
+    /**
+     * Writes a varint into placeholder reserved by {@link CrashRecordWriter#reserveVarInt()}, padded with
+     * continuation bytes to fill it.
+     */
+    private void patchVarInt(int position, int value) {
+        if (position + PADDED_VARINT_BYTES > mLength) return; // Placeholder did not fit
+        for (int i = 0; i < PADDED_VARINT_BYTES - 1; i++) {
+            mBuffer[position + i] = (byte) (((value >>> (7 * i)) & 0x7F) | 0x80);
+        }
+        mBuffer[position + PADDED_VARINT_BYTES - 1] = (byte) (value >>> (7 * (PADDED_VARINT_BYTES - 1)));
+    }
+
+    private void writeZigZag(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private void writeByte(int b) {
+        if (mLength == mBuffer.length) {
+            mOverflow = true;
+            return;
+        }
+        mBuffer[mLength++] = (byte) b;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Histogram of frame times over the last few seconds, used to tell how smooth the app was running before a
+ * crash or hang. Frame times are counted in log-linear buckets i.e. 16 linear buckets per power of two of
+ * microseconds, so any frame time is kept within about 6% of its value. Window is split into one second
+ * slices, each with its own buckets, and a slice is cleared when it is reused for a new second, so only the
+ * last seconds are counted. All buckets are allocated up front and recording a frame does not allocate.
+ * <p>
+ * Frames are recorded by a single thread e.g. main thread. A snapshot may be taken from another thread e.g.
+ * crash handler in which case frames recorded meanwhile may be partly counted.
+ */
+public final class FrameTimeHistogram {
+    /**
+     * Default length of window in seconds.
+     */
+    public static final int DEFAULT_WINDOW_SECONDS = 30;
+    /**
+     * Frame time from which a frame is counted as frozen i.e. the app looks stuck to the user.
+     */
+    public static final long FROZEN_FRAME_NANOS = 700000000L; // 700 ms
+
+    // Number of linear buckets per power of two as bits and as count
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Largest power of two of microseconds with its own buckets, longer frames are counted in the last bucket
+    private static final int MAX_EXPONENT = 25; // About 67 seconds
+    /**
+     * Number of buckets of each slice.
+     */
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+    // Length of slice
+    private static final long SLICE_NANOS = 1000000000L; // 1 second
+
+    private final int mSliceCount;
+    // Frame counts of all slices, slice after slice
+    private final int[] mCounts;
+    // Second held by each slice or -1 if slice is empty
+    private final long[] mSeconds;
+    // Longest frame time of each slice in microseconds
+    private final long[] mMaxMicros;
+    // Number of frozen frames of each slice
+    private final int[] mFrozen;
+    // Second and first bucket of slice being recorded into
+    private long mSecond = -1;
+    private int mOffset;
+
+    /**
+     * Constructor
+     *
+     * @param windowSeconds length of window in seconds
+     */
+    public FrameTimeHistogram(int windowSeconds) {
+        mSliceCount = Math.max(windowSeconds, 1);
+        mCounts = new int[mSliceCount * BUCKET_COUNT];
+        mSeconds = new long[mSliceCount];
+        mMaxMicros = new long[mSliceCount];
+        mFrozen = new int[mSliceCount];
+        for (int i = 0; i < mSliceCount; i++) mSeconds[i] = -1;
+    }
+
+    /**
+     * @return length of window in seconds
+     */
+    public int getWindowSeconds() {
+        return mSliceCount;
+    }
+
+    /**
+     * Records a frame. It must always be called by the same thread.
+     *
+     * @param nowNanos       time at which frame ended from {@link System#nanoTime()} or a clock of the same kind
+     * @param frameTimeNanos time taken by frame
+     */
+    public void record(long nowNanos, long frameTimeNanos) {
+        long second = nowNanos / SLICE_NANOS;
+        if (second != mSecond) switchSlice(second);
+        long micros = Math.max(frameTimeNanos, 0) / 1000;
+        mCounts[mOffset + getBucket(micros)]++;
+        int slice = mOffset / BUCKET_COUNT;
+        if (micros > mMaxMicros[slice]) mMaxMicros[slice] = micros;
+        if (frameTimeNanos >= FROZEN_FRAME_NANOS) mFrozen[slice]++;
+    }
+
+    /**
+     * Moves recording to the slice of given second clearing it if it held an older second.
+     */
+    private void switchSlice(long second) {
+        int slice = (int) (second % mSliceCount);
+        mOffset = slice * BUCKET_COUNT;
+        mSecond = second;
+        if (mSeconds[slice] == second) return;
+        for (int i = mOffset; i < mOffset + BUCKET_COUNT; i++) mCounts[i] = 0;
+        mMaxMicros[slice] = 0;
+        mFrozen[slice] = 0;
+        mSeconds[slice] = second;
+    }
+
+    /**
+     * Takes snapshot of frames recorded during the window which ends at given time. It does not allocate.
+     *
+     * @param nowNanos time at which window ends from the same clock as recorded frames
+     * @param snapshot snapshot to fill
+     */
+    public void snapshot(long nowNanos, Snapshot snapshot) {
+        long second = nowNanos / SLICE_NANOS;
+        int[] counts = snapshot.mCounts;
+        for (int i = 0; i < BUCKET_COUNT; i++) counts[i] = 0;
+        long frames = 0;
+        long maxMicros = 0;
+        int frozen = 0;
+        for (int slice = 0; slice < mSliceCount; slice++) {
+            long age = second - mSeconds[slice];
+            if (mSeconds[slice] < 0 || age < 0 || age >= mSliceCount) continue;
+            int offset = slice * BUCKET_COUNT;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += mCounts[offset + i];
+                frames += mCounts[offset + i];
+            }
+            maxMicros = Math.max(maxMicros, mMaxMicros[slice]);
+            frozen += mFrozen[slice];
+        }
+        snapshot.set(mSliceCount, frames, frozen, getPercentile(counts, frames, 50, maxMicros),
+                getPercentile(counts, frames, 90, maxMicros), getPercentile(counts, frames, 99, maxMicros),
+                maxMicros);
+    }
+
+    /**
+     * Returns frame time below which given percent of frames fall i.e. highest value of the bucket which
+     * holds that frame, capped at longest frame time.
+     *
+     * @return frame time in microseconds or 0 if there are no frames
+     */
+    private static long getPercentile(int[] counts, long frames, int percent, long maxMicros) {
+        if (frames == 0) return 0;
+        long rank = Math.max((frames * percent + 99) / 100, 1);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) return Math.min(getBucketEnd(bucket) - 1, maxMicros);
+        }
+        return maxMicros;
+    }
+
+    /**
+     * Returns bucket of frame time.
+     *
+     * @param micros frame time in microseconds
+     * @return bucket index
+     */
+    static int getBucket(long micros) {
+        if (micros < SUB_BUCKET_COUNT) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS)
+                + (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * Returns lowest frame time of the bucket after given one.
+     *
+     * @param bucket bucket index
+     * @return frame time in microseconds
+     */
+    static long getBucketEnd(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT - 1) return bucket + 1;
+        if (bucket == BUCKET_COUNT - 1) return Long.MAX_VALUE;
+        int next = bucket + 1;
+        int exponent = (next >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKET_COUNT + (next & (SUB_BUCKET_COUNT - 1))) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Frame time statistics of a window. Percentiles are accurate to the bucket they fall in.
+     */
+    public static final class Snapshot {
+        // Merged frame counts of window or null if snapshot is decoded from crash record
+        final int[] mCounts;
+        private int mWindowSeconds;
+        private long mFrames;
+        private int mFrozenFrames;
+        private long mP50Micros;
+        private long mP90Micros;
+        private long mP99Micros;
+        private long mMaxMicros;
+
+        /**
+         * Constructor of snapshot which can be filled by {@link FrameTimeHistogram#snapshot(long, Snapshot)}.
+         */
+        public Snapshot() {
+            mCounts = new int[BUCKET_COUNT];
+        }
+
+        Snapshot(int windowSeconds, long frames, int frozenFrames, long p50Micros, long p90Micros,
+                 long p99Micros, long maxMicros) {
+            mCounts = null;
+            set(windowSeconds, frames, frozenFrames, p50Micros, p90Micros, p99Micros, maxMicros);
+        }
+
+        void set(int windowSeconds, long frames, int frozenFrames, long p50Micros, long p90Micros,
+                 long p99Micros, long maxMicros) {
+            mWindowSeconds = windowSeconds;
+            mFrames = frames;
+            mFrozenFrames = frozenFrames;
+            mP50Micros = p50Micros;
+            mP90Micros = p90Micros;
+            mP99Micros = p99Micros;
+            mMaxMicros = maxMicros;
+        }
+
+        /**
+         * @return length of window in seconds
+         */
+        public int getWindowSeconds() {
+            return mWindowSeconds;
+        }
+
+        /**
+         * @return number of frames in window
+         */
+        public long getFrames() {
+            return mFrames;
+        }
+
+        /**
+         * @return number of frames which took at least {@link FrameTimeHistogram#FROZEN_FRAME_NANOS}
+         */
+        public int getFrozenFrames() {
+            return mFrozenFrames;
+        }
+
+        /**
+         * @return median frame time in microseconds
+         */
+        public long getP50Micros() {
+            return mP50Micros;
+        }
+
+        /**
+         * @return 90th percentile of frame time in microseconds
+         */
+        public long getP90Micros() {
+            return mP90Micros;
+        }
+
+        /**
+         * @return 99th percentile of frame time in microseconds
+         */
+        public long getP99Micros() {
+            return mP99Micros;
+        }
+
+        /**
+         * @return longest frame time in microseconds
+         */
+        public long getMaxMicros() {
+            return mMaxMicros;
+        }
+
+        /**
+         * Appends snapshot as text e.g.
+         * <pre>
+         * Last 30 s: 1742 frames, 1 frozen
+         * p50 16.6 ms, p90 17.1 ms, p99 48.3 ms, max 812.4 ms
+         * </pre>
+         *
+         * @param out builder to append to
+         * @return given builder
+         */
+        @NonNull
+        public StringBuilder appendTo(StringBuilder out) {
+            out.append("Last ").append(mWindowSeconds).append(" s: ").append(mFrames).append(" frames, ")
+                    .append(mFrozenFrames).append(" frozen\n");
+            if (mFrames == 0) return out;
+            appendMillis(out.append("p50 "), mP50Micros);
+            appendMillis(out.append(", p90 "), mP90Micros);
+            appendMillis(out.append(", p99 "), mP99Micros);
+            appendMillis(out.append(", max "), mMaxMicros);
+            return out.append('\n');
+        }
+
+        private static void appendMillis(StringBuilder out, long micros) {
+            long tenths = (micros + 50) / 100;
+            out.append(tenths / 10).append('.').append(tenths % 10).append(" ms");
+        }
+    }
+}
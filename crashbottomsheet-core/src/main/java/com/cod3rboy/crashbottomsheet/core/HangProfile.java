@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.util.Arrays;
+
+/**
+ * Profile of a hung thread built from stack samples taken while it does not respond. Identical samples are
+ * kept once with a count so a thread stuck in one place yields a single stack. Distinct stacks are listed
+ * most sampled first and bottom frames shared with the stack listed before are collapsed.
+ * Format :-
+ * Main thread not responding for [duration] ms ([samples] samples)
+ * [count]/[samples] samples:
+ *     at [frame]
+ *     ... [n] frames in common with stack above
+ */
+public final class HangProfile {
+    /**
+     * Default max number of samples in profile.
+     */
+    public static final int DEFAULT_MAX_SAMPLES = 10;
+    /**
+     * Name fingerprints of hangs are computed with in place of throwable class name.
+     */
+    public static final String FINGERPRINT_NAME = "MainThreadHang";
+
+    // Distinct sampled stacks and number of samples of each
+    private final StackTraceElement[][] mStacks;
+    private final int[] mCounts;
+    private int mStackCount;
+    private int mSampleCount;
+    private long mDurationMs;
+
+    /**
+     * Constructor
+     *
+     * @param maxSamples max number of samples in profile
+     */
+    public HangProfile(int maxSamples) {
+        maxSamples = Math.max(maxSamples, 1);
+        mStacks = new StackTraceElement[maxSamples][];
+        mCounts = new int[maxSamples];
+    }
+
+    /**
+     * Discards all samples.
+     */
+    public void reset() {
+        Arrays.fill(mStacks, null);
+        mStackCount = 0;
+        mSampleCount = 0;
+        mDurationMs = 0;
+    }
+
+    /**
+     * Adds a stack sample unless profile is full.
+     *
+     * @param stack sampled stack
+     * @return true if sample is added otherwise false
+     */
+    public boolean addSample(StackTraceElement[] stack) {
+        if (mSampleCount == mStacks.length) return false;
+        mSampleCount++;
+        for (int i = 0; i < mStackCount; i++) {
+            if (Arrays.equals(mStacks[i], stack)) {
+                mCounts[i]++;
+                return true;
+            }
+        }
+        mStacks[mStackCount] = stack;
+        mCounts[mStackCount++] = 1;
+        return true;
+    }
+
+    /**
+     * Tells whether profile cannot take more samples.
+     *
+     * @return true if full otherwise false
+     */
+    public boolean isFull() {
+        return mSampleCount == mStacks.length;
+    }
+
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    public int getStackCount() {
+        return mStackCount;
+    }
+
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * Sets how long thread has not been responding.
+     *
+     * @param durationMs hang duration in milliseconds
+     */
+    public void setDurationMs(long durationMs) {
+        mDurationMs = durationMs;
+    }
+
+    /**
+     * Returns stack sampled most often.
+     *
+     * @return hottest stack or empty array if there is no sample
+     */
+    public StackTraceElement[] getHottestStack() {
+        int hottest = -1;
+        for (int i = 0; i < mStackCount; i++) {
+            if (hottest < 0 || mCounts[i] > mCounts[hottest]) hottest = i;
+        }
+        return hottest < 0 ? new StackTraceElement[0] : mStacks[hottest];
+    }
+
+    /**
+     * Appends profile text.
+     *
+     * @param out builder to append to
+     * @return given builder
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        out.append("Main thread not responding for ").append(mDurationMs).append(" ms (")
+                .append(mSampleCount).append(mSampleCount == 1 ? " sample)\n" : " samples)\n");
+        boolean[] listed = new boolean[mStackCount];
+        StackTraceElement[] previous = null;
+        for (int n = 0; n < mStackCount; n++) {
+            // Most sampled stack not listed yet, earliest first on ties
+            int next = -1;
+            for (int i = 0; i < mStackCount; i++) {
+                if (!listed[i] && (next < 0 || mCounts[i] > mCounts[next])) next = i;
+            }
+            listed[next] = true;
+            StackTraceElement[] stack = mStacks[next];
+            out.append(mCounts[next]).append('/').append(mSampleCount).append(" samples:\n");
+            int inCommon = StackFrames.countFramesInCommon(stack, previous);
+            for (int i = 0; i < stack.length - inCommon; i++) {
+                StackFrames.appendFrame(out.append("\tat "), stack[i]).append('\n');
+            }
+            if (inCommon != 0) out.append("\t... ").append(inCommon).append(" frames in common with stack above\n");
+            previous = stack;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Watchdog thread which detects hangs of main thread. It posts a ping to main thread and sleeps for the
+ * threshold; if the ping has not run by then main thread is considered hung and its stack is sampled at a
+ * fixed interval to build a {@link HangProfile}. Each hang is reported once and watchdog waits for main
+ * thread to respond before it pings again.
+ * <p>
+ * Idle watchdog does not allocate: the ping is a single preallocated task and the profile is reused.
+ */
+public final class HangWatchdog extends Thread {
+    /**
+     * Default time main thread may not respond before it is considered hung.
+     */
+    public static final long DEFAULT_THRESHOLD_MS = 5000; // 5 seconds
+    /**
+     * Default interval between stack samples of hung main thread.
+     */
+    public static final long DEFAULT_SAMPLE_INTERVAL_MS = 100;
+
+    /**
+     * Receives profiles of detected hangs.
+     */
+    public interface Listener {
+        /**
+         * Invoked on watchdog thread once a hang is profiled. Profile is reused for next hang so it must not
+         * be kept after this method returns.
+         *
+         * @param profile profile of hung main thread
+         */
+        void onHang(HangProfile profile);
+    }
+
+    private final Thread mMainThread;
+    private final Executor mMainThreadExecutor;
+    private final long mThresholdMs;
+    private final long mSampleIntervalMs;
+    private final Listener mListener;
+    private final HangProfile mProfile;
+    // Set by ping when it runs on main thread
+    private volatile boolean mResponded;
+    // Posted to main thread on every tick
+    private final Runnable mPing = () -> mResponded = true;
+
+    /**
+     * Constructor
+     *
+     * @param mainThread         thread which is watched
+     * @param mainThreadExecutor runs tasks on watched thread
+     * @param thresholdMs        time watched thread may not respond before it is considered hung
+     * @param maxSamples         number of stack samples taken of hung thread
+     * @param sampleIntervalMs   interval between stack samples
+     * @param listener           receives hang profiles
+     */
+    public HangWatchdog(Thread mainThread, Executor mainThreadExecutor, long thresholdMs, int maxSamples,
+                        long sampleIntervalMs, Listener listener) {
+        super("CrashBottomSheet-HangWatchdog");
+        setDaemon(true);
+        mMainThread = mainThread;
+        mMainThreadExecutor = mainThreadExecutor;
+        mThresholdMs = Math.max(thresholdMs, 1);
+        mSampleIntervalMs = Math.max(sampleIntervalMs, 1);
+        mListener = listener;
+        mProfile = new HangProfile(maxSamples);
+    }
+
+    /**
+     * Stops watchdog.
+     */
+    public void shutdown() {
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isInterrupted()) {
+                mResponded = false;
+                mMainThreadExecutor.execute(mPing);
+                Thread.sleep(mThresholdMs);
+                if (mResponded) continue;
+                long hangStart = System.nanoTime() - mThresholdMs * 1000000L;
+                mProfile.reset();
+                while (!mResponded && !mProfile.isFull()) {
+                    mProfile.addSample(mMainThread.getStackTrace());
+                    Thread.sleep(mSampleIntervalMs);
+                }
+                if (mProfile.getSampleCount() == 0) continue; // Responded just after threshold
+                mProfile.setDurationMs((System.nanoTime() - hangStart) / 1000000L);
+                mListener.onHang(mProfile);
+                // Report the hang once no matter how long it lasts
+                while (!mResponded) Thread.sleep(mSampleIntervalMs);
+            }
+        } catch (InterruptedException ignored) {
+            // Watchdog is shut down
+        }
+    }
+}
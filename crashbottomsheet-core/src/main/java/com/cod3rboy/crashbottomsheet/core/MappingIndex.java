@@ -0,0 +1,277 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Read only view of mapping index written by {@link MappingIndexBuilder}. Index is meant to be memory mapped
+ * so it is never parsed as a whole. Classes and methods are looked up by binary search over fixed size
+ * table entries and names are compared against index bytes in place without allocation.
+ * <p>
+ * Layout of index i.e. all integers are big endian:
+ * <pre>
+ * header   magic, version, class count, method count, class table, method table and string pool offsets
+ * classes  obfuscated name, original name, source file or -1, first method, method count
+ *          sorted by obfuscated name
+ * methods  obfuscated name, original name, obfuscated line range, original line range
+ *          grouped by class and sorted by obfuscated name keeping mapping file order of equal names
+ * strings  varint length followed by UTF-8 bytes
+ * </pre>
+ * Instances are immutable and safe to share between threads.
+ */
+public final class MappingIndex {
+    static final int MAGIC = 0x43424D49; // "CBMI"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 28;
+    static final int CLASS_ENTRY_SIZE = 20;
+    static final int METHOD_ENTRY_SIZE = 24;
+    static final int NO_STRING = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final int mClassCount;
+    private final int mMethodCount;
+    private final int mClassTable;
+    private final int mMethodTable;
+    private final int mStringPool;
+
+    /**
+     * Opens mapping index.
+     *
+     * @param buffer index bytes from position 0 e.g. a memory mapped index file
+     * @throws IOException if buffer does not hold a mapping index
+     */
+    public MappingIndex(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer.duplicate();
+        int limit = mBuffer.limit();
+        if (limit < HEADER_SIZE || mBuffer.getInt(0) != MAGIC) throw new IOException("Not a mapping index");
+        if (mBuffer.getInt(4) != VERSION) throw new IOException("Unsupported mapping index version " + mBuffer.getInt(4));
+        mClassCount = mBuffer.getInt(8);
+        mMethodCount = mBuffer.getInt(12);
+        mClassTable = mBuffer.getInt(16);
+        mMethodTable = mBuffer.getInt(20);
+        mStringPool = mBuffer.getInt(24);
+        if (mClassCount < 0 || mMethodCount < 0 || mClassTable < HEADER_SIZE
+                || (long) mClassTable + (long) mClassCount * CLASS_ENTRY_SIZE > mMethodTable
+                || (long) mMethodTable + (long) mMethodCount * METHOD_ENTRY_SIZE > mStringPool
+                || mStringPool > limit) {
+            throw new IOException("Malformed mapping index");
+        }
+    }
+
+    /**
+     * Returns number of classes in index.
+     *
+     * @return class count
+     */
+    public int getClassCount() {
+        return mClassCount;
+    }
+
+    /**
+     * Returns number of methods in index.
+     *
+     * @return method count
+     */
+    public int getMethodCount() {
+        return mMethodCount;
+    }
+
+    /**
+     * Returns original name of obfuscated class.
+     *
+     * @param obfuscatedName obfuscated class name
+     * @return original class name or null if class is not in index
+     */
+    public String findClassName(CharSequence obfuscatedName) {
+        int cls = findClass(obfuscatedName);
+        return cls < 0 ? null : getClassName(cls);
+    }
+
+    /**
+     * Finds class by binary search.
+     *
+     * @param obfuscatedName obfuscated class name
+     * @return class number or -1 if class is not in index
+     */
+    int findClass(CharSequence obfuscatedName) {
+        int low = 0;
+        int high = mClassCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mBuffer.getInt(classEntry(mid)), obfuscatedName);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    String getClassName(int cls) {
+        return getString(mBuffer.getInt(classEntry(cls) + 4));
+    }
+
+    String getSourceFile(int cls) {
+        return getString(mBuffer.getInt(classEntry(cls) + 8));
+    }
+
+    /**
+     * Finds first method of class with given obfuscated name by binary search.
+     *
+     * @param cls            class number
+     * @param obfuscatedName obfuscated method name
+     * @return method number or -1 if class has no such method
+     */
+    int findMethod(int cls, CharSequence obfuscatedName) {
+        int first = mBuffer.getInt(classEntry(cls) + 12);
+        int low = first;
+        int high = first + mBuffer.getInt(classEntry(cls) + 16) - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mBuffer.getInt(methodEntry(mid)), obfuscatedName);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                if (cmp == 0) found = mid;
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns end of methods of class i.e. number of the method after its last one.
+     */
+    int getMethodEnd(int cls) {
+        return mBuffer.getInt(classEntry(cls) + 12) + mBuffer.getInt(classEntry(cls) + 16);
+    }
+
+    /**
+     * Tells whether two methods have the same obfuscated name.
+     */
+    boolean isSameMethod(int method, int other) {
+        return mBuffer.getInt(methodEntry(method)) == mBuffer.getInt(methodEntry(other));
+    }
+
+    String getMethodName(int method) {
+        return getString(mBuffer.getInt(methodEntry(method) + 4));
+    }
+
+    int getObfuscatedStart(int method) {
+        return mBuffer.getInt(methodEntry(method) + 8);
+    }
+
+    int getObfuscatedEnd(int method) {
+        return mBuffer.getInt(methodEntry(method) + 12);
+    }
+
+    /**
+     * Maps obfuscated line number into original one.
+     *
+     * @param method method number
+     * @param line   obfuscated line number within obfuscated range of method
+     * @return original line number
+     */
+    int getOriginalLine(int method, int line) {
+        int entry = methodEntry(method);
+        int originalStart = mBuffer.getInt(entry + 16);
+        int originalEnd = mBuffer.getInt(entry + 20);
+        // Original range of same size is shifted while single original line stands for whole range
+        return originalEnd > originalStart ? originalStart + line - mBuffer.getInt(entry + 8) : originalStart;
+    }
+
+    private int classEntry(int cls) {
+        return mClassTable + cls * CLASS_ENTRY_SIZE;
+    }
+
+    private int methodEntry(int method) {
+        return mMethodTable + method * METHOD_ENTRY_SIZE;
+    }
+
+    /**
+     * Compares string in pool with given characters in the order of {@link String#compareTo(String)}.
+     * UTF-8 bytes are decoded while compared so no string is created.
+     *
+     * @param string offset of string in pool
+     * @param chars  characters to compare with
+     * @return negative, zero or positive value if string in pool is less, equal or greater
+     */
+    private int compare(int string, CharSequence chars) {
+        int position = mStringPool + string;
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = mBuffer.get(position++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        int end = position + length;
+        int count = chars.length();
+        int i = 0;
+        char pending = 0; // Low surrogate of decoded supplementary character
+        while (position < end || pending != 0) {
+            char c;
+            if (pending != 0) {
+                c = pending;
+                pending = 0;
+            } else {
+                int b = mBuffer.get(position++) & 0xFF;
+                if (b < 0x80) {
+                    c = (char) b;
+                } else if (b < 0xE0) {
+                    c = (char) (((b & 0x1F) << 6) | (mBuffer.get(position++) & 0x3F));
+                } else if (b < 0xF0) {
+                    c = (char) (((b & 0x0F) << 12) | ((mBuffer.get(position++) & 0x3F) << 6)
+                            | (mBuffer.get(position++) & 0x3F));
+                } else {
+                    int codePoint = ((b & 0x07) << 18) | ((mBuffer.get(position++) & 0x3F) << 12)
+                            | ((mBuffer.get(position++) & 0x3F) << 6) | (mBuffer.get(position++) & 0x3F);
+                    c = Character.highSurrogate(codePoint);
+                    pending = Character.lowSurrogate(codePoint);
+                }
+            }
+            if (i == count) return 1;
+            char other = chars.charAt(i++);
+            if (c != other) return c - other;
+        }
+        return i - count;
+    }
+
+    private String getString(int string) {
+        if (string == NO_STRING) return null;
+        int position = mStringPool + string;
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = mBuffer.get(position++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(position);
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
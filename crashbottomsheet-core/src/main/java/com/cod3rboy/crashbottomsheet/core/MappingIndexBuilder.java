@@ -0,0 +1,286 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Builds mapping index read by {@link MappingIndex} from a ProGuard or R8 mapping file. It runs at build time
+ * so the app only ever binary searches the index. Fields are left out as stack traces do not refer to them.
+ * <p>
+ * It can be run from command line with mapping file and index file paths as arguments.
+ */
+public final class MappingIndexBuilder {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ARROW = " -> ";
+    // R8 keeps original source file name of a class in a JSON comment after class line
+    private static final String SOURCE_FILE_ID = "\"id\":\"sourceFile\"";
+    private static final String FILE_NAME_KEY = "\"fileName\":\"";
+
+    private final ArrayList<ClassMapping> mClasses = new ArrayList<>();
+    private ClassMapping mCurrentClass;
+    private int mMethodCount;
+
+    /**
+     * Builds index of mapping file.
+     *
+     * @param args path of mapping file and path of index file
+     * @throws IOException if mapping file cannot be read or index file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MappingIndexBuilder <mapping.txt> <mapping index>");
+            System.exit(1);
+        }
+        MappingIndexBuilder builder = new MappingIndexBuilder();
+        try (Reader in = new InputStreamReader(new FileInputStream(args[0]), UTF_8)) {
+            builder.parse(in);
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]))) {
+            builder.write(out);
+        }
+    }
+
+    /**
+     * Parses mapping file. It may be called more than once to merge mapping files.
+     *
+     * @param mapping mapping file text
+     * @return this builder
+     * @throws IOException if mapping cannot be read
+     */
+    public MappingIndexBuilder parse(Reader mapping) throws IOException {
+        BufferedReader reader = new BufferedReader(mapping);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            char first = line.charAt(0);
+            if (first == '#') {
+                parseComment(line);
+            } else if (first == ' ' || first == '\t') {
+                if (mCurrentClass != null) parseMember(line.trim());
+            } else {
+                parseClass(line);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes index of parsed mappings.
+     *
+     * @param out index output
+     * @throws IOException if index cannot be written
+     */
+    public void write(OutputStream out) throws IOException {
+        List<ClassMapping> classes = new ArrayList<>(mClasses);
+        Collections.sort(classes, (a, b) -> a.mObfuscatedName.compareTo(b.mObfuscatedName));
+        StringPool strings = new StringPool();
+        ByteArrayOutputStream tables = new ByteArrayOutputStream(classes.size() * MappingIndex.CLASS_ENTRY_SIZE
+                + mMethodCount * MappingIndex.METHOD_ENTRY_SIZE);
+        DataOutputStream table = new DataOutputStream(tables);
+        int methodCount = 0;
+        for (ClassMapping cls : classes) {
+            table.writeInt(strings.add(cls.mObfuscatedName));
+            table.writeInt(strings.add(cls.mOriginalName));
+            table.writeInt(cls.mSourceFile == null ? MappingIndex.NO_STRING : strings.add(cls.mSourceFile));
+            table.writeInt(methodCount);
+            table.writeInt(cls.mMethods.size());
+            methodCount += cls.mMethods.size();
+        }
+        // Sort is stable so inlined frames keep their mapping file order
+        for (ClassMapping cls : classes) {
+            Collections.sort(cls.mMethods, (a, b) -> a.mObfuscatedName.compareTo(b.mObfuscatedName));
+            for (MethodMapping method : cls.mMethods) {
+                table.writeInt(strings.add(method.mObfuscatedName));
+                table.writeInt(strings.add(method.mOriginalName));
+                table.writeInt(method.mObfuscatedStart);
+                table.writeInt(method.mObfuscatedEnd);
+                table.writeInt(method.mOriginalStart);
+                table.writeInt(method.mOriginalEnd);
+            }
+        }
+        int classTableOffset = MappingIndex.HEADER_SIZE;
+        int methodTableOffset = classTableOffset + classes.size() * MappingIndex.CLASS_ENTRY_SIZE;
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MappingIndex.MAGIC);
+        header.writeInt(MappingIndex.VERSION);
+        header.writeInt(classes.size());
+        header.writeInt(methodCount);
+        header.writeInt(classTableOffset);
+        header.writeInt(methodTableOffset);
+        header.writeInt(methodTableOffset + methodCount * MappingIndex.METHOD_ENTRY_SIZE);
+        tables.writeTo(out);
+        strings.mBytes.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Parses class line e.g. {@code com.example.Foo -> a.b:}.
+     */
+    private void parseClass(String line) {
+        int arrow = line.indexOf(ARROW);
+        int end = line.endsWith(":") ? line.length() - 1 : line.length();
+        if (arrow < 0 || end < arrow + ARROW.length()) {
+            mCurrentClass = null;
+            return;
+        }
+        mCurrentClass = new ClassMapping(line.substring(0, arrow).trim(),
+                line.substring(arrow + ARROW.length(), end).trim());
+        mClasses.add(mCurrentClass);
+    }
+
+    /**
+     * Parses member line e.g. {@code 1:3:void foo(int):10:12 -> a}. Field lines are skipped.
+     */
+    private void parseMember(String line) {
+        int arrow = line.indexOf(ARROW);
+        if (arrow < 0) return;
+        String obfuscatedName = line.substring(arrow + ARROW.length()).trim();
+        String signature = line.substring(0, arrow);
+        int open = signature.indexOf('(');
+        int close = signature.indexOf(')', open);
+        if (open < 0 || close < 0) return; // Field
+        int obfuscatedStart = 0;
+        int obfuscatedEnd = 0;
+        int start = 0;
+        int colon = signature.indexOf(':');
+        if (colon >= 0 && colon < open) {
+            int second = signature.indexOf(':', colon + 1);
+            if (second < 0 || second > open) return;
+            obfuscatedStart = parseLine(signature, 0, colon);
+            obfuscatedEnd = parseLine(signature, colon + 1, second);
+            start = second + 1;
+        }
+        int space = signature.lastIndexOf(' ', open);
+        String originalName = signature.substring(Math.max(space + 1, start), open);
+        int originalStart = obfuscatedStart;
+        int originalEnd = obfuscatedEnd;
+        if (close + 1 < signature.length() && signature.charAt(close + 1) == ':') {
+            int second = signature.indexOf(':', close + 2);
+            originalStart = parseLine(signature, close + 2, second < 0 ? signature.length() : second);
+            originalEnd = second < 0 ? originalStart : parseLine(signature, second + 1, signature.length());
+        }
+        if (obfuscatedStart < 0 || obfuscatedEnd < obfuscatedStart || originalStart < 0 || originalEnd < 0) return;
+        mCurrentClass.mMethods.add(new MethodMapping(obfuscatedName, originalName, obfuscatedStart, obfuscatedEnd,
+                originalStart, originalEnd));
+        mMethodCount++;
+    }
+
+    /**
+     * Parses comment line keeping source file name of current class.
+     */
+    private void parseComment(String line) {
+        if (mCurrentClass == null || !line.contains(SOURCE_FILE_ID)) return;
+        int start = line.indexOf(FILE_NAME_KEY);
+        if (start < 0) return;
+        start += FILE_NAME_KEY.length();
+        int end = line.indexOf('"', start);
+        if (end > start) mCurrentClass.mSourceFile = line.substring(start, end);
+    }
+
+    /**
+     * Parses line number.
+     *
+     * @return line number or -1 if text is not a number
+     */
+    private static int parseLine(String text, int start, int end) {
+        if (start >= end || end - start > 9) return -1;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static final class ClassMapping {
+        final String mOriginalName;
+        final String mObfuscatedName;
+        final ArrayList<MethodMapping> mMethods = new ArrayList<>();
+        String mSourceFile;
+
+        ClassMapping(String originalName, String obfuscatedName) {
+            mOriginalName = originalName;
+            mObfuscatedName = normalize(obfuscatedName);
+        }
+    }
+
+    private static final class MethodMapping {
+        final String mObfuscatedName;
+        final String mOriginalName;
+        final int mObfuscatedStart;
+        final int mObfuscatedEnd;
+        final int mOriginalStart;
+        final int mOriginalEnd;
+
+        MethodMapping(String obfuscatedName, String originalName, int obfuscatedStart, int obfuscatedEnd,
+                      int originalStart, int originalEnd) {
+            mObfuscatedName = normalize(obfuscatedName);
+            mOriginalName = originalName;
+            mObfuscatedStart = obfuscatedStart;
+            mObfuscatedEnd = obfuscatedEnd;
+            mOriginalStart = originalStart;
+            mOriginalEnd = originalEnd;
+        }
+    }
+
+    /**
+     * Returns string as it reads back from UTF-8 so sort order matches comparison in index.
+     */
+    private static String normalize(String name) {
+        return new String(name.getBytes(UTF_8), UTF_8);
+    }
+
+    /**
+     * Pool of distinct strings each written once as varint length and UTF-8 bytes.
+     */
+    private static final class StringPool {
+        final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        final HashMap<String, Integer> mOffsets = new HashMap<>();
+
+        int add(String string) {
+            Integer offset = mOffsets.get(string);
+            if (offset != null) return offset;
+            offset = mBytes.size();
+            byte[] bytes = string.getBytes(UTF_8);
+            int length = bytes.length;
+            while ((length & ~0x7F) != 0) {
+                mBytes.write((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            mBytes.write(length);
+            mBytes.write(bytes, 0, bytes.length);
+            mOffsets.put(string, offset);
+            return offset;
+        }
+    }
+}
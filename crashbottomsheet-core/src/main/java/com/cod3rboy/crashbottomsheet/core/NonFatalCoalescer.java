@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.util.Arrays;
+
+/**
+ * Groups a batch of non-fatal throwables drained from {@link NonFatalQueue} by exception class and top stack
+ * frame, so an exception thrown over and over from the same place is written once with its count.
+ * Groups keep the order in which their first throwable was drained. Group arrays are allocated up front for
+ * the capacity of a batch.
+ * Instances are not thread safe.
+ */
+public final class NonFatalCoalescer {
+    // Hash index of groups, holding group number + 1 or 0 for empty slot
+    private final int[] mIndex;
+    // Per group index of first throwable in batch, count and first and last timestamps
+    private final int[] mFirsts;
+    private final int[] mCounts;
+    private final long[] mFirstTimestamps;
+    private final long[] mLastTimestamps;
+    // Per group exception class and top frame which tell groups apart
+    private final Class<?>[] mClasses;
+    private final StackTraceElement[] mTopFrames;
+    private int mGroupCount;
+
+    /**
+     * Constructor
+     *
+     * @param capacity max number of throwables in a batch
+     */
+    public NonFatalCoalescer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mIndex = new int[Integer.highestOneBit(capacity) << 2];
+        mFirsts = new int[capacity];
+        mCounts = new int[capacity];
+        mFirstTimestamps = new long[capacity];
+        mLastTimestamps = new long[capacity];
+        mClasses = new Class<?>[capacity];
+        mTopFrames = new StackTraceElement[capacity];
+    }
+
+    /**
+     * Groups batch of throwables replacing groups of previous batch.
+     *
+     * @param throwables throwables in batch
+     * @param timestamps timestamps of throwables in batch
+     * @param count      number of throwables in batch, at most capacity
+     * @return number of groups
+     */
+    public int coalesce(Throwable[] throwables, long[] timestamps, int count) {
+        clear();
+        int mask = mIndex.length - 1;
+        for (int i = 0; i < count; i++) {
+            Throwable throwable = throwables[i];
+            Class<?> cls = throwable.getClass();
+            StackTraceElement[] trace = throwable.getStackTrace();
+            StackTraceElement topFrame = trace.length == 0 ? null : trace[0];
+            int slot = hash(cls, topFrame) & mask;
+            int group;
+            while (true) {
+                group = mIndex[slot] - 1;
+                if (group < 0) {
+                    group = mGroupCount++;
+                    mIndex[slot] = group + 1;
+                    mFirsts[group] = i;
+                    mClasses[group] = cls;
+                    mTopFrames[group] = topFrame;
+                    mFirstTimestamps[group] = timestamps[i];
+                    mLastTimestamps[group] = timestamps[i];
+                    break;
+                }
+                if (mClasses[group] == cls && equals(mTopFrames[group], topFrame)) break;
+                slot = (slot + 1) & mask;
+            }
+            mCounts[group]++;
+            mFirstTimestamps[group] = Math.min(mFirstTimestamps[group], timestamps[i]);
+            mLastTimestamps[group] = Math.max(mLastTimestamps[group], timestamps[i]);
+        }
+        return mGroupCount;
+    }
+
+    /**
+     * Returns number of groups of last batch.
+     *
+     * @return group count
+     */
+    public int getGroupCount() {
+        return mGroupCount;
+    }
+
+    /**
+     * Returns index in batch of first throwable of group which represents the group.
+     *
+     * @param group group number
+     * @return index of throwable
+     */
+    public int getFirst(int group) {
+        return mFirsts[group];
+    }
+
+    /**
+     * Returns number of throwables in group.
+     *
+     * @param group group number
+     * @return throwable count
+     */
+    public int getCount(int group) {
+        return mCounts[group];
+    }
+
+    /**
+     * Returns earliest timestamp of throwables in group.
+     *
+     * @param group group number
+     * @return timestamp in milliseconds
+     */
+    public long getFirstTimestamp(int group) {
+        return mFirstTimestamps[group];
+    }
+
+    /**
+     * Returns latest timestamp of throwables in group.
+     *
+     * @param group group number
+     * @return timestamp in milliseconds
+     */
+    public long getLastTimestamp(int group) {
+        return mLastTimestamps[group];
+    }
+
+    /**
+     * Forgets groups of last batch so that throwables and frames are not kept alive.
+     */
+    public void clear() {
+        for (int group = 0; group < mGroupCount; group++) {
+            mClasses[group] = null;
+            mTopFrames[group] = null;
+            mCounts[group] = 0;
+        }
+        Arrays.fill(mIndex, 0);
+        mGroupCount = 0;
+    }
+
+    private static int hash(Class<?> cls, StackTraceElement topFrame) {
+        int hash = cls.hashCode() * 31 + (topFrame == null ? 0 : topFrame.hashCode());
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(StackTraceElement a, StackTraceElement b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
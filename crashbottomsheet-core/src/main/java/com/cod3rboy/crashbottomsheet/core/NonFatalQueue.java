@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue which hands non-fatal throwables from any number of app threads to a single
+ * background worker. All slots are allocated up front and each slot carries a sequence number telling whether
+ * it is free for the producer of a given turn or filled for the consumer, so offering claims a slot with a
+ * single compare-and-set and never waits for other threads. When queue is full the throwable is dropped and
+ * counted instead of blocking the caller.
+ * <p>
+ * Throwable is kept by reference and its stack trace is read by the worker later, so it must not be modified
+ * once offered.
+ */
+public final class NonFatalQueue {
+    /**
+     * Default number of throwables queue holds.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int mMask;
+    // Turn of each slot i.e. position a producer may fill it at, or position + 1 once it is filled
+    private final AtomicLongArray mSequences;
+    private final AtomicReferenceArray<Throwable> mThrowables;
+    private final AtomicLongArray mTimestamps;
+    // Position of next slot to fill
+    private final AtomicLong mTail = new AtomicLong();
+    // Position of next slot to drain, only written by the consumer
+    private final AtomicLong mHead = new AtomicLong();
+    // Number of throwables dropped as queue was full
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param capacity number of throwables queue holds, rounded up to a power of two
+     */
+    public NonFatalQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        if (size <= 0) size = 2;
+        mMask = size - 1;
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) mSequences.set(i, i);
+        mThrowables = new AtomicReferenceArray<>(size);
+        mTimestamps = new AtomicLongArray(size);
+    }
+
+    /**
+     * Returns number of throwables queue holds.
+     *
+     * @return capacity
+     */
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Adds throwable to queue. It can be called from any thread, never waits and does not allocate.
+     *
+     * @param throwable non-fatal throwable
+     * @param timestamp timestamp in milliseconds
+     * @return true if throwable is queued or false if queue is full and throwable is dropped
+     */
+    public boolean offer(Throwable throwable, long timestamp) {
+        long position = mTail.get();
+        int slot;
+        for (; ; ) {
+            slot = (int) position & mMask;
+            long diff = mSequences.get(slot) - position;
+            if (diff == 0) {
+                if (mTail.compareAndSet(position, position + 1)) break;
+                position = mTail.get();
+            } else if (diff < 0) {
+                // Slot still holds throwable of previous turn which consumer has not drained
+                mDropped.incrementAndGet();
+                return false;
+            } else {
+                position = mTail.get(); // Another producer claimed the slot
+            }
+        }
+        mTimestamps.lazySet(slot, timestamp);
+        mThrowables.lazySet(slot, throwable);
+        // Ordered store publishes slot to consumer after its fields
+        mSequences.lazySet(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * Moves queued throwables into given arrays, oldest first. It must only be called by a single consumer
+     * thread. Slots claimed but not yet filled by a producer end the drain and are drained next time.
+     *
+     * @param throwables array to move throwables into
+     * @param timestamps array to move timestamps into, at least as long as throwables
+     * @return number of throwables moved
+     */
+    public int drain(Throwable[] throwables, long[] timestamps) {
+        long position = mHead.get();
+        int count = 0;
+        while (count < throwables.length) {
+            int slot = (int) position & mMask;
+            if (mSequences.get(slot) != position + 1) break;
+            throwables[count] = mThrowables.get(slot);
+            timestamps[count] = mTimestamps.get(slot);
+            count++;
+            mThrowables.lazySet(slot, null);
+            // Hand slot over to producer of next turn
+            mSequences.lazySet(slot, position + getCapacity());
+            position++;
+        }
+        mHead.lazySet(position);
+        return count;
+    }
+
+    /**
+     * Returns approximate number of queued throwables.
+     *
+     * @return number of throwables waiting to be drained
+     */
+    public int size() {
+        long size = mTail.get() - mHead.get();
+        return (int) Math.max(0, Math.min(size, getCapacity()));
+    }
+
+    /**
+     * Returns number of throwables dropped so far because queue was full.
+     *
+     * @return dropped count
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Formats device information and crash details of crash reports. Values are appended to a caller
+ * provided builder so that a report is built in a single buffer.
+ */
+public final class ReportFormatter {
+    /**
+     * Value of numeric device information which is not available.
+     */
+    public static final int UNKNOWN = -1;
+    /**
+     * Portrait screen orientation. Same as android.content.res.Configuration.ORIENTATION_PORTRAIT.
+     */
+    public static final int ORIENTATION_PORTRAIT = 1;
+    /**
+     * Landscape screen orientation. Same as android.content.res.Configuration.ORIENTATION_LANDSCAPE.
+     */
+    public static final int ORIENTATION_LANDSCAPE = 2;
+
+    // Android OS code names indexed by API level
+    private static final String[] ANDROID_CODE_NAMES = {
+            null, "BASE", "BASE_1_1", "CUPCAKE", "DONUT", "ECLAIR", "ECLAIR_0_1", "ECLAIR_MR1", "FROYO",
+            "GINGERBREAD", "GINGERBREAD_MR1", "HONEYCOMB", "HONEYCOMB_MR1", "HONEYCOMB_MR2",
+            "ICE_CREAM_SANDWICH", "ICE_CREAM_SANDWICH_MR1", "JELLY_BEAN", "JELLY_BEAN_MR1", "JELLY_BEAN_MR2",
+            "KITKAT", "KITKAT_WATCH", "LOLLIPOP", "LOLLIPOP_MR1", "M", "N", "N_MR1", "O", "O_MR1", "P", "Q",
+            "R", "S", "S_V2", "TIRAMISU", "UPSIDE_DOWN_CAKE", "VANILLA_ICE_CREAM"
+    };
+
+    private ReportFormatter() {
+    }
+
+    /**
+     * Appends device information which does not change during app lifetime.
+     * Format :-
+     * Application Name : [value]
+     * Package Name : [value]
+     * APK Version Name : [value]
+     * Android OS : [android codename]-[android version]
+     * Manufacturer : [value]
+     * Model : [value]
+     * Brand : [value]
+     * Product : [value]
+     *
+     * @param info            builder to append information to
+     * @param appName         application name
+     * @param packageName     application package name
+     * @param apkVersion      installed APK version name
+     * @param androidCodeName Android OS code name
+     * @param androidVersion  Android OS version name
+     * @param manufacturer    device manufacturer
+     * @param model           device model
+     * @param brand           device brand
+     * @param product         device product
+     * @return given builder
+     */
+    @NonNull
+    public static StringBuilder appendDeviceInfo(StringBuilder info, String appName, String packageName, String apkVersion,
+                                                 String androidCodeName, String androidVersion, String manufacturer,
+                                                 String model, String brand, String product) {
+        return info.append("Application Name : ").append(appName)
+                .append("\nPackage Name : ").append(packageName)
+                .append("\nAPK Version Name : ").append(apkVersion)
+                .append("\nAndroid OS : ").append(androidCodeName).append("-").append(androidVersion)
+                .append("\nManufacturer : ").append(manufacturer)
+                .append("\nModel : ").append(model)
+                .append("\nBrand : ").append(brand)
+                .append("\nProduct : ").append(product);
+    }
+
+    /**
+     * Appends device information captured at crash time which is known, one value per line.
+     * Format :-
+     * Memory : [free] KB free of [total] KB (max [max] KB)
+     * Available Storage : [value] MB
+     * Battery Level : [value]%
+     * Orientation : [Portrait|Landscape]
+     *
+     * @param info             builder to append information to
+     * @param freeMemory       free heap memory in bytes or {@link ReportFormatter#UNKNOWN}
+     * @param totalMemory      total heap memory in bytes
+     * @param maxMemory        max heap memory in bytes
+     * @param availableStorage available storage in bytes or {@link ReportFormatter#UNKNOWN}
+     * @param batteryLevel     battery level in percentage or {@link ReportFormatter#UNKNOWN}
+     * @param orientation      screen orientation
+     * @return given builder
+     */
+    @NonNull
+    public static StringBuilder appendCrashState(StringBuilder info, long freeMemory, long totalMemory, long maxMemory,
+                                                 long availableStorage, int batteryLevel, int orientation) {
+        int start = info.length();
+        if (freeMemory != UNKNOWN) {
+            info.append("Memory : ").append(freeMemory / 1024).append(" KB free of ")
+                    .append(totalMemory / 1024).append(" KB (max ").append(maxMemory / 1024).append(" KB)");
+        }
+        if (availableStorage != UNKNOWN) {
+            if (info.length() > start) info.append('\n');
+            info.append("Available Storage : ").append(availableStorage / (1024 * 1024)).append(" MB");
+        }
+        if (batteryLevel != UNKNOWN) {
+            if (info.length() > start) info.append('\n');
+            info.append("Battery Level : ").append(batteryLevel).append("%");
+        }
+        if (orientation == ORIENTATION_PORTRAIT || orientation == ORIENTATION_LANDSCAPE) {
+            if (info.length() > start) info.append('\n');
+            info.append("Orientation : ").append(orientation == ORIENTATION_PORTRAIT ? "Portrait" : "Landscape");
+        }
+        return info;
+    }
+
+    /**
+     * Appends crash fingerprint and its number of occurrences.
+     * Format :-
+     * Crash Fingerprint : [fingerprint] ([occurrences] occurrences)
+     *
+     * @param info        builder to append information to
+     * @param fingerprint crash fingerprint as hexadecimal string
+     * @param occurrences number of times crash with same fingerprint has occurred on device
+     * @return given builder
+     */
+    @NonNull
+    public static StringBuilder appendFingerprint(StringBuilder info, String fingerprint, int occurrences) {
+        return info.append("Crash Fingerprint : ").append(fingerprint)
+                .append(" (").append(occurrences).append(" occurrences)");
+    }
+
+    /**
+     * Returns Android OS code name for given API level.
+     *
+     * @param sdkInt API level
+     * @return Android OS code name or UNKNOWN
+     */
+    @NonNull
+    public static String getAndroidCodeName(int sdkInt) {
+        if (sdkInt > 0 && sdkInt < ANDROID_CODE_NAMES.length) return ANDROID_CODE_NAMES[sdkInt];
+        return "UNKNOWN";
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+/**
+ * Helpers shared by stack trace writers.
+ */
+final class StackFrames {
+    /**
+     * Max number of frames in a repeated cycle which is collapsed.
+     */
+    static final int MAX_CYCLE_FRAMES = 16;
+    /**
+     * Min number of repetitions of a cycle to collapse it.
+     */
+    static final int MIN_CYCLE_REPEATS = 4;
+
+    private StackFrames() {
+    }
+
+    /**
+     * Returns number of frames at the bottom of given stack trace which it has in common with enclosing trace.
+     *
+     * @param trace          stack trace
+     * @param enclosingTrace stack trace of enclosing throwable or null
+     * @return number of frames in common
+     */
+    static int countFramesInCommon(StackTraceElement[] trace, StackTraceElement[] enclosingTrace) {
+        if (enclosingTrace == null) return 0;
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        return trace.length - 1 - m;
+    }
+
+    /**
+     * Finds shortest cycle of frames starting at given frame which repeats at least
+     * {@link StackFrames#MIN_CYCLE_REPEATS} times.
+     *
+     * @param trace stack trace
+     * @param start index of first frame of cycle
+     * @param last  index of last frame which can be part of cycle
+     * @return number of frames in cycle or 0 if there is no cycle
+     */
+    static int findCycle(StackTraceElement[] trace, int start, int last) {
+        for (int period = 1; period <= MAX_CYCLE_FRAMES; period++) {
+            int repeatedEnd = start + period * MIN_CYCLE_REPEATS - 1;
+            if (repeatedEnd > last) return 0;
+            int k = start + period;
+            while (k <= repeatedEnd && trace[k].equals(trace[k - period])) k++;
+            if (k > repeatedEnd) return period;
+        }
+        return 0;
+    }
+
+    /**
+     * Counts how many times a cycle starting at given frame repeats.
+     *
+     * @param trace  stack trace
+     * @param start  index of first frame of cycle
+     * @param last   index of last frame which can be part of cycle
+     * @param period number of frames in cycle
+     * @return number of repetitions including the first one
+     */
+    static int countRepeats(StackTraceElement[] trace, int start, int last, int period) {
+        int k = start + period;
+        while (k <= last && trace[k].equals(trace[k - period])) k++;
+        return (k - start) / period;
+    }
+
+    /**
+     * Returns the last cause in cause chain of given throwable.
+     *
+     * @param throwable Throwable whose root cause to find
+     * @return root cause or null if throwable has no cause or its causes form a cycle
+     */
+    static Throwable getRootCause(Throwable throwable) {
+        Throwable slow = throwable;
+        Throwable fast = throwable;
+        while (true) {
+            Throwable next = fast.getCause();
+            if (next == null) return fast == throwable ? null : fast;
+            fast = next;
+            next = fast.getCause();
+            if (next == null) return fast;
+            fast = next;
+            slow = slow.getCause();
+            if (slow == fast) return null; // Circular cause chain
+        }
+    }
+
+    /**
+     * Finds first {@link OutOfMemoryError} in cause chain of given throwable. Only first 16 causes are
+     * looked at so that circular cause chains end.
+     *
+     * @param throwable throwable whose causes are searched
+     * @return OutOfMemoryError cause or null if throwable is itself one or is not caused by one
+     */
+    static Throwable getOutOfMemoryCause(Throwable throwable) {
+        if (throwable instanceof OutOfMemoryError) return null;
+        Throwable cause = throwable.getCause();
+        for (int depth = 0; cause != null && depth < 16; cause = cause.getCause(), depth++) {
+            if (cause instanceof OutOfMemoryError) return cause;
+        }
+        return null;
+    }
+
+    /**
+     * Counts causes from given cause up to but excluding given root cause.
+     *
+     * @param cause     first cause
+     * @param rootCause root cause found by {@link StackFrames#getRootCause(Throwable)}
+     * @return number of causes
+     */
+    static int countCauses(Throwable cause, Throwable rootCause) {
+        int count = 0;
+        for (Throwable t = cause; t != rootCause; t = t.getCause()) count++;
+        return count;
+    }
+
+    /**
+     * Appends a stack frame in the same format as {@link StackTraceElement#toString()} on Android.
+     *
+     * @param out   builder to append to
+     * @param frame stack frame
+     * @return given builder
+     */
+    static StringBuilder appendFrame(StringBuilder out, StackTraceElement frame) {
+        out.append(frame.getClassName()).append('.').append(frame.getMethodName());
+        if (frame.isNativeMethod()) {
+            out.append("(Native Method)");
+        } else if (frame.getFileName() == null) {
+            out.append("(Unknown Source)");
+        } else {
+            out.append('(').append(frame.getFileName());
+            if (frame.getLineNumber() >= 0) out.append(':').append(frame.getLineNumber());
+            out.append(')');
+        }
+        return out;
+    }
+
+    /**
+     * Returns number of bytes of a string encoded as UTF-8, counting up for unpaired surrogates.
+     *
+     * @param s string or null
+     * @return length in bytes, 4 for null which is written as "null"
+     */
+    static int getUtf8Length(String s) {
+        if (s == null) return 4;
+        int length = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) length += 2;
+            else if (c >= 0x80) length++;
+        }
+        return length;
+    }
+}
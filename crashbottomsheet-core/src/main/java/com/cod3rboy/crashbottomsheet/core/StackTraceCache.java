@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+/**
+ * Frames of the throwables of one crash. {@link Throwable#getStackTrace()} hands out a new copy of frames array
+ * on every call, so crash handler reads the frames of each throwable once through this cache and every writer
+ * e.g. {@link CrashFingerprint}, {@link CrashRecordWriter} and {@link StackTraceSerializer} gets the same array.
+ * Slots are allocated up front and throwables beyond capacity are read without being cached.
+ * Instances are not thread safe.
+ */
+public final class StackTraceCache {
+    /**
+     * Default max number of throwables cached i.e. a full crash and its concurrent crashes.
+     */
+    public static final int DEFAULT_CAPACITY = 128;
+
+    private final Throwable[] mThrowables;
+    private final StackTraceElement[][] mTraces;
+    private int mCount;
+
+    /**
+     * Constructor
+     *
+     * @param capacity max number of throwables cached
+     */
+    public StackTraceCache(int capacity) {
+        mThrowables = new Throwable[Math.max(capacity, 1)];
+        mTraces = new StackTraceElement[mThrowables.length][];
+    }
+
+    /**
+     * Returns frames of throwable reading them on first call.
+     *
+     * @param throwable throwable
+     * @return stack trace which must not be modified
+     */
+    public StackTraceElement[] get(Throwable throwable) {
+        for (int i = 0; i < mCount; i++) {
+            if (mThrowables[i] == throwable) return mTraces[i];
+        }
+        StackTraceElement[] trace = throwable.getStackTrace();
+        if (mCount < mThrowables.length) {
+            mThrowables[mCount] = throwable;
+            mTraces[mCount++] = trace;
+        }
+        return trace;
+    }
+
+    /**
+     * Forgets cached throwables so they are not retained.
+     */
+    public void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mThrowables[i] = null;
+            mTraces[i] = null;
+        }
+        mCount = 0;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+/**
+ * Outline of stack trace text shown as a list of lines where each cause, suppressed exception, concurrent crash,
+ * crash of another process and appended section e.g. breadcrumbs or thread dump is a section which can be
+ * collapsed to its header line. Only the first section i.e. the crash itself is expanded at first. Text is
+ * split once into line offsets and visible rows are kept as an array of line numbers, so looking up a row is
+ * constant time no matter how large the stack trace is. Empty lines are left out.
+ * <p>
+ * Instances are not thread safe. Outline can be built on a background thread and handed to the UI thread.
+ */
+public final class StackTraceOutline {
+    // Lines which start a nested throwable section, after any indent
+    private static final String[] SECTION_PREFIXES = {
+            "Caused by: ", "Suppressed: ", "Concurrent crash in thread \"", "Crash in process \""
+    };
+    // Captions of sections appended after stack trace
+    private static final String[] SECTION_CAPTIONS = {
+            "Breadcrumbs:", "All threads:", "Collected data:", "Frame timing:", "Logcat:"
+    };
+
+    private final String mText;
+    // Start and end offsets of each line in text
+    private final int[] mLineStarts;
+    private final int[] mLineEnds;
+    private final int mLineCount;
+    // Line number of header of each section and section of each line
+    private final int[] mSectionHeaders;
+    private final int[] mLineSections;
+    private final int mSectionCount;
+    private final boolean[] mExpanded;
+    // Line number of each visible row
+    private final int[] mRows;
+    private int mRowCount;
+
+    private StackTraceOutline(String text, int[] lineStarts, int[] lineEnds, int lineCount, int[] sectionHeaders,
+                              int[] lineSections, int sectionCount) {
+        mText = text;
+        mLineStarts = lineStarts;
+        mLineEnds = lineEnds;
+        mLineCount = lineCount;
+        mSectionHeaders = sectionHeaders;
+        mLineSections = lineSections;
+        mSectionCount = sectionCount;
+        mExpanded = new boolean[sectionCount];
+        if (sectionCount > 0) mExpanded[0] = true;
+        mRows = new int[lineCount];
+        updateRows();
+    }
+
+    /**
+     * Splits stack trace text into lines and sections.
+     *
+     * @param text stack trace text
+     * @return outline with only the first section expanded
+     */
+    public static StackTraceOutline parse(String text) {
+        int capacity = 16;
+        int[] starts = new int[capacity];
+        int[] ends = new int[capacity];
+        int[] headers = new int[capacity];
+        int[] sections = new int[capacity];
+        int lineCount = 0;
+        int sectionCount = 0;
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) end = length;
+            int lineEnd = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            if (lineEnd > start) {
+                if (lineCount == starts.length) {
+                    starts = grow(starts);
+                    ends = grow(ends);
+                    sections = grow(sections);
+                }
+                if (sectionCount == 0 || isSectionHeader(text, start, lineEnd)) {
+                    if (sectionCount == headers.length) headers = grow(headers);
+                    headers[sectionCount++] = lineCount;
+                }
+                starts[lineCount] = start;
+                ends[lineCount] = lineEnd;
+                sections[lineCount] = sectionCount - 1;
+                lineCount++;
+            }
+            start = end + 1;
+        }
+        return new StackTraceOutline(text, starts, ends, lineCount, headers, sections, sectionCount);
+    }
+
+    /**
+     * Returns number of non empty lines.
+     *
+     * @return line count
+     */
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    /**
+     * Returns text of a line.
+     *
+     * @param line line number
+     * @return line text without line break
+     */
+    public String getLine(int line) {
+        return mText.substring(mLineStarts[line], mLineEnds[line]);
+    }
+
+    /**
+     * Returns number of sections.
+     *
+     * @return section count
+     */
+    public int getSectionCount() {
+        return mSectionCount;
+    }
+
+    /**
+     * Returns number of lines of a section following its header.
+     *
+     * @param section section number
+     * @return line count excluding header
+     */
+    public int getSectionLineCount(int section) {
+        int end = section + 1 < mSectionCount ? mSectionHeaders[section + 1] : mLineCount;
+        return end - mSectionHeaders[section] - 1;
+    }
+
+    /**
+     * Tells whether lines of a section are shown.
+     *
+     * @param section section number
+     * @return true if section is expanded
+     */
+    public boolean isExpanded(int section) {
+        return mExpanded[section];
+    }
+
+    /**
+     * Returns number of visible rows i.e. lines of expanded sections and headers of collapsed ones.
+     *
+     * @return row count
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * Returns line shown by a row.
+     *
+     * @param row row number
+     * @return line number
+     */
+    public int getRowLine(int row) {
+        return mRows[row];
+    }
+
+    /**
+     * Returns section of a row.
+     *
+     * @param row row number
+     * @return section number
+     */
+    public int getRowSection(int row) {
+        return mLineSections[mRows[row]];
+    }
+
+    /**
+     * Tells whether a row shows header of its section.
+     *
+     * @param row row number
+     * @return true if row is a section header
+     */
+    public boolean isHeaderRow(int row) {
+        return mSectionHeaders[getRowSection(row)] == mRows[row];
+    }
+
+    /**
+     * Expands or collapses a section.
+     *
+     * @param section  section number
+     * @param expanded true to show lines of section otherwise false
+     * @return number of rows shown or hidden after header row of section, 0 if nothing changed
+     */
+    public int setExpanded(int section, boolean expanded) {
+        if (mExpanded[section] == expanded) return 0;
+        mExpanded[section] = expanded;
+        updateRows();
+        return getSectionLineCount(section);
+    }
+
+    /**
+     * Returns row showing header of a section.
+     *
+     * @param section section number
+     * @return row number
+     */
+    public int getHeaderRow(int section) {
+        int row = 0;
+        for (int s = 0; s < section; s++) row += mExpanded[s] ? getSectionLineCount(s) + 1 : 1;
+        return row;
+    }
+
+    private void updateRows() {
+        int count = 0;
+        for (int section = 0; section < mSectionCount; section++) {
+            int header = mSectionHeaders[section];
+            mRows[count++] = header;
+            if (!mExpanded[section]) continue;
+            int lines = getSectionLineCount(section);
+            for (int i = 1; i <= lines; i++) mRows[count++] = header + i;
+        }
+        mRowCount = count;
+    }
+
+    private static boolean isSectionHeader(String text, int start, int end) {
+        int at = start;
+        while (at < end && text.charAt(at) == '\t') at++;
+        for (String prefix : SECTION_PREFIXES) {
+            if (text.startsWith(prefix, at)) return true;
+        }
+        for (String caption : SECTION_CAPTIONS) {
+            if (end - start == caption.length() && text.startsWith(caption, start)) return true;
+        }
+        return false;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+/**
+ * Deobfuscates stack trace text using {@link MappingIndex}. Frames are mapped to original class, method and
+ * line, expanding inlined frames into the methods they came from. Class names of exception headers are mapped
+ * as well. Lines which are not found in index are kept as they are. Methods without line information
+ * which map to more than one original method are listed with {@code <OR>} prefix like R8 retrace does.
+ * <p>
+ * Instances are stateless and safe to share between threads.
+ */
+public final class StackTraceRetracer {
+    private static final String FRAME_PREFIX = "at ";
+    private static final String ALTERNATIVE_PREFIX = "<OR> ";
+    private static final String[] HEADER_PREFIXES = {
+            "Caused by: ", "Suppressed: ", "[CIRCULAR REFERENCE:"
+    };
+    private static final String CONCURRENT_CRASH_PREFIX = "Concurrent crash in thread \"";
+    private static final String CONCURRENT_CRASH_SUFFIX = "\": ";
+    // File names which tell that obfuscator has removed source file attribute
+    private static final String SOURCE_FILE = "SourceFile";
+    private static final String UNKNOWN_SOURCE = "Unknown Source";
+
+    private final MappingIndex mIndex;
+
+    public StackTraceRetracer(MappingIndex index) {
+        mIndex = index;
+    }
+
+    /**
+     * Deobfuscates stack trace text.
+     *
+     * @param stackTrace obfuscated stack trace
+     * @return deobfuscated stack trace
+     */
+    public String retrace(CharSequence stackTrace) {
+        String text = stackTrace.toString();
+        StringBuilder out = new StringBuilder(text.length() + text.length() / 4);
+        int start = 0;
+        int length = text.length();
+        while (start <= length) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) end = length;
+            if (!retraceFrame(out, text, start, end) && !retraceHeader(out, text, start, end)) {
+                out.append(text, start, end);
+            }
+            if (end < length) out.append('\n');
+            start = end + 1;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends deobfuscated frame line e.g. {@code \tat a.b.c(SourceFile:12)}.
+     *
+     * @return true if line is a frame of known class otherwise false
+     */
+    private boolean retraceFrame(StringBuilder out, String text, int start, int end) {
+        int at = start;
+        while (at < end && Character.isWhitespace(text.charAt(at))) at++;
+        if (!text.startsWith(FRAME_PREFIX, at)) return false;
+        int nameStart = at + FRAME_PREFIX.length();
+        int open = text.indexOf('(', nameStart);
+        int close = text.lastIndexOf(')', end - 1);
+        if (open < 0 || open > end || close < open) return false;
+        int dot = text.lastIndexOf('.', open);
+        if (dot < nameStart) return false;
+        int cls = mIndex.findClass(text.substring(nameStart, dot));
+        if (cls < 0) return false;
+        String location = text.substring(open + 1, close);
+        int colon = location.lastIndexOf(':');
+        int line = colon < 0 ? -1 : parseLine(location, colon + 1);
+        String fileName = line < 0 ? location : location.substring(0, colon);
+        String className = mIndex.getClassName(cls);
+        String indent = text.substring(start, at);
+        String methodName = text.substring(dot + 1, open);
+        int first = mIndex.findMethod(cls, methodName);
+        int methodEnd = mIndex.getMethodEnd(cls);
+        int written = 0;
+        if (first >= 0 && line > 0) {
+            // Methods whose line range holds the line i.e. the method and methods inlined into it
+            for (int m = first; m < methodEnd && mIndex.isSameMethod(m, first); m++) {
+                if (mIndex.getObfuscatedStart(m) > line || mIndex.getObfuscatedEnd(m) < line) continue;
+                if (written++ > 0) out.append('\n');
+                appendFrame(out.append(indent), cls, className, mIndex.getMethodName(m), fileName,
+                        mIndex.getOriginalLine(m, line));
+            }
+        }
+        if (written == 0 && first >= 0) {
+            // No line information so list each distinct original method once
+            for (int m = first; m < methodEnd && mIndex.isSameMethod(m, first); m++) {
+                String name = mIndex.getMethodName(m);
+                if (isListedBefore(first, m, name)) continue;
+                if (written > 0) out.append('\n');
+                out.append(indent);
+                if (written++ > 0) out.append(ALTERNATIVE_PREFIX);
+                appendFrame(out, cls, className, name, fileName, line);
+            }
+        }
+        if (written == 0) appendFrame(out.append(indent), cls, className, methodName, fileName, line);
+        return true;
+    }
+
+    /**
+     * Appends frame of original method. Inlined method from another class is qualified with its class name.
+     */
+    private void appendFrame(StringBuilder out, int cls, String className, String methodName, String fileName,
+                             int line) {
+        int dot = methodName.lastIndexOf('.');
+        boolean otherClass = dot >= 0;
+        String frameClass = otherClass ? methodName.substring(0, dot) : className;
+        out.append(FRAME_PREFIX).append(frameClass).append('.').append(methodName, dot + 1, methodName.length())
+                .append('(');
+        if (line < 0 && !SOURCE_FILE.equals(fileName)) {
+            out.append(fileName); // e.g. Native Method or Unknown Source
+        } else {
+            String sourceFile = otherClass ? null : mIndex.getSourceFile(cls);
+            if (sourceFile == null) {
+                sourceFile = SOURCE_FILE.equals(fileName) || UNKNOWN_SOURCE.equals(fileName) || otherClass
+                        ? getSourceFileName(frameClass) : fileName;
+            }
+            out.append(sourceFile);
+            if (line >= 0) out.append(':').append(line);
+        }
+        out.append(')');
+    }
+
+    /**
+     * Tells whether method name is listed by an earlier method with the same obfuscated name.
+     */
+    private boolean isListedBefore(int first, int method, String name) {
+        for (int m = first; m < method; m++) {
+            if (name.equals(mIndex.getMethodName(m))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends exception header line with deobfuscated class name e.g. {@code Caused by: a.b: message}.
+     *
+     * @return true if line starts with a known class otherwise false
+     */
+    private boolean retraceHeader(StringBuilder out, String text, int start, int end) {
+        int nameStart = start;
+        while (nameStart < end && text.charAt(nameStart) == '\t') nameStart++;
+        for (String prefix : HEADER_PREFIXES) {
+            if (text.startsWith(prefix, nameStart)) {
+                nameStart += prefix.length();
+                break;
+            }
+        }
+        if (text.startsWith(CONCURRENT_CRASH_PREFIX, nameStart)) {
+            int suffix = text.indexOf(CONCURRENT_CRASH_SUFFIX, nameStart + CONCURRENT_CRASH_PREFIX.length());
+            if (suffix < 0 || suffix > end) return false;
+            nameStart = suffix + CONCURRENT_CRASH_SUFFIX.length();
+        }
+        int nameEnd = nameStart;
+        while (nameEnd < end) {
+            char c = text.charAt(nameEnd);
+            if (c == ':' || c == ']') break;
+            if (Character.isWhitespace(c) || c == '(' || c == '"') return false;
+            nameEnd++;
+        }
+        if (nameEnd == nameStart) return false;
+        String className = mIndex.findClassName(text.substring(nameStart, nameEnd));
+        if (className == null) return false;
+        out.append(text, start, nameStart).append(className).append(text, nameEnd, end);
+        return true;
+    }
+
+    /**
+     * Returns Java source file name of class i.e. name of its outermost class.
+     */
+    private static String getSourceFileName(String className) {
+        int start = className.lastIndexOf('.') + 1;
+        int end = className.indexOf('$', start);
+        return className.substring(start, end < 0 ? className.length() : end) + ".java";
+    }
+
+    /**
+     * Parses line number of frame location.
+     *
+     * @return line number or -1 if text is not a number
+     */
+    private static int parseLine(String text, int start) {
+        int end = text.length();
+        if (start >= end || end - start > 9) return -1;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serializer which writes stack trace of a {@link Throwable} as UTF-8 text directly into a
+ * fixed size buffer allocated up front. Output has the same layout as
+ * {@link Throwable#printStackTrace()} including causes, suppressed exceptions and
+ * "... N more" frames. Serializer stops writing when buffer is full and appends
+ * {@link StackTraceSerializer#TRUNCATION_MARKER} so it never allocates in proportion to the
+ * size of stack trace other than the frames array handed out by {@link Throwable#getStackTrace()}, which is
+ * read once per throwable of a crash when serializer shares a {@link StackTraceCache} with other writers.
+ * <p>
+ * Stack traces are compacted in the same pass so that they fit in the buffer and still show the root cause.
+ * Frames repeated in a cycle e.g. deep recursion of {@link StackOverflowError} are written once followed by
+ * number of repetitions. Each throwable gets a share of the buffer and keeps its top and bottom frames when
+ * its frames do not fit in its share, so causes at the end of the chain are not cut off. Root cause gets a
+ * larger share and keeps its top frames. It is written even when the cause chain is longer than the number
+ * of throwables walked, in which case the causes above it are omitted.
+ * Instances are not thread safe.
+ */
+public final class StackTraceSerializer {
+    /**
+     * Default max number of bytes in serialized stack trace.
+     */
+    public static final int DEFAULT_MAX_BYTES = 256 * 1024; // 256 KB
+    /**
+     * Min number of bytes allowed for serialized stack trace.
+     */
+    public static final int MIN_MAX_BYTES = 4 * 1024; // 4 KB
+    /**
+     * Marker appended to stack trace when it is truncated.
+     */
+    public static final String TRUNCATION_MARKER = " <TRUNCATED! STACK TRACE IS TOO LARGE>";
+
+    // Max number of nested throwables walked in causes and suppressed exceptions
+    private static final int MAX_THROWABLES = 64;
+    // Max number of frames written by minimal serialization
+    private static final int MINIMAL_MAX_FRAMES = 32;
+    // Number of bottom frames of a throwable kept when its frames do not fit in its share of buffer
+    private static final int TAIL_FRAMES = 8;
+    // Max number of bytes of buffer reserved for each throwable which is yet to be written
+    private static final int MAX_RESERVED_BYTES_PER_THROWABLE = 2048;
+    // Max number of bytes of omitted frames line excluding indent i.e. "\t... 2147483647 frames omitted\n"
+    private static final int OMITTED_LINE_BYTES = 32;
+    private static final String CAUSE_CAPTION = "Caused by: ";
+    private static final String SUPPRESSED_CAPTION = "Suppressed: ";
+    private static final String CONCURRENT_CRASH_CAPTION = "Concurrent crash in thread \"";
+    private static final String BREADCRUMBS_CAPTION = "\nBreadcrumbs:\n";
+    private static final String THREAD_DUMP_CAPTION = "\nAll threads:\n";
+    private static final String COLLECTED_DATA_CAPTION = "\nCollected data:\n";
+    private static final String FRAME_TIMING_CAPTION = "\nFrame timing:\n";
+
+    // Buffer holding serialized stack trace
+    private final byte[] mBuffer;
+    // Buffer view over mBuffer used to write serialized stack trace into channels
+    private final ByteBuffer mByteBuffer;
+    // Number of bytes available for stack trace excluding truncation marker
+    private final int mLimit;
+    // Frames of crash throwables or null
+    private final StackTraceCache mTraces;
+    // Throwables already written, used to detect circular references
+    private final Throwable[] mSeen = new Throwable[MAX_THROWABLES];
+    private int mSeenCount;
+    // Last cause of the throwable being written or null if it has none
+    private Throwable mRootCause;
+    // Number of bytes written in mBuffer
+    private int mLength;
+    // Number of throwables to be written in current stack trace
+    private int mThrowableCount;
+    // Whether stack trace was truncated
+    private boolean mTruncated;
+    // Whether frames were collapsed or omitted
+    private boolean mCompacted;
+    // Whether only crashing throwable and its top frames are written
+    private boolean mMinimal;
+    // OutOfMemoryError which caused the throwable being written minimally or null
+    private Throwable mOutOfMemoryCause;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes max number of bytes in serialized stack trace including truncation marker
+     */
+    public StackTraceSerializer(int maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * Constructor of serializer which reads frames through a cache shared with other writers of a crash.
+     *
+     * @param maxBytes max number of bytes in serialized stack trace including truncation marker
+     * @param traces   frames of crash throwables or null to read them directly
+     */
+    public StackTraceSerializer(int maxBytes, StackTraceCache traces) {
+        mBuffer = new byte[Math.max(maxBytes, MIN_MAX_BYTES)];
+        mByteBuffer = ByteBuffer.wrap(mBuffer);
+        mLimit = mBuffer.length - TRUNCATION_MARKER.length();
+        mTraces = traces;
+    }
+
+    /**
+     * Serializes stack trace of given throwable replacing any previously serialized content.
+     *
+     * @param throwable Throwable to serialize
+     * @return number of bytes written
+     */
+    public int serialize(Throwable throwable) {
+        return serialize(throwable, false);
+    }
+
+    /**
+     * Serializes only the crashing throwable and its top frames without suppressed exceptions. Causes are
+     * skipped except the {@link OutOfMemoryError}, if any, which is written with its top frames as well.
+     * It is meant to report crashes when there is hardly any memory left e.g. {@link OutOfMemoryError}.
+     *
+     * @param throwable Throwable to serialize
+     * @return number of bytes written
+     */
+    public int serializeMinimal(Throwable throwable) {
+        return serialize(throwable, true);
+    }
+
+    private int serialize(Throwable throwable, boolean minimal) {
+        mMinimal = minimal;
+        mLength = 0;
+        mTruncated = false;
+        mCompacted = false;
+        mSeenCount = 0;
+        mOutOfMemoryCause = minimal ? StackFrames.getOutOfMemoryCause(throwable) : null;
+        mThrowableCount = minimal ? (mOutOfMemoryCause == null ? 1 : 2) : countThrowables(throwable);
+        for (int i = 0; i < mSeenCount; i++) mSeen[i] = null;
+        mSeenCount = 0;
+        mRootCause = minimal ? null : StackFrames.getRootCause(throwable);
+        writeThrowable(throwable, null, "", 0);
+        return finish();
+    }
+
+    /**
+     * Appends truncation marker if stack trace was truncated and sets up buffer view over it.
+     *
+     * @return number of bytes in serialized stack trace
+     */
+    private int finish() {
+        if (mTruncated) {
+            // Marker is ASCII so it always fits in the space reserved for it
+            for (int i = 0; i < TRUNCATION_MARKER.length(); i++) {
+                mBuffer[mLength++] = (byte) TRUNCATION_MARKER.charAt(i);
+            }
+        }
+        for (int i = 0; i < mSeenCount; i++) mSeen[i] = null; // Do not retain throwables
+        mRootCause = null;
+        mOutOfMemoryCause = null;
+        mByteBuffer.clear();
+        mByteBuffer.limit(mLength);
+        return mLength;
+    }
+
+    /**
+     * Appends stack trace of a crash which occurred on another thread at the same time as the crash
+     * serialized last. It is written in the space left in buffer and nothing is written if last stack
+     * trace was truncated.
+     *
+     * @param threadName name of thread which crashed
+     * @param throwable  crash throwable
+     * @return number of bytes in serialized stack trace
+     */
+    public int appendConcurrentCrash(String threadName, Throwable throwable) {
+        if (mTruncated) return mLength;
+        mSeenCount = 0;
+        mOutOfMemoryCause = mMinimal ? StackFrames.getOutOfMemoryCause(throwable) : null;
+        mThrowableCount = mMinimal ? (mOutOfMemoryCause == null ? 1 : 2) : countThrowables(throwable);
+        for (int i = 0; i < mSeenCount; i++) mSeen[i] = null;
+        mSeenCount = 0;
+        mRootCause = mMinimal ? null : StackFrames.getRootCause(throwable);
+        write(CONCURRENT_CRASH_CAPTION);
+        write(threadName);
+        write("\": ");
+        writeThrowable(throwable, null, "", 0);
+        return finish();
+    }
+
+    /**
+     * Appends breadcrumbs recorded before the crash after the stack traces serialized so far. It is written
+     * in the space left in buffer and nothing is written if last stack trace was truncated.
+     *
+     * @param breadcrumbs breadcrumbs text
+     * @return number of bytes in serialized stack trace
+     */
+    public int appendBreadcrumbs(CharSequence breadcrumbs) {
+        return appendSection(BREADCRUMBS_CAPTION, breadcrumbs);
+    }
+
+    /**
+     * Appends dump of all threads taken at crash time after the stack traces serialized so far. It is written
+     * in the space left in buffer and nothing is written if last stack trace was truncated.
+     *
+     * @param threadDump thread dump text
+     * @return number of bytes in serialized stack trace
+     */
+    public int appendThreadDump(CharSequence threadDump) {
+        return appendSection(THREAD_DUMP_CAPTION, threadDump);
+    }
+
+    /**
+     * Appends output of crash collectors after the stack traces serialized so far. It is written in the space
+     * left in buffer and nothing is written if last stack trace was truncated.
+     *
+     * @param collectedData collected text
+     * @return number of bytes in serialized stack trace
+     */
+    public int appendCollectedData(CharSequence collectedData) {
+        return appendSection(COLLECTED_DATA_CAPTION, collectedData);
+    }
+
+    /**
+     * Appends frame time statistics of the seconds before the crash after the stack traces serialized so far.
+     * It is written in the space left in buffer and nothing is written if last stack trace was truncated.
+     *
+     * @param frameTiming frame timing text
+     * @return number of bytes in serialized stack trace
+     */
+    public int appendFrameTiming(CharSequence frameTiming) {
+        return appendSection(FRAME_TIMING_CAPTION, frameTiming);
+    }
+
+    private int appendSection(String caption, CharSequence text) {
+        if (mTruncated) return mLength;
+        mSeenCount = 0;
+        write(caption);
+        write(text);
+        return finish();
+    }
+
+    /**
+     * Returns buffer view over serialized stack trace positioned at start of content.
+     *
+     * @return serialized stack trace buffer
+     */
+    public ByteBuffer getByteBuffer() {
+        return mByteBuffer;
+    }
+
+    /**
+     * Returns number of bytes in serialized stack trace.
+     *
+     * @return length in bytes
+     */
+    public int getLength() {
+        return mLength;
+    }
+
+    /**
+     * Tells whether last serialized stack trace was truncated.
+     *
+     * @return true if truncated otherwise false
+     */
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+
+    /**
+     * Tells whether frames of last serialized stack trace were collapsed or omitted to keep it small.
+     *
+     * @return true if compacted otherwise false
+     */
+    public boolean isCompacted() {
+        return mCompacted;
+    }
+
+    /**
+     * Counts throwables which are written for given throwable i.e. itself, its suppressed exceptions
+     * and causes. Counted throwables are left in seen throwables.
+     *
+     * @param throwable Throwable to count
+     * @return number of throwables
+     */
+    private int countThrowables(Throwable throwable) {
+        if (isSeen(throwable) || mSeenCount == MAX_THROWABLES) return 0;
+        mSeen[mSeenCount++] = throwable;
+        int count = 1;
+        for (Throwable suppressed : throwable.getSuppressed()) count += countThrowables(suppressed);
+        Throwable cause = throwable.getCause();
+        if (cause != null) count += countThrowables(cause);
+        return count;
+    }
+
+    /**
+     * Writes a throwable along with its suppressed exceptions and causes.
+     *
+     * @param throwable      Throwable to write
+     * @param enclosingTrace stack trace of enclosing throwable or null
+     * @param caption        caption written before throwable
+     * @param indent         number of tabs written before each line
+     */
+    private void writeThrowable(Throwable throwable, StackTraceElement[] enclosingTrace,
+                                String caption, int indent) {
+        if (mTruncated) return;
+        if (isSeen(throwable)) {
+            writeIndent(indent);
+            write(caption);
+            write("[CIRCULAR REFERENCE:");
+            writeHeader(throwable);
+            write("]\n");
+            return;
+        }
+        boolean rootPending = mRootCause != null && throwable != mRootCause && !isSeen(mRootCause);
+        // Last seen slot is kept for root cause
+        if (mSeenCount == MAX_THROWABLES || (rootPending && mSeenCount == MAX_THROWABLES - 1)) return;
+        mSeen[mSeenCount++] = throwable;
+        // Leave some of the buffer for throwables which are yet to be written
+        int remaining = mLimit - mLength;
+        int throwablesLeft = Math.max(mThrowableCount - mSeenCount, 0);
+        // Only suppressed exceptions of root cause are left after it when causes above it were skipped
+        if (throwable == mRootCause) throwablesLeft = Math.min(throwablesLeft, throwable.getSuppressed().length);
+        int reserved = throwablesLeft == 0 ? 0
+                : throwablesLeft * Math.min(MAX_RESERVED_BYTES_PER_THROWABLE, remaining / (2 * throwablesLeft));
+        // Root cause gets a larger share so that its top frames always fit
+        if (rootPending) reserved += Math.min(MAX_RESERVED_BYTES_PER_THROWABLE, remaining / 4);
+        int end = mLimit - reserved;
+
+        StackTraceElement[] trace = mTraces == null ? throwable.getStackTrace() : mTraces.get(throwable);
+        // Compute number of frames in common with enclosing trace
+        int framesInCommon = StackFrames.countFramesInCommon(trace, enclosingTrace);
+        int m = trace.length - 1 - framesInCommon;
+
+        writeIndent(indent);
+        write(caption);
+        writeHeader(throwable);
+        write('\n');
+        if (mMinimal) m = Math.min(m, MINIMAL_MAX_FRAMES - 1);
+        // Leave room for the line of frames in common
+        if (framesInCommon != 0) end -= indent + OMITTED_LINE_BYTES;
+        writeFrames(trace, m, indent, end, throwable != mRootCause);
+        if (framesInCommon != 0) {
+            writeIndent(indent);
+            write("\t... ");
+            write(framesInCommon);
+            write(" more\n");
+        }
+        if (mMinimal) {
+            if (m < trace.length - 1) {
+                write("\t... ");
+                write(trace.length - 1 - m);
+                write(" more\n");
+            }
+            Throwable cause = mOutOfMemoryCause;
+            if (cause == null || cause == throwable) return;
+            int omitted = StackFrames.countCauses(throwable.getCause(), cause);
+            if (omitted > 0) {
+                mCompacted = true;
+                write("\t... ");
+                write(omitted);
+                write(" causes omitted\n");
+            }
+            writeThrowable(cause, trace, CAUSE_CAPTION, 0);
+            return;
+        }
+        for (Throwable suppressed : throwable.getSuppressed()) {
+            writeThrowable(suppressed, trace, SUPPRESSED_CAPTION, indent + 1);
+        }
+        Throwable cause = throwable.getCause();
+        if (cause == null) return;
+        boolean noRoom = mSeenCount >= MAX_THROWABLES - 1
+                || mLimit - mLength < Math.min(MAX_RESERVED_BYTES_PER_THROWABLE, mLimit / 4);
+        if (indent == 0 && noRoom && mRootCause != null && cause != mRootCause && !isSeen(mRootCause)) {
+            // Cause chain is too long so skip to root cause
+            mCompacted = true;
+            writeIndent(indent);
+            write("\t... ");
+            write(StackFrames.countCauses(cause, mRootCause));
+            write(" causes omitted\n");
+            cause = mRootCause;
+        }
+        writeThrowable(cause, trace, CAUSE_CAPTION, indent);
+    }
+
+    /**
+     * Writes frames of a throwable collapsing repeated cycles. If frames do not fit before given end of
+     * buffer then top frames which fit are written followed by number of omitted frames and bottom frames.
+     * Bottom frames take at most half of the share so that top frames, which tell where throwable was
+     * thrown, are not pushed out by them.
+     *
+     * @param trace    stack trace of throwable
+     * @param last     index of last frame to write
+     * @param indent   number of tabs written before each line
+     * @param end      end of buffer share of throwable
+     * @param keepTail whether bottom frames are kept or only top frames which fit are written
+     */
+    private void writeFrames(StackTraceElement[] trace, int last, int indent, int end, boolean keepTail) {
+        int tailStart = keepTail ? Math.max(last - TAIL_FRAMES + 1, 0) : last + 1;
+        int tailBytes = 0;
+        for (int i = tailStart; i <= last; i++) tailBytes += getFrameLineLength(trace[i], indent);
+        int omittedLineBytes = indent + OMITTED_LINE_BYTES;
+        while (tailStart <= last && 2 * tailBytes > end - mLength - omittedLineBytes) {
+            tailBytes -= getFrameLineLength(trace[tailStart++], indent);
+        }
+        int i = 0;
+        while (i <= last && !mTruncated) {
+            int period = StackFrames.findCycle(trace, i, last);
+            int lines = Math.max(period, 1);
+            if (i < tailStart) {
+                int lineBytes = 0;
+                for (int j = 0; j < lines; j++) lineBytes += getFrameLineLength(trace[i + j], indent);
+                if (period > 0) lineBytes += omittedLineBytes;
+                if (mLength + lineBytes + omittedLineBytes + tailBytes > end) {
+                    // Skip to bottom frames
+                    mCompacted = true;
+                    writeIndent(indent);
+                    write("\t... ");
+                    write(tailStart - i);
+                    write(" frames omitted\n");
+                    i = tailStart;
+                    continue;
+                }
+            }
+            for (int j = 0; j < lines; j++) writeFrameLine(trace[i + j], indent);
+            if (period == 0) {
+                i++;
+                continue;
+            }
+            // Write number of repetitions instead of repeated frames
+            int repeats = StackFrames.countRepeats(trace, i, last, period);
+            mCompacted = true;
+            writeIndent(indent);
+            write("\t... ");
+            write(period);
+            write(period == 1 ? " frame above repeated " : " frames above repeated ");
+            write(repeats - 1);
+            write(" more times\n");
+            i += period * repeats;
+        }
+    }
+
+    /**
+     * Writes a stack frame line.
+     *
+     * @param frame  stack frame to write
+     * @param indent number of tabs written before line
+     */
+    private void writeFrameLine(StackTraceElement frame, int indent) {
+        writeIndent(indent);
+        write("\tat ");
+        writeFrame(frame);
+        write('\n');
+    }
+
+    /**
+     * Returns number of bytes written by {@link StackTraceSerializer#writeFrameLine(StackTraceElement, int)}.
+     *
+     * @param frame  stack frame
+     * @param indent number of tabs written before line
+     * @return line length in bytes
+     */
+    private static int getFrameLineLength(StackTraceElement frame, int indent) {
+        int length = indent + 5 + StackFrames.getUtf8Length(frame.getClassName())
+                + StackFrames.getUtf8Length(frame.getMethodName()) + 1;
+        if (frame.isNativeMethod()) {
+            length += 15;
+        } else if (frame.getFileName() == null) {
+            length += 16;
+        } else {
+            length += StackFrames.getUtf8Length(frame.getFileName()) + 2;
+            if (frame.getLineNumber() >= 0) length += 11;
+        }
+        return length;
+    }
+
+    /**
+     * Writes throwable header in the same format as {@link Throwable#toString()}.
+     *
+     * @param throwable Throwable whose header to write
+     */
+    private void writeHeader(Throwable throwable) {
+        write(throwable.getClass().getName());
+        String message = throwable.getLocalizedMessage();
+        if (message != null) {
+            write(": ");
+            write(message);
+        }
+    }
+
+    /**
+     * Writes a stack frame in the same format as {@link StackTraceElement#toString()}.
+     *
+     * @param frame stack frame to write
+     */
+    private void writeFrame(StackTraceElement frame) {
+        write(frame.getClassName());
+        write('.');
+        write(frame.getMethodName());
+        if (frame.isNativeMethod()) {
+            write("(Native Method)");
+        } else if (frame.getFileName() == null) {
+            write("(Unknown Source)");
+        } else {
+            write('(');
+            write(frame.getFileName());
+            if (frame.getLineNumber() >= 0) {
+                write(':');
+                write(frame.getLineNumber());
+            }
+            write(')');
+        }
+    }
+
+    private void writeIndent(int indent) {
+        for (int i = 0; i < indent; i++) write('\t');
+    }
+
+    private boolean isSeen(Throwable throwable) {
+        for (int i = 0; i < mSeenCount; i++) {
+            if (mSeen[i] == throwable) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes a string encoded as UTF-8.
+     *
+     * @param s string to write, null is written as "null"
+     */
+    private void write(CharSequence s) {
+        if (s == null) s = "null";
+        int length = s.length();
+        for (int i = 0; i < length && !mTruncated; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                write(c);
+            } else if (c < 0x800) {
+                if (ensureCapacity(2)) {
+                    mBuffer[mLength++] = (byte) (0xC0 | (c >> 6));
+                    mBuffer[mLength++] = (byte) (0x80 | (c & 0x3F));
+                }
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                if (ensureCapacity(4)) {
+                    mBuffer[mLength++] = (byte) (0xF0 | (codePoint >> 18));
+                    mBuffer[mLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    mBuffer[mLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    mBuffer[mLength++] = (byte) (0x80 | (codePoint & 0x3F));
+                }
+            } else if (Character.isSurrogate(c)) {
+                write('?'); // Unpaired surrogate
+            } else {
+                if (ensureCapacity(3)) {
+                    mBuffer[mLength++] = (byte) (0xE0 | (c >> 12));
+                    mBuffer[mLength++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    mBuffer[mLength++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes an ASCII character.
+     *
+     * @param c character to write
+     */
+    private void write(char c) {
+        if (ensureCapacity(1)) mBuffer[mLength++] = (byte) c;
+    }
+
+    /**
+     * Writes decimal representation of a non negative integer without allocating.
+     *
+     * @param value value to write
+     */
+    private void write(int value) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) digits++;
+        if (!ensureCapacity(digits)) return;
+        for (int i = mLength + digits - 1; i >= mLength; i--) {
+            mBuffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        mLength += digits;
+    }
+
+    /**
+     * Checks whether given number of bytes can be written and marks stack trace as truncated
+     * if they cannot.
+     *
+     * @param bytes number of bytes to write
+     * @return true if bytes can be written otherwise false
+     */
+    private boolean ensureCapacity(int bytes) {
+        if (mTruncated) return false;
+        if (mLength + bytes > mLimit) {
+            mTruncated = true;
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import java.util.Arrays;
+
+/**
+ * Dumps stack traces of all live threads as text within a time and byte budget so that dumping a huge
+ * thread pool cannot stall a dying process. Main thread is dumped first and threads with identical state
+ * and stack are grouped into one entry with a count e.g. idle pool workers.
+ * Arrays holding threads are allocated up front. Instances are not thread safe.
+ */
+public final class ThreadDumper {
+    /**
+     * Default max number of threads looked at.
+     */
+    public static final int DEFAULT_MAX_THREADS = 512;
+
+    // Max number of names of other threads listed in a group
+    private static final int MAX_GROUP_NAMES = 4;
+    // Max number of bytes of line telling how many threads are not dumped which is always kept room for
+    private static final int NOT_DUMPED_LINE_BYTES = 64;
+
+    // Threads enumerated for dump
+    private final Thread[] mThreads;
+    // Stack trace and state of each enumerated thread
+    private final StackTraceElement[][] mTraces;
+    private final Thread.State[] mStates;
+    // Hash of state and stack of each captured thread, compared before stacks when grouping
+    private final int[] mHashes;
+    // Index of first thread of the group of each thread
+    private final int[] mGroups;
+    // Number of threads in the group led by each thread
+    private final int[] mGroupSizes;
+
+    /**
+     * Constructor
+     *
+     * @param maxThreads max number of threads looked at
+     */
+    public ThreadDumper(int maxThreads) {
+        maxThreads = Math.max(maxThreads, 1);
+        mThreads = new Thread[maxThreads];
+        mTraces = new StackTraceElement[maxThreads][];
+        mStates = new Thread.State[maxThreads];
+        mHashes = new int[maxThreads];
+        mGroups = new int[maxThreads];
+        mGroupSizes = new int[maxThreads];
+    }
+
+    /**
+     * Appends stack traces of all live threads other than given crashed thread.
+     * Format :-
+     * "[name]" [daemon ]prio=[priority] tid=[id] [state][ (N threads: "[other name]", ...)]
+     *     at [frame]
+     *
+     * @param out             builder to append to
+     * @param mainThread      main thread which is dumped first or null
+     * @param crashedThread   thread whose stack trace is already reported or null
+     * @param timeBudgetNanos max time spent on capturing, grouping and appending stack traces
+     * @param maxBytes        max number of UTF-8 bytes appended, at least 64
+     * @return number of threads dumped
+     */
+    public int dump(StringBuilder out, Thread mainThread, Thread crashedThread, long timeBudgetNanos, int maxBytes) {
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        int count = enumerate(mainThread);
+        // Capture stack traces until time budget runs out
+        int captured = 0;
+        for (int i = 0; i < count; i++) {
+            Thread thread = mThreads[i];
+            if (thread == crashedThread || System.nanoTime() - deadline > 0) continue;
+            mStates[captured] = thread.getState();
+            mTraces[captured] = thread.getStackTrace();
+            mHashes[captured] = 31 * mStates[captured].hashCode() + Arrays.hashCode(mTraces[captured]);
+            mThreads[captured++] = thread;
+        }
+        boolean timedOut = System.nanoTime() - deadline > 0;
+        int skipped = count - captured - (contains(count, crashedThread) ? 1 : 0);
+        // Group threads with identical state and stack, main thread is never grouped so it stays first.
+        // Threads left when time budget runs out are dumped ungrouped.
+        for (int i = 0; i < captured; i++) {
+            mGroups[i] = i;
+            mGroupSizes[i] = 1;
+            if (mThreads[i] == mainThread || timedOut) continue;
+            if (System.nanoTime() - deadline > 0) {
+                timedOut = true;
+                continue;
+            }
+            for (int j = 0; j < i; j++) {
+                if (mGroups[j] == j && mHashes[j] == mHashes[i] && mThreads[j] != mainThread
+                        && mStates[j] == mStates[i] && Arrays.equals(mTraces[j], mTraces[i])) {
+                    mGroups[i] = j;
+                    mGroupSizes[j]++;
+                    break;
+                }
+            }
+        }
+        int bytes = 0;
+        int dumped = 0;
+        for (int i = 0; i < captured; i++) {
+            if (mGroups[i] != i) continue;
+            if (System.nanoTime() - deadline > 0) {
+                timedOut = true;
+                break;
+            }
+            int entryStart = out.length();
+            appendEntry(out, i, captured);
+            int entryBytes = getUtf8Length(out, entryStart);
+            if (bytes + entryBytes > maxBytes - NOT_DUMPED_LINE_BYTES) {
+                out.setLength(entryStart);
+                break;
+            }
+            bytes += entryBytes;
+            dumped += mGroupSizes[i];
+        }
+        int notDumped = captured - dumped + skipped;
+        if (notDumped > 0) {
+            out.append("... ").append(notDumped).append(notDumped == 1 ? " thread" : " threads")
+                    .append(timedOut ? " not dumped as time budget ran out\n" : " not dumped\n");
+        }
+        // Do not retain threads and their stacks
+        Arrays.fill(mThreads, 0, count, null);
+        Arrays.fill(mTraces, 0, captured, null);
+        return dumped;
+    }
+
+    /**
+     * Enumerates live threads into mThreads with main thread first.
+     *
+     * @return number of threads enumerated
+     */
+    private int enumerate(Thread mainThread) {
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while (group != null && group.getParent() != null) group = group.getParent();
+        int count = group == null ? 0 : group.enumerate(mThreads, true);
+        for (int i = 1; i < count; i++) {
+            if (mThreads[i] == mainThread) {
+                System.arraycopy(mThreads, 0, mThreads, 1, i);
+                mThreads[0] = mainThread;
+                break;
+            }
+        }
+        return count;
+    }
+
+    private boolean contains(int count, Thread thread) {
+        if (thread == null) return false;
+        for (int i = 0; i < count; i++) {
+            if (mThreads[i] == thread) return true;
+        }
+        return false;
+    }
+
+    private void appendEntry(StringBuilder out, int index, int captured) {
+        Thread thread = mThreads[index];
+        out.append('"').append(thread.getName()).append('"');
+        if (thread.isDaemon()) out.append(" daemon");
+        out.append(" prio=").append(thread.getPriority())
+                .append(" tid=").append(thread.getId())
+                .append(' ').append(mStates[index]);
+        int size = mGroupSizes[index];
+        if (size > 1) {
+            out.append(" (").append(size).append(" threads:");
+            int names = 0;
+            for (int i = index + 1; i < captured && names <= MAX_GROUP_NAMES; i++) {
+                if (mGroups[i] != index) continue;
+                out.append(names == 0 ? " " : ", ");
+                if (names++ == MAX_GROUP_NAMES) out.append("...");
+                else out.append('"').append(mThreads[i].getName()).append('"');
+            }
+            out.append(')');
+        }
+        out.append('\n');
+        for (StackTraceElement frame : mTraces[index]) {
+            StackFrames.appendFrame(out.append("\tat "), frame).append('\n');
+        }
+    }
+
+    /**
+     * Returns number of UTF-8 bytes of builder content from given index, counting up for unpaired surrogates.
+     */
+    private static int getUtf8Length(StringBuilder s, int start) {
+        int length = s.length() - start;
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) length += 2;
+            else if (c >= 0x80) length++;
+        }
+        return length;
+    }
+}
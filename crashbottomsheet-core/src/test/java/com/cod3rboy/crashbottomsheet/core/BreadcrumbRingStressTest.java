@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Stress test of {@link BreadcrumbRing} which records breadcrumbs from many threads into small rings so that
+ * writers keep lapping each other, while another thread takes snapshots. Every field of a breadcrumb is
+ * derived from the same value so a snapshot holding fields of different breadcrumbs is detected. Test fails
+ * when too few breadcrumbs were validated as a ring which drops every contended slot would pass otherwise.
+ */
+public class BreadcrumbRingStressTest {
+    private static final int WRITERS = 8;
+    private static final long DURATION_MS = 3000;
+    private static final long MIN_VALIDATED = 10000;
+    private static final String[] MESSAGES = new String[WRITERS];
+
+    static {
+        for (int i = 0; i < WRITERS; i++) MESSAGES[i] = "Writer " + i;
+    }
+
+    @Test
+    public void singleSlotRingIsNeverTorn() throws InterruptedException {
+        assertValidated(1);
+    }
+
+    @Test
+    public void multiSlotRingIsNeverTorn() throws InterruptedException {
+        assertValidated(16);
+    }
+
+    private static void assertValidated(int capacity) throws InterruptedException {
+        long validated = stress(capacity);
+        assertTrue("Only " + validated + " breadcrumbs validated with capacity " + capacity + " but at least "
+                + MIN_VALIDATED + " are expected", validated >= MIN_VALIDATED);
+    }
+
+    /**
+     * Records breadcrumbs from all writers into a ring of given capacity while validating its snapshots.
+     *
+     * @param capacity capacity of ring
+     * @return number of breadcrumbs validated
+     */
+    private static long stress(int capacity) throws InterruptedException {
+        BreadcrumbRing ring = new BreadcrumbRing(capacity);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] writers = new Thread[WRITERS];
+        for (int i = 0; i < WRITERS; i++) {
+            final int writer = i;
+            writers[i] = new Thread(() -> {
+                long value = 0;
+                while (running.get()) {
+                    value++;
+                    // Timestamp holds writer and both arguments are derived from it
+                    long timestamp = value * WRITERS + writer;
+                    ring.record(timestamp, writer, MESSAGES[writer], timestamp * 3, ~timestamp);
+                }
+            }, "writer-" + i);
+            writers[i].start();
+        }
+        BreadcrumbRing.Snapshot snapshot = new BreadcrumbRing.Snapshot(capacity);
+        long breadcrumbs = 0;
+        long deadline = System.currentTimeMillis() + DURATION_MS;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                int count = ring.snapshot(snapshot);
+                if (count > capacity) fail("Snapshot holds " + count + " breadcrumbs");
+                for (int i = 0; i < count; i++) {
+                    long timestamp = snapshot.getTimestamp(i);
+                    int writer = (int) (timestamp % WRITERS);
+                    if (timestamp <= 0 || snapshot.getCategory(i) != writer || snapshot.getMessage(i) != MESSAGES[writer]
+                            || snapshot.getFirstArg(i) != timestamp * 3 || snapshot.getSecondArg(i) != ~timestamp) {
+                        fail("Torn breadcrumb: " + timestamp + " " + snapshot.getCategory(i) + " "
+                                + snapshot.getMessage(i) + " " + snapshot.getFirstArg(i) + " " + snapshot.getSecondArg(i));
+                    }
+                }
+                breadcrumbs += count;
+            }
+        } finally {
+            running.set(false);
+            for (Thread writer : writers) writer.join();
+        }
+        return breadcrumbs;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress test of {@link ConcurrentCrashGate} which fires uncaught exceptions from dozens of threads at once
+ * through the default uncaught exception handler, the same way crash handler receives them, and verifies
+ * that exactly one crash is handled and the others are attached to its record or counted as dropped.
+ */
+public class ConcurrentCrashStressTest {
+    private static final int THREADS = 48;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void oneOfConcurrentCrashesIsHandled() throws Exception {
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        try {
+            for (int round = 0; round < ROUNDS; round++) runRound(round);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+    }
+
+    private static void runRound(int round) throws Exception {
+        ConcurrentCrashGate gate = new ConcurrentCrashGate(ConcurrentCrashGate.DEFAULT_CAPACITY);
+        CrashRecordWriter writer = new CrashRecordWriter(StackTraceSerializer.DEFAULT_MAX_BYTES);
+        AtomicInteger handled = new AtomicInteger();
+        AtomicInteger waited = new AtomicInteger();
+        AtomicInteger arrived = new AtomicInteger();
+        AtomicInteger dropped = new AtomicInteger();
+        byte[][] record = new byte[1][];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> {
+            try {
+                boolean first = gate.enter(thread, throwable);
+                arrived.incrementAndGet();
+                if (!first) {
+                    if (gate.awaitRelease(10000)) waited.incrementAndGet();
+                    return;
+                }
+                handled.incrementAndGet();
+                // Gate reopens once this crash is released so wait until every crash has entered it
+                while (arrived.get() < THREADS) Thread.yield();
+                String[] names = new String[ConcurrentCrashGate.DEFAULT_CAPACITY];
+                Throwable[] throwables = new Throwable[ConcurrentCrashGate.DEFAULT_CAPACITY];
+                int count = gate.getConcurrentCrashes(names, throwables);
+                writer.begin(round);
+                writer.writeThrowable(throwable);
+                writer.writeConcurrentCrashes(names, throwables, count);
+                int length = writer.finish();
+                record[0] = new byte[length];
+                writer.getByteBuffer().get(record[0]);
+                dropped.set(gate.getDroppedCount());
+                gate.release();
+            } finally {
+                done.countDown();
+            }
+        });
+        for (int i = 0; i < THREADS; i++) {
+            final int id = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                throw new IllegalStateException("Crash " + id);
+            }, "crasher-" + i);
+            thread.start();
+        }
+        start.countDown();
+        done.await();
+
+        assertEquals("Handled crashes", 1, handled.get());
+        assertEquals("Released concurrent crashes", THREADS - 1, waited.get());
+        CrashRecord decoded = CrashRecordReader.read(record[0], 0, record[0].length);
+        int attached = decoded.getConcurrentCrashCount();
+        assertTrue("Side buffer exceeded its capacity", attached <= ConcurrentCrashGate.DEFAULT_CAPACITY);
+        assertEquals("Dropped crashes", Math.max(THREADS - 1 - ConcurrentCrashGate.DEFAULT_CAPACITY, 0), dropped.get());
+        assertTrue("Gate did not reopen after crash was handled",
+                gate.enter(Thread.currentThread(), new IllegalStateException("Next crash")));
+        for (int i = 0; i < attached; i++) {
+            assertTrue("Unexpected concurrent thread name", decoded.getConcurrentThreadName(i).startsWith("crasher-"));
+            assertTrue("Unexpected concurrent crash", decoded.getConcurrentCrash(i).getMessage().startsWith("Crash "));
+        }
+    }
+}
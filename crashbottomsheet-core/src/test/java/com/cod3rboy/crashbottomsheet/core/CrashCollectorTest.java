@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link CrashCollectorPipeline} with fast, failing and hanging collectors. Collecting must return within
+ * the deadline no matter how long collectors take, output of fast collectors is kept while the others are
+ * listed by name, and collected data survives a binary crash record round trip.
+ */
+public class CrashCollectorTest {
+    private static final long DEADLINE_MS = 200;
+    // Allowed overshoot of deadline for scheduling of crashed thread
+    private static final long SLACK_MS = 50;
+
+    private CrashCollectorPipeline mPipeline;
+
+    @Before
+    public void setUp() {
+        mPipeline = new CrashCollectorPipeline(CrashCollectorPipeline.DEFAULT_THREADS);
+        mPipeline.add("memory", (thread, crash, out) -> out.append("heap used: 42 MB\n"));
+        mPipeline.add("flags", (thread, crash, out) -> out.append("new_checkout=true"));
+        mPipeline.add("broken", (thread, crash, out) -> {
+            throw new IllegalStateException("not ready");
+        });
+        mPipeline.add("hanging", (thread, crash, out) -> Thread.sleep(10000));
+        mPipeline.add("spinning", (thread, crash, out) -> {
+            while (true) out.setLength(0);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mPipeline.shutdown();
+    }
+
+    @Test
+    public void collectingEndsAtDeadline() throws Exception {
+        Throwable crash = Throwables.create(20, 1);
+        StringBuilder collected = new StringBuilder();
+        long start = System.nanoTime();
+        int timedOut = mPipeline.collect(Thread.currentThread(), crash, DEADLINE_MS, collected);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Deadline overshot by " + (elapsedMs - DEADLINE_MS) + " ms", elapsedMs <= DEADLINE_MS + SLACK_MS);
+        assertEquals("Timed out collectors", 2, timedOut);
+        String text = collected.toString();
+        assertContains(text, "[memory]\nheap used: 42 MB\n");
+        assertContains(text, "[flags]\nnew_checkout=true\n");
+        assertContains(text, "[broken] failed: java.lang.IllegalStateException: not ready\n");
+        assertContains(text, "[hanging] timed out after " + DEADLINE_MS + " ms\n");
+        assertContains(text, "[spinning] timed out after " + DEADLINE_MS + " ms\n");
+
+        // Collectors still stuck from the first crash must not delay the second one
+        start = System.nanoTime();
+        collected.setLength(0);
+        mPipeline.collect(Thread.currentThread(), crash, DEADLINE_MS, collected);
+        elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Second collect took " + elapsedMs + " ms", elapsedMs <= DEADLINE_MS + SLACK_MS);
+        assertContains(collected.toString(), "[memory]\nheap used: 42 MB\n");
+    }
+
+    @Test
+    public void collectedDataSurvivesCrashRecord() throws Exception {
+        Throwable crash = Throwables.create(20, 1);
+        StringBuilder collected = new StringBuilder();
+        mPipeline.collect(Thread.currentThread(), crash, DEADLINE_MS, collected);
+        CrashRecordWriter writer = new CrashRecordWriter(StackTraceSerializer.DEFAULT_MAX_BYTES);
+        writer.begin(System.currentTimeMillis());
+        writer.writeThrowable(crash);
+        writer.writeCollectedData(collected);
+        int length = writer.finish();
+        byte[] record = new byte[length];
+        writer.getByteBuffer().get(record);
+        String rendered = CrashRecordRenderer.renderStackTrace(CrashRecordReader.read(record, 0, length));
+        assertContains(rendered, "\nCollected data:\n" + collected);
+    }
+
+    private static void assertContains(String text, String part) {
+        assertTrue("Missing " + part.trim() + " in:\n" + text, text.contains(part));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link ConcurrentCrashGate#handle} with crash handlers which fail the way crash handler can fail,
+ * i.e. a serializer or collector which throws an exception or an error. Crash must still reach previous
+ * handler, concurrent crashes waiting for it are released at once and gate reopens so a process which
+ * outlives the crash can handle the next one.
+ */
+public class CrashHandlerFailureTest {
+    // Max time concurrent crash may wait for a failed handler
+    private static final long RELEASE_WAIT_MS = 1000;
+
+    private final AtomicInteger mFallbackCalls = new AtomicInteger();
+    private final Thread.UncaughtExceptionHandler mFallback = (thread, throwable) -> mFallbackCalls.incrementAndGet();
+    private final Thread mCrashed = Thread.currentThread();
+    private ConcurrentCrashGate mGate;
+
+    @Before
+    public void setUp() {
+        mGate = new ConcurrentCrashGate(ConcurrentCrashGate.DEFAULT_CAPACITY);
+    }
+
+    @Test
+    public void serializerFailureReachesPreviousHandler() {
+        StackTraceSerializer serializer = new StackTraceSerializer(StackTraceSerializer.DEFAULT_MAX_BYTES);
+        Throwable unreadable = new IllegalStateException("crash") {
+            @Override
+            public StackTraceElement[] getStackTrace() {
+                throw new UnsupportedOperationException("stack trace is not readable");
+            }
+        };
+        assertTrue("Gate is not open for first crash", mGate.enter(mCrashed, unreadable));
+        Throwable failure = mGate.handle(mCrashed, unreadable, (thread, throwable) -> {
+            serializer.serialize(throwable);
+            return true;
+        }, mFallback);
+        assertTrue("Serializer failure is not returned", failure instanceof UnsupportedOperationException);
+        assertEquals("Previous handler calls", 1, mFallbackCalls.get());
+        assertTrue("Gate did not reopen after failed handler", mGate.enter(mCrashed, unreadable));
+    }
+
+    @Test
+    public void collectorFailureReachesPreviousHandler() {
+        CrashCollectorPipeline pipeline = new CrashCollectorPipeline(CrashCollectorPipeline.DEFAULT_THREADS);
+        pipeline.add("broken", (thread, crash, out) -> {
+            throw new IllegalStateException("not ready");
+        });
+        Throwable crash = Throwables.create(20, 1);
+        assertTrue("Gate is not open for first crash", mGate.enter(mCrashed, crash));
+        Throwable failure = mGate.handle(mCrashed, crash, (thread, throwable) -> {
+            StringBuilder collected = new StringBuilder();
+            pipeline.collect(thread, throwable, 100, collected);
+            throw new OutOfMemoryError("Failed to allocate collected data");
+        }, mFallback);
+        pipeline.shutdown();
+        assertTrue("Collector failure is not returned", failure instanceof OutOfMemoryError);
+        assertEquals("Previous handler calls", 1, mFallbackCalls.get());
+        assertTrue("Gate did not reopen after failed handler", mGate.enter(mCrashed, crash));
+    }
+
+    @Test
+    public void concurrentCrashIsReleasedWhenHandlerFails() throws Exception {
+        Throwable crash = Throwables.create(20, 1);
+        assertTrue("Gate is not open for first crash", mGate.enter(mCrashed, crash));
+        AtomicInteger released = new AtomicInteger();
+        AtomicInteger entered = new AtomicInteger();
+        Thread concurrent = new Thread(() -> {
+            Throwable other = new IllegalStateException("concurrent");
+            if (mGate.enter(Thread.currentThread(), other)) entered.incrementAndGet();
+            if (mGate.awaitRelease(RELEASE_WAIT_MS)) released.incrementAndGet();
+        }, "concurrent-crash");
+        concurrent.start();
+        long start = System.nanoTime();
+        mGate.handle(mCrashed, crash, (thread, throwable) -> {
+            // Let concurrent crash enter the gate before handler fails
+            Thread.sleep(50);
+            throw new StackOverflowError();
+        }, mFallback);
+        concurrent.join();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals("Concurrent crash entered gate", 0, entered.get());
+        assertEquals("Concurrent crash was not released after " + elapsedMs + " ms", 1, released.get());
+        assertEquals("Previous handler calls", 1, mFallbackCalls.get());
+    }
+
+    @Test
+    public void previousHandlerFailureDoesNotKeepGateClosed() {
+        Throwable crash = Throwables.create(20, 1);
+        assertTrue("Gate is not open for first crash", mGate.enter(mCrashed, crash));
+        try {
+            mGate.handle(mCrashed, crash, (thread, throwable) -> false, (thread, throwable) -> {
+                throw new IllegalStateException("previous handler failed");
+            });
+            fail("Failure of previous handler was swallowed");
+        } catch (IllegalStateException expected) {
+            // Previous handler failure reaches the thread as it would without crash handler
+        }
+        assertTrue("Gate did not reopen after previous handler failure", mGate.enter(mCrashed, crash));
+    }
+
+    @Test
+    public void handledCrashDoesNotReachPreviousHandler() {
+        Throwable crash = Throwables.create(20, 1);
+        assertTrue("Gate is not open for first crash", mGate.enter(mCrashed, crash));
+        assertNull("Unexpected failure", mGate.handle(mCrashed, crash, (thread, throwable) -> true, mFallback));
+        assertEquals("Previous handler calls", 0, mFallbackCalls.get());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests allocations of crash path which fingerprints a {@link StackOverflowError}, writes its binary record
+ * and serializes its stack trace with breadcrumbs, thread dump, collected data and frame timing the same way
+ * crash handler does. Allocations are measured with per thread allocation counter of HotSpot for stack traces
+ * of 100 to 10,000 frames. Other than the one copy of frames array which {@link Throwable#getStackTrace()}
+ * hands out, crash path must allocate the same at every depth and next to nothing, so neither frames nor
+ * report sections are copied.
+ */
+public class CrashPathAllocationTest {
+    private static final int[] DEPTHS = {100, 1000, 10000};
+    private static final int WARMUP = 2000;
+    private static final int CRASHES = 200;
+    // Allowed allocations besides frames copy, which covers noise of allocation counter
+    private static final long TOLERANCE_BYTES = 64;
+
+    @Test
+    public void crashPathAllocationsDoNotGrowWithDepth() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue("Allocation counter is not available", threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) threadBean;
+        StackTraceCache traces = new StackTraceCache(StackTraceCache.DEFAULT_CAPACITY);
+        CrashFingerprint fingerprint = new CrashFingerprint(CrashFingerprint.DEFAULT_TOP_FRAMES, false, false);
+        CrashRecordWriter writer = new CrashRecordWriter(StackTraceSerializer.DEFAULT_MAX_BYTES, traces);
+        StackTraceSerializer serializer = new StackTraceSerializer(StackTraceSerializer.DEFAULT_MAX_BYTES, traces);
+        Sections sections = new Sections();
+        long thread = Thread.currentThread().getId();
+
+        long minExtra = Long.MAX_VALUE;
+        long maxExtra = Long.MIN_VALUE;
+        for (int depth : DEPTHS) {
+            Throwable crash = Throwables.createStackOverflow(depth);
+            // Let crash path get compiled before measuring
+            for (int i = 0; i < WARMUP; i++) {
+                crash(crash, fingerprint, writer, serializer, traces, sections);
+                readFrames(crash);
+            }
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < CRASHES; i++) readFrames(crash);
+            long frames = (threads.getThreadAllocatedBytes(thread) - before) / CRASHES;
+
+            before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < CRASHES; i++) crash(crash, fingerprint, writer, serializer, traces, sections);
+            long allocated = (threads.getThreadAllocatedBytes(thread) - before) / CRASHES;
+
+            long extra = allocated - frames;
+            minExtra = Math.min(minExtra, extra);
+            maxExtra = Math.max(maxExtra, extra);
+        }
+        assertTrue("Crash path allocations besides frames copy grow with depth from " + minExtra + " to "
+                + maxExtra + " bytes", maxExtra - minExtra <= TOLERANCE_BYTES);
+        assertTrue("Crash path allocates " + maxExtra + " bytes besides frames copy", maxExtra <= TOLERANCE_BYTES);
+    }
+
+    private static long crash(Throwable crash, CrashFingerprint fingerprint, CrashRecordWriter writer,
+                              StackTraceSerializer serializer, StackTraceCache traces, Sections sections) {
+        try {
+            long hash = fingerprint.compute(crash, traces);
+            writer.begin(hash);
+            writer.writeThrowable(crash);
+            writer.writeBreadcrumbs(sections.mBreadcrumbs);
+            writer.writeThreadDump(sections.mThreadDump);
+            writer.writeCollectedData(sections.mCollectedData);
+            writer.writeFrameTiming(sections.mFrameTiming);
+            int length = writer.finish();
+            // Text fallback appends sections without copying them into strings
+            serializer.serialize(crash);
+            sections.mText.setLength(0);
+            serializer.appendBreadcrumbs(sections.mBreadcrumbs.appendTo(sections.mText, hash));
+            serializer.appendThreadDump(sections.mThreadDump);
+            serializer.appendCollectedData(sections.mCollectedData);
+            sections.mText.setLength(0);
+            return length + serializer.appendFrameTiming(sections.mFrameTiming.appendTo(sections.mText));
+        } finally {
+            traces.clear();
+        }
+    }
+
+    private static int readFrames(Throwable crash) {
+        return crash.getStackTrace().length;
+    }
+
+    /**
+     * Report sections filled before the crash like crash handler fills them.
+     */
+    private static final class Sections {
+        final BreadcrumbRing.Snapshot mBreadcrumbs = new BreadcrumbRing.Snapshot(BreadcrumbRing.DEFAULT_CAPACITY);
+        final StringBuilder mThreadDump = new StringBuilder();
+        final StringBuilder mCollectedData = new StringBuilder();
+        final FrameTimeHistogram.Snapshot mFrameTiming = new FrameTimeHistogram.Snapshot();
+        final StringBuilder mText = new StringBuilder(16 * 1024);
+
+        Sections() {
+            BreadcrumbRing ring = new BreadcrumbRing(BreadcrumbRing.DEFAULT_CAPACITY);
+            for (int i = 0; i < BreadcrumbRing.DEFAULT_CAPACITY; i++) ring.record(i, 0, "Opened screen", i, 0);
+            ring.snapshot(mBreadcrumbs);
+            for (int i = 0; i < 100; i++) mThreadDump.append("\"worker-").append(i).append("\" WAITING\n\tat Foo.bar(Foo.java:1)\n");
+            for (int i = 0; i < 100; i++) mCollectedData.append("key").append(i).append(" = value\n");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests {@link HangWatchdog} against a main loop which runs posted tasks like a Looper does. Idle watchdog
+ * must allocate nothing per tick, measured with per thread allocation counter of HotSpot, and a blocked main
+ * loop is reported once with its blocking frame in hang profile.
+ */
+public class HangWatchdogTest {
+    private static final long THRESHOLD_MS = 5;
+    private static final long MEASURE_MS = 3000;
+
+    @Test
+    public void idleWatchdogDoesNotAllocateAndHangIsReportedOnce() throws Exception {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue("Allocation counter is not available", threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) threadBean;
+        // Single task slot handed over with park and unpark, which do not allocate, so that only allocations
+        // of watchdog itself are counted. Lock based queues allocate wait nodes under contention.
+        AtomicReference<Runnable> slot = new AtomicReference<>();
+        AtomicReference<Runnable> blocker = new AtomicReference<>();
+        Thread mainLoop = new Thread(() -> {
+            while (!Thread.interrupted()) {
+                Runnable task = slot.getAndSet(null);
+                if (task == null) task = blocker.getAndSet(null);
+                if (task != null) {
+                    task.run();
+                } else {
+                    LockSupport.park();
+                }
+            }
+        }, "main-loop");
+        mainLoop.setDaemon(true);
+        mainLoop.start();
+        AtomicReference<String> report = new AtomicReference<>();
+        CountDownLatch reported = new CountDownLatch(1);
+        AtomicInteger hangs = new AtomicInteger();
+        Executor mainLoopExecutor = task -> {
+            slot.set(task);
+            LockSupport.unpark(mainLoop);
+        };
+        HangWatchdog watchdog = new HangWatchdog(mainLoop, mainLoopExecutor, THRESHOLD_MS,
+                HangProfile.DEFAULT_MAX_SAMPLES, 2, profile -> {
+            hangs.incrementAndGet();
+            report.set(profile.appendTo(new StringBuilder()).toString());
+            reported.countDown();
+        });
+        watchdog.start();
+        try {
+            // Let watchdog and its code get compiled before measuring
+            Thread.sleep(1000);
+            long before = threads.getThreadAllocatedBytes(watchdog.getId());
+            Thread.sleep(MEASURE_MS);
+            long allocated = threads.getThreadAllocatedBytes(watchdog.getId()) - before;
+            assertEquals("Hang reported while main loop was idle", 0, hangs.get());
+            assertEquals("Bytes allocated by idle watchdog", 0, allocated);
+
+            // Block main loop and expect one report naming the blocking method
+            blocker.set(HangWatchdogTest::blockMainLoop);
+            LockSupport.unpark(mainLoop);
+            assertTrue("Hang was not reported", reported.await(5, TimeUnit.SECONDS));
+            Thread.sleep(500);
+            assertEquals("Reported hangs", 1, hangs.get());
+            assertTrue("Blocking frame is not in profile:\n" + report.get(), report.get().contains("blockMainLoop"));
+        } finally {
+            watchdog.shutdown();
+            mainLoop.interrupt();
+        }
+    }
+
+    private static void blockMainLoop() {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        while (System.nanoTime() < end) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
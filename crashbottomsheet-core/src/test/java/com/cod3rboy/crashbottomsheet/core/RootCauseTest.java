@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link StackTraceSerializer} keeps root cause and its top frames when the cause chain is longer
+ * than the number of throwables walked and when stack trace does not fit in a small buffer, and that
+ * a circular cause chain is still written once.
+ */
+public class RootCauseTest {
+    private static final int ROOT_TOP_FRAMES = 4;
+
+    @Test
+    public void rootCauseOfLongCauseChainIsKept() {
+        String trace = serialize(Throwables.create(16, 100), StackTraceSerializer.DEFAULT_MAX_BYTES);
+        assertRootCause(trace, 100);
+        assertTrue("Omitted causes are not counted", trace.contains(" causes omitted\n"));
+    }
+
+    @Test
+    public void rootCauseOfDeepTracesInSmallBufferIsKept() {
+        for (int causes = 1; causes <= 8; causes++) {
+            for (int depth = 16; depth <= 1024; depth *= 4) {
+                String trace = serialize(Throwables.createDistinct(depth, causes), StackTraceSerializer.MIN_MAX_BYTES);
+                assertRootCause(trace, causes);
+            }
+        }
+    }
+
+    @Test
+    public void circularCauseChainIsWrittenOnce() {
+        IllegalStateException first = new IllegalStateException("First");
+        IllegalArgumentException second = new IllegalArgumentException("Second", first);
+        first.initCause(second);
+        String trace = serialize(first, StackTraceSerializer.MIN_MAX_BYTES);
+        assertTrue("Circular cause chain is not marked",
+                trace.contains("[CIRCULAR REFERENCE:java.lang.IllegalStateException: First]"));
+    }
+
+    private static String serialize(Throwable throwable, int maxBytes) {
+        StackTraceSerializer serializer = new StackTraceSerializer(maxBytes);
+        int length = serializer.serialize(throwable);
+        return new String(serializer.getByteBuffer().array(), 0, length, Charset.forName("UTF-8"));
+    }
+
+    private static void assertRootCause(String trace, int causes) {
+        String header = "Caused by: java.lang.IllegalStateException: Cause " + causes + " of synthetic crash\n";
+        int start = trace.indexOf(header);
+        assertTrue("Root cause is missing in stack trace of " + causes + " causes:\n" + trace, start >= 0);
+        for (int i = 0; i < ROOT_TOP_FRAMES; i++) {
+            String frame = "\tat com.example.app.feature.Level" + causes + "Presenter$" + i;
+            assertTrue("Root cause frame " + i + " is missing in stack trace of " + causes + " causes:\n" + trace,
+                    trace.indexOf(frame, start) >= 0);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet.core;
+
+/**
+ * Builds synthetic throwables with stack traces of given depth so that tests do not depend on
+ * the depth of test runner call stack.
+ */
+final class Throwables {
+    private Throwables() {
+    }
+
+    /**
+     * Creates a throwable whose stack trace and the stack trace of each of its causes has given depth.
+     * Causes share their bottom frames with the enclosing throwable like real cause chains do.
+     *
+     * @param depth  number of frames in each stack trace
+     * @param causes number of causes chained under the crashing throwable
+     * @return crashing throwable
+     */
+    static Throwable create(int depth, int causes) {
+        Throwable cause = null;
+        for (int i = causes; i > 0; i--) {
+            Throwable throwable = new IllegalStateException("Cause " + i + " of synthetic crash", cause);
+            throwable.setStackTrace(frames(depth, i));
+            cause = throwable;
+        }
+        Throwable crash = new RuntimeException("Synthetic crash with " + depth + " frames", cause);
+        crash.setStackTrace(frames(depth, 0));
+        return crash;
+    }
+
+    /**
+     * Creates a throwable like {@link Throwables#create(int, int)} whose frames do not repeat so that none of
+     * them are collapsed. Frames are spread over a few classes as in real applications.
+     *
+     * @param depth  number of frames in each stack trace
+     * @param causes number of causes chained under the crashing throwable
+     * @return crashing throwable
+     */
+    static Throwable createDistinct(int depth, int causes) {
+        Throwable throwable = create(depth, causes);
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            StackTraceElement[] frames = t.getStackTrace();
+            for (int i = Math.min(depth, 8); i < depth; i++) {
+                int frame = depth - i;
+                frames[i] = new StackTraceElement("com.example.app.core.Module" + (frame % 16),
+                        "step" + frame, "Module" + (frame % 16) + ".java", 10 + frame);
+            }
+            t.setStackTrace(frames);
+        }
+        return throwable;
+    }
+
+    /**
+     * Creates a {@link StackOverflowError} of given depth whose frames below the top ones repeat in a cycle
+     * like deep recursion does.
+     *
+     * @param depth number of frames in stack trace
+     * @return stack overflow error
+     */
+    static Throwable createStackOverflow(int depth) {
+        Throwable error = new StackOverflowError("stack size 8MB");
+        error.setStackTrace(frames(depth, 0));
+        return error;
+    }
+
+    /**
+     * Creates frames whose top part is unique to given level and the rest is common to all levels.
+     */
+    private static StackTraceElement[] frames(int depth, int level) {
+        StackTraceElement[] frames = new StackTraceElement[depth];
+        int unique = Math.min(depth, 8);
+        for (int i = 0; i < depth; i++) {
+            if (i < unique) {
+                frames[i] = new StackTraceElement("com.example.app.feature.Level" + level + "Presenter$" + i,
+                        "lambda$onEvent$" + i, "Level" + level + "Presenter.java", 100 + i);
+            } else {
+                int frame = depth - i;
+                frames[i] = new StackTraceElement("com.example.app.core.RecursiveWalker",
+                        "walk" + (frame % 4), "RecursiveWalker.java", 40 + frame % 4);
+            }
+        }
+        return frames;
+    }
+}
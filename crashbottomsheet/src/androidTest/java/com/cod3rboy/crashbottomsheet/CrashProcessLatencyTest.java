@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.BySelector;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures time from crash until bottom sheet is drawn in the dedicated crash process, which the example app
+ * enables in its Application class, and fails if it takes too long. It drives the example app, which must be
+ * installed on the device, from the test process because a crash kills the process it happens in.
+ * Run with ./gradlew :app:installDebug :crashbottomsheet:connectedAndroidTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class CrashProcessLatencyTest {
+    private static final String EXAMPLE_PACKAGE = "com.cod3rboy.crashbottomsheetexample";
+    private static final int RUNS = 5;
+    private static final long MAX_MEDIAN_LATENCY_MS = 2000;
+    private static final long TIMEOUT_MS = 10000;
+    private static final long POLL_MS = 5;
+
+    @Test
+    public void crashToFirstFrame() throws IOException {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = instrumentation.getContext();
+        assumeTrue("Example app is not installed", context.getPackageManager()
+                .getLaunchIntentForPackage(EXAMPLE_PACKAGE) != null);
+        UiDevice device = UiDevice.getInstance(instrumentation);
+        long latencyMs = medianLatencyMs(device, context);
+        Bundle results = new Bundle();
+        results.putLong("crash_process_ms", latencyMs);
+        instrumentation.sendStatus(0, results);
+        assertTrue("Bottom sheet took " + latencyMs + " ms to show up but at most " + MAX_MEDIAN_LATENCY_MS
+                + " ms are expected", latencyMs <= MAX_MEDIAN_LATENCY_MS);
+    }
+
+    /**
+     * Crashes example app a few times and returns median time until bottom sheet is drawn.
+     *
+     * @param device  device driven by test
+     * @param context test context
+     * @return median latency in milliseconds
+     */
+    private static long medianLatencyMs(UiDevice device, Context context) throws IOException {
+        long[] latencies = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) latencies[i] = measureLatencyMs(device, context);
+        device.executeShellCommand("am force-stop " + EXAMPLE_PACKAGE);
+        Arrays.sort(latencies);
+        return latencies[RUNS / 2];
+    }
+
+    private static long measureLatencyMs(UiDevice device, Context context) throws IOException {
+        // Kills every process of example app and forgets previous crashes so that none is suppressed
+        device.executeShellCommand("pm clear " + EXAMPLE_PACKAGE);
+        Intent intent = context.getPackageManager().getLaunchIntentForPackage(EXAMPLE_PACKAGE);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        context.startActivity(intent);
+        UiObject2 crashButton = device.wait(Until.findObject(By.res(EXAMPLE_PACKAGE, "btn_crash")), TIMEOUT_MS);
+        assertNotNull("Example app did not start", crashButton);
+
+        BySelector sheet = By.res(EXAMPLE_PACKAGE, "btn_positive");
+        long start = SystemClock.uptimeMillis();
+        crashButton.click();
+        while (!device.hasObject(sheet)) {
+            if (SystemClock.uptimeMillis() - start > TIMEOUT_MS) fail("Bottom sheet was not shown after crash");
+            SystemClock.sleep(POLL_MS);
+        }
+        return SystemClock.uptimeMillis() - start;
+    }
+}
@@ -17,49 +17,305 @@
 package com.cod3rboy.crashbottomsheet;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.cod3rboy.crashbottomsheet.core.CrashFingerprint;
+
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.button.MaterialButton;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
- * Crash Activity which hosts the BottomSheetDialog.
+ * Crash Activity which hosts the BottomSheetDialog. Crashes of other processes of the app which occur within
+ * process crash window of the crash are shown in the same bottom sheet and reported along with it.
  */
 public class CrashActivity extends AppCompatActivity {
     private static final String LOG_TAG = CrashActivity.class.getSimpleName();
 
+    // Handler of main thread
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Id of crash record being reported
+    private String mRecordId;
+    // Crash record being reported
+    private CrashSpool.Record mRecord;
+    // Crash records of other processes reported along with it
+    private List<CrashSpool.Record> mOtherRecords;
+    // Bottom sheet dialog
+    private BottomSheetDialog mDialog;
+    // Completion handle of report delivered by async report callback or null if not started
+    private volatile FutureTask<Void> mReportTask;
+    // Whether crash record is kept for retry on next launch
+    private boolean mRecordRetained;
+    // Records crash path metrics
+    private CrashMetricsRecorder mMetrics;
+    // Whether user decision has been recorded in metrics
+    private boolean mDecisionRecorded;
+    // Stack trace panel or null if it is disabled
+    private TraceViewer mTraceViewer;
+    // Abandons async report delivery once deadline passes
+    private final Runnable mDeadlineTask = this::onReportDeadline;
+
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         if (BuildConfig.DEBUG) Log.d(LOG_TAG, "onCreate() is called");
-        String stackTrace = getIntent().getStringExtra(CrashBottomSheet.EXTRA_STACK_TRACE);
+        // Stack trace is read lazily from crash record when it is needed
+        mRecordId = getIntent().getStringExtra(CrashBottomSheet.EXTRA_CRASH_RECORD_ID);
+        CrashSpool.Record record = CrashSpool.readRecord(this.getApplicationContext(), mRecordId);
+        if (record.getFile() != null && !record.getFile().exists()) {
+            // Crash has already been shown along with crash of another process
+            Log.d(LOG_TAG, "Crash record " + mRecordId + " has already been handled.");
+            finish();
+            return;
+        }
+        mRecord = record;
+        mOtherRecords = CrashSpool.listProcessCrashes(this.getApplicationContext(), record,
+                CrashBottomSheet.getProcessCrashWindowMs());
+        if (!mOtherRecords.isEmpty()) {
+            Log.w(LOG_TAG, "Showing crashes of " + (mOtherRecords.size() + 1) + " processes together.");
+        }
+        if (savedInstanceState == null) {
+            for (CrashSpool.Record reported : getRecords()) {
+                if (!reported.hasFlag(CrashSpool.FLAG_RESERVE_USED)) continue;
+                Log.w(LOG_TAG, "Crash was reported using emergency memory reserve.");
+            }
+        }
+        // Device information is built once from shared snapshot and state captured at crash time
+        DeviceInfo deviceInfo = DeviceInfo.fromSnapshot(this.getApplicationContext(), record.getCrashState());
         View dialogView = getLayoutInflater().inflate(R.layout.bottomsheet_dialog, null);
         MaterialButton btnPositive = dialogView.findViewById(R.id.btn_positive);
         MaterialButton btnNegative = dialogView.findViewById(R.id.btn_negative);
+        ProgressBar progressReport = dialogView.findViewById(R.id.progress_report);
+        if (record.hasFlag(CrashSpool.FLAG_HANG)) {
+            // Record holds profile of main thread hang of previous launch
+            TextView description = dialogView.findViewById(R.id.tv_desc);
+            description.setText(R.string.cbs_hang_description);
+        }
+        if (TraceViewer.isEnabled()) mTraceViewer = new TraceViewer(dialogView, record, mOtherRecords, mHandler);
         BottomSheetDialog dialog = new BottomSheetDialog(this);
+        mDialog = dialog;
         dialog.setDismissWithAnimation(true);
         dialog.setContentView(dialogView);
-        dialog.setOnDismissListener(dialog1 -> CrashActivity.this.finish()); // Finish activity on dialog dismiss
-        btnNegative.setOnClickListener((view) -> dialog.dismiss());
+        mMetrics = new CrashMetricsRecorder(this.getApplicationContext());
+        if (savedInstanceState == null) {
+            long entryNanos = getIntent().getLongExtra(CrashBottomSheet.EXTRA_CRASH_NANOS, 0);
+            dialog.setOnShowListener(dialog1 -> mMetrics.onSheetShown(entryNanos, System.nanoTime()));
+        }
+        dialog.setOnDismissListener(dialog1 -> {
+            if (!mDecisionRecorded) recordDecision(false); // Closed by back press or touch outside
+            if (mRecordRetained) {
+                // Crash record is delivered on next launch
+                Log.d(LOG_TAG, "Crash record " + mRecordId + " is kept for retry on next launch.");
+            } else if (ReportQueue.isEnabled()) {
+                // Keep crash reports in queue until they are delivered in batch
+                for (CrashSpool.Record reported : getRecords()) {
+                    ReportQueue.enqueue(this.getApplicationContext(), reported.getId());
+                }
+            } else {
+                // Crash records are no longer needed
+                for (CrashSpool.Record reported : getRecords()) {
+                    CrashSpool.deleteRecord(this.getApplicationContext(), reported.getId());
+                }
+            }
+            CrashActivity.this.finish(); // Finish activity on dialog dismiss
+        });
+        btnNegative.setOnClickListener((view) -> {
+            recordDecision(false);
+            dialog.dismiss();
+        });
         btnPositive.setOnClickListener((view) -> {
+            recordDecision(true);
+            String fingerprint = CrashFingerprint.toHexString(record.getFingerprint());
+            if (record.hasFlag(CrashSpool.FLAG_ALREADY_REPORTED)
+                    && CrashBottomSheet.getDuplicateCrashPolicy() == DuplicateCrashPolicy.SKIP_REPORT) {
+                // Same crash has already been reported
+                Log.d(LOG_TAG, "Crash " + fingerprint + " has already been reported so it is not reported again.");
+                dialog.dismiss();
+                return;
+            }
+            CrashBottomSheet.onCrashReportAsync asyncCallback = CrashBottomSheet.getAsyncCallback();
+            if (asyncCallback != null) {
+                // Keep bottom sheet on screen until report is delivered or deadline passes
+                Log.d(LOG_TAG, "Invoking registered async reportCallback()");
+                btnPositive.setEnabled(false);
+                btnNegative.setEnabled(false);
+                progressReport.setVisibility(View.VISIBLE);
+                dialog.setCancelable(false);
+                startAsyncReport(asyncCallback, deviceInfo, progressReport);
+                return;
+            }
+            String stackTrace = CrashSpool.appendProcessCrashes(record, record.getStackTrace(), mOtherRecords);
             if (CrashBottomSheet.getInstance() != null
                     && CrashBottomSheet.getInstance().getCallback() != null) {
                 // Invoking registered callback
                 Log.d(LOG_TAG, "Invoking registered reportCallback()");
-                CrashBottomSheet.getInstance().getCallback().handleCrashReport(stackTrace, new DeviceInfo(this.getApplicationContext()));
+                CrashBottomSheet.getInstance().getCallback().handleCrashReport(stackTrace, deviceInfo, fingerprint, record.getOccurrences());
             } else {
                 // Performing default action
                 Log.d(LOG_TAG, "No registered reportCallback(). Performing default action to open Email app with crash report.");
-                CrashBottomSheet.sendCrashEmail(this.getApplicationContext(), stackTrace, new DeviceInfo(this.getApplicationContext()));
+                CrashBottomSheet.sendCrashEmail(this.getApplicationContext(), stackTrace, deviceInfo, fingerprint, record.getOccurrences());
             }
+            markReported();
             dialog.dismiss();
         });
+        if (savedInstanceState == null && shouldCaptureLogcat()) {
+            // Report is held back until logcat tail is appended to crash record
+            btnPositive.setEnabled(false);
+            progressReport.setVisibility(View.VISIBLE);
+            captureLogcat(btnPositive, progressReport);
+        }
         dialog.show();
     }
 
+    @Override
+    protected void onDestroy() {
+        mHandler.removeCallbacks(mDeadlineTask);
+        if (mTraceViewer != null) mTraceViewer.close();
+        super.onDestroy();
+    }
+
+    /**
+     * Returns crash record being reported followed by crash records of other processes.
+     *
+     * @return crash records
+     */
+    private List<CrashSpool.Record> getRecords() {
+        List<CrashSpool.Record> records = new ArrayList<>(mOtherRecords.size() + 1);
+        records.add(mRecord);
+        records.addAll(mOtherRecords);
+        return records;
+    }
+
+    /**
+     * Marks crashes of all reported records as reported.
+     */
+    private void markReported() {
+        CrashSignatureIndex index = new CrashSignatureIndex(this.getApplicationContext());
+        for (CrashSpool.Record reported : getRecords()) index.markReported(reported.getFingerprint());
+    }
+
+    /**
+     * Moves all reported crash records into retry directory.
+     *
+     * @return true if crash record being reported is retained otherwise false
+     */
+    private boolean retainRecords() {
+        for (CrashSpool.Record other : mOtherRecords) {
+            CrashSpool.retainRecord(this.getApplicationContext(), other.getId());
+        }
+        return CrashSpool.retainRecord(this.getApplicationContext(), mRecordId);
+    }
+
+    /**
+     * Tells whether logcat tail should be captured for any of reported crash records.
+     *
+     * @return true if logcat is captured otherwise false
+     */
+    private boolean shouldCaptureLogcat() {
+        for (CrashSpool.Record reported : getRecords()) {
+            if (LogcatCollector.shouldCapture(reported)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records whether user reported or cancelled the crash.
+     *
+     * @param reported true if user pressed report button otherwise false
+     */
+    private void recordDecision(boolean reported) {
+        mDecisionRecorded = true;
+        mMetrics.onDecision(reported, System.nanoTime());
+    }
+
+    /**
+     * Captures logcat tail of crashed process on a background thread and enables report button once done.
+     *
+     * @param btnPositive    report button
+     * @param progressReport progress bar shown during capture
+     */
+    private void captureLogcat(MaterialButton btnPositive, ProgressBar progressReport) {
+        Thread thread = new Thread(() -> {
+            for (CrashSpool.Record reported : getRecords()) {
+                if (!LogcatCollector.shouldCapture(reported)) continue;
+                boolean captured = LogcatCollector.capture(reported);
+                if (BuildConfig.DEBUG) Log.d(LOG_TAG, "Logcat captured for process " + reported.getPid() + ": " + captured);
+            }
+            mHandler.post(() -> {
+                if (isDestroyed()) return;
+                progressReport.setVisibility(View.GONE);
+                btnPositive.setEnabled(true);
+            });
+        }, "CrashBottomSheet-Logcat");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs async report callback on report executor and starts deadline countdown.
+     *
+     * @param callback       async report callback
+     * @param deviceInfo     device information
+     * @param progressReport progress bar showing report progress
+     */
+    private void startAsyncReport(CrashBottomSheet.onCrashReportAsync callback, DeviceInfo deviceInfo, ProgressBar progressReport) {
+        ReportProgress progress = new ReportProgress() {
+            @Override
+            public void setProgress(int percent) {
+                final int value = Math.max(0, Math.min(percent, 100));
+                mHandler.post(() -> {
+                    progressReport.setIndeterminate(false);
+                    progressReport.setProgress(value);
+                });
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return mReportTask != null && mReportTask.isCancelled();
+            }
+        };
+        mReportTask = ReportDispatcher.newTask(callback, mRecord, mOtherRecords, deviceInfo, progress,
+                () -> mHandler.post(this::onReportDone));
+        ReportDispatcher.execute(mReportTask);
+        mHandler.postDelayed(mDeadlineTask, ReportDispatcher.getDeadlineMs());
+    }
+
+    /**
+     * Invoked on main thread when async report callback returns or throws.
+     */
+    private void onReportDone() {
+        if (mReportTask.isCancelled() || isDestroyed()) return; // Already handled by deadline or activity is gone
+        mHandler.removeCallbacks(mDeadlineTask);
+        try {
+            mReportTask.get();
+            Log.d(LOG_TAG, "Crash report delivered.");
+            markReported();
+        } catch (ExecutionException | InterruptedException e) {
+            Log.w(LOG_TAG, "WARNING! Crash report delivery failed so it is retried on next launch.", e.getCause());
+            mRecordRetained = retainRecords();
+        }
+        mDialog.dismiss();
+    }
+
+    /**
+     * Invoked on main thread when async report callback does not return before deadline.
+     */
+    private void onReportDeadline() {
+        if (!mReportTask.cancel(true)) return; // Completed just now
+        Log.w(LOG_TAG, "WARNING! Crash report is not delivered before deadline so it is retried on next launch.");
+        mRecordRetained = retainRecords();
+        mDialog.dismiss();
+    }
 }
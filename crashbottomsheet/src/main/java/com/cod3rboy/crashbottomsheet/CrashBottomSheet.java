@@ -16,25 +16,35 @@
 
 package com.cod3rboy.crashbottomsheet;
 
+import android.app.Activity;
 import android.app.Application;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ResolveInfo;
-import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.PrintStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
+import com.cod3rboy.crashbottomsheet.core.BreadcrumbRing;
+import com.cod3rboy.crashbottomsheet.core.ConcurrentCrashGate;
+import com.cod3rboy.crashbottomsheet.core.CrashFingerprint;
+import com.cod3rboy.crashbottomsheet.core.CrashCollectorPipeline;
+import com.cod3rboy.crashbottomsheet.core.CrashRateLimiter;
+import com.cod3rboy.crashbottomsheet.core.CrashRecord;
+import com.cod3rboy.crashbottomsheet.core.CrashRecordWriter;
+import com.cod3rboy.crashbottomsheet.core.FrameTimeHistogram;
+import com.cod3rboy.crashbottomsheet.core.HangWatchdog;
+import com.cod3rboy.crashbottomsheet.core.StackTraceCache;
+import com.cod3rboy.crashbottomsheet.core.StackTraceSerializer;
+import com.cod3rboy.crashbottomsheet.core.ThreadDumper;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 
 /**
  * Class to register custom DefaultUncaughtExceptionHandler.
@@ -45,35 +55,153 @@ public class CrashBottomSheet implements Thread.UncaughtExceptionHandler {
     private static final String LOG_TAG = CrashBottomSheet.class.getSimpleName();
 
     /**
-     * Key used in intent to forward stack trace to {@link CrashActivity} class.
+     * Key used in intent to forward id of crash record to {@link CrashActivity} class.
+     * Stack trace itself is handed over through {@link CrashSpool} to prevent
+     * {@link android.os.TransactionTooLargeException}.
      */
-    static String EXTRA_STACK_TRACE = "extra_stack_trace";
+    static final String EXTRA_CRASH_RECORD_ID = "extra_crash_record_id";
     /**
-     * Max Limit on numbers of characters in stack trace to forward to {@link CrashActivity}
-     * to prevent {@link android.os.TransactionTooLargeException}.
+     * Key used in intent to forward {@link System#nanoTime()} at crash handler entry to {@link CrashActivity}
+     * class so that it can measure how long bottom sheet took to show up.
      */
-    private static final int STACK_TRACE_CHARS_LIMIT = (127 * 1024) / 2; // 127 KB Limit
+    static final String EXTRA_CRASH_NANOS = "extra_crash_nanos";
 
     /**
      * Callback interface used to allow a custom report action.
      */
     public interface onCrashReport {
         void handleCrashReport(String stackTrace, DeviceInfo deviceInfo);
+
+        /**
+         * Invoked instead of {@link onCrashReport#handleCrashReport(String, DeviceInfo)} with crash fingerprint
+         * which stays same for repeated occurrences of a crash. Default implementation ignores fingerprint.
+         *
+         * @param stackTrace  String containing stack trace of crash
+         * @param deviceInfo  instance of {@link DeviceInfo} class
+         * @param fingerprint crash fingerprint as 16 character hexadecimal string
+         * @param occurrences number of times crash with same fingerprint has occurred on device
+         */
+        default void handleCrashReport(String stackTrace, DeviceInfo deviceInfo, String fingerprint, int occurrences) {
+            handleCrashReport(stackTrace, deviceInfo);
+        }
+    }
+
+    /**
+     * Callback interface used to allow a custom report action which takes time e.g. uploading crash report
+     * to your server. It is invoked on report executor and bottom sheet shows progress until it returns or
+     * report deadline passes. See {@link CrashBottomSheet#setAsyncReportCallback(onCrashReportAsync)}.
+     */
+    public interface onCrashReportAsync {
+        /**
+         * Invoked on report executor when report button is pressed by user in bottom sheet.
+         * Report is considered delivered when this method returns. If it throws or report deadline passes then
+         * report is kept and this method is invoked again with same report on next app launch.
+         *
+         * @param stackTrace  String containing stack trace of crash
+         * @param deviceInfo  instance of {@link DeviceInfo} class
+         * @param fingerprint crash fingerprint as 16 character hexadecimal string
+         * @param occurrences number of times crash with same fingerprint has occurred on device
+         * @param progress    handle to publish progress shown in bottom sheet
+         * @throws Exception if report cannot be delivered
+         */
+        void handleCrashReport(String stackTrace, DeviceInfo deviceInfo, String fingerprint, int occurrences,
+                               ReportProgress progress) throws Exception;
+    }
+
+    /**
+     * Listener which receives crash path metrics recorded since it was last invoked.
+     * See {@link CrashBottomSheet#setCrashMetricsListener(CrashMetricsListener)}.
+     */
+    public interface CrashMetricsListener {
+        /**
+         * Invoked on a background thread with metrics recorded during previous app launches.
+         *
+         * @param metrics recorded metrics
+         */
+        void onCrashMetrics(CrashMetrics metrics);
+    }
+
+    /**
+     * Callback interface used to deliver queued crash reports in batches.
+     * See {@link CrashBottomSheet#enableReportQueue(ReportBatchSender)}.
+     */
+    public interface ReportBatchSender {
+        /**
+         * Invoked on a background thread with a batch of queued reports.
+         * Reports are removed from queue only if this method returns true.
+         *
+         * @param batch batch of queued reports
+         * @return true if batch is delivered otherwise false to keep reports in queue for next time
+         */
+        boolean sendBatch(ReportBatch batch);
+    }
+
+    /**
+     * Collector of extra crash context e.g. memory stats, app state or feature flags.
+     * See {@link CrashBottomSheet#addCrashCollector(String, CrashCollector)}.
+     */
+    public interface CrashCollector {
+        /**
+         * Invoked at crash time on a collector thread while crashed thread waits. Collector which does not
+         * finish before the deadline is abandoned and its output is discarded. It should only read state
+         * which is already at hand e.g. fields and flags and must not do I/O or wait for other threads.
+         *
+         * @param thread thread which crashed
+         * @param crash  crash throwable
+         * @param out    builder to append collected text to
+         * @throws Exception if context cannot be collected
+         */
+        void collect(@NonNull Thread thread, @NonNull Throwable crash, @NonNull StringBuilder out) throws Exception;
     }
 
     public static final long MIN_MS_BETWEEN_CRASHES = 3000; // 3 seconds gap is needed after any crash.
-    // Name of Preference file
-    private static final String PREFERENCE_FILE_NAME = "com.cod3rboy.crashbottomsheet";
-    // Name of Preference field key
-    private static final String PREFERENCE_FIELD_NAME = "last_crash_time";
+    // Name and extension of memory mapped file holding timestamps of recent crashes of each process
+    private static final String RATE_LIMITER_FILE_NAME = "crash_rate";
+    private static final String RATE_LIMITER_FILE_EXTENSION = ".bin";
+    // Default time and size budget of thread dump
+    private static final long DEFAULT_THREAD_DUMP_TIME_MS = 100;
+    private static final int DEFAULT_THREAD_DUMP_BYTES = 64 * 1024; // 64 KB
+    private static final int MIN_THREAD_DUMP_BYTES = 1024; // 1 KB
+    // Initial capacity of builder formatting breadcrumbs and frame timing for text stack trace
+    private static final int SECTION_TEXT_CAPACITY = 16 * 1024; // 16 KB
+    // Max time a crash waits while crash which occurred at the same time on another thread is being handled
+    private static final long CONCURRENT_CRASH_WAIT_MS = 10000; // 10 seconds
+    // Default max time between crashes of different processes shown in one bottom sheet
+    private static final long DEFAULT_PROCESS_CRASH_WINDOW_MS = 10000; // 10 seconds
 
 
-    // Minimum no of seconds allowed between any two crashes to detect CrashLoop.
-    private static long mMinCrashIntervalMs = MIN_MS_BETWEEN_CRASHES;
+    // Policy which decides how often bottom sheet is shown for crashes to prevent CrashLoop.
+    private static volatile CrashRatePolicy mCrashRatePolicy = CrashRatePolicy.slidingWindow(1, MIN_MS_BETWEEN_CRASHES);
+    // Max number of bytes in stack trace forwarded to CrashActivity
+    private static volatile int mMaxReportBytes = StackTraceSerializer.DEFAULT_MAX_BYTES;
+    // What to do for crashes already reported
+    private static volatile DuplicateCrashPolicy mDuplicateCrashPolicy = DuplicateCrashPolicy.ALWAYS_REPORT;
+    // Computes crash fingerprints
+    private static volatile CrashFingerprint mFingerprint = new CrashFingerprint(CrashFingerprint.DEFAULT_TOP_FRAMES, false, false);
+    // Whether bottom sheet is shown in dedicated crash process
+    private static volatile boolean mCrashProcessEnabled = false;
+    // Number of bytes held as emergency memory reserve or 0 if disabled
+    private static volatile int mEmergencyReserveBytes = 0;
+    // Whether stack traces of all threads are attached to crash report
+    private static volatile boolean mThreadDumpEnabled = false;
+    // Time and size budget of thread dump
+    private static volatile long mThreadDumpTimeMs = DEFAULT_THREAD_DUMP_TIME_MS;
+    private static volatile int mThreadDumpMaxBytes = DEFAULT_THREAD_DUMP_BYTES;
+    // Ring buffer of recent breadcrumbs and snapshot which crash handler copies them into
+    private static volatile BreadcrumbRing mBreadcrumbs = new BreadcrumbRing(BreadcrumbRing.DEFAULT_CAPACITY);
+    private static volatile BreadcrumbRing.Snapshot mBreadcrumbSnapshot = new BreadcrumbRing.Snapshot(BreadcrumbRing.DEFAULT_CAPACITY);
+    // Runs crash collectors at crash time or null if none is added
+    private static volatile CrashCollectorPipeline mCollectors;
+    // Time crash handler waits for crash collectors
+    private static volatile long mCollectorDeadlineMs = CrashCollectorPipeline.DEFAULT_DEADLINE_MS;
+    // Max time between crashes of different processes shown in one bottom sheet
+    private static volatile long mProcessCrashWindowMs = DEFAULT_PROCESS_CRASH_WINDOW_MS;
+    // User registered custom report action which runs on report executor
+    private static volatile onCrashReportAsync mAsyncCallback;
     // Singleton instance of registered custom DefaultUncaughtExceptionHandler
-    private static CrashBottomSheet mSingleton;
+    private static volatile CrashBottomSheet mSingleton;
     // Holds old DefaultUncaughtExceptionHandler before we register ours.
-    private static Thread.UncaughtExceptionHandler mOldHandler;
+    private static volatile Thread.UncaughtExceptionHandler mOldHandler;
 
     /**
      * Method to register {@link CrashBottomSheet} with the application.
@@ -88,6 +216,12 @@ public class CrashBottomSheet implements Thread.UncaughtExceptionHandler {
         if (mSingleton == null) {
             // Registered for first time
             mSingleton = new CrashBottomSheet(appContext, reportCallback);
+            if (ProcessInfo.isCrashProcess()) {
+                // Crash process only hosts CrashActivity so there is no need to handle crashes here
+                Log.d(LOG_TAG, "CrashBottomSheet registered in crash process.");
+                runWhenAttached(appContext, () -> DeviceInfo.prefetchSnapshot(appContext));
+                return;
+            }
             // Store previous handler
             mOldHandler = Thread.getDefaultUncaughtExceptionHandler();
 
@@ -95,6 +229,8 @@ public class CrashBottomSheet implements Thread.UncaughtExceptionHandler {
                 Log.w(LOG_TAG, "WARNING! Your app has already registered some other custom UncaughtExceptionHandler and CrashBottomSheet is replacing it. You must register CrashBottomSheet before any other custom UncaughtExceptionHandler.");
             }
             Thread.setDefaultUncaughtExceptionHandler(mSingleton);
+            // Prepare crash handler once application context is usable
+            runWhenAttached(appContext, mSingleton::initialize);
             Log.d(LOG_TAG, "CrashBottomSheet registered successfully with the application!");
         } else {
             // Already registered
@@ -113,11 +249,56 @@ public class CrashBottomSheet implements Thread.UncaughtExceptionHandler {
         register(appContext, null);
     }
 
+    /**
+     * Runs given task right away if application context is attached or otherwise as soon as main thread
+     * is done with creating the application. Context is not attached yet when {@link CrashBottomSheet} is
+     * registered in the constructor of Application class.
+     *
+     * @param appContext Application Context object
+     * @param task       task to run
+     */
+    private static void runWhenAttached(Application appContext, Runnable task) {
+        if (appContext.getBaseContext() != null) {
+            task.run();
+        } else {
+            new Handler(Looper.getMainLooper()).post(task);
+        }
+    }
+
+    /**
+     * Tells whether current process is the dedicated crash process in which bottom sheet is shown when crash
+     * process is enabled with {@link CrashBottomSheet#setCrashProcessEnabled(boolean)}.
+     * Application class runs in crash process as well so use this method to skip heavy app initialization
+     * e.g. dependency injection and SDKs which bottom sheet does not need. Configuration of CrashBottomSheet
+     * is kept per process and bottom sheet reads it in crash process, so register and configure CrashBottomSheet
+     * before skipping anything. It does not need a Context so it can be called from the constructor of
+     * Application class.
+     *
+     * @return true if running in crash process otherwise false
+     */
+    public static boolean isCrashProcess() {
+        return ProcessInfo.isCrashProcess();
+    }
+
+    /**
+     * Set whether bottom sheet is shown in a dedicated lightweight ":crash" process instead of app's default
+     * process. Showing bottom sheet in a separate process gets it on screen faster when Application class
+     * skips its heavy initialization in crash process by checking {@link CrashBottomSheet#isCrashProcess()}.
+     * Report callback and other configuration must be set in crash process as well because they are not
+     * carried over from the crashed process. Crash process is disabled by default.
+     *
+     * @param enabled true to show bottom sheet in crash process
+     */
+    public static void setCrashProcessEnabled(boolean enabled) {
+        mCrashProcessEnabled = enabled;
+    }
+
     /**
      * Set allowed minimum number of milliseconds to pass before next crash is to be considered as a valid crash
      * in order to prevent CrashLoop. Keep this value low and close to {@link CrashBottomSheet#MIN_MS_BETWEEN_CRASHES}.
      * You cannot set this value less than value of {@link CrashBottomSheet#MIN_MS_BETWEEN_CRASHES} constant.
      * Default value is perfect in most cases.
+     * It is same as setting {@link CrashRatePolicy#slidingWindow(int, long)} policy which allows one crash in given interval.
      *
      * @param ms milliseconds
      */
@@ -125,8 +306,470 @@ public class CrashBottomSheet implements Thread.UncaughtExceptionHandler {
         if (ms < MIN_MS_BETWEEN_CRASHES) {
             Log.w(LOG_TAG, "WARNING! Called setMinCrashIntervalMs() with value less than MIN_MS_BETWEEN_CRASHES=" + MIN_MS_BETWEEN_CRASHES + " so it is ignored and MIN_MS_BETWEEN_CRASHES value is used.");
         } else {
-            mMinCrashIntervalMs = ms;
+            mCrashRatePolicy = CrashRatePolicy.slidingWindow(1, ms);
+        }
+    }
+
+    /**
+     * Set policy which decides how often bottom sheet is shown for crashes in order to prevent CrashLoop
+     * e.g. {@code CrashRatePolicy.slidingWindow(3, 10 * 60 * 1000)} shows at most 3 sheets per 10 minutes.
+     * Policy is applied to each process of the app on its own, so crashes of one process never keep bottom
+     * sheet silent for another one.
+     * Default policy allows one crash in {@link CrashBottomSheet#MIN_MS_BETWEEN_CRASHES} milliseconds.
+     *
+     * @param policy crash rate policy
+     */
+    public static void setCrashRatePolicy(@NonNull CrashRatePolicy policy) {
+        mCrashRatePolicy = policy;
+    }
+
+    /**
+     * Set max time between crashes of different processes of the app e.g. main process and a ":sync" service
+     * process which are shown in one bottom sheet. When another process crashes within this time of the crash
+     * being shown, its stack trace is appended to the report under a caption naming the process instead of
+     * showing another bottom sheet. Default window is 10 seconds. Pass 0 to show each process on its own.
+     *
+     * @param ms window in milliseconds
+     */
+    public static void setProcessCrashWindowMs(long ms) {
+        mProcessCrashWindowMs = Math.max(ms, 0);
+    }
+
+    /**
+     * Returns max time between crashes of different processes shown in one bottom sheet.
+     *
+     * @return window in milliseconds
+     */
+    static long getProcessCrashWindowMs() {
+        return mProcessCrashWindowMs;
+    }
+
+    /**
+     * Set max number of bytes of stack trace which is forwarded to {@link CrashActivity}.
+     * Buffers of this size are allocated up front when {@link CrashBottomSheet} is registered so that
+     * crash handler does not need to allocate memory for stack trace. Stack trace is recorded in a compact
+     * binary format with interned class, method and file names and rendered back into text when report is
+     * shown. If it does not fit in binary format then it is written as text where repeated frames of deep recursion
+     * are collapsed and middle frames of each throwable are omitted to fit stack trace in this limit so that
+     * root cause is kept. Stack trace which still exceeds this limit is truncated.
+     * Values less than 4 KB are raised to 4 KB.
+     * Default value is 256 KB.
+     *
+     * @param bytes max number of bytes
+     */
+    public static void setMaxReportBytes(int bytes) {
+        mMaxReportBytes = Math.max(bytes, StackTraceSerializer.MIN_MAX_BYTES);
+        if (mSingleton != null && mSingleton.mInitialized) {
+            mSingleton.mSerializer = new StackTraceSerializer(mMaxReportBytes, mSingleton.mStackTraces);
+            mSingleton.mRecordWriter = new CrashRecordWriter(mMaxReportBytes, mSingleton.mStackTraces);
+        }
+    }
+
+    /**
+     * Set policy which decides what to do for a crash whose fingerprint has already been reported.
+     * Default policy is {@link DuplicateCrashPolicy#ALWAYS_REPORT}.
+     *
+     * @param policy duplicate crash policy
+     */
+    public static void setDuplicateCrashPolicy(@NonNull DuplicateCrashPolicy policy) {
+        mDuplicateCrashPolicy = policy;
+    }
+
+    /**
+     * Set how crash fingerprints are computed. Fingerprint is a hash of exception class chain and top frames
+     * of root cause. By default top 8 frames are used without line numbers and generated numbers in lambda and
+     * synthetic names are ignored so that fingerprint stays same across app builds.
+     *
+     * @param topFrames             number of top frames of root cause to include
+     * @param includeLineNumbers    whether to include line numbers
+     * @param includeSyntheticNames whether to include generated numbers in lambda and synthetic names
+     *                              e.g. lambda$onCreate$0, access$000, MainActivity$1
+     */
+    public static void setFingerprintOptions(int topFrames, boolean includeLineNumbers, boolean includeSyntheticNames) {
+        mFingerprint = new CrashFingerprint(topFrames, includeLineNumbers, includeSyntheticNames);
+    }
+
+    /**
+     * Set number of bytes of memory to hold as emergency reserve. Reserve is released as the very first step
+     * when a crash occurs so that crash report can still be produced for {@link OutOfMemoryError} crashes.
+     * Emergency reserve is disabled by default. Pass 0 to disable it.
+     * Something around 512 KB works well for most of the apps.
+     *
+     * @param bytes number of bytes to reserve
+     */
+    public static void setEmergencyReserveBytes(int bytes) {
+        mEmergencyReserveBytes = Math.max(bytes, 0);
+        if (mSingleton != null && mSingleton.mInitialized) {
+            mSingleton.mEmergencyReserve = null; // Let go of previous reserve first
+            if (mEmergencyReserveBytes > 0) mSingleton.mEmergencyReserve = new byte[mEmergencyReserveBytes];
+        }
+    }
+
+    /**
+     * Leaves a breadcrumb i.e. a short note of what the app is doing. Recent breadcrumbs are attached to
+     * crash report so that you can see what happened just before the crash.
+     * It can be called from any thread at any time, even before {@link CrashBottomSheet#register}. It never
+     * waits for other threads and does not allocate memory so it can be called from scroll and network code.
+     * Message is kept by reference so pass constant or already existing strings.
+     *
+     * @param category category code, one of CATEGORY_* constants of {@link BreadcrumbRing} or your own code
+     * @param message  short message
+     */
+    public static void leaveBreadcrumb(int category, @Nullable String message) {
+        mBreadcrumbs.record(System.currentTimeMillis(), category, message, 0, 0);
+    }
+
+    /**
+     * Leaves a breadcrumb with numeric arguments e.g. position of scrolled item or HTTP status code.
+     * See {@link CrashBottomSheet#leaveBreadcrumb(int, String)}.
+     *
+     * @param category  category code, one of CATEGORY_* constants of {@link BreadcrumbRing} or your own code
+     * @param message   short message
+     * @param firstArg  first numeric argument
+     * @param secondArg second numeric argument
+     */
+    public static void leaveBreadcrumb(int category, @Nullable String message, long firstArg, long secondArg) {
+        mBreadcrumbs.record(System.currentTimeMillis(), category, message, firstArg, secondArg);
+    }
+
+    /**
+     * Set number of most recent breadcrumbs attached to crash report. Breadcrumbs left so far are discarded.
+     * Default value is 64.
+     *
+     * @param capacity number of breadcrumbs kept, rounded up to a power of two
+     */
+    public static void setBreadcrumbCapacity(int capacity) {
+        BreadcrumbRing breadcrumbs = new BreadcrumbRing(capacity);
+        mBreadcrumbSnapshot = new BreadcrumbRing.Snapshot(breadcrumbs.getCapacity());
+        mBreadcrumbs = breadcrumbs;
+    }
+
+    /**
+     * Set whether stack traces of all live threads are attached to crash report. It helps to find crashes
+     * caused by deadlocks or contention e.g. main thread blocked on a lock held by another thread.
+     * Main thread is listed first and threads with identical stack e.g. idle pool workers are listed once
+     * with a count. Dump is skipped for {@link OutOfMemoryError} crashes.
+     * Thread dump is disabled by default.
+     *
+     * @param enabled true to attach thread dump otherwise false
+     */
+    public static void setThreadDumpEnabled(boolean enabled) {
+        mThreadDumpEnabled = enabled;
+    }
+
+    /**
+     * Set time and size budget of thread dump attached to crash report so that dumping a huge number of
+     * threads cannot stall the crashing process. Threads which do not fit in budget are only counted.
+     * Default budget is 100 ms and 64 KB.
+     *
+     * @param timeMs   max time spent on capturing stack traces in milliseconds
+     * @param maxBytes max number of bytes of thread dump, values less than 1 KB are raised to 1 KB
+     */
+    public static void setThreadDumpBudget(long timeMs, int maxBytes) {
+        mThreadDumpTimeMs = Math.max(timeMs, 0);
+        mThreadDumpMaxBytes = Math.max(maxBytes, MIN_THREAD_DUMP_BYTES);
+    }
+
+    /**
+     * Add a collector which attaches extra context to crash reports e.g. memory stats, app state or feature
+     * flags. Collectors run at crash time concurrently on a small pool of threads started when first collector
+     * is added, and crash handler waits for all of them only until the collector deadline. Output of each
+     * collector is listed under its name in crash report, while collectors which time out or fail are listed
+     * by name only. Collectors are skipped for {@link OutOfMemoryError} crashes.
+     *
+     * @param name      name under which output of collector is listed
+     * @param collector collector of crash context
+     */
+    public static void addCrashCollector(@NonNull String name, @NonNull final CrashCollector collector) {
+        synchronized (CrashBottomSheet.class) {
+            if (mCollectors == null) mCollectors = new CrashCollectorPipeline(CrashCollectorPipeline.DEFAULT_THREADS);
         }
+        mCollectors.add(name, collector::collect);
+    }
+
+    /**
+     * Set time crash handler waits for all crash collectors, which bounds how much they can delay exit of
+     * crashed process. Default deadline is 500 ms.
+     *
+     * @param ms collector deadline in milliseconds
+     */
+    public static void setCrashCollectorDeadlineMs(long ms) {
+        mCollectorDeadlineMs = Math.max(ms, 0);
+    }
+
+    /**
+     * Set whether tail of logcat of crashed process is attached to crash report. Logcat is read when bottom
+     * sheet is shown and report button is enabled once it is done, so crash handler does not spend any time
+     * on it. On Android 7.0 and later logcat is filtered by process id, on older versions whole buffer is
+     * read and filtered by the library. Logcat capture is disabled by default.
+     *
+     * @param enabled true to attach logcat tail to crash reports
+     */
+    public static void setLogcatCaptureEnabled(boolean enabled) {
+        LogcatCollector.setEnabled(enabled);
+    }
+
+    /**
+     * Set budget of logcat capture enabled with {@link CrashBottomSheet#setLogcatCaptureEnabled(boolean)}.
+     * Capture keeps last lines of logcat and stops at whichever budget is used up first. Default budget is
+     * 300 lines, 64 KB and 2 seconds.
+     *
+     * @param maxLines  max number of logcat lines
+     * @param maxBytes  max number of bytes of logcat, values less than 1 KB are raised to 1 KB
+     * @param timeoutMs max time spent on reading logcat in milliseconds
+     */
+    public static void setLogcatCaptureBudget(int maxLines, int maxBytes, long timeoutMs) {
+        if (maxLines <= 0 || timeoutMs <= 0) {
+            Log.w(LOG_TAG, "WARNING! Logcat line limit and timeout must be positive. Using default budget.");
+            maxLines = LogcatCollector.DEFAULT_MAX_LINES;
+            timeoutMs = LogcatCollector.DEFAULT_TIMEOUT_MS;
+        }
+        LogcatCollector.setBudget(maxLines, Math.max(maxBytes, LogcatCollector.MIN_BYTES), timeoutMs);
+    }
+
+    /**
+     * Returns number of {@link OutOfMemoryError} crashes which have been reported using the emergency memory
+     * reserve set with {@link CrashBottomSheet#setEmergencyReserveBytes(int)}.
+     *
+     * @param context Any Context object
+     * @return number of crashes reported using emergency reserve
+     */
+    public static int getEmergencyReserveUseCount(Context context) {
+        return (int) CrashMetricsRecorder.getReserveUseCount(context.getApplicationContext());
+    }
+
+    /**
+     * Enables persistent report queue. Every crash report is compressed and kept in a queue in app's private
+     * directory once bottom sheet is closed, no matter which button user pressed, and survives app restarts
+     * until it is delivered. Calling this method also starts draining the queue in background by handing
+     * queued reports to given sender in batches. Call it on every app start after you call
+     * {@link CrashBottomSheet#register(Application)} method so that reports of previous crashes are delivered.
+     *
+     * @param sender sender which delivers batches of queued reports e.g. uploads them to your server
+     */
+    public static void enableReportQueue(@NonNull ReportBatchSender sender) {
+        if (mSingleton == null) {
+            Log.w(LOG_TAG, "WARNING! Called enableReportQueue() before register() so it is ignored.");
+            return;
+        }
+        ReportQueue.setEnabled(true);
+        ReportQueue.drain(mSingleton.mAppContext, sender);
+    }
+
+    /**
+     * Set limits of report queue enabled with {@link CrashBottomSheet#enableReportQueue(ReportBatchSender)}.
+     * Reports older than max age are evicted and then oldest reports are evicted until queue fits in max size.
+     * Default limits are 1 MB of compressed reports and 7 days.
+     *
+     * @param maxBytes max number of bytes of compressed reports
+     * @param maxAgeMs max age of report in milliseconds
+     */
+    public static void setReportQueueLimits(long maxBytes, long maxAgeMs) {
+        ReportQueue.setLimits(Math.max(maxBytes, 0), Math.max(maxAgeMs, 0));
+    }
+
+    /**
+     * Set listener which receives crash path metrics e.g. time taken by crash handler, size of stack trace and
+     * whether user reported the crash. Metrics are recorded in app's private directory and handed to listener
+     * on a background thread when this method is called, so call it on every app start after you call
+     * {@link CrashBottomSheet#register(Application)} method to export metrics of previous crashes.
+     * Metrics are removed only after listener returns so they are handed again on next start if it throws.
+     *
+     * @param listener listener which exports metrics e.g. to your telemetry
+     */
+    public static void setCrashMetricsListener(@NonNull CrashMetricsListener listener) {
+        if (mSingleton == null) {
+            Log.w(LOG_TAG, "WARNING! Called setCrashMetricsListener() before register() so it is ignored.");
+            return;
+        }
+        if (ProcessInfo.isCrashProcess()) return; // Metrics are exported by app's default process
+        runWhenAttached(mSingleton.mAppContext, () -> {
+            Thread thread = new Thread(() -> {
+                CrashMetricsRecorder.Snapshot snapshot = CrashMetricsRecorder.read(mSingleton.mAppContext);
+                CrashMetrics metrics = snapshot.getMetrics();
+                if (metrics == null) return;
+                listener.onCrashMetrics(metrics);
+                // Metrics are reset only once they are exported so they are handed again if listener throws
+                snapshot.reset();
+            }, "CrashBottomSheet-Metrics");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Set custom report action which runs on report executor instead of main thread. Bottom sheet stays on screen
+     * showing progress until report is delivered or report deadline passes. Reports which could not be delivered
+     * are kept in app's private directory and handed to the same callback on next app launch, so call this method
+     * on every app start after you call {@link CrashBottomSheet#register(Application)} method.
+     * It takes precedence over callback passed to {@link CrashBottomSheet#register(Application, onCrashReport)}.
+     *
+     * @param reportCallback Your custom action to invoke when report button is pressed by user in bottom sheet
+     *                       or null to remove it.
+     */
+    public static void setAsyncReportCallback(@Nullable onCrashReportAsync reportCallback) {
+        if (mSingleton == null) {
+            Log.w(LOG_TAG, "WARNING! Called setAsyncReportCallback() before register() so it is ignored.");
+            return;
+        }
+        mAsyncCallback = reportCallback;
+        if (reportCallback != null && !ProcessInfo.isCrashProcess()) {
+            // Deliver reports which could not be delivered before
+            runWhenAttached(mSingleton.mAppContext, () -> ReportDispatcher.retryPending(mSingleton.mAppContext, reportCallback));
+        }
+    }
+
+    /**
+     * Set executor which runs custom report action set with
+     * {@link CrashBottomSheet#setAsyncReportCallback(onCrashReportAsync)}.
+     * By default report action runs on a single background thread.
+     *
+     * @param executor executor or null to use default one
+     */
+    public static void setReportExecutor(@Nullable Executor executor) {
+        ReportDispatcher.setExecutor(executor);
+    }
+
+    /**
+     * Set time allowed for custom report action set with
+     * {@link CrashBottomSheet#setAsyncReportCallback(onCrashReportAsync)} to deliver report.
+     * Bottom sheet is closed and report is kept for next app launch once deadline passes.
+     * Default deadline is 15 seconds.
+     *
+     * @param ms deadline in milliseconds
+     */
+    public static void setReportDeadlineMs(long ms) {
+        if (ms <= 0) {
+            Log.w(LOG_TAG, "WARNING! Report deadline must be positive. Using default deadline.");
+            ms = ReportDispatcher.DEFAULT_DEADLINE_MS;
+        }
+        ReportDispatcher.setDeadlineMs(ms);
+    }
+
+    /**
+     * Returns custom report action which runs on report executor.
+     *
+     * @return report callback or null if not set
+     */
+    static onCrashReportAsync getAsyncCallback() {
+        return mAsyncCallback;
+    }
+
+    /**
+     * Set whether main thread is watched for hangs. A watchdog thread posts a ping to main thread and if it
+     * does not run within hang threshold, stack of main thread is sampled a few times to build a hang profile
+     * where identical samples are listed once with their count. Hang is shown in bottom sheet on next launch
+     * and reported like a crash. Watchdog sleeps between pings and does not allocate memory while main thread
+     * responds. Hangs are ignored while debugger is connected. Hang watchdog is disabled by default.
+     *
+     * @param enabled true to watch main thread for hangs
+     */
+    public static void setHangWatchdogEnabled(boolean enabled) {
+        HangReporter.setEnabled(enabled);
+    }
+
+    /**
+     * Set time main thread may not respond before it is considered hung. Default threshold is 5 seconds which
+     * is when Android shows ANR dialog for input events.
+     *
+     * @param ms hang threshold in milliseconds
+     */
+    public static void setHangThresholdMs(long ms) {
+        if (ms <= 0) {
+            Log.w(LOG_TAG, "WARNING! Hang threshold must be positive. Using default threshold.");
+            ms = HangWatchdog.DEFAULT_THRESHOLD_MS;
+        }
+        HangReporter.setThresholdMs(ms);
+    }
+
+    /**
+     * Set whether frame times of main thread are recorded and attached to crash and hang reports as frame
+     * count, frozen frame count and 50th, 90th and 99th percentile and longest frame time of the last seconds.
+     * A Choreographer frame callback measures time between frames while an activity is started, so main thread
+     * wakes up on every vsync in that time. Recording a frame does not allocate memory. Frame timing is
+     * disabled by default.
+     *
+     * @param enabled true to record frame times
+     */
+    public static void setFrameTimingEnabled(boolean enabled) {
+        FrameTimeRecorder.setEnabled(enabled);
+    }
+
+    /**
+     * Set number of last seconds whose frame times are attached to crash and hang reports. Default window is
+     * 30 seconds. Frame times recorded so far are discarded.
+     *
+     * @param seconds window in seconds
+     */
+    public static void setFrameTimingWindowSeconds(int seconds) {
+        if (seconds <= 0) {
+            Log.w(LOG_TAG, "WARNING! Frame timing window must be positive. Using default window.");
+            seconds = FrameTimeHistogram.DEFAULT_WINDOW_SECONDS;
+        }
+        FrameTimeRecorder.setWindowSeconds(seconds);
+    }
+
+    /**
+     * Records a non-fatal exception i.e. one your app caught and recovered from, so that it is delivered with
+     * crash reports through report queue enabled with {@link CrashBottomSheet#enableReportQueue(ReportBatchSender)}.
+     * Calling thread only hands throwable to a bounded lock-free queue so it can be called from any thread
+     * including main thread. A background worker writes queued exceptions in batches every few seconds where
+     * exceptions of the same class thrown from the same place are written once with their count. Exceptions
+     * recorded faster than they are written are dropped and counted, see
+     * {@link CrashBottomSheet#getDroppedNonFatalCount()}, and so are exceptions recorded while report queue is
+     * not enabled. Throwable must not be modified after it is recorded.
+     *
+     * @param throwable non-fatal exception
+     */
+    public static void recordNonFatal(@NonNull Throwable throwable) {
+        NonFatalReporter.record(throwable);
+    }
+
+    /**
+     * Returns number of non-fatal exceptions dropped since app start because they were recorded faster than
+     * they could be written or because report queue is not enabled.
+     *
+     * @return dropped count
+     */
+    public static long getDroppedNonFatalCount() {
+        return NonFatalReporter.getDroppedCount();
+    }
+
+    /**
+     * Set mapping index asset used to deobfuscate stack traces of minified builds before they are shown or
+     * sent. Index is built from R8 or ProGuard mapping file at build time with
+     * {@link com.cod3rboy.crashbottomsheet.core.MappingIndexBuilder} and is memory mapped when asset is stored
+     * uncompressed. Retrace is disabled by default.
+     *
+     * @param assetName path of mapping index in assets or null to disable retrace
+     */
+    public static void setRetraceMappingAsset(@Nullable String assetName) {
+        MappingRetrace.setAssetName(assetName);
+    }
+
+    /**
+     * Set whether bottom sheet has a details button which opens a panel showing stack trace of the crash, so
+     * that users and testers can see what crashed without sending the report. Lines are shown as a recycled
+     * list laid out off main thread so that huge stack traces open and scroll smoothly. Causes, suppressed
+     * exceptions and appended sections e.g. breadcrumbs are collapsed until tapped. Panel is disabled by
+     * default.
+     *
+     * @param enabled true to show stack trace panel in bottom sheet
+     */
+    public static void setTraceViewerEnabled(boolean enabled) {
+        TraceViewer.setEnabled(enabled);
+    }
+
+    /**
+     * Set whether default email report action sends crash report as a compressed file attachment instead of
+     * putting it in email body. Email body then holds only a short summary of crash. It keeps large reports
+     * from being truncated by email apps. Attachment mode is disabled by default.
+     *
+     * @param enabled true to send crash report as attachment
+     */
+    public static void setEmailAttachmentEnabled(boolean enabled) {
+        CrashEmail.setAttachmentEnabled(enabled);
     }
 
     /**
@@ -141,43 +784,22 @@ public class CrashBottomSheet implements Thread.UncaughtExceptionHandler {
      * @param deviceInfo instance of {@link DeviceInfo} class holds information about device on which crash occurs
      */
     public static void sendCrashEmail(Context context, String stackTrace, DeviceInfo deviceInfo) {
-        Intent intent = new Intent(Intent.ACTION_SENDTO, Uri.fromParts(
-                "mailto", context.getString(R.string.cbs_report_email_to), null));
-
-        List<ResolveInfo> resolveInfos = context.getPackageManager().queryIntentActivities(intent, 0);
-        if (resolveInfos.size() == 0) {
-            // Toast No Email App Found
-            Toast.makeText(context, context.getString(R.string.cbs_toast_no_email_app), Toast.LENGTH_SHORT)
-                    .show();
-        } else {
-            int i = 0;
-            for (; i < resolveInfos.size(); i++) {
-                ResolveInfo resolveInfo = resolveInfos.get(i);
-                String packageName = resolveInfo.activityInfo.packageName;
-                String name = resolveInfo.activityInfo.name;
-                if (resolveInfo.activityInfo.applicationInfo.enabled && !packageName.equals("com.android.fallback")) {
-                    intent = new Intent(Intent.ACTION_SEND);
-                    intent.setDataAndType(Uri.parse("mailto:"), "text/plain");
-                    intent.putExtra(Intent.EXTRA_EMAIL, new String[]{context.getString(R.string.cbs_report_email_to)});
-                    intent.putExtra(Intent.EXTRA_SUBJECT, context.getString(R.string.cbs_report_email_subject));
-                    intent.putExtra(Intent.EXTRA_TEXT,
-                            String.format(Locale.getDefault(), context.getString(R.string.cbs_email_body_format),
-                                    context.getString(R.string.app_name),
-                                    new SimpleDateFormat("EEE, dd-MMM-yyyy, HH:mm:ss", Locale.getDefault()).format(new Date()),
-                                    deviceInfo.getFormattedInfo(),
-                                    stackTrace));
-                    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                    intent.setComponent(new ComponentName(packageName, name));
-                    context.startActivity(intent);
-                    break;
-                }
-            }
-            if (i >= resolveInfos.size()) {
-                // Toast No Email App found
-                Toast.makeText(context, context.getString(R.string.cbs_toast_no_email_app), Toast.LENGTH_SHORT)
-                        .show();
-            }
-        }
+        sendCrashEmail(context, stackTrace, deviceInfo, null, 0);
+    }
+
+    /**
+     * Same as {@link CrashBottomSheet#sendCrashEmail(Context, String, DeviceInfo)} but also adds crash fingerprint
+     * and its number of occurrences to the email.
+     *
+     * @param context     Any Context Object
+     * @param stackTrace  String containing stack trace of crash
+     * @param deviceInfo  instance of {@link DeviceInfo} class holds information about device on which crash occurs
+     * @param fingerprint crash fingerprint or null
+     * @param occurrences number of times crash with same fingerprint has occurred on device
+     */
+    public static void sendCrashEmail(Context context, String stackTrace, DeviceInfo deviceInfo,
+                                      @Nullable String fingerprint, int occurrences) {
+        CrashEmail.send(context, stackTrace, deviceInfo, fingerprint, occurrences);
     }
 
     /**
@@ -193,6 +815,57 @@ public class CrashBottomSheet implements Thread.UncaughtExceptionHandler {
     private Application mAppContext;
     // User registered custom report action callback
     private onCrashReport mCallback;
+    // Whether crash handler has been prepared
+    private volatile boolean mInitialized;
+    // Spool to hand over crash report to CrashActivity
+    private CrashSpool mSpool;
+    // Serializer with pre-allocated buffer to write stack trace at crash time
+    private volatile StackTraceSerializer mSerializer;
+    // Writer with pre-allocated buffer to write binary crash record at crash time
+    private volatile CrashRecordWriter mRecordWriter;
+    // Frames of crash throwables read once and shared by fingerprint, serializer and record writer
+    private final StackTraceCache mStackTraces = new StackTraceCache(StackTraceCache.DEFAULT_CAPACITY);
+    // Pre-allocated array of device strings written into binary crash record
+    private final String[] mDeviceStrings = new String[CrashRecord.DEVICE_STRING_COUNT];
+    // Gate which lets only the first of crashes occurring at the same time be handled
+    private final ConcurrentCrashGate mCrashGate = new ConcurrentCrashGate(ConcurrentCrashGate.DEFAULT_CAPACITY);
+    // Handler of the crash which entered the gate, allocated up front
+    private final ConcurrentCrashGate.CrashHandler mCrashHandler = (thread, throwable) -> {
+        try {
+            return handleCrash(thread, throwable);
+        } catch (Throwable failure) {
+            Log.w(LOG_TAG, "WARNING! CrashBottomSheet failed to handle crash so it is passed to previous handler.", failure);
+            throw failure;
+        } finally {
+            mStackTraces.clear();
+        }
+    };
+    // Time at which the crash being handled entered crash handler
+    private long mEntryNanos;
+    // Dumps stack traces of all threads into mThreadDump at crash time
+    private final ThreadDumper mThreadDumper = new ThreadDumper(ThreadDumper.DEFAULT_MAX_THREADS);
+    private final StringBuilder mThreadDump = new StringBuilder();
+    // Output of crash collectors
+    private final StringBuilder mCollectedData = new StringBuilder();
+    // Pre-allocated frame time snapshot filled at crash time
+    private final FrameTimeHistogram.Snapshot mFrameTiming = new FrameTimeHistogram.Snapshot();
+    // Breadcrumbs and frame timing formatted at crash time when text stack trace is written
+    private final StringBuilder mSectionText = new StringBuilder(SECTION_TEXT_CAPACITY);
+    // Pre-allocated arrays of concurrent crashes attached to the handled crash
+    private final String[] mConcurrentThreadNames = new String[ConcurrentCrashGate.DEFAULT_CAPACITY];
+    private final Throwable[] mConcurrentThrowables = new Throwable[ConcurrentCrashGate.DEFAULT_CAPACITY];
+    // Emergency memory reserve released when crash occurs or null if disabled
+    private volatile byte[] mEmergencyReserve;
+    // Rate limiter which remembers recent crashes to prevent CrashLoop
+    private CrashRateLimiter mRateLimiter;
+    // Records crash path metrics
+    private CrashMetricsRecorder mMetrics;
+    // Index of crash fingerprints seen on device
+    private CrashSignatureIndex mSignatureIndex;
+    // Device state filled at crash time
+    private final DeviceInfo.CrashState mCrashState = new DeviceInfo.CrashState();
+    // Battery manager used to capture battery level at crash time or null if not available
+    private BatteryManager mBatteryManager;
 
     /**
      * Constructor
@@ -205,6 +878,94 @@ public class CrashBottomSheet implements Thread.UncaughtExceptionHandler {
         mCallback = callback;
     }
 
+    /**
+     * Prepares everything crash handler needs ahead of time so that it has least work to do at crash time.
+     * It is invoked once application context is attached or by crash handler itself if crash occurs earlier.
+     */
+    private synchronized void initialize() {
+        if (mInitialized) return;
+        if (mEmergencyReserveBytes > 0) mEmergencyReserve = new byte[mEmergencyReserveBytes];
+        // Compute device information which does not change during app lifetime in background
+        DeviceInfo.prefetchSnapshot(mAppContext);
+        // Open crash spool ahead of time so that crash handler only has to write into it
+        mSpool = new CrashSpool(mAppContext);
+        if (!mSpool.open()) {
+            Log.w(LOG_TAG, "WARNING! Crash spool is not available so CrashBottomSheet will not be shown on crash.");
+        }
+        mSerializer = new StackTraceSerializer(mMaxReportBytes, mStackTraces);
+        mRecordWriter = new CrashRecordWriter(mMaxReportBytes, mStackTraces);
+        mMetrics = new CrashMetricsRecorder(mAppContext);
+        // Each process detects its own CrashLoop so its state is kept apart from other processes
+        mRateLimiter = new CrashRateLimiter(MappedFile.map(new File(CrashSpool.getSpoolDir(mAppContext),
+                RATE_LIMITER_FILE_NAME + ProcessInfo.getProcessKey(mAppContext) + RATE_LIMITER_FILE_EXTENSION),
+                CrashRateLimiter.BUFFER_SIZE));
+        mSignatureIndex = new CrashSignatureIndex(mAppContext);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mBatteryManager = (BatteryManager) mAppContext.getSystemService(Context.BATTERY_SERVICE);
+        }
+        mInitialized = true;
+        HangReporter.onInitialized(mAppContext);
+        NonFatalReporter.onInitialized(mAppContext);
+        FrameTimeRecorder.onInitialized(mAppContext);
+    }
+
+    /**
+     * Creates intent which starts activity hosting bottom sheet for crash record.
+     *
+     * @param context    Any Context object
+     * @param recordId   id of crash record
+     * @param entryNanos crash handler entry time
+     * @return intent
+     */
+    static Intent newCrashActivityIntent(Context context, String recordId, long entryNanos) {
+        Intent i = new Intent(context, mCrashProcessEnabled ? CrashProcessActivity.class : CrashActivity.class);
+        i.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        i.putExtra(EXTRA_CRASH_RECORD_ID, recordId);
+        i.putExtra(EXTRA_CRASH_NANOS, entryNanos);
+        return i;
+    }
+
+    /**
+     * Creates intent which starts activity hosting bottom sheet for hang record on top of a running activity.
+     * App keeps running after a hang so unlike crashes the task user is in is kept.
+     *
+     * @param activity started activity to show bottom sheet from
+     * @param recordId id of hang record
+     * @return intent
+     */
+    static Intent newHangActivityIntent(Activity activity, String recordId) {
+        Intent i = new Intent(activity, mCrashProcessEnabled ? CrashProcessActivity.class : CrashActivity.class);
+        i.putExtra(EXTRA_CRASH_RECORD_ID, recordId);
+        return i;
+    }
+
+    /**
+     * Returns how crash fingerprints are computed.
+     *
+     * @return crash fingerprint options
+     */
+    static CrashFingerprint getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * Returns max number of bytes of a stack trace.
+     *
+     * @return max report bytes
+     */
+    static int getMaxReportBytes() {
+        return mMaxReportBytes;
+    }
+
+    /**
+     * Returns policy which decides what to do for a crash already reported.
+     *
+     * @return duplicate crash policy
+     */
+    static DuplicateCrashPolicy getDuplicateCrashPolicy() {
+        return mDuplicateCrashPolicy;
+    }
+
     /**
      * Returns user registered custom report action callback
      *
@@ -224,72 +985,237 @@ public class CrashBottomSheet implements Thread.UncaughtExceptionHandler {
      */
     @Override
     public void uncaughtException(@NonNull Thread t, @NonNull Throwable e) {
-        if (isErrorLoopPossible()) { // CrashLoop Possible
-            Log.w(LOG_TAG, "WARNING! Possibility of triggering a CrashLoop. So keeping CrashBottomSheet silent.");
+        long entryNanos = System.nanoTime();
+        if (!mCrashGate.enter(t, e)) {
+            // Another thread is already handling a crash and its report carries this one as concurrent crash.
+            // Wait for it to finish rather than showing another bottom sheet or killing the process under it.
+            Log.w(LOG_TAG, "WARNING! Crash in thread " + t.getName() + " occurred while another crash is being handled.");
+            mCrashGate.awaitRelease(CONCURRENT_CRASH_WAIT_MS);
             if (mOldHandler != null) mOldHandler.uncaughtException(t, e);
             return;
         }
-        // Save crash timestamp
-        setCurrentCrashTimestamp();
-        // Get stack trace of crash
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        e.printStackTrace(new PrintStream(stream));
-        String stackTrace = stream.toString();
+        // Anything thrown while handling the crash passes it to previous handler so process still dies
+        mEntryNanos = entryNanos;
+        mCrashGate.handle(t, e, mCrashHandler, mOldHandler);
+    }
+
+    /**
+     * Handles crash which entered the crash gate. Invoked by {@link ConcurrentCrashGate#handle} which passes
+     * the crash to previous handler when this returns false or throws.
+     *
+     * @param t Thread in which exception occurred
+     * @param e Exception object
+     * @return true if CrashBottomSheet is started otherwise false
+     */
+    private boolean handleCrash(Thread t, Throwable e) {
+        long entryNanos = mEntryNanos;
+        // Release emergency memory reserve first so that rest of the handler has memory to work with
+        boolean reserveReleased = mEmergencyReserve != null;
+        mEmergencyReserve = null;
+        // Crash occurred before application context was attached
+        if (!mInitialized) initialize();
+        long crashTimestamp = System.currentTimeMillis();
+        // There is hardly any memory left so skip everything which is not needed for minimal report
+        if (isOutOfMemory(e)) return handleOutOfMemory(e, entryNanos, crashTimestamp, reserveReleased);
+        // Remember crash fingerprint so that repeated occurrences are recognized
+        long fingerprint = mFingerprint.compute(e, mStackTraces);
+        // Index is shared with other processes so crash is looked up and recorded in one step
+        CrashStoreLock storeLock = mSignatureIndex.getLock();
+        boolean locked = storeLock.acquire(CrashStoreLock.DEFAULT_TIMEOUT_MS);
+        boolean alreadyReported;
+        int occurrences;
         try {
-            stream.close();
-        } catch (IOException ex) {
-            ex.printStackTrace();
+            alreadyReported = mSignatureIndex.isReported(fingerprint);
+            occurrences = mSignatureIndex.recordOccurrence(fingerprint, crashTimestamp);
+        } finally {
+            if (locked) storeLock.release();
         }
-
-        // Limit stacktrace content to avoid TransactionTooLargeException.
-        // See : https://developer.android.com/reference/android/os/TransactionTooLargeException.html
-        if (stackTrace.length() > STACK_TRACE_CHARS_LIMIT) {
-            Log.w(LOG_TAG, "WARNING! Stack trace size exceeds maximum limit of 127KB so it is truncated.");
-            String marker = " <TRUNCATED! STACK TRACE IS TOO LARGE>";
-            stackTrace = stackTrace.substring(0, STACK_TRACE_CHARS_LIMIT - marker.length()) + marker;
+        if (alreadyReported && mDuplicateCrashPolicy == DuplicateCrashPolicy.SKIP_SHEET) {
+            Log.i(LOG_TAG, "Crash has already been reported. So keeping CrashBottomSheet silent.");
+            mMetrics.onDuplicateSuppressed();
+            return false;
+        }
+        if (isErrorLoopPossible(crashTimestamp)) { // CrashLoop Possible
+            Log.w(LOG_TAG, "WARNING! Possibility of triggering a CrashLoop. So keeping CrashBottomSheet silent.");
+            mMetrics.onLoopSuppressed();
+            return false;
+        }
+        if (!mSpool.isOpen()) { // Nowhere to write crash report
+            return false;
+        }
+        mCrashState.capture(mAppContext, mBatteryManager);
+        // Attach crashes which occurred on other threads meanwhile
+        int concurrentCrashes = mCrashGate.getConcurrentCrashes(mConcurrentThreadNames, mConcurrentThrowables);
+        if (mCrashGate.getDroppedCount() > 0) {
+            Log.w(LOG_TAG, "WARNING! " + mCrashGate.getDroppedCount() + " concurrent crashes are not reported as there are too many of them.");
+        }
+        BreadcrumbRing.Snapshot breadcrumbs = mBreadcrumbSnapshot;
+        mBreadcrumbs.snapshot(breadcrumbs);
+        boolean threadDump = mThreadDumpEnabled;
+        if (threadDump) {
+            mThreadDump.setLength(0);
+            mThreadDumper.dump(mThreadDump, Looper.getMainLooper().getThread(), t,
+                    mThreadDumpTimeMs * 1000000L, mThreadDumpMaxBytes);
+        }
+        boolean collected = runCollectors(t, e);
+        boolean frameTiming = FrameTimeRecorder.snapshot(mFrameTiming);
+        // Serialize stack trace of crash into pre-allocated buffer and write it into the spool file
+        int flags = alreadyReported ? CrashSpool.FLAG_ALREADY_REPORTED : 0;
+        ByteBuffer trace;
+        int traceLength;
+        boolean truncated = false;
+        if ((traceLength = writeCrashRecord(e, crashTimestamp, concurrentCrashes, breadcrumbs, threadDump,
+                collected, frameTiming)) != -1) {
+            flags |= CrashSpool.FLAG_BINARY_TRACE;
+            trace = mRecordWriter.getByteBuffer();
+        } else {
+            // Binary record does not fit so write text which is compacted to fit
+            traceLength = mSerializer.serialize(e);
+            for (int i = 0; i < concurrentCrashes; i++) {
+                traceLength = mSerializer.appendConcurrentCrash(mConcurrentThreadNames[i], mConcurrentThrowables[i]);
+            }
+            if (breadcrumbs.getCount() > 0) {
+                mSectionText.setLength(0);
+                traceLength = mSerializer.appendBreadcrumbs(breadcrumbs.appendTo(mSectionText, crashTimestamp));
+            }
+            if (threadDump) traceLength = mSerializer.appendThreadDump(mThreadDump);
+            if (collected) traceLength = mSerializer.appendCollectedData(mCollectedData);
+            if (frameTiming) {
+                mSectionText.setLength(0);
+                traceLength = mSerializer.appendFrameTiming(mFrameTiming.appendTo(mSectionText));
+            }
+            trace = mSerializer.getByteBuffer();
+            truncated = mSerializer.isTruncated();
+            if (truncated) {
+                Log.w(LOG_TAG, "WARNING! Stack trace size exceeds maximum limit of " + mMaxReportBytes + " bytes so it is truncated.");
+            }
+        }
+        String recordId = mSpool.writeHeader(flags, mCrashState, fingerprint, occurrences,
+                android.os.Process.myPid(), trace.remaining()) && mSpool.write(trace)
+                ? mSpool.commit(crashTimestamp) : null;
+        if (recordId == null) { // Crash record is not available to CrashActivity
+            return false;
         }
 
-        // Start CrashActivity and forward Stack Trace to it.
-        Intent i = new Intent(mAppContext, com.cod3rboy.crashbottomsheet.CrashActivity.class);
-        i.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-        i.putExtra(EXTRA_STACK_TRACE, stackTrace);
-        mAppContext.startActivity(i);
+        // Start CrashActivity and forward crash record id to it.
+        mAppContext.startActivity(newCrashActivityIntent(mAppContext, recordId, entryNanos));
+        mMetrics.onCrashHandled(entryNanos, System.nanoTime(), traceLength, truncated);
         // Kill current process of application
         android.os.Process.killProcess(android.os.Process.myPid());
         System.exit(10);
+        return true;
     }
 
     /**
-     * Determines whether there is a possibility to trigger CrashLoop.
-     * It is possible to trigger CrashLoop if next crash occurs earlier than
-     * previous crash time + {@link CrashBottomSheet#mMinCrashIntervalMs} value.
+     * Handles {@link OutOfMemoryError} crash by writing minimal report of it. Fingerprint, crash signature
+     * index, CrashLoop check and crash time state are skipped as they need memory, locks or system services,
+     * so the crash is always reported with unknown state and is never recognized as a duplicate.
      *
-     * @return true if CrashLoop can occur otherwise false
+     * @param e               Exception object which is or is caused by {@link OutOfMemoryError}
+     * @param entryNanos      handler entry time
+     * @param crashTimestamp  crash timestamp
+     * @param reserveReleased whether emergency memory reserve was released for this crash
+     * @return true if CrashBottomSheet is started otherwise false
+     */
+    private boolean handleOutOfMemory(Throwable e, long entryNanos, long crashTimestamp, boolean reserveReleased) {
+        if (!mSpool.isOpen()) { // Nowhere to write crash report
+            return false;
+        }
+        int flags = CrashSpool.FLAG_OUT_OF_MEMORY;
+        if (reserveReleased) flags |= CrashSpool.FLAG_RESERVE_USED;
+        int traceLength = mSerializer.serializeMinimal(e);
+        int concurrentCrashes = mCrashGate.getConcurrentCrashes(mConcurrentThreadNames, mConcurrentThrowables);
+        for (int i = 0; i < concurrentCrashes; i++) {
+            traceLength = mSerializer.appendConcurrentCrash(mConcurrentThreadNames[i], mConcurrentThrowables[i]);
+        }
+        ByteBuffer trace = mSerializer.getByteBuffer();
+        String recordId = mSpool.writeHeader(flags, mCrashState, 0, 1,
+                android.os.Process.myPid(), trace.remaining()) && mSpool.write(trace)
+                ? mSpool.commit(crashTimestamp) : null;
+        if (recordId == null) { // Crash record is not available to CrashActivity
+            return false;
+        }
+
+        mAppContext.startActivity(newCrashActivityIntent(mAppContext, recordId, entryNanos));
+        if (reserveReleased) mMetrics.onReserveUsed();
+        mMetrics.onCrashHandled(entryNanos, System.nanoTime(), traceLength, mSerializer.isTruncated());
+        android.os.Process.killProcess(android.os.Process.myPid());
+        System.exit(10);
+        return true;
+    }
+
+    /**
+     * Writes binary crash record of given throwable along with device information if it is available
+     * along with concurrent crashes, breadcrumbs, thread dump, output of crash collectors and frame timing.
+     *
+     * @param e                 crash throwable
+     * @param timestamp         crash timestamp
+     * @param concurrentCrashes number of concurrent crashes
+     * @param breadcrumbs       breadcrumbs left before the crash
+     * @param threadDump        whether thread dump is written
+     * @param collected         whether output of crash collectors is written
+     * @param frameTiming       whether frame time snapshot is written
+     * @return length of record or -1 if it does not fit in buffer
      */
-    private boolean isErrorLoopPossible() {
-        long now = new Date().getTime();
-        long lastCrash = getLastCrashTimestamp();
-        return (now - lastCrash) <= mMinCrashIntervalMs;
+    private int writeCrashRecord(Throwable e, long timestamp, int concurrentCrashes,
+                                 BreadcrumbRing.Snapshot breadcrumbs, boolean threadDump, boolean collected,
+                                 boolean frameTiming) {
+        mRecordWriter.begin(timestamp);
+        if (DeviceInfo.copySnapshotStrings(mDeviceStrings)) {
+            mRecordWriter.writeDeviceInfo(mDeviceStrings, mCrashState.mFreeMemory, mCrashState.mTotalMemory,
+                    mCrashState.mMaxMemory, mCrashState.mAvailableStorage, mCrashState.mBatteryLevel,
+                    mCrashState.mOrientation);
+        }
+        mRecordWriter.writeThrowable(e);
+        mRecordWriter.writeConcurrentCrashes(mConcurrentThreadNames, mConcurrentThrowables, concurrentCrashes);
+        mRecordWriter.writeBreadcrumbs(breadcrumbs);
+        if (threadDump) mRecordWriter.writeThreadDump(mThreadDump);
+        if (collected) mRecordWriter.writeCollectedData(mCollectedData);
+        if (frameTiming) mRecordWriter.writeFrameTiming(mFrameTiming);
+        return mRecordWriter.finish();
     }
 
     /**
-     * Saves the timestamp of current crash in preferences.
+     * Runs crash collectors into {@link CrashBottomSheet#mCollectedData} waiting for them until collector
+     * deadline.
+     *
+     * @param t Thread in which exception occurred
+     * @param e Exception object
+     * @return true if any collector is added otherwise false
      */
-    private void setCurrentCrashTimestamp() {
-        Date currentTimeStamp = new Date();
-        mAppContext.getSharedPreferences(PREFERENCE_FILE_NAME, Context.MODE_PRIVATE)
-                .edit()
-                .putLong(PREFERENCE_FIELD_NAME, currentTimeStamp.getTime())
-                .apply();
+    private boolean runCollectors(Thread t, Throwable e) {
+        CrashCollectorPipeline collectors = mCollectors;
+        if (collectors == null || collectors.getCollectorCount() == 0) return false;
+        mCollectedData.setLength(0);
+        int timedOut = collectors.collect(t, e, mCollectorDeadlineMs, mCollectedData);
+        if (timedOut > 0) {
+            Log.w(LOG_TAG, "WARNING! " + timedOut + " crash collectors did not finish within " + mCollectorDeadlineMs + " ms.");
+        }
+        return true;
     }
 
     /**
-     * Retrieves the timestamp of last crash from preferences.
+     * Determines whether crash is caused by {@link OutOfMemoryError}.
      *
-     * @return last crash timestamp
+     * @param e Exception object
+     * @return true if exception or any of its causes is {@link OutOfMemoryError} otherwise false
+     */
+    private static boolean isOutOfMemory(Throwable e) {
+        for (int depth = 0; e != null && depth < 16; e = e.getCause(), depth++) {
+            if (e instanceof OutOfMemoryError) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether there is a possibility to trigger CrashLoop by applying
+     * {@link CrashBottomSheet#mCrashRatePolicy} to current crash.
+     * Current crash is remembered if it is allowed by the policy.
+     *
+     * @param now current crash timestamp
+     * @return true if CrashLoop can occur otherwise false
      */
-    private long getLastCrashTimestamp() {
-        return mAppContext.getSharedPreferences(PREFERENCE_FILE_NAME, Context.MODE_PRIVATE)
-                .getLong(PREFERENCE_FIELD_NAME, 0);
+    private boolean isErrorLoopPossible(long now) {
+        return !mCrashRatePolicy.tryAcquire(mRateLimiter, now);
     }
 }
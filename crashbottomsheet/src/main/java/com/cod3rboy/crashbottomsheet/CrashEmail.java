@@ -0,0 +1,242 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.ActivityNotFoundException;
+import android.content.ClipData;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.FileProvider;
+
+import com.cod3rboy.crashbottomsheet.core.ReportFormatter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Default email report action. Crash report is either inlined into email body or written into a
+ * compressed attachment which is shared with email app through {@link CrashReportFileProvider}.
+ * Resolved email app is cached so that installed apps are queried only once.
+ */
+final class CrashEmail {
+    private static final String LOG_TAG = CrashEmail.class.getSimpleName();
+
+    // Name of directory inside app's cache directory which holds attachments
+    private static final String ATTACHMENT_DIR_NAME = "crashbottomsheet";
+    // Attachments older than this are deleted when a new one is written
+    private static final long ATTACHMENT_MAX_AGE_MS = 24 * 60 * 60 * 1000L; // 1 day
+    // Authority suffix of CrashReportFileProvider declared in library manifest
+    private static final String FILE_PROVIDER_AUTHORITY_SUFFIX = ".crashbottomsheet.fileprovider";
+    // Max number of characters of crash summary in email body of attachment mode
+    private static final int MAX_SUMMARY_LENGTH = 200;
+    // Charset of attachments
+    private static final Charset ATTACHMENT_CHARSET = Charset.forName("UTF-8");
+    // Package name of fallback activity which is not a real email app
+    private static final String FALLBACK_PACKAGE_NAME = "com.android.fallback";
+
+    // Formats crash timestamp. Access is synchronized on it as SimpleDateFormat is not thread safe.
+    private static final SimpleDateFormat mDateFormat = new SimpleDateFormat("EEE, dd-MMM-yyyy, HH:mm:ss", Locale.getDefault());
+    // Whether report is sent as compressed attachment
+    private static volatile boolean mAttachmentEnabled = false;
+    // Cached email app or null if not resolved yet
+    private static volatile ComponentName mEmailApp;
+
+    private CrashEmail() {
+    }
+
+    static void setAttachmentEnabled(boolean enabled) {
+        mAttachmentEnabled = enabled;
+    }
+
+    /**
+     * Launches email app with crash report or displays a toast message if no email app is installed.
+     *
+     * @param context     Any Context object
+     * @param stackTrace  String containing stack trace of crash
+     * @param deviceInfo  device information
+     * @param fingerprint crash fingerprint or null
+     * @param occurrences number of times crash with same fingerprint has occurred on device
+     */
+    static void send(Context context, String stackTrace, DeviceInfo deviceInfo, @Nullable String fingerprint, int occurrences) {
+        ComponentName emailApp = getEmailApp(context, false);
+        if (emailApp == null) {
+            showNoEmailApp(context);
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setDataAndType(Uri.parse("mailto:"), "text/plain");
+        intent.putExtra(Intent.EXTRA_EMAIL, new String[]{context.getString(R.string.cbs_report_email_to)});
+        intent.putExtra(Intent.EXTRA_SUBJECT, context.getString(R.string.cbs_report_email_subject));
+        String timestamp;
+        synchronized (mDateFormat) {
+            timestamp = mDateFormat.format(new Date());
+        }
+        Uri attachment = mAttachmentEnabled ? writeAttachment(context, timestamp, stackTrace, deviceInfo, fingerprint, occurrences) : null;
+        if (attachment != null) {
+            // Keep body short and let email app read full report from attachment
+            intent.putExtra(Intent.EXTRA_TEXT, String.format(Locale.getDefault(),
+                    context.getString(R.string.cbs_email_attachment_body_format),
+                    context.getString(R.string.app_name), timestamp, getSummary(stackTrace),
+                    fingerprint == null ? "-" : fingerprint));
+            intent.putExtra(Intent.EXTRA_STREAM, attachment);
+            intent.setClipData(ClipData.newRawUri(null, attachment));
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } else {
+            intent.putExtra(Intent.EXTRA_TEXT, String.format(Locale.getDefault(),
+                    context.getString(R.string.cbs_email_body_format),
+                    context.getString(R.string.app_name), timestamp,
+                    getFormattedInfo(deviceInfo, fingerprint, occurrences), stackTrace));
+        }
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        intent.setComponent(emailApp);
+        try {
+            context.startActivity(intent);
+        } catch (ActivityNotFoundException e) {
+            // Cached email app has been uninstalled or disabled so resolve it again
+            emailApp = getEmailApp(context, true);
+            if (emailApp == null) {
+                showNoEmailApp(context);
+                return;
+            }
+            intent.setComponent(emailApp);
+            context.startActivity(intent);
+        }
+    }
+
+    /**
+     * Returns email app which handles crash report email.
+     *
+     * @param context Any Context object
+     * @param refresh true to query installed apps again instead of using cached email app
+     * @return email app or null if no email app is installed
+     */
+    @Nullable
+    private static ComponentName getEmailApp(Context context, boolean refresh) {
+        ComponentName emailApp = mEmailApp;
+        if (emailApp != null && !refresh) return emailApp;
+        emailApp = null;
+        Intent intent = new Intent(Intent.ACTION_SENDTO, Uri.fromParts(
+                "mailto", context.getString(R.string.cbs_report_email_to), null));
+        List<ResolveInfo> resolveInfos = context.getPackageManager().queryIntentActivities(intent, 0);
+        for (ResolveInfo resolveInfo : resolveInfos) {
+            String packageName = resolveInfo.activityInfo.packageName;
+            if (resolveInfo.activityInfo.applicationInfo.enabled && !packageName.equals(FALLBACK_PACKAGE_NAME)) {
+                emailApp = new ComponentName(packageName, resolveInfo.activityInfo.name);
+                break;
+            }
+        }
+        mEmailApp = emailApp;
+        return emailApp;
+    }
+
+    /**
+     * Writes crash report into a compressed attachment in app's cache directory.
+     *
+     * @return content uri of attachment or null if it could not be written
+     */
+    @Nullable
+    private static Uri writeAttachment(Context context, String timestamp, String stackTrace, DeviceInfo deviceInfo,
+                                       @Nullable String fingerprint, int occurrences) {
+        File dir = new File(context.getCacheDir(), ATTACHMENT_DIR_NAME);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(LOG_TAG, "WARNING! Unable to create attachment directory " + dir);
+            return null;
+        }
+        deleteOldAttachments(dir);
+        File file = new File(dir, "crash_report_" + System.currentTimeMillis() + ".txt.gz");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(file)), ATTACHMENT_CHARSET))) {
+            writer.write(context.getString(R.string.app_name));
+            writer.write(" - Crash Report\nTimestamp : ");
+            writer.write(timestamp);
+            writer.write("\n---DEVICE INFO---\n");
+            writer.write(getFormattedInfo(deviceInfo, fingerprint, occurrences));
+            writer.write("\n\n---STACKTRACE---\n");
+            writer.write(stackTrace);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to write crash report attachment.", e);
+            file.delete();
+            return null;
+        }
+        try {
+            return FileProvider.getUriForFile(context, context.getPackageName() + FILE_PROVIDER_AUTHORITY_SUFFIX, file);
+        } catch (IllegalArgumentException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to share crash report attachment.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes attachments which email apps no longer need.
+     *
+     * @param dir attachment directory
+     */
+    private static void deleteOldAttachments(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long before = System.currentTimeMillis() - ATTACHMENT_MAX_AGE_MS;
+        for (File file : files) {
+            if (file.lastModified() < before && !file.delete()) {
+                Log.w(LOG_TAG, "WARNING! Unable to delete old attachment " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Returns first line of stack trace i.e. exception class and message.
+     */
+    private static String getSummary(String stackTrace) {
+        int end = stackTrace.indexOf('\n');
+        if (end < 0) end = stackTrace.length();
+        if (end > MAX_SUMMARY_LENGTH) end = MAX_SUMMARY_LENGTH;
+        return stackTrace.substring(0, end).trim();
+    }
+
+    /**
+     * Returns formatted device information with crash fingerprint if known.
+     */
+    private static String getFormattedInfo(DeviceInfo deviceInfo, @Nullable String fingerprint, int occurrences) {
+        if (fingerprint == null) return deviceInfo.getFormattedInfo();
+        StringBuilder info = new StringBuilder(deviceInfo.getFormattedInfo()).append('\n');
+        return ReportFormatter.appendFingerprint(info, fingerprint, occurrences).toString();
+    }
+
+    /**
+     * Displays toast message telling that no email app is installed.
+     */
+    private static void showNoEmailApp(Context context) {
+        Toast.makeText(context, context.getString(R.string.cbs_toast_no_email_app), Toast.LENGTH_SHORT)
+                .show();
+    }
+}
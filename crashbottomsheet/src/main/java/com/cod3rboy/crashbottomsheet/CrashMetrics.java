@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+/**
+ * Crash path metrics recorded by {@link CrashBottomSheet} since they were last handed to
+ * {@link CrashBottomSheet.CrashMetricsListener}. Latencies are measured with {@link System#nanoTime()}.
+ */
+public final class CrashMetrics {
+    // Indices of values
+    static final int CRASHES = 0;
+    static final int HANDLER_NANOS_TOTAL = 1;
+    static final int HANDLER_NANOS_MAX = 2;
+    static final int TRACE_BYTES_TOTAL = 3;
+    static final int TRACE_BYTES_MAX = 4;
+    static final int TRUNCATED = 5;
+    static final int LOOP_SUPPRESSED = 6;
+    static final int DUPLICATE_SUPPRESSED = 7;
+    static final int SHEETS_SHOWN = 8;
+    static final int SHEET_NANOS_TOTAL = 9;
+    static final int SHEET_NANOS_MAX = 10;
+    static final int REPORTS = 11;
+    static final int CANCELS = 12;
+    static final int DECISION_NANOS_TOTAL = 13;
+    static final int DECISION_NANOS_MAX = 14;
+    static final int VALUE_COUNT = 15;
+
+    // Metric values indexed by above constants
+    private final long[] mValues;
+
+    CrashMetrics(long[] values) {
+        mValues = values;
+    }
+
+    /**
+     * Returns number of crashes for which bottom sheet was started.
+     *
+     * @return crash count
+     */
+    public long getCrashCount() {
+        return mValues[CRASHES];
+    }
+
+    /**
+     * Returns total time spent in crash handler from its entry until bottom sheet was started.
+     *
+     * @return total latency in nanoseconds
+     */
+    public long getHandlerLatencyTotalNanos() {
+        return mValues[HANDLER_NANOS_TOTAL];
+    }
+
+    /**
+     * Returns max time spent in crash handler from its entry until bottom sheet was started.
+     *
+     * @return max latency in nanoseconds
+     */
+    public long getHandlerLatencyMaxNanos() {
+        return mValues[HANDLER_NANOS_MAX];
+    }
+
+    /**
+     * Returns total size of serialized stack traces.
+     *
+     * @return total size in bytes
+     */
+    public long getTraceBytesTotal() {
+        return mValues[TRACE_BYTES_TOTAL];
+    }
+
+    /**
+     * Returns max size of serialized stack trace.
+     *
+     * @return max size in bytes
+     */
+    public long getTraceBytesMax() {
+        return mValues[TRACE_BYTES_MAX];
+    }
+
+    /**
+     * Returns number of stack traces which were truncated because they exceeded max report size.
+     *
+     * @return truncation count
+     */
+    public long getTruncatedCount() {
+        return mValues[TRUNCATED];
+    }
+
+    /**
+     * Returns number of crashes for which bottom sheet was not shown to prevent CrashLoop.
+     *
+     * @return suppressed crash count
+     */
+    public long getLoopSuppressedCount() {
+        return mValues[LOOP_SUPPRESSED];
+    }
+
+    /**
+     * Returns number of crashes for which bottom sheet was not shown because they were already reported.
+     *
+     * @return suppressed crash count
+     */
+    public long getDuplicateSuppressedCount() {
+        return mValues[DUPLICATE_SUPPRESSED];
+    }
+
+    /**
+     * Returns number of times bottom sheet was shown.
+     *
+     * @return shown count
+     */
+    public long getSheetShownCount() {
+        return mValues[SHEETS_SHOWN];
+    }
+
+    /**
+     * Returns total time from crash handler entry until bottom sheet was shown.
+     *
+     * @return total latency in nanoseconds
+     */
+    public long getSheetLatencyTotalNanos() {
+        return mValues[SHEET_NANOS_TOTAL];
+    }
+
+    /**
+     * Returns max time from crash handler entry until bottom sheet was shown.
+     *
+     * @return max latency in nanoseconds
+     */
+    public long getSheetLatencyMaxNanos() {
+        return mValues[SHEET_NANOS_MAX];
+    }
+
+    /**
+     * Returns number of times user pressed report button.
+     *
+     * @return report count
+     */
+    public long getReportCount() {
+        return mValues[REPORTS];
+    }
+
+    /**
+     * Returns number of times user closed bottom sheet without reporting.
+     *
+     * @return cancel count
+     */
+    public long getCancelCount() {
+        return mValues[CANCELS];
+    }
+
+    /**
+     * Returns total time from bottom sheet being shown until user reported or cancelled.
+     *
+     * @return total latency in nanoseconds
+     */
+    public long getDecisionLatencyTotalNanos() {
+        return mValues[DECISION_NANOS_TOTAL];
+    }
+
+    /**
+     * Returns max time from bottom sheet being shown until user reported or cancelled.
+     *
+     * @return max latency in nanoseconds
+     */
+    public long getDecisionLatencyMaxNanos() {
+        return mValues[DECISION_NANOS_MAX];
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Records {@link CrashMetrics} into a memory mapped file so they are carried into next launch.
+ * Recording only writes into the mapped buffer so it does not allocate at crash time.
+ * Each process of the app records into its own file so that no two processes update the same counters.
+ * Latencies are measured with {@link System#nanoTime()} which is monotonic and shared by all processes
+ * of the device, so time taken by crash process to show bottom sheet is measured from handler entry.
+ */
+final class CrashMetricsRecorder {
+    // Name and extension of memory mapped metrics file of each process
+    private static final String FILE_NAME = "metrics";
+    private static final String FILE_EXTENSION = ".bin";
+    // Magic number at start of file i.e. "CBM1"
+    private static final int MAGIC = 0x43424d31;
+    // Layout of file
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_SHEET_SHOWN_NANOS = 8; // Time at which bottom sheet was last shown
+    private static final int OFFSET_RESERVE_USES = 16; // Crashes reported using emergency reserve, never reset
+    private static final int OFFSET_VALUES = 24;
+    private static final int FILE_SIZE = OFFSET_VALUES + CrashMetrics.VALUE_COUNT * 8;
+
+    // Memory mapped metrics content or heap buffer if file could not be mapped
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Constructor of recorder of current process.
+     *
+     * @param context application context object
+     */
+    CrashMetricsRecorder(Context context) {
+        this(new File(CrashSpool.getSpoolDir(context), FILE_NAME + ProcessInfo.getProcessKey(context) + FILE_EXTENSION));
+    }
+
+    private CrashMetricsRecorder(File file) {
+        mBuffer = MappedFile.map(file, FILE_SIZE);
+        if (mBuffer.getInt(OFFSET_MAGIC) != MAGIC) {
+            // New or corrupted file
+            for (int i = 0; i < FILE_SIZE; i += 4) mBuffer.putInt(i, 0);
+            mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+        }
+    }
+
+    /**
+     * Records a crash for which bottom sheet is started.
+     *
+     * @param entryNanos handler entry time
+     * @param endNanos   time at which bottom sheet was started
+     * @param traceBytes size of serialized stack trace
+     * @param truncated  whether stack trace was truncated
+     */
+    void onCrashHandled(long entryNanos, long endNanos, int traceBytes, boolean truncated) {
+        add(CrashMetrics.CRASHES, 1);
+        addSample(CrashMetrics.HANDLER_NANOS_TOTAL, CrashMetrics.HANDLER_NANOS_MAX, endNanos - entryNanos);
+        addSample(CrashMetrics.TRACE_BYTES_TOTAL, CrashMetrics.TRACE_BYTES_MAX, traceBytes);
+        if (truncated) add(CrashMetrics.TRUNCATED, 1);
+    }
+
+    /**
+     * Records a crash for which bottom sheet is not shown to prevent CrashLoop.
+     */
+    void onLoopSuppressed() {
+        add(CrashMetrics.LOOP_SUPPRESSED, 1);
+    }
+
+    /**
+     * Records a crash for which bottom sheet is not shown because it has already been reported.
+     */
+    void onDuplicateSuppressed() {
+        add(CrashMetrics.DUPLICATE_SUPPRESSED, 1);
+    }
+
+    /**
+     * Records a crash which is reported using emergency memory reserve.
+     */
+    void onReserveUsed() {
+        mBuffer.putLong(OFFSET_RESERVE_USES, mBuffer.getLong(OFFSET_RESERVE_USES) + 1);
+    }
+
+    /**
+     * Records that bottom sheet of a crash is shown.
+     *
+     * @param entryNanos handler entry time of the crash or 0 if it is unknown
+     * @param nowNanos   current time
+     */
+    void onSheetShown(long entryNanos, long nowNanos) {
+        mBuffer.putLong(OFFSET_SHEET_SHOWN_NANOS, nowNanos);
+        add(CrashMetrics.SHEETS_SHOWN, 1);
+        if (entryNanos != 0 && nowNanos > entryNanos) {
+            addSample(CrashMetrics.SHEET_NANOS_TOTAL, CrashMetrics.SHEET_NANOS_MAX, nowNanos - entryNanos);
+        }
+    }
+
+    /**
+     * Records whether user reported or cancelled the crash shown in bottom sheet.
+     *
+     * @param reported true if user pressed report button otherwise false
+     * @param nowNanos current time
+     */
+    void onDecision(boolean reported, long nowNanos) {
+        add(reported ? CrashMetrics.REPORTS : CrashMetrics.CANCELS, 1);
+        long shownNanos = mBuffer.getLong(OFFSET_SHEET_SHOWN_NANOS);
+        if (shownNanos != 0 && nowNanos > shownNanos) {
+            addSample(CrashMetrics.DECISION_NANOS_TOTAL, CrashMetrics.DECISION_NANOS_MAX, nowNanos - shownNanos);
+        }
+    }
+
+    /**
+     * Reads metrics recorded by all processes since they were last reset. Nothing is reset until
+     * {@link Snapshot#reset()} is called so metrics are not lost if they could not be exported.
+     *
+     * @param context Any Context object
+     * @return metrics snapshot
+     */
+    static Snapshot read(Context context) {
+        File[] files = listFiles(context);
+        long[][] values = new long[files.length][CrashMetrics.VALUE_COUNT];
+        for (int f = 0; f < files.length; f++) {
+            ByteBuffer buffer = new CrashMetricsRecorder(files[f]).mBuffer;
+            for (int i = 0; i < CrashMetrics.VALUE_COUNT; i++) values[f][i] = buffer.getLong(OFFSET_VALUES + i * 8);
+        }
+        return new Snapshot(files, values);
+    }
+
+    /**
+     * Returns number of crashes reported using emergency memory reserve by all processes so far.
+     *
+     * @param context Any Context object
+     * @return number of crashes
+     */
+    static long getReserveUseCount(Context context) {
+        long count = 0;
+        for (File file : listFiles(context)) {
+            count += new CrashMetricsRecorder(file).mBuffer.getLong(OFFSET_RESERVE_USES);
+        }
+        return count;
+    }
+
+    /**
+     * Lists metrics files of all processes.
+     */
+    private static File[] listFiles(Context context) {
+        File[] files = CrashSpool.getSpoolDir(context).listFiles((dir, name) ->
+                name.startsWith(FILE_NAME) && name.endsWith(FILE_EXTENSION));
+        return files == null ? new File[0] : files;
+    }
+
+    private static boolean isMax(int index) {
+        return index == CrashMetrics.HANDLER_NANOS_MAX || index == CrashMetrics.TRACE_BYTES_MAX
+                || index == CrashMetrics.SHEET_NANOS_MAX || index == CrashMetrics.DECISION_NANOS_MAX;
+    }
+
+    private void add(int index, long delta) {
+        int offset = OFFSET_VALUES + index * 8;
+        mBuffer.putLong(offset, mBuffer.getLong(offset) + delta);
+    }
+
+    private void addSample(int totalIndex, int maxIndex, long sample) {
+        add(totalIndex, sample);
+        int offset = OFFSET_VALUES + maxIndex * 8;
+        if (sample > mBuffer.getLong(offset)) mBuffer.putLong(offset, sample);
+    }
+
+    /**
+     * Metrics read from files of all processes.
+     */
+    static final class Snapshot {
+        // Metrics files which were read
+        private final File[] mFiles;
+        // Values read from each file
+        private final long[][] mValues;
+
+        private Snapshot(File[] files, long[][] values) {
+            mFiles = files;
+            mValues = values;
+        }
+
+        /**
+         * Combines metrics of all processes.
+         *
+         * @return combined metrics or null if nothing has been recorded
+         */
+        @Nullable
+        CrashMetrics getMetrics() {
+            long[] values = new long[CrashMetrics.VALUE_COUNT];
+            boolean empty = true;
+            for (long[] fileValues : mValues) {
+                for (int i = 0; i < values.length; i++) {
+                    if (fileValues[i] != 0) empty = false;
+                    values[i] = isMax(i) ? Math.max(values[i], fileValues[i]) : values[i] + fileValues[i];
+                }
+            }
+            return empty ? null : new CrashMetrics(values);
+        }
+
+        /**
+         * Removes metrics in this snapshot from files. Anything recorded after snapshot was read is kept
+         * except max values which are kept only if they have grown since.
+         */
+        void reset() {
+            for (int f = 0; f < mFiles.length; f++) {
+                ByteBuffer buffer = new CrashMetricsRecorder(mFiles[f]).mBuffer;
+                for (int i = 0; i < CrashMetrics.VALUE_COUNT; i++) {
+                    int offset = OFFSET_VALUES + i * 8;
+                    long value = buffer.getLong(offset);
+                    if (isMax(i)) {
+                        if (value <= mValues[f][i]) buffer.putLong(offset, 0);
+                    } else {
+                        buffer.putLong(offset, value - mValues[f][i]);
+                    }
+                }
+            }
+        }
+    }
+}
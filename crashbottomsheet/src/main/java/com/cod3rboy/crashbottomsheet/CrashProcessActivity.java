@@ -0,0 +1,25 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+/**
+ * {@link CrashActivity} which is declared to run in a dedicated lightweight ":crash" process.
+ * It is launched instead of {@link CrashActivity} when crash process is enabled with
+ * {@link CrashBottomSheet#setCrashProcessEnabled(boolean)}.
+ */
+public class CrashProcessActivity extends CrashActivity {
+}
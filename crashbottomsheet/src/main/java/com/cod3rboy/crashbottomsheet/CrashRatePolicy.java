@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import androidx.annotation.NonNull;
+
+import com.cod3rboy.crashbottomsheet.core.CrashRateLimiter;
+
+/**
+ * Policy which decides how often {@link CrashBottomSheet} is shown for crashes in order to prevent CrashLoop.
+ * Crashes which are not allowed by the policy are passed to previous DefaultUncaughtExceptionHandler.
+ * Use {@link CrashRatePolicy#slidingWindow(int, long)} or {@link CrashRatePolicy#exponentialBackoff(long, long)}
+ * to create a policy and set it with {@link CrashBottomSheet#setCrashRatePolicy(CrashRatePolicy)}.
+ */
+public final class CrashRatePolicy {
+    /**
+     * Max number of crashes remembered by {@link CrashBottomSheet} to apply policy.
+     */
+    public static final int MAX_REMEMBERED_CRASHES = CrashRateLimiter.MAX_REMEMBERED_CRASHES;
+
+    // Policy types
+    static final int TYPE_SLIDING_WINDOW = 0;
+    static final int TYPE_EXPONENTIAL_BACKOFF = 1;
+
+    // Type of policy
+    final int mType;
+    // Max number of sheets in window for sliding window policy
+    final int mMaxCrashes;
+    // Window length for sliding window policy or initial gap for exponential backoff policy
+    final long mIntervalMs;
+    // Max gap for exponential backoff policy
+    final long mMaxIntervalMs;
+
+    private CrashRatePolicy(int type, int maxCrashes, long intervalMs, long maxIntervalMs) {
+        mType = type;
+        mMaxCrashes = maxCrashes;
+        mIntervalMs = intervalMs;
+        mMaxIntervalMs = maxIntervalMs;
+    }
+
+    /**
+     * Creates policy which allows at most given number of crashes within any window of given length
+     * e.g. slidingWindow(3, 10 * 60 * 1000) allows at most 3 sheets per 10 minutes.
+     *
+     * @param maxCrashes max number of crashes in window from 1 to {@link CrashRatePolicy#MAX_REMEMBERED_CRASHES}
+     * @param windowMs   length of window in milliseconds which must not be less than
+     *                   {@link CrashBottomSheet#MIN_MS_BETWEEN_CRASHES}
+     * @return sliding window policy
+     */
+    @NonNull
+    public static CrashRatePolicy slidingWindow(int maxCrashes, long windowMs) {
+        if (maxCrashes < 1 || maxCrashes > MAX_REMEMBERED_CRASHES) {
+            throw new IllegalArgumentException("maxCrashes must be from 1 to " + MAX_REMEMBERED_CRASHES);
+        }
+        if (windowMs < CrashBottomSheet.MIN_MS_BETWEEN_CRASHES) {
+            throw new IllegalArgumentException("windowMs must not be less than MIN_MS_BETWEEN_CRASHES=" + CrashBottomSheet.MIN_MS_BETWEEN_CRASHES);
+        }
+        return new CrashRatePolicy(TYPE_SLIDING_WINDOW, maxCrashes, windowMs, windowMs);
+    }
+
+    /**
+     * Creates policy which doubles minimum gap needed after each crash, starting from initial gap up to max gap.
+     * Gap is reset to initial gap when no crash occurs for max gap.
+     *
+     * @param initialIntervalMs initial gap in milliseconds which must not be less than
+     *                          {@link CrashBottomSheet#MIN_MS_BETWEEN_CRASHES}
+     * @param maxIntervalMs     max gap in milliseconds which must not be less than initial gap
+     * @return exponential backoff policy
+     */
+    @NonNull
+    public static CrashRatePolicy exponentialBackoff(long initialIntervalMs, long maxIntervalMs) {
+        if (initialIntervalMs < CrashBottomSheet.MIN_MS_BETWEEN_CRASHES) {
+            throw new IllegalArgumentException("initialIntervalMs must not be less than MIN_MS_BETWEEN_CRASHES=" + CrashBottomSheet.MIN_MS_BETWEEN_CRASHES);
+        }
+        if (maxIntervalMs < initialIntervalMs) {
+            throw new IllegalArgumentException("maxIntervalMs must not be less than initialIntervalMs");
+        }
+        return new CrashRatePolicy(TYPE_EXPONENTIAL_BACKOFF, 1, initialIntervalMs, maxIntervalMs);
+    }
+
+    /**
+     * Applies this policy to a crash and remembers the crash if it is allowed.
+     *
+     * @param limiter crash rate limiter which remembers recent crashes
+     * @param now     crash timestamp in milliseconds
+     * @return true if {@link CrashBottomSheet} can be shown for the crash otherwise false
+     */
+    boolean tryAcquire(CrashRateLimiter limiter, long now) {
+        if (mType == TYPE_EXPONENTIAL_BACKOFF) {
+            return limiter.tryAcquireExponentialBackoff(now, mIntervalMs, mMaxIntervalMs);
+        }
+        return limiter.tryAcquireSlidingWindow(now, mMaxCrashes, mIntervalMs);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.Context;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact on-device index of crash fingerprints. For each fingerprint it keeps number of occurrences,
+ * first seen and last seen timestamps and whether the crash has been reported.
+ * Index holds a fixed number of entries inside a memory mapped file and evicts least recently seen
+ * fingerprint when it is full. Index is shared by all processes of the app so it is only read and written while
+ * {@link CrashStoreLock} is held.
+ */
+final class CrashSignatureIndex {
+    // Name of memory mapped index file
+    private static final String FILE_NAME = "signatures.bin";
+    // Magic number at start of file i.e. "CBF1"
+    private static final int MAGIC = 0x43424631;
+    // Max number of fingerprints in index
+    private static final int CAPACITY = 64;
+    // Layout of file
+    private static final int HEADER_SIZE = 8; // magic and reserved int
+    private static final int ENTRY_SIZE = 32;
+    private static final int OFFSET_FINGERPRINT = 0;
+    private static final int OFFSET_COUNT = 8;
+    private static final int OFFSET_FLAGS = 12;
+    private static final int OFFSET_FIRST_SEEN = 16;
+    private static final int OFFSET_LAST_SEEN = 24;
+    private static final int FILE_SIZE = HEADER_SIZE + CAPACITY * ENTRY_SIZE;
+    // Entry flag set when crash has been reported
+    private static final int FLAG_REPORTED = 1;
+
+    // Memory mapped index content or heap buffer if file could not be mapped
+    private final ByteBuffer mBuffer;
+    // Guards index against other processes
+    private final CrashStoreLock mLock;
+
+    /**
+     * Constructor
+     *
+     * @param context application context object
+     */
+    CrashSignatureIndex(Context context) {
+        mBuffer = MappedFile.map(new File(CrashSpool.getSpoolDir(context), FILE_NAME), FILE_SIZE);
+        mLock = CrashStoreLock.get(context);
+        boolean locked = mLock.acquire(CrashStoreLock.DEFAULT_TIMEOUT_MS);
+        try {
+            if (mBuffer.getInt(0) != MAGIC) {
+                // New or corrupted file
+                for (int i = 0; i < FILE_SIZE; i += 4) mBuffer.putInt(i, 0);
+                mBuffer.putInt(0, MAGIC);
+            }
+        } finally {
+            if (locked) mLock.release();
+        }
+    }
+
+    /**
+     * Returns lock which guards index. Hold it to read and record a crash atomically.
+     *
+     * @return crash store lock
+     */
+    CrashStoreLock getLock() {
+        return mLock;
+    }
+
+    /**
+     * Records an occurrence of crash with given fingerprint.
+     *
+     * @param fingerprint crash fingerprint
+     * @param now         crash timestamp
+     * @return number of occurrences including this one
+     */
+    int recordOccurrence(long fingerprint, long now) {
+        boolean locked = mLock.acquire(CrashStoreLock.DEFAULT_TIMEOUT_MS);
+        try {
+            int entry = find(fingerprint);
+            if (entry < 0) {
+                entry = findEvictable();
+                mBuffer.putLong(entry + OFFSET_FINGERPRINT, fingerprint);
+                mBuffer.putInt(entry + OFFSET_COUNT, 0);
+                mBuffer.putInt(entry + OFFSET_FLAGS, 0);
+                mBuffer.putLong(entry + OFFSET_FIRST_SEEN, now);
+            }
+            int count = mBuffer.getInt(entry + OFFSET_COUNT);
+            if (count < Integer.MAX_VALUE) mBuffer.putInt(entry + OFFSET_COUNT, ++count);
+            mBuffer.putLong(entry + OFFSET_LAST_SEEN, now);
+            return count;
+        } finally {
+            if (locked) mLock.release();
+        }
+    }
+
+    /**
+     * Tells whether crash with given fingerprint has been reported.
+     *
+     * @param fingerprint crash fingerprint
+     * @return true if reported otherwise false
+     */
+    boolean isReported(long fingerprint) {
+        boolean locked = mLock.acquire(CrashStoreLock.DEFAULT_TIMEOUT_MS);
+        try {
+            int entry = find(fingerprint);
+            return entry >= 0 && (mBuffer.getInt(entry + OFFSET_FLAGS) & FLAG_REPORTED) != 0;
+        } finally {
+            if (locked) mLock.release();
+        }
+    }
+
+    /**
+     * Marks crash with given fingerprint as reported.
+     *
+     * @param fingerprint crash fingerprint
+     */
+    void markReported(long fingerprint) {
+        boolean locked = mLock.acquire(CrashStoreLock.DEFAULT_TIMEOUT_MS);
+        try {
+            int entry = find(fingerprint);
+            if (entry >= 0) {
+                mBuffer.putInt(entry + OFFSET_FLAGS, mBuffer.getInt(entry + OFFSET_FLAGS) | FLAG_REPORTED);
+            }
+        } finally {
+            if (locked) mLock.release();
+        }
+    }
+
+    /**
+     * Finds entry of given fingerprint.
+     *
+     * @param fingerprint crash fingerprint
+     * @return offset of entry or -1 if not found
+     */
+    private int find(long fingerprint) {
+        for (int i = 0; i < CAPACITY; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            if (mBuffer.getInt(entry + OFFSET_COUNT) > 0
+                    && mBuffer.getLong(entry + OFFSET_FINGERPRINT) == fingerprint) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds an empty entry or the least recently seen one.
+     *
+     * @return offset of entry
+     */
+    private int findEvictable() {
+        int evictable = HEADER_SIZE;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < CAPACITY; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            if (mBuffer.getInt(entry + OFFSET_COUNT) <= 0) return entry;
+            long lastSeen = mBuffer.getLong(entry + OFFSET_LAST_SEEN);
+            if (lastSeen < oldest) {
+                oldest = lastSeen;
+                evictable = entry;
+            }
+        }
+        return evictable;
+    }
+}
@@ -0,0 +1,828 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.cod3rboy.crashbottomsheet.core.CrashRecordReader;
+import com.cod3rboy.crashbottomsheet.core.CrashRecordRenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Crash spool used to hand over crash report from the crash handler to {@link CrashActivity}.
+ * Spool file is opened in app's private directory when {@link CrashBottomSheet} is registered so
+ * that crash handler only needs to write the report once and commit it as a crash record.
+ * Only the id of committed record is forwarded to {@link CrashActivity} which reads it lazily.
+ * Each crash record starts with a small binary header followed by either a binary crash record written by
+ * {@link com.cod3rboy.crashbottomsheet.core.CrashRecordWriter} or UTF-8 stack trace. Tail of logcat of the
+ * crashed process may be appended after it by {@link LogcatCollector}.
+ * <p>
+ * Each process of the app has its own spool file and hang record directory, and records name of the process
+ * in record header. Records of all processes are committed into the same spool directory under
+ * {@link CrashStoreLock} so that record ids stay unique, which lets {@link CrashActivity} show crashes of
+ * several processes occurring at about the same time in one bottom sheet.
+ */
+final class CrashSpool {
+    private static final String LOG_TAG = CrashSpool.class.getSimpleName();
+
+    // Name of directory inside app's private files directory which holds crash records
+    private static final String SPOOL_DIR_NAME = "crashbottomsheet";
+    // Name and extension of spool file which is pre-opened and written by crash handler of each process
+    private static final String SPOOL_FILE_NAME = "pending";
+    private static final String SPOOL_FILE_EXTENSION = ".spool";
+    // Name of directory inside spool directory which holds crash records retained for retry
+    private static final String RETRY_DIR_NAME = "retry";
+    // Name of directory inside spool directory which holds hang records of a process waiting for next launch
+    private static final String HANG_DIR_NAME = "hang";
+    // Extension of record files being written outside of spool file
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+    // Extension of committed crash record files
+    private static final String RECORD_FILE_EXTENSION = ".crash";
+    // Charset of crash records
+    private static final Charset RECORD_CHARSET = Charset.forName("UTF-8");
+    // Magic number at start of crash record header i.e. "CBS1"
+    private static final int RECORD_MAGIC = 0x43425331;
+    // Size of crash record header in bytes i.e. magic, header size, flags, device crash state,
+    // fingerprint, occurrences, process id, stack trace length and length of process name which follows it
+    private static final int RECORD_HEADER_SIZE = 78;
+    // Max number of bytes of process name in crash record header
+    private static final int MAX_PROCESS_NAME_BYTES = 128;
+    // Caption of crash of each process in report holding crashes of several processes
+    private static final String PROCESS_CRASH_CAPTION = "Crash in process \"";
+    // Caption of logcat tail in report
+    private static final String LOGCAT_CAPTION = "\nLogcat:\n";
+
+    /**
+     * Crash record flag set when crash is caused by {@link OutOfMemoryError}.
+     */
+    static final int FLAG_OUT_OF_MEMORY = 1;
+    /**
+     * Crash record flag set when emergency memory reserve was released to report the crash.
+     */
+    static final int FLAG_RESERVE_USED = 1 << 1;
+    /**
+     * Crash record flag set when crash with same fingerprint has already been reported.
+     */
+    static final int FLAG_ALREADY_REPORTED = 1 << 2;
+    /**
+     * Crash record flag set when stack trace is written as binary crash record instead of text.
+     */
+    static final int FLAG_BINARY_TRACE = 1 << 3;
+    /**
+     * Crash record flag set when record holds profile of main thread hang instead of a crash.
+     */
+    static final int FLAG_HANG = 1 << 4;
+
+    // Directory holding spool file and crash records
+    private final File mDir;
+    // Spool file of current process
+    private final File mSpoolFile;
+    // UTF-8 name of current process written into crash record header
+    private final byte[] mProcessName;
+    // Guards record ids against other processes
+    private final CrashStoreLock mLock;
+    // Pre-opened spool file channel or null if spool could not be opened
+    private FileChannel mChannel;
+    // Pre-allocated buffer for crash record header
+    private final ByteBuffer mHeader;
+
+    /**
+     * Constructor
+     *
+     * @param context application context object
+     */
+    CrashSpool(Context context) {
+        mDir = getSpoolDir(context);
+        mSpoolFile = new File(mDir, SPOOL_FILE_NAME + ProcessInfo.getProcessKey(context) + SPOOL_FILE_EXTENSION);
+        mProcessName = encodeProcessName();
+        mLock = CrashStoreLock.get(context);
+        mHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE + mProcessName.length);
+    }
+
+    /**
+     * Opens the spool file so that it is ready to be written when crash occurs.
+     * Any previous content of spool file is discarded.
+     *
+     * @return true if spool is opened successfully otherwise false
+     */
+    boolean open() {
+        try {
+            if (!mDir.isDirectory() && !mDir.mkdirs()) {
+                Log.w(LOG_TAG, "WARNING! Unable to create crash spool directory " + mDir);
+                return false;
+            }
+            mChannel = new RandomAccessFile(mSpoolFile, "rw").getChannel();
+            mChannel.truncate(0);
+            return true;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to open crash spool file.", e);
+            mChannel = null;
+            return false;
+        }
+    }
+
+    /**
+     * Tells whether spool file is opened and ready to be written.
+     *
+     * @return true if spool is ready otherwise false
+     */
+    boolean isOpen() {
+        return mChannel != null && mChannel.isOpen();
+    }
+
+    /**
+     * Writes crash record header into the pre-opened spool file.
+     * It must be written before any other content.
+     *
+     * @param flags       crash record flags
+     * @param crashState  device state captured at crash time
+     * @param fingerprint crash fingerprint
+     * @param occurrences number of occurrences of crash with same fingerprint
+     * @param pid         id of crashed process
+     * @param bodyLength  number of bytes of stack trace written after header
+     * @return true if header is written successfully otherwise false
+     */
+    boolean writeHeader(int flags, DeviceInfo.CrashState crashState, long fingerprint, int occurrences,
+                        int pid, int bodyLength) {
+        mHeader.clear();
+        putHeader(mHeader, flags, crashState, fingerprint, occurrences, pid, bodyLength, mProcessName);
+        mHeader.flip();
+        return write(mHeader);
+    }
+
+    /**
+     * Puts crash record header into buffer.
+     */
+    private static void putHeader(ByteBuffer header, int flags, DeviceInfo.CrashState crashState, long fingerprint,
+                                  int occurrences, int pid, int bodyLength, byte[] processName) {
+        header.putInt(RECORD_MAGIC).putInt(RECORD_HEADER_SIZE + processName.length).putInt(flags)
+                .putLong(crashState.mFreeMemory)
+                .putLong(crashState.mTotalMemory)
+                .putLong(crashState.mMaxMemory)
+                .putLong(crashState.mAvailableStorage)
+                .putInt(crashState.mBatteryLevel)
+                .putInt(crashState.mOrientation)
+                .putLong(fingerprint)
+                .putInt(occurrences)
+                .putInt(pid)
+                .putInt(bodyLength)
+                .putShort((short) processName.length)
+                .put(processName);
+    }
+
+    /**
+     * Encodes name of current process for crash record header.
+     *
+     * @return UTF-8 process name cut to {@link CrashSpool#MAX_PROCESS_NAME_BYTES}
+     */
+    @NonNull
+    private static byte[] encodeProcessName() {
+        byte[] name = ProcessInfo.getProcessName().getBytes(RECORD_CHARSET);
+        return name.length > MAX_PROCESS_NAME_BYTES ? Arrays.copyOf(name, MAX_PROCESS_NAME_BYTES) : name;
+    }
+
+    /**
+     * Writes remaining content of buffer into the pre-opened spool file.
+     *
+     * @param buffer buffer to write
+     * @return true if content is written successfully otherwise false
+     */
+    boolean write(ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) mChannel.write(buffer);
+            return true;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to write crash spool file.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Commits content written into spool file as a new crash record. Record id is crash timestamp, moved forward
+     * while a record of another process already has it. Rename is atomic so other processes never see a half
+     * written record.
+     *
+     * @param timestamp crash timestamp used as record id
+     * @return id of committed crash record or null if commit fails
+     */
+    @Nullable
+    String commit(long timestamp) {
+        try {
+            mChannel.close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to close crash spool file.", e);
+        }
+        mChannel = null;
+        boolean locked = mLock.acquire(CrashStoreLock.DEFAULT_TIMEOUT_MS);
+        try {
+            long id = timestamp;
+            while (new File(mDir, id + RECORD_FILE_EXTENSION).exists()) id++;
+            String recordId = Long.toString(id);
+            if (!mSpoolFile.renameTo(new File(mDir, recordId + RECORD_FILE_EXTENSION))) {
+                Log.w(LOG_TAG, "WARNING! Unable to commit crash record " + recordId);
+                return null;
+            }
+            return recordId;
+        } finally {
+            if (locked) mLock.release();
+        }
+    }
+
+    /**
+     * Reads header of committed crash record. Stack trace is read lazily by
+     * {@link Record#getStackTrace()}.
+     *
+     * @param context  Any Context object
+     * @param recordId id of crash record
+     * @return crash record
+     */
+    @NonNull
+    static Record readRecord(Context context, String recordId) {
+        return readRecord(context, recordId == null ? null : new File(getSpoolDir(context), recordId + RECORD_FILE_EXTENSION));
+    }
+
+    /**
+     * Reads header of crash record file.
+     *
+     * @param context    Any Context object
+     * @param recordFile crash record file or null if record id is unknown
+     * @return crash record
+     */
+    @NonNull
+    private static Record readRecord(Context context, File recordFile) {
+        Record record = new Record(context.getApplicationContext(), recordFile);
+        if (record.mFile == null) return record;
+        String recordId = record.mFile.getName();
+        try (RandomAccessFile file = new RandomAccessFile(record.mFile, "r")) {
+            if (file.length() >= RECORD_HEADER_SIZE && file.readInt() == RECORD_MAGIC
+                    && file.readInt() >= RECORD_HEADER_SIZE) {
+                file.seek(4);
+                record.mHeaderSize = file.readInt();
+                record.mFlags = file.readInt();
+                record.mCrashState.mFreeMemory = file.readLong();
+                record.mCrashState.mTotalMemory = file.readLong();
+                record.mCrashState.mMaxMemory = file.readLong();
+                record.mCrashState.mAvailableStorage = file.readLong();
+                record.mCrashState.mBatteryLevel = file.readInt();
+                record.mCrashState.mOrientation = file.readInt();
+                record.mFingerprint = file.readLong();
+                record.mOccurrences = file.readInt();
+                record.mPid = file.readInt();
+                record.mBodyLength = file.readInt();
+                byte[] processName = new byte[file.readUnsignedShort()];
+                if (processName.length <= record.mHeaderSize - RECORD_HEADER_SIZE) {
+                    file.readFully(processName);
+                    record.mProcessName = new String(processName, RECORD_CHARSET);
+                }
+            } else {
+                Log.w(LOG_TAG, "WARNING! Crash record " + recordId + " has invalid header.");
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to read crash record " + recordId, e);
+        }
+        return record;
+    }
+
+    /**
+     * Lists ids of committed crash records which were committed before given time.
+     *
+     * @param context Any Context object
+     * @param before  timestamp in milliseconds
+     * @return ids of crash records
+     */
+    @NonNull
+    static List<String> listRecordIds(Context context, long before) {
+        List<String> recordIds = new ArrayList<>();
+        File[] files = getSpoolDir(context).listFiles();
+        if (files == null) return recordIds;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(RECORD_FILE_EXTENSION) && file.lastModified() < before) {
+                recordIds.add(name.substring(0, name.length() - RECORD_FILE_EXTENSION.length()));
+            }
+        }
+        return recordIds;
+    }
+
+    /**
+     * Deletes committed crash record.
+     *
+     * @param context  Any Context object
+     * @param recordId id of crash record
+     */
+    static void deleteRecord(Context context, String recordId) {
+        if (recordId == null) return;
+        File recordFile = new File(getSpoolDir(context), recordId + RECORD_FILE_EXTENSION);
+        if (recordFile.exists() && !recordFile.delete()) {
+            Log.w(LOG_TAG, "WARNING! Unable to delete crash record " + recordId);
+        }
+    }
+
+    /**
+     * Moves committed crash record into retry directory so that its report can be delivered again
+     * on next launch.
+     *
+     * @param context  Any Context object
+     * @param recordId id of crash record
+     * @return true if record is retained otherwise false
+     */
+    static boolean retainRecord(Context context, String recordId) {
+        if (recordId == null) return false;
+        File retryDir = new File(getSpoolDir(context), RETRY_DIR_NAME);
+        if (!retryDir.isDirectory() && !retryDir.mkdirs()) {
+            Log.w(LOG_TAG, "WARNING! Unable to create crash retry directory " + retryDir);
+            return false;
+        }
+        File recordFile = new File(getSpoolDir(context), recordId + RECORD_FILE_EXTENSION);
+        if (!recordFile.renameTo(new File(retryDir, recordFile.getName()))) {
+            Log.w(LOG_TAG, "WARNING! Unable to retain crash record " + recordId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes hang record which is shown by {@link CrashActivity} on next launch. Hang records are kept apart
+     * from spool file as app keeps running and may still crash while hang is being recorded.
+     *
+     * @param context     Any Context object
+     * @param timestamp   hang timestamp used as record id
+     * @param crashState  device state captured at hang time
+     * @param fingerprint hang fingerprint
+     * @param pid         id of hung process
+     * @param profile     UTF-8 hang profile text
+     * @return true if record is written otherwise false
+     */
+    static boolean writeHangRecord(Context context, long timestamp, DeviceInfo.CrashState crashState,
+                                   long fingerprint, int pid, byte[] profile) {
+        File hangDir = getHangDir(context);
+        if (!hangDir.isDirectory() && !hangDir.mkdirs()) {
+            Log.w(LOG_TAG, "WARNING! Unable to create hang record directory " + hangDir);
+            return false;
+        }
+        String recordId = Long.toString(timestamp);
+        File tempFile = new File(hangDir, recordId + TEMP_FILE_EXTENSION);
+        byte[] processName = encodeProcessName();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + processName.length);
+        putHeader(header, FLAG_HANG, crashState, fingerprint, 1, pid, profile.length, processName);
+        header.flip();
+        try (FileChannel channel = new RandomAccessFile(tempFile, "rw").getChannel()) {
+            channel.truncate(0);
+            while (header.hasRemaining()) channel.write(header);
+            ByteBuffer body = ByteBuffer.wrap(profile);
+            while (body.hasRemaining()) channel.write(body);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to write hang record " + recordId, e);
+            return false;
+        }
+        // Rename is atomic so a half written record is never seen on next launch
+        if (!tempFile.renameTo(new File(hangDir, recordId + RECORD_FILE_EXTENSION))) {
+            Log.w(LOG_TAG, "WARNING! Unable to commit hang record " + recordId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves most recent hang record of current process into spool directory so that {@link CrashActivity} can
+     * show it. Older hang records are deleted as only the last hang is shown.
+     *
+     * @param context Any Context object
+     * @return id of hang record or null if there is none
+     */
+    @Nullable
+    static String takeHangRecord(Context context) {
+        File[] files = getHangDir(context).listFiles();
+        if (files == null) return null;
+        File latest = null;
+        for (File file : files) {
+            if (!file.getName().endsWith(RECORD_FILE_EXTENSION)) {
+                if (!file.delete()) Log.w(LOG_TAG, "WARNING! Unable to delete " + file.getName());
+            } else if (latest == null || file.getName().compareTo(latest.getName()) > 0) {
+                latest = file;
+            }
+        }
+        for (File file : files) {
+            if (file != latest && file.exists() && !file.delete()) {
+                Log.w(LOG_TAG, "WARNING! Unable to delete hang record " + file.getName());
+            }
+        }
+        if (latest == null) return null;
+        String name = latest.getName();
+        CrashStoreLock lock = CrashStoreLock.get(context);
+        boolean locked = lock.acquire(CrashStoreLock.DEFAULT_TIMEOUT_MS);
+        try {
+            // Hang record id is moved forward while a crash record already has it
+            long id = Long.parseLong(name.substring(0, name.length() - RECORD_FILE_EXTENSION.length()));
+            while (new File(getSpoolDir(context), id + RECORD_FILE_EXTENSION).exists()) id++;
+            File record = new File(getSpoolDir(context), id + RECORD_FILE_EXTENSION);
+            if (!latest.renameTo(record)) {
+                Log.w(LOG_TAG, "WARNING! Unable to move hang record " + name);
+                return null;
+            }
+            // Rename keeps time of hang which may look stale to report queue while record is being shown
+            if (!record.setLastModified(System.currentTimeMillis())) {
+                Log.w(LOG_TAG, "WARNING! Unable to touch hang record " + record.getName());
+            }
+            return Long.toString(id);
+        } catch (NumberFormatException e) {
+            Log.w(LOG_TAG, "WARNING! Deleting hang record " + name + " with invalid name.");
+            if (!latest.delete()) Log.w(LOG_TAG, "WARNING! Unable to delete hang record " + name);
+            return null;
+        } finally {
+            if (locked) lock.release();
+        }
+    }
+
+    /**
+     * Returns directory which holds hang records of current process.
+     *
+     * @param context Any Context object
+     * @return hang record directory
+     */
+    @NonNull
+    private static File getHangDir(Context context) {
+        return new File(getSpoolDir(context), HANG_DIR_NAME + ProcessInfo.getProcessKey(context));
+    }
+
+    /**
+     * Reads committed crash records of processes other than the one of given record, which crashed within
+     * given time of it and are still waiting for {@link CrashActivity}. Hang records are left out.
+     *
+     * @param context Any Context object
+     * @param record  crash record shown by {@link CrashActivity}
+     * @param window  max time between crashes in milliseconds
+     * @return crash records of other processes, oldest first
+     */
+    @NonNull
+    static List<Record> listProcessCrashes(Context context, Record record, long window) {
+        List<Record> records = new ArrayList<>();
+        if (window <= 0 || !record.isValid() || record.mPid == 0 || record.hasFlag(FLAG_HANG)) return records;
+        File[] files = getSpoolDir(context).listFiles();
+        if (files == null) return records;
+        long timestamp = record.getTimestamp();
+        for (File file : files) {
+            if (!file.getName().endsWith(RECORD_FILE_EXTENSION) || file.equals(record.mFile)) continue;
+            Record other = readRecord(context, file);
+            if (other.isValid() && other.mPid != 0 && other.mPid != record.mPid && !other.hasFlag(FLAG_HANG)
+                    && Math.abs(other.getTimestamp() - timestamp) <= window) {
+                records.add(other);
+            }
+        }
+        Collections.sort(records, (first, second) -> Long.compare(first.getTimestamp(), second.getTimestamp()));
+        return records;
+    }
+
+    /**
+     * Joins report text of crash with stack traces of crashes of other processes, each under a caption naming its
+     * process. Stack traces of other processes are read from record files on each call.
+     *
+     * @param record     crash record shown by {@link CrashActivity}
+     * @param stackTrace report text of crash record
+     * @param others     crash records of other processes
+     * @return report text or given one if there are no crashes of other processes
+     */
+    @NonNull
+    static String appendProcessCrashes(Record record, String stackTrace, List<Record> others) {
+        if (others.isEmpty()) return stackTrace;
+        StringBuilder report = new StringBuilder(stackTrace.length() * (others.size() + 1));
+        appendProcessCaption(report, record).append(stackTrace);
+        for (Record other : others) {
+            appendProcessCaption(report.append("\n\n"), other).append(other.readStackTrace());
+        }
+        return report.toString();
+    }
+
+    /**
+     * Appends caption of crash of a process e.g. {@code Crash in process "com.example:sync" (pid 1234):}.
+     */
+    private static StringBuilder appendProcessCaption(StringBuilder report, Record record) {
+        return report.append(PROCESS_CRASH_CAPTION).append(record.getProcessName()).append("\" (pid ")
+                .append(record.getPid()).append("):\n");
+    }
+
+    /**
+     * Reads crash records retained for retry, oldest first.
+     *
+     * @param context Any Context object
+     * @return retained crash records
+     */
+    @NonNull
+    static List<Record> listRetainedRecords(Context context) {
+        List<Record> records = new ArrayList<>();
+        File[] files = new File(getSpoolDir(context), RETRY_DIR_NAME).listFiles();
+        if (files == null) return records;
+        for (File file : files) {
+            if (file.getName().endsWith(RECORD_FILE_EXTENSION)) records.add(readRecord(context, file));
+        }
+        Collections.sort(records, (first, second) -> Long.compare(first.getTimestamp(), second.getTimestamp()));
+        return records;
+    }
+
+    /**
+     * Decodes stack trace held by crash record. Stack trace is deobfuscated if retrace mapping is set with
+     * {@link CrashBottomSheet#setRetraceMappingAsset(String)}.
+     *
+     * @param context Any Context object
+     * @param body    stack trace bytes as stored in crash record
+     * @param binary  whether stack trace is a binary crash record
+     * @return stack trace text or empty string if binary crash record is malformed
+     */
+    @NonNull
+    static String decodeStackTrace(Context context, byte[] body, boolean binary) {
+        if (!binary) return MappingRetrace.retrace(context, new String(body, RECORD_CHARSET));
+        try {
+            return MappingRetrace.retrace(context,
+                    CrashRecordRenderer.renderStackTrace(CrashRecordReader.read(body, 0, body.length)));
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to decode binary crash record.", e);
+            return "";
+        }
+    }
+
+    /**
+     * Appends logcat tail to report text.
+     *
+     * @param stackTrace stack trace text
+     * @param logcat     logcat tail or null
+     * @return report text
+     */
+    @NonNull
+    static String appendLogcat(String stackTrace, @Nullable String logcat) {
+        return logcat == null || logcat.isEmpty() ? stackTrace : stackTrace + LOGCAT_CAPTION + logcat;
+    }
+
+    /**
+     * Returns directory which holds spool file and crash records.
+     *
+     * @param context Any Context object
+     * @return spool directory
+     */
+    @NonNull
+    static File getSpoolDir(Context context) {
+        return new File(context.getFilesDir(), SPOOL_DIR_NAME);
+    }
+
+    /**
+     * Committed crash record read from spool directory.
+     */
+    static final class Record {
+        // Crash record file or null if record id is unknown
+        private final File mFile;
+        // Size of record header or 0 if header could not be read
+        private int mHeaderSize;
+        // Crash record flags
+        private int mFlags;
+        // Device state captured at crash time
+        private final DeviceInfo.CrashState mCrashState = new DeviceInfo.CrashState();
+        // Crash fingerprint
+        private long mFingerprint;
+        // Number of occurrences of crash with same fingerprint
+        private int mOccurrences = 1;
+        // Id of crashed process or 0 if unknown
+        private int mPid;
+        // Name of crashed process or empty string if unknown
+        private String mProcessName = "";
+        // Number of bytes of stack trace after header
+        private long mBodyLength;
+        // Lazily read stack trace
+        private String mStackTrace;
+        // Application context used to retrace stack trace
+        private final Context mContext;
+
+        private Record(Context context, File file) {
+            mContext = context;
+            mFile = file;
+        }
+
+        /**
+         * Tells whether crash record exists and its header is valid.
+         *
+         * @return true if valid otherwise false
+         */
+        boolean isValid() {
+            return mHeaderSize != 0;
+        }
+
+        /**
+         * Returns crash timestamp which is also the id of crash record.
+         *
+         * @return crash timestamp or 0 if unknown
+         */
+        long getTimestamp() {
+            if (mFile == null) return 0;
+            String name = mFile.getName();
+            try {
+                return Long.parseLong(name.substring(0, name.length() - RECORD_FILE_EXTENSION.length()));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        /**
+         * Tells whether given flag is set on crash record.
+         *
+         * @param flag one of the FLAG_* constants of {@link CrashSpool}
+         * @return true if flag is set otherwise false
+         */
+        boolean hasFlag(int flag) {
+            return (mFlags & flag) != 0;
+        }
+
+        /**
+         * Returns crash fingerprint.
+         *
+         * @return fingerprint
+         */
+        long getFingerprint() {
+            return mFingerprint;
+        }
+
+        /**
+         * Returns number of occurrences of crash with same fingerprint including this one.
+         *
+         * @return number of occurrences
+         */
+        int getOccurrences() {
+            return mOccurrences;
+        }
+
+        /**
+         * Returns id of crashed process.
+         *
+         * @return process id or 0 if unknown
+         */
+        int getPid() {
+            return mPid;
+        }
+
+        /**
+         * Returns name of crashed process.
+         *
+         * @return process name or empty string if unknown
+         */
+        @NonNull
+        String getProcessName() {
+            return mProcessName;
+        }
+
+        /**
+         * Returns id of crash record.
+         *
+         * @return record id or null if unknown
+         */
+        @Nullable
+        String getId() {
+            if (mFile == null) return null;
+            String name = mFile.getName();
+            return name.substring(0, name.length() - RECORD_FILE_EXTENSION.length());
+        }
+
+        /**
+         * Returns crash record file.
+         *
+         * @return record file or null if record id is unknown
+         */
+        @Nullable
+        File getFile() {
+            return mFile;
+        }
+
+        /**
+         * Tells whether logcat tail has been appended to crash record.
+         *
+         * @return true if record holds logcat tail otherwise false
+         */
+        boolean hasLogcat() {
+            return mFile != null && mHeaderSize != 0 && mFile.length() > mHeaderSize + mBodyLength;
+        }
+
+        /**
+         * Returns device state captured at crash time.
+         *
+         * @return device crash state
+         */
+        @NonNull
+        DeviceInfo.CrashState getCrashState() {
+            return mCrashState;
+        }
+
+        /**
+         * Returns stack trace held by crash record followed by logcat tail if any. It is read from the record
+         * file on first call.
+         *
+         * @return stack trace or empty string if record cannot be read
+         */
+        @NonNull
+        String getStackTrace() {
+            if (mStackTrace != null) return mStackTrace;
+            return mStackTrace = readStackTrace();
+        }
+
+        /**
+         * Reads stack trace held by crash record followed by logcat tail if any without keeping it, so that
+         * logcat appended later is still picked up by {@link Record#getStackTrace()}.
+         *
+         * @return stack trace or empty string if record cannot be read
+         */
+        @NonNull
+        String readStackTrace() {
+            byte[] body = readBody();
+            if (body == null) return "";
+            return appendLogcat(decodeStackTrace(mContext, body, hasFlag(FLAG_BINARY_TRACE)), readLogcat());
+        }
+
+        /**
+         * Reads logcat tail appended to crash record.
+         *
+         * @return logcat tail or null if record does not hold it
+         */
+        @Nullable
+        String readLogcat() {
+            byte[] logcat = readLogcatBytes();
+            return logcat == null ? null : new String(logcat, RECORD_CHARSET);
+        }
+
+        /**
+         * Reads UTF-8 bytes of logcat tail appended to crash record.
+         *
+         * @return logcat tail bytes or null if record does not hold it
+         */
+        @Nullable
+        byte[] readLogcatBytes() {
+            if (!hasLogcat()) return null;
+            return read(mHeaderSize + mBodyLength, mFile.length() - mHeaderSize - mBodyLength);
+        }
+
+        /**
+         * Reads stack trace held by crash record as it is stored.
+         *
+         * @return stack trace bytes or null if record cannot be read
+         */
+        @Nullable
+        byte[] readBody() {
+            if (mFile == null || mHeaderSize == 0) return null;
+            return read(mHeaderSize, mBodyLength);
+        }
+
+        /**
+         * Reads part of crash record file.
+         *
+         * @param position position of first byte
+         * @param length   number of bytes to read
+         * @return bytes read, fewer than asked if file is shorter, or null if file cannot be read
+         */
+        @Nullable
+        private byte[] read(long position, long length) {
+            try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+                FileChannel channel = file.getChannel();
+                channel.position(position);
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(Math.min(length, channel.size() - position), 0));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) == -1) break;
+                }
+                return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "WARNING! Unable to read crash record " + mFile.getName(), e);
+                return null;
+            }
+        }
+
+        /**
+         * Deletes crash record file.
+         */
+        void delete() {
+            if (mFile != null && mFile.exists() && !mFile.delete()) {
+                Log.w(LOG_TAG, "WARNING! Unable to delete crash record " + mFile.getName());
+            }
+        }
+    }
+}
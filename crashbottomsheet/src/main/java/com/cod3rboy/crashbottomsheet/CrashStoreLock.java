@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock shared by all processes of the app which guards crash state kept in spool directory e.g. crash
+ * fingerprint index, ids of committed crash records and report queue. It is an exclusive lock on a lock file
+ * so the system releases it when the process holding it dies, even if it is killed while holding it.
+ * Lock is reentrant within a process: only the outermost acquire takes the file lock.
+ */
+final class CrashStoreLock {
+    private static final String LOG_TAG = CrashStoreLock.class.getSimpleName();
+
+    /**
+     * Default time to wait for another process to release the lock.
+     */
+    static final long DEFAULT_TIMEOUT_MS = 500;
+
+    // Name of lock file inside spool directory
+    private static final String LOCK_FILE_NAME = "store.lock";
+    // Time to sleep between attempts to take file lock held by another process
+    private static final long RETRY_INTERVAL_MS = 5;
+
+    // Lock of current process or null until first used
+    private static CrashStoreLock mInstance;
+
+    // Serializes threads of current process as file lock is held on behalf of the whole process
+    private final ReentrantLock mThreadLock = new ReentrantLock();
+    // Pre-opened lock file channel or null if lock file could not be opened
+    private final FileChannel mChannel;
+    // File lock while held
+    private FileLock mFileLock;
+
+    /**
+     * Returns lock of current process opening lock file on first call.
+     *
+     * @param context Any Context object
+     * @return crash store lock
+     */
+    @NonNull
+    static synchronized CrashStoreLock get(Context context) {
+        if (mInstance == null) mInstance = new CrashStoreLock(CrashSpool.getSpoolDir(context));
+        return mInstance;
+    }
+
+    private CrashStoreLock(File dir) {
+        FileChannel channel = null;
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Unable to create " + dir);
+            channel = new RandomAccessFile(new File(dir, LOCK_FILE_NAME), "rw").getChannel();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to open crash store lock so crash state is not guarded against other processes.", e);
+        }
+        mChannel = channel;
+    }
+
+    /**
+     * Takes the lock waiting until given timeout for other threads and processes to release it. If another
+     * process holds the lock past timeout then caller goes on without it rather than losing the crash, as lock
+     * only guards against rare concurrent updates.
+     *
+     * @param timeoutMs max time to wait in milliseconds
+     * @return true if caller must call {@link CrashStoreLock#release()} afterwards or false if another thread of
+     * current process holds the lock past timeout
+     */
+    boolean acquire(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            if (!mThreadLock.tryLock(timeoutMs, TimeUnit.MILLISECONDS)) {
+                Log.w(LOG_TAG, "WARNING! Crash store is locked by another thread for more than " + timeoutMs + " ms.");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (mThreadLock.getHoldCount() > 1 || mChannel == null) return true;
+        try {
+            while ((mFileLock = mChannel.tryLock()) == null) {
+                if (System.nanoTime() - deadline >= 0) {
+                    Log.w(LOG_TAG, "WARNING! Crash store is locked by another process for more than " + timeoutMs + " ms.");
+                    break;
+                }
+                Thread.sleep(RETRY_INTERVAL_MS);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to lock crash store.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * Releases the lock taken by {@link CrashStoreLock#acquire(long)}.
+     */
+    void release() {
+        if (mThreadLock.getHoldCount() == 1 && mFileLock != null) {
+            try {
+                mFileLock.release();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "WARNING! Unable to unlock crash store.", e);
+            }
+            mFileLock = null;
+        }
+        mThreadLock.unlock();
+    }
+}
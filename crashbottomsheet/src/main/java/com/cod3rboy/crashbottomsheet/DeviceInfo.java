@@ -19,16 +19,28 @@ package com.cod3rboy.crashbottomsheet;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
+import android.content.res.Configuration;
+import android.os.BatteryManager;
 import android.os.Build;
 
 import androidx.annotation.NonNull;
 
-import java.lang.reflect.Field;
+import com.cod3rboy.crashbottomsheet.core.ReportFormatter;
 
 /**
  * Class to store information about device on which crash occurs.
+ * Information which does not change during app lifetime is computed once and cached as a shared snapshot.
+ * Information which changes e.g. free memory, storage, battery and orientation is captured at crash time.
  */
 public class DeviceInfo {
+    /**
+     * Value of numeric device information which is not available.
+     */
+    public static final int UNKNOWN = ReportFormatter.UNKNOWN;
+
+    // Shared snapshot of information which does not change during app lifetime
+    private static volatile DeviceInfo mSnapshot;
+
     private String mAppName; // Android application name
     private String mPackageName; // Application package name
     private String mAndroidCodeName; // Android OS code name e.g. Lollipop
@@ -38,6 +50,12 @@ public class DeviceInfo {
     private String mBrand; // Device Brand
     private String mProduct; // Device Product
     private String mAPKVersion; // Installed app APK version name
+    private long mFreeMemory = UNKNOWN; // Free heap memory in bytes at crash time
+    private long mTotalMemory = UNKNOWN; // Total heap memory in bytes at crash time
+    private long mMaxMemory = UNKNOWN; // Max heap memory in bytes
+    private long mAvailableStorage = UNKNOWN; // Available internal storage in bytes at crash time
+    private int mBatteryLevel = UNKNOWN; // Battery level in percentage at crash time
+    private int mOrientation = Configuration.ORIENTATION_UNDEFINED; // Screen orientation at crash time
 
     /**
      * Constructor
@@ -52,18 +70,7 @@ public class DeviceInfo {
         // Get app package name
         mPackageName = context.getPackageName();
         // Get android code name
-        String codeName = "UNKNOWN";
-        for (Field field : Build.VERSION_CODES.class.getFields()) {
-            try {
-                if (field.getInt(Build.VERSION_CODES.class) == Build.VERSION.SDK_INT) {
-                    codeName = field.getName();
-                    break;
-                }
-            } catch (IllegalAccessException | IllegalArgumentException | NullPointerException e) {
-                e.printStackTrace();
-            }
-        }
-        mAndroidCodeName = codeName;
+        mAndroidCodeName = ReportFormatter.getAndroidCodeName(Build.VERSION.SDK_INT);
         // Get android version
         mAndroidVersion = Build.VERSION.RELEASE;
         // Get manufacturer name
@@ -78,6 +85,173 @@ public class DeviceInfo {
         mAPKVersion = getAPKVersionName(context);
     }
 
+    /**
+     * Constructor which copies snapshot information and adds information captured at crash time.
+     *
+     * @param snapshot   shared snapshot of device information
+     * @param crashState device state captured at crash time
+     */
+    private DeviceInfo(DeviceInfo snapshot, CrashState crashState) {
+        mAppName = snapshot.mAppName;
+        mPackageName = snapshot.mPackageName;
+        mAndroidCodeName = snapshot.mAndroidCodeName;
+        mAndroidVersion = snapshot.mAndroidVersion;
+        mManufacturer = snapshot.mManufacturer;
+        mModel = snapshot.mModel;
+        mBrand = snapshot.mBrand;
+        mProduct = snapshot.mProduct;
+        mAPKVersion = snapshot.mAPKVersion;
+        mFreeMemory = crashState.mFreeMemory;
+        mTotalMemory = crashState.mTotalMemory;
+        mMaxMemory = crashState.mMaxMemory;
+        mAvailableStorage = crashState.mAvailableStorage;
+        mBatteryLevel = crashState.mBatteryLevel;
+        mOrientation = crashState.mOrientation;
+    }
+
+    /**
+     * Constructor which uses device strings saved with a crash and adds information captured at crash time.
+     *
+     * @param strings    device strings in the order written by {@link DeviceInfo#copyStrings(String[])}
+     * @param crashState device state captured at crash time
+     */
+    private DeviceInfo(String[] strings, CrashState crashState) {
+        mAppName = strings[0];
+        mPackageName = strings[1];
+        mAPKVersion = strings[2];
+        mAndroidCodeName = strings[3];
+        mAndroidVersion = strings[4];
+        mManufacturer = strings[5];
+        mModel = strings[6];
+        mBrand = strings[7];
+        mProduct = strings[8];
+        mFreeMemory = crashState.mFreeMemory;
+        mTotalMemory = crashState.mTotalMemory;
+        mMaxMemory = crashState.mMaxMemory;
+        mAvailableStorage = crashState.mAvailableStorage;
+        mBatteryLevel = crashState.mBatteryLevel;
+        mOrientation = crashState.mOrientation;
+    }
+
+    /**
+     * Starts computing shared snapshot of device information in background.
+     *
+     * @param context application context object
+     */
+    static void prefetchSnapshot(final Context context) {
+        if (mSnapshot != null) return;
+        Thread thread = new Thread(() -> getSnapshot(context), "CrashBottomSheet-DeviceInfo");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns shared snapshot of device information. Snapshot is computed on the calling thread
+     * if it is not computed yet.
+     *
+     * @param context application context object
+     * @return device information snapshot
+     */
+    @NonNull
+    static DeviceInfo getSnapshot(Context context) {
+        DeviceInfo snapshot = mSnapshot;
+        if (snapshot == null) {
+            synchronized (DeviceInfo.class) {
+                snapshot = mSnapshot;
+                if (snapshot == null) {
+                    mSnapshot = snapshot = new DeviceInfo(context.getApplicationContext());
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Copies strings of shared snapshot in the order expected by
+     * {@link com.cod3rboy.crashbottomsheet.core.CrashRecordWriter#writeDeviceInfo}.
+     * It never computes the snapshot so it is safe to call from crash handler.
+     *
+     * @param out array of {@link com.cod3rboy.crashbottomsheet.core.CrashRecord#DEVICE_STRING_COUNT} strings
+     * @return true if snapshot has been computed and strings are copied otherwise false
+     */
+    static boolean copySnapshotStrings(String[] out) {
+        DeviceInfo snapshot = mSnapshot;
+        if (snapshot == null) return false;
+        snapshot.copyStrings(out);
+        return true;
+    }
+
+    /**
+     * Copies device strings i.e. information which does not change during app lifetime in the order expected
+     * by {@link com.cod3rboy.crashbottomsheet.core.CrashRecordWriter#writeDeviceInfo}.
+     *
+     * @param out array of {@link com.cod3rboy.crashbottomsheet.core.CrashRecord#DEVICE_STRING_COUNT} strings
+     */
+    void copyStrings(String[] out) {
+        out[0] = mAppName;
+        out[1] = mPackageName;
+        out[2] = mAPKVersion;
+        out[3] = mAndroidCodeName;
+        out[4] = mAndroidVersion;
+        out[5] = mManufacturer;
+        out[6] = mModel;
+        out[7] = mBrand;
+        out[8] = mProduct;
+    }
+
+    /**
+     * Returns device information made of shared snapshot and given device state captured at crash time.
+     *
+     * @param context    application context object
+     * @param crashState device state captured at crash time
+     * @return device information
+     */
+    @NonNull
+    static DeviceInfo fromSnapshot(Context context, CrashState crashState) {
+        return new DeviceInfo(getSnapshot(context), crashState);
+    }
+
+    /**
+     * Returns device information made of device strings saved with a crash and given device state captured
+     * at crash time.
+     *
+     * @param strings    device strings in the order written by {@link DeviceInfo#copyStrings(String[])}
+     * @param crashState device state captured at crash time
+     * @return device information
+     */
+    @NonNull
+    static DeviceInfo fromStrings(String[] strings, CrashState crashState) {
+        return new DeviceInfo(strings, crashState);
+    }
+
+    /**
+     * Returns copy of this device information without information captured at crash time.
+     *
+     * @return device information
+     */
+    @NonNull
+    DeviceInfo withoutCrashState() {
+        return new DeviceInfo(this, new CrashState());
+    }
+
+    /**
+     * Tells whether given device information has same device strings as this one.
+     *
+     * @param other device information to compare with
+     * @return true if information which does not change during app lifetime is same otherwise false
+     */
+    boolean hasSameStrings(DeviceInfo other) {
+        return equal(mAppName, other.mAppName) && equal(mPackageName, other.mPackageName)
+                && equal(mAPKVersion, other.mAPKVersion) && equal(mAndroidCodeName, other.mAndroidCodeName)
+                && equal(mAndroidVersion, other.mAndroidVersion) && equal(mManufacturer, other.mManufacturer)
+                && equal(mModel, other.mModel) && equal(mBrand, other.mBrand) && equal(mProduct, other.mProduct);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
     /**
      * Returns Application name
      *
@@ -159,6 +333,61 @@ public class DeviceInfo {
         return mAPKVersion;
     }
 
+    /**
+     * Returns free heap memory of app at crash time.
+     *
+     * @return Free memory in bytes or {@link DeviceInfo#UNKNOWN}
+     */
+    public long getFreeMemory() {
+        return mFreeMemory;
+    }
+
+    /**
+     * Returns total heap memory of app at crash time.
+     *
+     * @return Total memory in bytes or {@link DeviceInfo#UNKNOWN}
+     */
+    public long getTotalMemory() {
+        return mTotalMemory;
+    }
+
+    /**
+     * Returns max heap memory available to app.
+     *
+     * @return Max memory in bytes or {@link DeviceInfo#UNKNOWN}
+     */
+    public long getMaxMemory() {
+        return mMaxMemory;
+    }
+
+    /**
+     * Returns available internal storage at crash time.
+     *
+     * @return Available storage in bytes or {@link DeviceInfo#UNKNOWN}
+     */
+    public long getAvailableStorage() {
+        return mAvailableStorage;
+    }
+
+    /**
+     * Returns battery level at crash time.
+     *
+     * @return Battery level in percentage or {@link DeviceInfo#UNKNOWN}
+     */
+    public int getBatteryLevel() {
+        return mBatteryLevel;
+    }
+
+    /**
+     * Returns screen orientation at crash time.
+     *
+     * @return One of {@link Configuration#ORIENTATION_PORTRAIT}, {@link Configuration#ORIENTATION_LANDSCAPE}
+     * or {@link Configuration#ORIENTATION_UNDEFINED}
+     */
+    public int getOrientation() {
+        return mOrientation;
+    }
+
     /**
      * Returns formatted string with all device information.
      * Format :-
@@ -170,18 +399,43 @@ public class DeviceInfo {
      * Model : [value]
      * Brand : [value]
      * Product : [value]
+     * Memory : [free] KB free of [total] KB (max [max] KB)
+     * Available Storage : [value] MB
+     * Battery Level : [value]%
+     * Orientation : [Portrait|Landscape]
+     * Information captured at crash time is present only if it is known.
      *
      * @return Formatted device information
      */
     public String getFormattedInfo() {
-        return "Application Name : " + mAppName +
-                "\nPackage Name : " + mPackageName +
-                "\nAPK Version Name : " + mAPKVersion +
-                "\nAndroid OS : " + mAndroidCodeName + "-" + mAndroidVersion +
-                "\nManufacturer : " + mManufacturer +
-                "\nModel : " + mModel +
-                "\nBrand : " + mBrand +
-                "\nProduct : " + mProduct;
+        StringBuilder info = ReportFormatter.appendDeviceInfo(new StringBuilder(512), mAppName, mPackageName,
+                mAPKVersion, mAndroidCodeName, mAndroidVersion, mManufacturer, mModel, mBrand, mProduct);
+        int length = info.append('\n').length();
+        appendCrashState(info);
+        if (info.length() == length) info.setLength(length - 1); // No crash time information
+        return info.toString();
+    }
+
+    /**
+     * Returns formatted string with only the device information captured at crash time.
+     * Format is same as the last lines of {@link DeviceInfo#getFormattedInfo()}.
+     *
+     * @return Formatted crash time device information or empty string if none is known
+     */
+    String getFormattedCrashState() {
+        StringBuilder info = new StringBuilder(128);
+        appendCrashState(info);
+        return info.toString();
+    }
+
+    /**
+     * Appends device information captured at crash time which is known.
+     *
+     * @param info builder to append information to
+     */
+    private void appendCrashState(StringBuilder info) {
+        ReportFormatter.appendCrashState(info, mFreeMemory, mTotalMemory, mMaxMemory, mAvailableStorage,
+                mBatteryLevel, mOrientation);
     }
 
     /**
@@ -199,4 +453,41 @@ public class DeviceInfo {
             return "Unknown";
         }
     }
+
+    /**
+     * Device state which changes during app lifetime. Instance is allocated up front and
+     * filled at crash time without allocating.
+     */
+    static final class CrashState {
+        long mFreeMemory = UNKNOWN;
+        long mTotalMemory = UNKNOWN;
+        long mMaxMemory = UNKNOWN;
+        long mAvailableStorage = UNKNOWN;
+        int mBatteryLevel = UNKNOWN;
+        int mOrientation = Configuration.ORIENTATION_UNDEFINED;
+
+        /**
+         * Captures current device state.
+         *
+         * @param context        application context object
+         * @param batteryManager battery manager obtained ahead of time or null if not available
+         */
+        void capture(Context context, BatteryManager batteryManager) {
+            Runtime runtime = Runtime.getRuntime();
+            mFreeMemory = runtime.freeMemory();
+            mTotalMemory = runtime.totalMemory();
+            mMaxMemory = runtime.maxMemory();
+            try {
+                mAvailableStorage = context.getFilesDir().getUsableSpace();
+            } catch (SecurityException e) {
+                mAvailableStorage = UNKNOWN;
+            }
+            mBatteryLevel = UNKNOWN;
+            if (batteryManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                int level = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+                if (level >= 0 && level <= 100) mBatteryLevel = level;
+            }
+            mOrientation = context.getResources().getConfiguration().orientation;
+        }
+    }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+/**
+ * Policy which decides what {@link CrashBottomSheet} does for a crash whose fingerprint has already been reported.
+ * Set it with {@link CrashBottomSheet#setDuplicateCrashPolicy(DuplicateCrashPolicy)}.
+ */
+public enum DuplicateCrashPolicy {
+    /**
+     * Show bottom sheet and report crash every time. This is the default policy.
+     */
+    ALWAYS_REPORT,
+    /**
+     * Do not show bottom sheet for crashes already reported. Such crashes are passed to previous
+     * DefaultUncaughtExceptionHandler.
+     */
+    SKIP_SHEET,
+    /**
+     * Show bottom sheet but do not send report again for crashes already reported.
+     */
+    SKIP_REPORT
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.cod3rboy.crashbottomsheet.core.FrameTimeHistogram;
+
+/**
+ * Records frame times of main thread into {@link FrameTimeHistogram} so that crash and hang reports tell how
+ * smooth the app was running before. A {@link Choreographer} frame callback is posted on every frame and
+ * time between two frames is recorded, which is one vsync period while main thread keeps up and grows with
+ * the work main thread does in between. Callback is only posted while an activity is started, so time spent
+ * in background or with screen off is not counted as a frozen frame. Recording a frame does not allocate.
+ */
+final class FrameTimeRecorder implements Choreographer.FrameCallback, Application.ActivityLifecycleCallbacks {
+    private static final FrameTimeRecorder INSTANCE = new FrameTimeRecorder();
+
+    // Whether frame times are recorded
+    private static volatile boolean mEnabled = false;
+    // Histogram frames are recorded into, replaced when window changes
+    private static volatile FrameTimeHistogram mHistogram;
+    // Length of window in seconds
+    private static volatile int mWindowSeconds = FrameTimeHistogram.DEFAULT_WINDOW_SECONDS;
+    // Whether CrashBottomSheet is initialized so activities are being counted
+    private static volatile boolean mInitialized;
+
+    // Main thread state
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Number of started activities
+    private int mStartedActivities;
+    // Whether frame callback is posted
+    private boolean mRunning;
+    // Time of previous frame or 0 if there is none since callback was posted
+    private long mLastFrameNanos;
+
+    private FrameTimeRecorder() {
+    }
+
+    static synchronized void setEnabled(boolean enabled) {
+        if (enabled && mHistogram == null) mHistogram = new FrameTimeHistogram(mWindowSeconds);
+        mEnabled = enabled;
+        INSTANCE.postUpdate();
+    }
+
+    static synchronized void setWindowSeconds(int windowSeconds) {
+        mWindowSeconds = windowSeconds;
+        if (mHistogram != null) mHistogram = new FrameTimeHistogram(windowSeconds);
+    }
+
+    /**
+     * Starts counting started activities so that frames are recorded while any of them is visible.
+     *
+     * @param appContext application context object
+     */
+    static void onInitialized(Application appContext) {
+        appContext.registerActivityLifecycleCallbacks(INSTANCE);
+        mInitialized = true;
+        INSTANCE.postUpdate();
+    }
+
+    /**
+     * Takes snapshot of frames recorded during the window which ends now. It does not allocate and may be
+     * called from any thread.
+     *
+     * @param snapshot snapshot to fill
+     * @return true if snapshot is filled or false if frame times are not recorded
+     */
+    static boolean snapshot(FrameTimeHistogram.Snapshot snapshot) {
+        FrameTimeHistogram histogram = mHistogram;
+        if (!mEnabled || histogram == null) return false;
+        histogram.snapshot(System.nanoTime(), snapshot);
+        return true;
+    }
+
+    private void postUpdate() {
+        if (mInitialized) mHandler.post(this::update);
+    }
+
+    /**
+     * Posts or removes frame callback as recording is needed. Invoked on main thread.
+     */
+    private void update() {
+        boolean run = mEnabled && mStartedActivities > 0;
+        if (run == mRunning) return;
+        mRunning = run;
+        mLastFrameNanos = 0;
+        if (run) {
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) return;
+        FrameTimeHistogram histogram = mHistogram;
+        if (mLastFrameNanos != 0 && histogram != null) {
+            histogram.record(frameTimeNanos, frameTimeNanos - mLastFrameNanos);
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        mStartedActivities++;
+        update();
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        if (mStartedActivities > 0) mStartedActivities--;
+        update();
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.cod3rboy.crashbottomsheet.core.FrameTimeHistogram;
+import com.cod3rboy.crashbottomsheet.core.HangProfile;
+import com.cod3rboy.crashbottomsheet.core.HangWatchdog;
+
+import java.nio.charset.Charset;
+
+/**
+ * Watches main thread for hangs with {@link HangWatchdog} and records profile of each hang as a hang record.
+ * App keeps running after a hang or is killed by the system with ANR dialog, so hang record is shown by
+ * {@link CrashActivity} on next launch and goes through the same report path as crashes. Hang of previous
+ * launch is shown on top of the first activity started by the user, keeping the task the user is in.
+ */
+final class HangReporter {
+    private static final String LOG_TAG = HangReporter.class.getSimpleName();
+
+    // Charset of hang profile text
+    private static final Charset PROFILE_CHARSET = Charset.forName("UTF-8");
+    // Caption of frame timing appended to hang profile
+    private static final String FRAME_TIMING_CAPTION = "\nFrame timing:\n";
+
+    // Whether main thread is watched for hangs
+    private static volatile boolean mEnabled = false;
+    // Time main thread may not respond before it is considered hung
+    private static volatile long mThresholdMs = HangWatchdog.DEFAULT_THRESHOLD_MS;
+    // Application context once CrashBottomSheet is initialized
+    private static Context mAppContext;
+    // Running watchdog or null
+    private static HangWatchdog mWatchdog;
+    // Shows hang record of previous launch from the first started activity, accessed on main thread
+    private static final HangLauncher mLauncher = new HangLauncher();
+
+    private HangReporter() {
+    }
+
+    static synchronized void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        restart();
+    }
+
+    static synchronized void setThresholdMs(long thresholdMs) {
+        mThresholdMs = thresholdMs;
+        restart();
+    }
+
+    /**
+     * Shows hang recorded during previous launch and starts watchdog if it is enabled.
+     *
+     * @param appContext application context object
+     */
+    static synchronized void onInitialized(final Application appContext) {
+        mAppContext = appContext;
+        restart();
+        // Activities are counted from now on so record can be shown once one of them is started
+        appContext.registerActivityLifecycleCallbacks(mLauncher);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        Thread thread = new Thread(() -> {
+            final String recordId = CrashSpool.takeHangRecord(appContext);
+            if (recordId == null) {
+                handler.post(() -> appContext.unregisterActivityLifecycleCallbacks(mLauncher));
+                return;
+            }
+            handler.post(() -> mLauncher.show(appContext, recordId));
+        }, "CrashBottomSheet-Hang");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops running watchdog and starts a new one with current configuration if enabled.
+     */
+    private static void restart() {
+        if (mWatchdog != null) {
+            mWatchdog.shutdown();
+            mWatchdog = null;
+        }
+        if (!mEnabled || mAppContext == null) return;
+        final Context appContext = mAppContext;
+        Handler handler = new Handler(Looper.getMainLooper());
+        mWatchdog = new HangWatchdog(Looper.getMainLooper().getThread(), handler::post, mThresholdMs,
+                HangProfile.DEFAULT_MAX_SAMPLES, HangWatchdog.DEFAULT_SAMPLE_INTERVAL_MS,
+                profile -> recordHang(appContext, profile));
+        mWatchdog.start();
+    }
+
+    /**
+     * Records hang profile as hang record. Invoked on watchdog thread.
+     */
+    private static void recordHang(Context appContext, HangProfile profile) {
+        if (Debug.isDebuggerConnected()) {
+            // Main thread stopped at a breakpoint is not a hang
+            Log.d(LOG_TAG, "Main thread hang is ignored as debugger is connected.");
+            return;
+        }
+        Log.w(LOG_TAG, "WARNING! Main thread is not responding for " + profile.getDurationMs() + " ms.");
+        DeviceInfo.CrashState crashState = new DeviceInfo.CrashState();
+        BatteryManager batteryManager = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                ? (BatteryManager) appContext.getSystemService(Context.BATTERY_SERVICE) : null;
+        crashState.capture(appContext, batteryManager);
+        long fingerprint = CrashBottomSheet.getFingerprint().compute(HangProfile.FINGERPRINT_NAME,
+                profile.getHottestStack());
+        StringBuilder out = profile.appendTo(new StringBuilder());
+        // Frames recorded during the hang are not in snapshot yet as main thread is still stuck
+        FrameTimeHistogram.Snapshot frameTiming = new FrameTimeHistogram.Snapshot();
+        if (FrameTimeRecorder.snapshot(frameTiming)) frameTiming.appendTo(out.append(FRAME_TIMING_CAPTION));
+        byte[] text = out.toString().getBytes(PROFILE_CHARSET);
+        CrashSpool.writeHangRecord(appContext, System.currentTimeMillis(), crashState, fingerprint,
+                android.os.Process.myPid(), text);
+    }
+
+    /**
+     * Starts bottom sheet for hang record from a started activity. Starting it from background or from
+     * application context would be blocked on newer Android versions or would replace the task user is in.
+     * Invoked on main thread.
+     */
+    private static final class HangLauncher implements Application.ActivityLifecycleCallbacks {
+        // Started activity or null
+        private Activity mStartedActivity;
+        // Hang record waiting for an activity to be started or null
+        private String mPendingRecordId;
+
+        void show(Application appContext, String recordId) {
+            mPendingRecordId = recordId;
+            if (mStartedActivity != null) launch(appContext, mStartedActivity);
+        }
+
+        private void launch(Application appContext, Activity activity) {
+            String recordId = mPendingRecordId;
+            mPendingRecordId = null;
+            mStartedActivity = null;
+            appContext.unregisterActivityLifecycleCallbacks(this);
+            Log.d(LOG_TAG, "Showing main thread hang recorded during previous launch.");
+            activity.startActivity(CrashBottomSheet.newHangActivityIntent(activity, recordId));
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            mStartedActivity = activity;
+            if (mPendingRecordId != null) launch(activity.getApplication(), activity);
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            if (mStartedActivity == activity) mStartedActivity = null;
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Captures tail of logcat of crashed process and streams it at the end of crash record file.
+ * Capture is opt-in and runs in {@link CrashActivity} so crash handler does not pay for it. It reads at most
+ * a fixed number of lines and stops once byte or time budget is used up.
+ */
+final class LogcatCollector {
+    private static final String LOG_TAG = LogcatCollector.class.getSimpleName();
+
+    /**
+     * Default max number of logcat lines captured.
+     */
+    static final int DEFAULT_MAX_LINES = 300;
+    /**
+     * Default max number of bytes of logcat captured.
+     */
+    static final int DEFAULT_MAX_BYTES = 64 * 1024; // 64 KB
+    /**
+     * Default time allowed for capture.
+     */
+    static final long DEFAULT_TIMEOUT_MS = 2000; // 2 seconds
+    /**
+     * Min number of bytes of logcat captured.
+     */
+    static final int MIN_BYTES = 1024; // 1 KB
+
+    // Charset of logcat output
+    private static final Charset LOGCAT_CHARSET = Charset.forName("UTF-8");
+    // Line written in place of logcat lines which do not fit in budget
+    private static final String TRUNCATED_LINE = "... logcat truncated";
+    // Logcat output is filtered by process id from this API level
+    private static final int PID_FILTER_SDK = 24;
+
+    // Whether logcat is captured
+    private static volatile boolean mEnabled = false;
+    // Max number of logcat lines captured
+    private static volatile int mMaxLines = DEFAULT_MAX_LINES;
+    // Max number of bytes of logcat captured
+    private static volatile int mMaxBytes = DEFAULT_MAX_BYTES;
+    // Time allowed for capture
+    private static volatile long mTimeoutMs = DEFAULT_TIMEOUT_MS;
+
+    private LogcatCollector() {
+    }
+
+    static void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    static boolean isEnabled() {
+        return mEnabled;
+    }
+
+    static void setBudget(int maxLines, int maxBytes, long timeoutMs) {
+        mMaxLines = maxLines;
+        mMaxBytes = maxBytes;
+        mTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Tells whether logcat tail should be captured for crash record.
+     *
+     * @param record crash record
+     * @return true if capture is enabled and record does not hold logcat yet
+     */
+    static boolean shouldCapture(CrashSpool.Record record) {
+        return mEnabled && record.isValid() && record.getPid() != 0 && record.getFile() != null
+                && !record.hasLogcat();
+    }
+
+    /**
+     * Captures logcat tail of crashed process and appends it to crash record file. It blocks until logcat
+     * is read so it must not be called on main thread.
+     *
+     * @param record crash record
+     * @return true if any logcat line is appended otherwise false
+     */
+    static boolean capture(CrashSpool.Record record) {
+        final int maxLines = mMaxLines;
+        final int maxBytes = mMaxBytes;
+        final long timeoutMs = mTimeoutMs;
+        final int pid = record.getPid();
+        final boolean pidFilter = Build.VERSION.SDK_INT >= PID_FILTER_SDK;
+        List<String> command = new ArrayList<>();
+        command.add("logcat");
+        command.add("-d");
+        command.add("-v");
+        command.add("threadtime");
+        if (pidFilter) {
+            // Older logcat applies line limit before process filter below so it is only used here
+            command.add("-t");
+            command.add(String.valueOf(maxLines));
+            command.add("--pid=" + pid);
+        }
+        final Process process;
+        try {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to start logcat.", e);
+            return false;
+        }
+        // Logcat is killed once time budget is used up which ends the read below
+        Thread watchdog = new Thread(() -> {
+            try {
+                Thread.sleep(timeoutMs);
+                Log.w(LOG_TAG, "WARNING! Logcat capture exceeds " + timeoutMs + " ms so it is stopped.");
+                process.destroy();
+            } catch (InterruptedException ignored) {
+                // Capture finished in time
+            }
+        }, "CrashBottomSheet-LogcatWatchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        int written = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), LOGCAT_CHARSET));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(record.getFile(), true))) {
+            if (pidFilter) {
+                // Output holds only last lines of crashed process so it is streamed as it is read
+                String line;
+                while (written >= 0 && (line = in.readLine()) != null) {
+                    written = writeLine(out, line, written, maxBytes);
+                }
+            } else {
+                // Keep last lines of crashed process while whole buffer is read
+                ArrayDeque<String> lines = new ArrayDeque<>(Math.min(maxLines, 1024));
+                String pidToken = String.valueOf(pid);
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!isFromProcess(line, pidToken)) continue;
+                    if (lines.size() == maxLines) lines.removeFirst();
+                    lines.addLast(line);
+                }
+                for (String kept : lines) {
+                    if ((written = writeLine(out, kept, written, maxBytes)) < 0) break;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to capture logcat.", e);
+        } finally {
+            watchdog.interrupt();
+            process.destroy();
+        }
+        return written != 0;
+    }
+
+    /**
+     * Writes logcat line unless it exceeds byte budget in which case truncation line is written instead.
+     *
+     * @param out      crash record file stream
+     * @param line     logcat line
+     * @param written  number of bytes written so far
+     * @param maxBytes max number of bytes to write
+     * @return number of bytes written so far or -1 if budget is used up
+     */
+    private static int writeLine(OutputStream out, String line, int written, int maxBytes) throws IOException {
+        byte[] bytes = (line + '\n').getBytes(LOGCAT_CHARSET);
+        if (written + bytes.length > maxBytes - TRUNCATED_LINE.length() - 1) {
+            out.write((TRUNCATED_LINE + '\n').getBytes(LOGCAT_CHARSET));
+            return -1;
+        }
+        out.write(bytes);
+        return written + bytes.length;
+    }
+
+    /**
+     * Tells whether threadtime formatted logcat line is logged by process i.e. its third field is the
+     * process id.
+     *
+     * @param line     logcat line
+     * @param pidToken process id as text
+     * @return true if line is logged by process otherwise false
+     */
+    private static boolean isFromProcess(String line, String pidToken) {
+        int length = line.length();
+        int i = 0;
+        for (int field = 0; field < 2; field++) {
+            while (i < length && line.charAt(i) == ' ') i++;
+            while (i < length && line.charAt(i) != ' ') i++;
+        }
+        while (i < length && line.charAt(i) == ' ') i++;
+        return line.startsWith(pidToken, i)
+                && (i + pidToken.length() == length || line.charAt(i + pidToken.length()) == ' ');
+    }
+}
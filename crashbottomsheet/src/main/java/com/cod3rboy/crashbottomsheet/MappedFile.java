@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helper to map small fixed size state files into memory. Writes into mapped buffer land in page cache
+ * so they survive process death without any explicit flush.
+ */
+final class MappedFile {
+    private static final String LOG_TAG = MappedFile.class.getSimpleName();
+
+    private MappedFile() {
+    }
+
+    /**
+     * Maps file into memory creating it and its parent directory if needed.
+     *
+     * @param file file to map
+     * @param size number of bytes to map
+     * @return mapped buffer or heap buffer if file cannot be mapped
+     */
+    @NonNull
+    static ByteBuffer map(File file, int size) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(LOG_TAG, "WARNING! Unable to create directory " + dir);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to map " + file.getName() + " so its state is kept only in memory.", e);
+            return ByteBuffer.allocate(size);
+        }
+    }
+}
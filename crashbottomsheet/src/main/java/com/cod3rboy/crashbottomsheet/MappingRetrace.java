@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.cod3rboy.crashbottomsheet.core.MappingIndex;
+import com.cod3rboy.crashbottomsheet.core.StackTraceRetracer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Deobfuscates stack traces using mapping index shipped as an asset. Index is built from mapping file at
+ * build time by {@link com.cod3rboy.crashbottomsheet.core.MappingIndexBuilder} and is memory mapped straight
+ * from the APK when asset is stored uncompressed, so only pages touched by lookups are read.
+ */
+final class MappingRetrace {
+    private static final String LOG_TAG = MappingRetrace.class.getSimpleName();
+
+    // Name of mapping index asset or null if retrace is disabled
+    private static volatile String mAssetName;
+    // Retracer of loaded asset
+    private static StackTraceRetracer mRetracer;
+    // Name of asset whose load has been attempted
+    private static String mLoadedAssetName;
+
+    private MappingRetrace() {
+    }
+
+    static void setAssetName(@Nullable String assetName) {
+        mAssetName = assetName;
+    }
+
+    /**
+     * Deobfuscates stack trace if mapping index asset is set.
+     *
+     * @param context    Any Context object
+     * @param stackTrace stack trace text
+     * @return deobfuscated stack trace or given one if it cannot be retraced
+     */
+    @NonNull
+    static String retrace(Context context, @NonNull String stackTrace) {
+        String assetName = mAssetName;
+        if (assetName == null || stackTrace.isEmpty()) return stackTrace;
+        StackTraceRetracer retracer = getRetracer(context, assetName);
+        if (retracer == null) return stackTrace;
+        try {
+            return retracer.retrace(stackTrace);
+        } catch (RuntimeException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to retrace stack trace so it is kept obfuscated.", e);
+            return stackTrace;
+        }
+    }
+
+    /**
+     * Returns retracer of mapping index asset loading it on first call.
+     *
+     * @return retracer or null if asset cannot be loaded
+     */
+    @Nullable
+    private static synchronized StackTraceRetracer getRetracer(Context context, String assetName) {
+        if (assetName.equals(mLoadedAssetName)) return mRetracer;
+        mLoadedAssetName = assetName;
+        mRetracer = null;
+        try {
+            mRetracer = new StackTraceRetracer(new MappingIndex(load(context, assetName)));
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to load mapping index " + assetName + " so stack traces are not retraced.", e);
+        }
+        return mRetracer;
+    }
+
+    /**
+     * Maps mapping index asset into memory. Compressed asset cannot be mapped so it is read into heap.
+     */
+    private static ByteBuffer load(Context context, String assetName) throws IOException {
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(assetName);
+             FileInputStream in = descriptor.createInputStream()) {
+            // Mapping stays valid after the channel is closed
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(),
+                    descriptor.getLength());
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Mapping index " + assetName + " is compressed so it is read into memory. "
+                    + "Add its extension to aaptOptions.noCompress to memory map it.");
+        }
+        try (InputStream in = context.getAssets().open(assetName)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) out.write(buffer, 0, count);
+            return ByteBuffer.wrap(out.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.util.Log;
+
+import com.cod3rboy.crashbottomsheet.core.CrashRecordWriter;
+import com.cod3rboy.crashbottomsheet.core.NonFatalCoalescer;
+import com.cod3rboy.crashbottomsheet.core.NonFatalQueue;
+import com.cod3rboy.crashbottomsheet.core.StackTraceSerializer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records non-fatal exceptions into report queue. Calling thread only offers throwable to a lock-free
+ * {@link NonFatalQueue} and a background worker drains it periodically, coalesces throwables by exception
+ * class and top frame with {@link NonFatalCoalescer}, serializes each group like a crash and writes the batch
+ * into {@link ReportQueue} together with device state captured at flush time. If report queue is not enabled,
+ * drained throwables are dropped and counted. They are never handed to report callback because it is the
+ * action user triggers from bottom sheet. Worker sleeps while nothing is recorded.
+ */
+final class NonFatalReporter {
+    private static final String LOG_TAG = NonFatalReporter.class.getSimpleName();
+
+    // Time worker waits after first recorded exception before flushing unless queue fills up earlier
+    private static final long FLUSH_INTERVAL_MS = 2000; // 2 seconds
+    // Queue shared by all recording threads
+    private static final NonFatalQueue mQueue = new NonFatalQueue(NonFatalQueue.DEFAULT_CAPACITY);
+    // Worker thread once CrashBottomSheet is initialized
+    private static volatile Thread mWorker;
+    // Whether worker is parked until a non-fatal exception is recorded
+    private static volatile boolean mIdle;
+    // Whether a warning about report queue not being enabled has been logged, accessed on worker thread
+    private static boolean mDroppedLogged;
+    // Number of non-fatal exceptions dropped because report queue is not enabled, written on worker thread
+    private static volatile long mUnqueuedCount;
+    // Writer of binary records reused across flushes and its buffer size, accessed on worker thread
+    private static CrashRecordWriter mWriter;
+    private static int mWriterBytes;
+    // Dropped count at last flush
+    private static long mLoggedDropCount;
+
+    private NonFatalReporter() {
+    }
+
+    /**
+     * Hands throwable to background worker. It never waits and does not allocate.
+     *
+     * @param throwable non-fatal throwable
+     */
+    static void record(Throwable throwable) {
+        if (throwable == null || !mQueue.offer(throwable, System.currentTimeMillis())) return;
+        Thread worker = mWorker;
+        // Wake up idle worker, and flush early when queue is half full so that a burst is not dropped
+        if (worker != null && (mIdle || mQueue.size() >= mQueue.getCapacity() / 2)) LockSupport.unpark(worker);
+    }
+
+    /**
+     * Returns number of non-fatal exceptions dropped because they were recorded faster than worker flushes
+     * or because report queue is not enabled.
+     *
+     * @return dropped count
+     */
+    static long getDroppedCount() {
+        return mQueue.getDroppedCount() + mUnqueuedCount;
+    }
+
+    /**
+     * Starts worker which flushes recorded non-fatal exceptions.
+     *
+     * @param appContext application context object
+     */
+    static synchronized void onInitialized(final Context appContext) {
+        if (mWorker != null) return;
+        Thread worker = new Thread(() -> run(appContext), "CrashBottomSheet-NonFatal");
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.setDaemon(true);
+        mWorker = worker;
+        worker.start();
+    }
+
+    /**
+     * Sleeps until a non-fatal exception is recorded and flushes queue one flush interval later, or sooner
+     * when woken up by a recording thread. Failure of a flush is logged and never ends the worker.
+     */
+    private static void run(Context appContext) {
+        int capacity = mQueue.getCapacity();
+        Throwable[] throwables = new Throwable[capacity];
+        long[] timestamps = new long[capacity];
+        NonFatalCoalescer coalescer = new NonFatalCoalescer(capacity);
+        BatteryManager batteryManager = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                ? (BatteryManager) appContext.getSystemService(Context.BATTERY_SERVICE) : null;
+        while (true) {
+            mIdle = true;
+            while (mQueue.size() == 0) LockSupport.park();
+            mIdle = false;
+            // Let a burst arrive so that it is written as one batch
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+            int count = 0;
+            try {
+                count = mQueue.drain(throwables, timestamps);
+                logDrops();
+                if (count > 0) flush(appContext, batteryManager, coalescer, throwables, timestamps, count);
+            } catch (Throwable e) {
+                Log.w(LOG_TAG, "WARNING! Unable to write " + count + " non-fatal exceptions.", e);
+            } finally {
+                coalescer.clear();
+                clear(throwables, count);
+            }
+        }
+    }
+
+    /**
+     * Coalesces drained throwables and writes them into report queue, or drops and counts them if report
+     * queue is not enabled.
+     */
+    private static void flush(Context appContext, BatteryManager batteryManager, NonFatalCoalescer coalescer,
+                              Throwable[] throwables, long[] timestamps, int count) {
+        if (!ReportQueue.isEnabled()) {
+            mUnqueuedCount += count; // Only worker thread writes it
+            if (!mDroppedLogged) {
+                mDroppedLogged = true;
+                Log.w(LOG_TAG, "WARNING! Report queue is not enabled so non-fatal exceptions are dropped. "
+                        + "Call enableReportQueue() to keep them.");
+            }
+            return;
+        }
+        int maxBytes = CrashBottomSheet.getMaxReportBytes();
+        if (mWriter == null || mWriterBytes != maxBytes) {
+            mWriter = new CrashRecordWriter(maxBytes);
+            mWriterBytes = maxBytes;
+        }
+        DeviceInfo.CrashState crashState = new DeviceInfo.CrashState();
+        crashState.capture(appContext, batteryManager);
+        int groups = coalescer.coalesce(throwables, timestamps, count);
+        List<Report> reports = new ArrayList<>(groups);
+        for (int group = 0; group < groups; group++) {
+            Throwable throwable = throwables[coalescer.getFirst(group)];
+            try {
+                reports.add(serialize(mWriter, throwable, coalescer.getFirstTimestamp(group),
+                        coalescer.getCount(group), crashState, maxBytes));
+            } catch (RuntimeException e) {
+                Log.w(LOG_TAG, "WARNING! Unable to serialize non-fatal exception " + throwable.getClass(), e);
+            }
+        }
+        ReportQueue.enqueueNonFatal(appContext, reports);
+    }
+
+    /**
+     * Serializes throwable as binary crash record or as stack trace text if it does not fit.
+     */
+    private static Report serialize(CrashRecordWriter writer, Throwable throwable, long timestamp,
+                                    int occurrences, DeviceInfo.CrashState crashState, int maxBytes) {
+        long fingerprint = CrashBottomSheet.getFingerprint().compute(throwable);
+        boolean binary = writer.write(timestamp, throwable) >= 0;
+        ByteBuffer buffer;
+        if (binary) {
+            buffer = writer.getByteBuffer();
+        } else {
+            StackTraceSerializer serializer = new StackTraceSerializer(maxBytes);
+            serializer.serialize(throwable);
+            buffer = serializer.getByteBuffer();
+        }
+        byte[] body = new byte[buffer.remaining()];
+        buffer.duplicate().get(body);
+        return new Report(timestamp, fingerprint, occurrences, crashState, binary, body);
+    }
+
+    /**
+     * Logs number of non-fatal exceptions dropped since last flush.
+     */
+    private static void logDrops() {
+        long dropped = mQueue.getDroppedCount();
+        if (dropped == mLoggedDropCount) return;
+        Log.w(LOG_TAG, "WARNING! " + (dropped - mLoggedDropCount)
+                + " non-fatal exceptions are dropped as they are recorded faster than they are written.");
+        mLoggedDropCount = dropped;
+    }
+
+    private static void clear(Throwable[] throwables, int count) {
+        for (int i = 0; i < count; i++) throwables[i] = null;
+    }
+
+    /**
+     * Serialized non-fatal exception written into report queue.
+     */
+    static final class Report {
+        final long mTimestamp; // Time of first occurrence
+        final long mFingerprint;
+        final int mOccurrences; // Number of occurrences in batch
+        final DeviceInfo.CrashState mCrashState;
+        final boolean mBinary; // Whether body is a binary crash record
+        final byte[] mBody;
+
+        Report(long timestamp, long fingerprint, int occurrences, DeviceInfo.CrashState crashState,
+               boolean binary, byte[] body) {
+            mTimestamp = timestamp;
+            mFingerprint = fingerprint;
+            mOccurrences = occurrences;
+            mCrashState = crashState;
+            mBinary = binary;
+            mBody = body;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Helper to find out which process of the app is running.
+ */
+final class ProcessInfo {
+    private static final String LOG_TAG = ProcessInfo.class.getSimpleName();
+
+    /**
+     * Suffix of name of the dedicated process in which {@link CrashProcessActivity} runs.
+     */
+    static final String CRASH_PROCESS_SUFFIX = ":crash";
+
+    // Name of current process once it is known
+    private static volatile String mProcessName;
+
+    private ProcessInfo() {
+    }
+
+    /**
+     * Returns name of current process. It does not need a Context so it can be called from
+     * constructor of Application class.
+     *
+     * @return process name or empty string if it cannot be determined
+     */
+    @NonNull
+    static String getProcessName() {
+        String processName = mProcessName;
+        if (processName == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                processName = Application.getProcessName();
+            } else {
+                processName = readProcessName();
+            }
+            mProcessName = processName = processName == null ? "" : processName;
+        }
+        return processName;
+    }
+
+    /**
+     * Tells whether current process is the dedicated crash process.
+     *
+     * @return true if running in crash process otherwise false
+     */
+    static boolean isCrashProcess() {
+        return getProcessName().endsWith(CRASH_PROCESS_SUFFIX);
+    }
+
+    /**
+     * Returns key of current process used to name files which each process keeps apart from other processes
+     * of the app e.g. crash spool and crash loop state. Key is empty for app's default process so that its
+     * files keep their original names, otherwise it is a dash followed by process name without package name
+     * e.g. "-sync" for "com.example:sync".
+     *
+     * @param context Any Context object
+     * @return process key
+     */
+    @NonNull
+    static String getProcessKey(Context context) {
+        String processName = getProcessName();
+        if (processName.isEmpty() || processName.equals(context.getPackageName())) return "";
+        int colon = processName.indexOf(':');
+        String name = colon < 0 ? processName : processName.substring(colon + 1);
+        StringBuilder key = new StringBuilder(name.length() + 1).append('-');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '_';
+            key.append(safe ? c : '_');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Reads name of current process from /proc/self/cmdline.
+     *
+     * @return process name or empty string if it cannot be read
+     */
+    @NonNull
+    private static String readProcessName() {
+        byte[] buffer = new byte[256];
+        try (FileInputStream in = new FileInputStream("/proc/self/cmdline")) {
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            int end = 0;
+            while (end < length && buffer[end] != 0) end++; // Name ends at first NUL
+            return new String(buffer, 0, end, Charset.forName("UTF-8")).trim();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to read process name.", e);
+            return "";
+        }
+    }
+}
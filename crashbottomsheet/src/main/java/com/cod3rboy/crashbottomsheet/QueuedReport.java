@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Crash report waiting in report queue for batched delivery.
+ * See {@link CrashBottomSheet#enableReportQueue(CrashBottomSheet.ReportBatchSender)}.
+ */
+public final class QueuedReport {
+    private final String mId; // Id of crash record
+    private final long mTimestamp; // Crash timestamp
+    private final String mStackTrace; // Stack trace of crash
+    private final String mFingerprint; // Crash fingerprint
+    private final int mOccurrences; // Number of occurrences of crash with same fingerprint
+    private final DeviceInfo mDeviceInfo; // Device information including crash time state
+    private final boolean mNonFatal; // Whether report is of a non-fatal exception
+    private final String mProcessName; // Name of crashed process
+
+    QueuedReport(String id, long timestamp, String stackTrace, String fingerprint, int occurrences,
+                 DeviceInfo deviceInfo, boolean nonFatal, String processName) {
+        mId = id;
+        mTimestamp = timestamp;
+        mStackTrace = stackTrace;
+        mFingerprint = fingerprint;
+        mOccurrences = occurrences;
+        mDeviceInfo = deviceInfo;
+        mNonFatal = nonFatal;
+        mProcessName = processName;
+    }
+
+    /**
+     * Returns unique id of report.
+     *
+     * @return Report id
+     */
+    @NonNull
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * Returns time at which crash occurred.
+     *
+     * @return Crash timestamp in milliseconds
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Returns stack trace of crash.
+     *
+     * @return Stack trace
+     */
+    @NonNull
+    public String getStackTrace() {
+        return mStackTrace;
+    }
+
+    /**
+     * Returns crash fingerprint which stays same for repeated occurrences of a crash.
+     *
+     * @return Fingerprint as 16 character hexadecimal string
+     */
+    @NonNull
+    public String getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * Returns number of times crash with same fingerprint had occurred on device.
+     *
+     * @return Number of occurrences
+     */
+    public int getOccurrences() {
+        return mOccurrences;
+    }
+
+    /**
+     * Returns information about device including information captured at crash time.
+     *
+     * @return Device information
+     */
+    @NonNull
+    public DeviceInfo getDeviceInfo() {
+        return mDeviceInfo;
+    }
+
+    /**
+     * Returns whether report is of a non-fatal exception recorded with
+     * {@link CrashBottomSheet#recordNonFatal(Throwable)} instead of a crash. Timestamp of non-fatal report is
+     * time of first occurrence and occurrences is number of times it was recorded in one batch.
+     *
+     * @return true if report is of a non-fatal exception
+     */
+    public boolean isNonFatal() {
+        return mNonFatal;
+    }
+
+    /**
+     * Returns name of the app process in which crash occurred e.g. "com.example:sync".
+     *
+     * @return Process name or empty string if unknown
+     */
+    @NonNull
+    public String getProcessName() {
+        return mProcessName;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import androidx.annotation.NonNull;
+
+import com.cod3rboy.crashbottomsheet.core.ReportFormatter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Batch of queued crash reports handed to {@link CrashBottomSheet.ReportBatchSender}.
+ * Information about device which does not change between crashes is shared by all reports of a batch.
+ */
+public final class ReportBatch {
+    private final DeviceInfo mDeviceInfo; // Shared device information
+    private final List<QueuedReport> mReports; // Reports in batch
+
+    ReportBatch(DeviceInfo deviceInfo, List<QueuedReport> reports) {
+        mDeviceInfo = deviceInfo;
+        mReports = Collections.unmodifiableList(reports);
+    }
+
+    /**
+     * Returns device information shared by all reports of batch. It does not contain information captured
+     * at crash time which is available from {@link QueuedReport#getDeviceInfo()}.
+     *
+     * @return Shared device information
+     */
+    @NonNull
+    public DeviceInfo getDeviceInfo() {
+        return mDeviceInfo;
+    }
+
+    /**
+     * Returns reports in batch ordered from oldest to newest.
+     *
+     * @return Unmodifiable list of reports
+     */
+    @NonNull
+    public List<QueuedReport> getReports() {
+        return mReports;
+    }
+
+    /**
+     * Writes whole batch as a single GZIP compressed text payload which can be uploaded in one request.
+     * Shared device information is written only once at the top followed by every report.
+     * Stream is not closed.
+     *
+     * @param out stream to write payload to
+     * @throws IOException if payload cannot be written
+     */
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        Writer writer = new OutputStreamWriter(gzip, Charset.forName("UTF-8"));
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd-MMM-yyyy, HH:mm:ss", Locale.getDefault());
+        writer.write("---DEVICE INFO---\n");
+        writer.write(mDeviceInfo.getFormattedInfo());
+        writer.write('\n');
+        for (QueuedReport report : mReports) {
+            writer.write((report.isNonFatal() ? "\n---NON-FATAL REPORT " : "\n---CRASH REPORT ") + report.getId()
+                    + "---\n");
+            writer.write("Timestamp : " + dateFormat.format(new Date(report.getTimestamp())) + "\n");
+            if (!report.getProcessName().isEmpty()) writer.write("Process : " + report.getProcessName() + "\n");
+            writer.write(ReportFormatter.appendFingerprint(new StringBuilder(64), report.getFingerprint(), report.getOccurrences())
+                    .append('\n').toString());
+            String crashState = report.getDeviceInfo().getFormattedCrashState();
+            if (!crashState.isEmpty()) writer.write(crashState + "\n");
+            writer.write("---STACKTRACE---\n");
+            writer.write(report.getStackTrace());
+            writer.write('\n');
+        }
+        writer.flush();
+        gzip.finish();
+    }
+}
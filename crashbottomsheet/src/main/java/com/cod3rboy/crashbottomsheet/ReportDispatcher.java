@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.cod3rboy.crashbottomsheet.core.CrashFingerprint;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs {@link CrashBottomSheet.onCrashReportAsync} callbacks on report executor and retries reports
+ * which could not be delivered before deadline.
+ */
+final class ReportDispatcher {
+    private static final String LOG_TAG = ReportDispatcher.class.getSimpleName();
+
+    /**
+     * Default time allowed for report delivery.
+     */
+    static final long DEFAULT_DEADLINE_MS = 15000; // 15 seconds
+
+    // Default executor which runs report callbacks
+    private static final Executor DEFAULT_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CrashBottomSheet-Report");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Executor which runs report callbacks
+    private static volatile Executor mExecutor = DEFAULT_EXECUTOR;
+    // Time allowed for report delivery
+    private static volatile long mDeadlineMs = DEFAULT_DEADLINE_MS;
+
+    private ReportDispatcher() {
+    }
+
+    static void setExecutor(Executor executor) {
+        mExecutor = executor == null ? DEFAULT_EXECUTOR : executor;
+    }
+
+    static void setDeadlineMs(long deadlineMs) {
+        mDeadlineMs = deadlineMs;
+    }
+
+    static long getDeadlineMs() {
+        return mDeadlineMs;
+    }
+
+    /**
+     * Creates task which runs callback. Task is not started so that caller can make it visible to the
+     * progress handle before running it with {@link ReportDispatcher#execute(FutureTask)}, since callback may
+     * ask progress handle whether it is cancelled right away.
+     *
+     * @param callback    report callback
+     * @param record      crash record to report
+     * @param others      crash records of other processes reported along with it
+     * @param deviceInfo  device information
+     * @param progress    progress handle given to callback
+     * @param onDone      task to run on report executor when delivery completes, fails or is cancelled or null
+     * @return completion handle of report delivery
+     */
+    @NonNull
+    static FutureTask<Void> newTask(final CrashBottomSheet.onCrashReportAsync callback, final CrashSpool.Record record,
+                                    final List<CrashSpool.Record> others, final DeviceInfo deviceInfo,
+                                    final ReportProgress progress, final Runnable onDone) {
+        return new FutureTask<Void>(() -> {
+            callback.handleCrashReport(CrashSpool.appendProcessCrashes(record, record.getStackTrace(), others), deviceInfo,
+                    CrashFingerprint.toHexString(record.getFingerprint()), record.getOccurrences(), progress);
+            return null;
+        }) {
+            @Override
+            protected void done() {
+                if (onDone != null) onDone.run();
+            }
+        };
+    }
+
+    /**
+     * Runs task created with {@link ReportDispatcher#newTask} on report executor.
+     *
+     * @param task report delivery task
+     */
+    static void execute(FutureTask<Void> task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Retries reports which could not be delivered before deadline earlier. Each report is given the same
+     * deadline and is kept for next time if it is still not delivered.
+     *
+     * @param context  application context object
+     * @param callback report callback
+     */
+    static void retryPending(final Context context, final CrashBottomSheet.onCrashReportAsync callback) {
+        Thread thread = new Thread(() -> {
+            for (CrashSpool.Record record : CrashSpool.listRetainedRecords(context)) {
+                if (!record.isValid()) {
+                    record.delete();
+                    continue;
+                }
+                RetryProgress progress = new RetryProgress();
+                FutureTask<Void> task = newTask(callback, record, Collections.<CrashSpool.Record>emptyList(),
+                        DeviceInfo.fromSnapshot(context, record.getCrashState()), progress, null);
+                progress.mTask = task;
+                execute(task);
+                try {
+                    task.get(mDeadlineMs, TimeUnit.MILLISECONDS);
+                    Log.d(LOG_TAG, "Pending crash report delivered.");
+                    new CrashSignatureIndex(context).markReported(record.getFingerprint());
+                    record.delete();
+                } catch (TimeoutException e) {
+                    task.cancel(true);
+                    Log.w(LOG_TAG, "WARNING! Pending crash report is still not delivered before deadline.");
+                } catch (ExecutionException e) {
+                    Log.w(LOG_TAG, "WARNING! Pending crash report delivery failed.", e.getCause());
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "CrashBottomSheet-ReportRetry");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Progress handle of a retried report which has no progress bar to update.
+     */
+    private static final class RetryProgress implements ReportProgress {
+        // Task delivering report, set before it is executed
+        volatile FutureTask<?> mTask;
+
+        @Override
+        public void setProgress(int percent) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mTask.isCancelled();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+/**
+ * Handle given to {@link CrashBottomSheet.onCrashReportAsync} callback to publish progress of report delivery.
+ */
+public interface ReportProgress {
+    /**
+     * Publishes progress of report delivery which is shown in bottom sheet.
+     * It can be called from any thread.
+     *
+     * @param percent progress from 0 to 100
+     */
+    void setProgress(int percent);
+
+    /**
+     * Tells whether report delivery has been abandoned because deadline has passed.
+     * Long running callbacks should check it and stop early.
+     *
+     * @return true if cancelled otherwise false
+     */
+    boolean isCancelled();
+}
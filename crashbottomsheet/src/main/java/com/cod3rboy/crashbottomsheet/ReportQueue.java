@@ -0,0 +1,402 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.cod3rboy.crashbottomsheet.core.CrashFingerprint;
+import com.cod3rboy.crashbottomsheet.core.CrashRecord;
+import com.cod3rboy.crashbottomsheet.core.CrashRecordReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persistent queue of crash reports waiting for batched delivery.
+ * Crash records written by crash handler are compressed into the queue once {@link CrashActivity} is done
+ * with them and non-fatal exceptions are written into it in batches by {@link NonFatalReporter}. Queue is
+ * drained in batches on a background thread using {@link CrashBottomSheet.ReportBatchSender}.
+ * Oldest reports are evicted when queue exceeds its size or age limit. Queue is shared by all processes of the
+ * app so report ids are picked under {@link CrashStoreLock}.
+ */
+final class ReportQueue {
+    private static final String LOG_TAG = ReportQueue.class.getSimpleName();
+
+    /**
+     * Default max number of bytes of compressed reports in queue.
+     */
+    static final long DEFAULT_MAX_BYTES = 1024 * 1024; // 1 MB
+    /**
+     * Default max age of reports in queue.
+     */
+    static final long DEFAULT_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000; // 7 days
+    /**
+     * Max number of reports handed to sender in one batch.
+     */
+    static final int MAX_BATCH_SIZE = 20;
+
+    // Name of queue directory inside spool directory
+    private static final String QUEUE_DIR_NAME = "queue";
+    // Extension of queued report files
+    private static final String REPORT_FILE_EXTENSION = ".gz";
+    // Prefix and extension of report files being written
+    private static final String TEMP_FILE_PREFIX = "report";
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+    // Crash records older than this are queued on drain as CrashActivity is not going to handle them anymore
+    private static final long STALE_RECORD_MS = 60 * 60 * 1000; // 1 hour
+    // Version of queued report file format
+    private static final int FORMAT_VERSION = 1;
+    // Charset of logcat tail
+    private static final Charset REPORT_CHARSET = Charset.forName("UTF-8");
+
+    // Background thread which does all queue I/O other than writing non-fatal exceptions
+    private static final ExecutorService mExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CrashBottomSheet-ReportQueue");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Whether crash records are queued
+    private static volatile boolean mEnabled;
+    // Limits of queue
+    private static volatile long mMaxBytes = DEFAULT_MAX_BYTES;
+    private static volatile long mMaxAgeMs = DEFAULT_MAX_AGE_MS;
+
+    private ReportQueue() {
+    }
+
+    static void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    static boolean isEnabled() {
+        return mEnabled;
+    }
+
+    static void setLimits(long maxBytes, long maxAgeMs) {
+        mMaxBytes = maxBytes;
+        mMaxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Compresses crash record into the queue in background and deletes the crash record afterwards.
+     *
+     * @param context  application context object
+     * @param recordId id of crash record
+     */
+    static void enqueue(final Context context, final String recordId) {
+        if (recordId == null) return;
+        mExecutor.execute(() -> {
+            enqueueNow(context, recordId);
+            evict(context);
+        });
+    }
+
+    /**
+     * Drains the queue in background handing reports to sender in batches. Draining stops at the first
+     * batch which sender fails to deliver and remaining reports are kept for next time.
+     *
+     * @param context application context object
+     * @param sender  sender of report batches
+     */
+    static void drain(final Context context, final CrashBottomSheet.ReportBatchSender sender) {
+        mExecutor.execute(() -> {
+            // Queue crash records left behind e.g. when CrashActivity could not be shown
+            for (String recordId : CrashSpool.listRecordIds(context, System.currentTimeMillis() - STALE_RECORD_MS)) {
+                enqueueNow(context, recordId);
+            }
+            evict(context);
+            File[] files = listReportFiles(context);
+            int start = 0;
+            while (start < files.length) {
+                // Reports of a batch share device information so batch ends where it changes e.g. after app update
+                List<QueuedReport> reports = new ArrayList<>(MAX_BATCH_SIZE);
+                int end = start;
+                while (end < files.length && reports.size() < MAX_BATCH_SIZE) {
+                    QueuedReport report = read(context, files[end]);
+                    if (report != null && !reports.isEmpty()
+                            && !reports.get(0).getDeviceInfo().hasSameStrings(report.getDeviceInfo())) {
+                        break;
+                    }
+                    if (report != null) reports.add(report);
+                    end++;
+                }
+                if (!reports.isEmpty()) {
+                    boolean delivered;
+                    try {
+                        delivered = sender.sendBatch(new ReportBatch(reports.get(0).getDeviceInfo().withoutCrashState(),
+                                reports));
+                    } catch (Exception e) {
+                        Log.w(LOG_TAG, "WARNING! ReportBatchSender failed to send report batch.", e);
+                        delivered = false;
+                    }
+                    if (!delivered) {
+                        Log.d(LOG_TAG, "Report batch is not delivered so remaining reports are kept in queue.");
+                        return;
+                    }
+                    for (int i = start; i < end; i++) deleteFile(files[i]);
+                }
+                start = end;
+            }
+        });
+    }
+
+    /**
+     * Compresses crash record into the queue and deletes the crash record.
+     */
+    private static void enqueueNow(Context context, String recordId) {
+        CrashSpool.Record record = CrashSpool.readRecord(context, recordId);
+        if (!record.isValid()) {
+            CrashSpool.deleteRecord(context, recordId);
+            return;
+        }
+        File dir = getQueueDir(context);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(LOG_TAG, "WARNING! Unable to create report queue directory " + dir);
+            return;
+        }
+        byte[] stackTrace = record.readBody();
+        if (stackTrace == null) {
+            Log.w(LOG_TAG, "WARNING! Unable to queue crash record " + recordId);
+            return;
+        }
+        boolean binary = record.hasFlag(CrashSpool.FLAG_BINARY_TRACE);
+        if (write(context, dir, record.getTimestamp(), record.getFingerprint(), record.getOccurrences(),
+                record.getCrashState(), getDeviceStrings(context, stackTrace, binary), record.getProcessName(), false,
+                binary, stackTrace, record.readLogcatBytes())) {
+            CrashSpool.deleteRecord(context, recordId);
+        }
+    }
+
+    /**
+     * Returns device strings saved in binary crash record or device strings of current launch if crash record
+     * does not have them.
+     *
+     * @param context    application context object
+     * @param stackTrace stack trace of crash record
+     * @param binary     whether stack trace is binary crash record
+     * @return device strings
+     */
+    private static String[] getDeviceStrings(Context context, byte[] stackTrace, boolean binary) {
+        if (binary) {
+            try {
+                String[] strings = CrashRecordReader.read(stackTrace, 0, stackTrace.length).getDeviceStrings();
+                if (strings != null) return strings;
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "WARNING! Unable to read device information of binary crash record.", e);
+            }
+        }
+        String[] strings = new String[CrashRecord.DEVICE_STRING_COUNT];
+        DeviceInfo.getSnapshot(context).copyStrings(strings);
+        return strings;
+    }
+
+    /**
+     * Writes a batch of coalesced non-fatal exceptions into the queue. Invoked on non-fatal worker thread.
+     * Report ids are timestamps of first occurrences, moved forward when another report already has the id.
+     *
+     * @param context application context object
+     * @param reports serialized non-fatal exceptions
+     */
+    static void enqueueNonFatal(final Context context, List<NonFatalReporter.Report> reports) {
+        File dir = getQueueDir(context);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(LOG_TAG, "WARNING! Unable to create report queue directory " + dir);
+            return;
+        }
+        String processName = ProcessInfo.getProcessName();
+        String[] deviceStrings = new String[CrashRecord.DEVICE_STRING_COUNT];
+        DeviceInfo.getSnapshot(context).copyStrings(deviceStrings);
+        for (NonFatalReporter.Report report : reports) {
+            write(context, dir, report.mTimestamp, report.mFingerprint, report.mOccurrences, report.mCrashState,
+                    deviceStrings, processName, true, report.mBinary, report.mBody, null);
+        }
+        mExecutor.execute(() -> evict(context));
+    }
+
+    /**
+     * Writes queued report file. Report id is the timestamp, moved forward when another report already has it.
+     *
+     * @return true if report is queued otherwise false
+     */
+    private static boolean write(Context context, File dir, long timestamp, long fingerprint, int occurrences,
+                                 DeviceInfo.CrashState crashState, String[] deviceStrings, String processName,
+                                 boolean nonFatal,
+                                 boolean binary, byte[] stackTrace, @Nullable byte[] logcat) {
+        File tempFile;
+        try {
+            // Temp file name is unique so other processes can write reports at the same time
+            tempFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_EXTENSION, dir);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to queue report " + timestamp, e);
+            return false;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tempFile))))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(timestamp);
+            out.writeLong(fingerprint);
+            out.writeInt(occurrences);
+            out.writeLong(crashState.mFreeMemory);
+            out.writeLong(crashState.mTotalMemory);
+            out.writeLong(crashState.mMaxMemory);
+            out.writeLong(crashState.mAvailableStorage);
+            out.writeInt(crashState.mBatteryLevel);
+            out.writeInt(crashState.mOrientation);
+            for (String deviceString : deviceStrings) out.writeUTF(deviceString == null ? "" : deviceString);
+            out.writeBoolean(binary);
+            out.writeInt(stackTrace.length);
+            out.write(stackTrace);
+            out.writeInt(logcat == null ? 0 : logcat.length);
+            if (logcat != null) out.write(logcat);
+            out.writeBoolean(nonFatal);
+            out.writeUTF(processName);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "WARNING! Unable to queue report " + timestamp, e);
+            deleteFile(tempFile);
+            return false;
+        }
+        CrashStoreLock lock = CrashStoreLock.get(context);
+        boolean locked = lock.acquire(CrashStoreLock.DEFAULT_TIMEOUT_MS);
+        try {
+            long id = timestamp;
+            while (new File(dir, id + REPORT_FILE_EXTENSION).exists()) id++;
+            // Rename is atomic so a half written report is never seen in queue
+            if (!tempFile.renameTo(new File(dir, id + REPORT_FILE_EXTENSION))) {
+                Log.w(LOG_TAG, "WARNING! Unable to queue report " + id);
+                deleteFile(tempFile);
+                return false;
+            }
+            return true;
+        } finally {
+            if (locked) lock.release();
+        }
+    }
+
+    /**
+     * Reads queued report.
+     *
+     * @return queued report or null if it cannot be read in which case its file is deleted
+     */
+    @Nullable
+    private static QueuedReport read(Context context, File file) {
+        String name = file.getName();
+        String id = name.substring(0, name.length() - REPORT_FILE_EXTENSION.length());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) throw new IOException("Unknown report format");
+            long timestamp = in.readLong();
+            long fingerprint = in.readLong();
+            int occurrences = in.readInt();
+            DeviceInfo.CrashState crashState = new DeviceInfo.CrashState();
+            crashState.mFreeMemory = in.readLong();
+            crashState.mTotalMemory = in.readLong();
+            crashState.mMaxMemory = in.readLong();
+            crashState.mAvailableStorage = in.readLong();
+            crashState.mBatteryLevel = in.readInt();
+            crashState.mOrientation = in.readInt();
+            String[] deviceStrings = new String[CrashRecord.DEVICE_STRING_COUNT];
+            for (int i = 0; i < deviceStrings.length; i++) deviceStrings[i] = in.readUTF();
+            boolean binary = in.readBoolean();
+            byte[] stackTrace = new byte[in.readInt()];
+            in.readFully(stackTrace);
+            byte[] logcat = new byte[in.readInt()];
+            in.readFully(logcat);
+            boolean nonFatal = in.readBoolean();
+            String processName = in.readUTF();
+            return new QueuedReport(id, timestamp,
+                    CrashSpool.appendLogcat(CrashSpool.decodeStackTrace(context, stackTrace, binary),
+                            new String(logcat, REPORT_CHARSET)),
+                    CrashFingerprint.toHexString(fingerprint), occurrences,
+                    DeviceInfo.fromStrings(deviceStrings, crashState), nonFatal, processName);
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "WARNING! Dropping unreadable queued report " + id, e);
+            deleteFile(file);
+            return null;
+        }
+    }
+
+    /**
+     * Evicts reports older than max age and then oldest reports until queue fits in max size.
+     */
+    private static void evict(Context context) {
+        File[] files = listReportFiles(context);
+        long now = System.currentTimeMillis();
+        long totalBytes = 0;
+        for (File file : files) totalBytes += file.length();
+        for (File file : files) {
+            if (totalBytes <= mMaxBytes && now - getTimestamp(file) <= mMaxAgeMs) continue;
+            totalBytes -= file.length();
+            Log.d(LOG_TAG, "Evicting queued report " + file.getName());
+            deleteFile(file);
+        }
+    }
+
+    /**
+     * Lists queued report files ordered from oldest to newest.
+     */
+    @NonNull
+    private static File[] listReportFiles(Context context) {
+        File[] files = getQueueDir(context).listFiles((dir, name) -> name.endsWith(REPORT_FILE_EXTENSION));
+        if (files == null) return new File[0];
+        Arrays.sort(files, (a, b) -> Long.compare(getTimestamp(a), getTimestamp(b)));
+        return files;
+    }
+
+    /**
+     * Returns crash timestamp of queued report file which is its report id.
+     */
+    private static long getTimestamp(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - REPORT_FILE_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return file.lastModified();
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(LOG_TAG, "WARNING! Unable to delete " + file);
+        }
+    }
+
+    @NonNull
+    private static File getQueueDir(Context context) {
+        return new File(CrashSpool.getSpoolDir(context), QUEUE_DIR_NAME);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020 Dheeraj Kumar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cod3rboy.crashbottomsheet;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.cod3rboy.crashbottomsheet.core.StackTraceOutline;
+
+import com.google.android.material.button.MaterialButton;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Expandable panel of bottom sheet which shows stack trace of crash record as a recycled list of lines, so
+ * that only visible lines are laid out no matter how large the stack trace is. Stack trace is read and split
+ * into an outline on a background thread when panel is first opened, and text of every line is then
+ * measured ahead on that thread with {@link PrecomputedTextCompat} so binding a line does not measure glyphs
+ * on main thread. Causes and appended sections are collapsed to their header line until tapped.
+ */
+final class TraceViewer {
+    private static final String LOG_TAG = TraceViewer.class.getSimpleName();
+
+    // Text size of stack trace lines
+    private static final float LINE_TEXT_SIZE_SP = 11;
+    // Vertical padding of stack trace lines
+    private static final float LINE_PADDING_DP = 2;
+    // Prefixes of section header lines
+    private static final String EXPANDED_PREFIX = "▾ ";
+    private static final String COLLAPSED_PREFIX = "▸ ";
+
+    // Whether stack trace panel is shown in bottom sheet
+    private static volatile boolean mEnabled = false;
+
+    private final Handler mHandler;
+    private final CrashSpool.Record mRecord;
+    // Crash records of other processes shown along with the crash
+    private final List<CrashSpool.Record> mOthers;
+    private final MaterialButton mToggle;
+    private final RecyclerView mList;
+    // Adapter once stack trace is loaded
+    private LineAdapter mAdapter;
+    // Whether stack trace is being loaded
+    private boolean mLoading;
+    // Set when bottom sheet is gone to stop background work
+    private volatile boolean mClosed;
+
+    static void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    static boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Constructor. Shows the button which opens the panel.
+     *
+     * @param dialogView view of bottom sheet
+     * @param record     crash record
+     * @param others     crash records of other processes shown along with it
+     * @param handler    handler of main thread
+     */
+    TraceViewer(View dialogView, CrashSpool.Record record, List<CrashSpool.Record> others, Handler handler) {
+        mHandler = handler;
+        mRecord = record;
+        mOthers = others;
+        mToggle = dialogView.findViewById(R.id.btn_trace);
+        mList = dialogView.findViewById(R.id.rv_trace);
+        mList.setLayoutManager(new LinearLayoutManager(dialogView.getContext()));
+        mList.setHasFixedSize(true);
+        mToggle.setVisibility(View.VISIBLE);
+        mToggle.setOnClickListener(view -> toggle());
+    }
+
+    /**
+     * Stops background work. Invoked when bottom sheet is gone.
+     */
+    void close() {
+        mClosed = true;
+    }
+
+    /**
+     * Opens or closes the panel loading stack trace on first open.
+     */
+    private void toggle() {
+        if (mLoading) return;
+        if (mAdapter == null) {
+            load();
+        } else if (mList.getVisibility() == View.VISIBLE) {
+            mList.setVisibility(View.GONE);
+            mToggle.setText(R.string.cbs_btn_show_trace);
+        } else {
+            mList.setVisibility(View.VISIBLE);
+            mToggle.setText(R.string.cbs_btn_hide_trace);
+        }
+    }
+
+    /**
+     * Reads stack trace and builds its outline on a background thread, shows it and then measures text of
+     * all lines on the same thread.
+     */
+    private void load() {
+        mLoading = true;
+        mToggle.setEnabled(false);
+        // Text of lines is measured with parameters of line views so that it can be set on them as it is
+        final PrecomputedTextCompat.Params params = TextViewCompat.getTextMetricsParams(newLineView(mList.getContext()));
+        Thread thread = new Thread(() -> {
+            final StackTraceOutline outline = StackTraceOutline.parse(
+                    CrashSpool.appendProcessCrashes(mRecord, mRecord.readStackTrace(), mOthers));
+            final LineAdapter adapter = new LineAdapter(outline);
+            mHandler.post(() -> {
+                if (mClosed) return;
+                mLoading = false;
+                mAdapter = adapter;
+                mList.setAdapter(adapter);
+                mList.setVisibility(View.VISIBLE);
+                mToggle.setEnabled(true);
+                mToggle.setText(R.string.cbs_btn_hide_trace);
+            });
+            try {
+                for (int line = 0; line < outline.getLineCount() && !mClosed; line++) {
+                    adapter.mPrecomputed.lazySet(line, PrecomputedTextCompat.create(outline.getLine(line), params));
+                }
+            } catch (RuntimeException e) {
+                Log.w(LOG_TAG, "WARNING! Unable to measure stack trace lines ahead so they are measured when shown.", e);
+            }
+        }, "CrashBottomSheet-TraceViewer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Creates view of a stack trace line.
+     */
+    private static TextView newLineView(Context context) {
+        TextView view = new TextView(context);
+        view.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        view.setTypeface(Typeface.MONOSPACE);
+        view.setTextSize(TypedValue.COMPLEX_UNIT_SP, LINE_TEXT_SIZE_SP);
+        int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, LINE_PADDING_DP,
+                context.getResources().getDisplayMetrics());
+        view.setPadding(0, padding, 0, padding);
+        return view;
+    }
+
+    /**
+     * Adapter of visible rows of stack trace outline. Tapping a section header row expands or collapses it.
+     */
+    private static final class LineAdapter extends RecyclerView.Adapter<LineHolder> {
+        private final StackTraceOutline mOutline;
+        // Measured text of each line filled in by background thread
+        final AtomicReferenceArray<PrecomputedTextCompat> mPrecomputed;
+
+        LineAdapter(StackTraceOutline outline) {
+            mOutline = outline;
+            mPrecomputed = new AtomicReferenceArray<>(outline.getLineCount());
+        }
+
+        @NonNull
+        @Override
+        public LineHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            LineHolder holder = new LineHolder(newLineView(parent.getContext()));
+            holder.itemView.setOnClickListener(view -> onRowClicked(holder.getAdapterPosition()));
+            return holder;
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull LineHolder holder, int position) {
+            int line = mOutline.getRowLine(position);
+            TextView view = (TextView) holder.itemView;
+            if (mOutline.isHeaderRow(position)) {
+                int section = mOutline.getRowSection(position);
+                int lines = mOutline.getSectionLineCount(section);
+                if (lines == 0) {
+                    view.setText(mOutline.getLine(line));
+                } else if (mOutline.isExpanded(section)) {
+                    view.setText(EXPANDED_PREFIX + mOutline.getLine(line));
+                } else {
+                    view.setText(COLLAPSED_PREFIX + mOutline.getLine(line) + " (" + lines + " lines)");
+                }
+                return;
+            }
+            PrecomputedTextCompat text = mPrecomputed.get(line);
+            if (text != null) {
+                TextViewCompat.setPrecomputedText(view, text);
+            } else {
+                view.setText(mOutline.getLine(line));
+            }
+        }
+
+        @Override
+        public int getItemCount() {
+            return mOutline.getRowCount();
+        }
+
+        private void onRowClicked(int position) {
+            if (position == RecyclerView.NO_POSITION || !mOutline.isHeaderRow(position)) return;
+            int section = mOutline.getRowSection(position);
+            boolean expanded = !mOutline.isExpanded(section);
+            int lines = mOutline.setExpanded(section, expanded);
+            if (lines == 0) return;
+            notifyItemChanged(position);
+            if (expanded) {
+                notifyItemRangeInserted(position + 1, lines);
+            } else {
+                notifyItemRangeRemoved(position + 1, lines);
+            }
+        }
+    }
+
+    private static final class LineHolder extends RecyclerView.ViewHolder {
+        LineHolder(View itemView) {
+            super(itemView);
+        }
+    }
+}